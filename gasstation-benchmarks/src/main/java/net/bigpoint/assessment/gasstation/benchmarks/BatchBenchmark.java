@@ -0,0 +1,67 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.Order;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orders per second bought by GasStationImpl::buyGasBatch and by the loop of buyGas over the same orders
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"SteadyPumpManager", "SteadyBlockingPumpManager", "MaxSalesPumpManager", "BiddingPumpManager"})
+    public PumpManagerEnum strategy;
+
+    private GasStationImpl gasStation;
+    private List<Order> orders;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException {
+        gasStation = BenchmarkStations.create(strategy, 10);
+        final Random random = new Random(0);
+        orders = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++)
+            orders.add(new Order(BenchmarkStations.GAS_TYPES[random.nextInt(BenchmarkStations.GAS_TYPES.length)],
+                    BenchmarkStations.STUB_ORDER_AMOUNT, BenchmarkStations.PRICE));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gasStation.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public double buyGasLoop() {
+        double revenue = 0;
+        for (Order order : orders) {
+            try {
+                revenue += gasStation.buyGas(order.getGasType(), order.getAmountInLiters(), order.getMaxPricePerLiter());
+            } catch (NotEnoughGasException | GasTooExpensiveException e) {
+                revenue -= 1;
+            }
+        }
+        return revenue;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public double[] buyGasBatch() {
+        return gasStation.buyGasBatch(orders);
+    }
+}
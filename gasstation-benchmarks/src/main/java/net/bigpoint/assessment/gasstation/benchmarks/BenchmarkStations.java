@@ -0,0 +1,45 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Stations for the benchmarks. GasPump sleeps (long) (amount * 100) milliseconds, so the orders are small enough
+ * to stub the pumping out and measure the station itself
+ */
+final class BenchmarkStations {
+    static final double PRICE = 1.5;
+    /**
+     * Pumping of this amount sleeps 0 ms
+     */
+    static final double STUB_ORDER_AMOUNT = 1e-6;
+    /**
+     * Large enough to never run out of gas during a benchmark
+     */
+    static final double PUMP_CAPACITY = 1e9;
+    static final GasType[] GAS_TYPES = GasType.values();
+
+    private BenchmarkStations() {}
+
+    static GasStationImpl create(PumpManagerEnum strategy, int pumpsPerType) throws ClassNotFoundException {
+        return equip(new GasStationImpl(strategy), pumpsPerType);
+    }
+
+    static GasStationImpl createJournaled(PumpManagerEnum strategy, int pumpsPerType, Path journalFile) throws ClassNotFoundException, IOException {
+        return equip(GasStationImpl.openJournaled(strategy, journalFile), pumpsPerType);
+    }
+
+    private static GasStationImpl equip(GasStationImpl gasStation, int pumpsPerType) {
+        for (GasType gasType : GAS_TYPES) {
+            gasStation.setPrice(gasType, PRICE);
+            for (int i = 0; i < pumpsPerType; i++)
+                gasStation.addGasPump(new GasPump(gasType, PUMP_CAPACITY));
+        }
+        return gasStation;
+    }
+}
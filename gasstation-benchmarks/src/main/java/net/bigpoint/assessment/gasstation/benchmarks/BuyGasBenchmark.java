@@ -0,0 +1,74 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a purchase per strategy: price check, pump selection, scheduling on the pump worker and accounting.
+ * Rejected purchases are split evenly between too expensive and too large orders
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuyGasBenchmark {
+    @Param({"SteadyPumpManager", "SteadyBlockingPumpManager", "MaxSalesPumpManager", "BiddingPumpManager", "ShortestCompletionPumpManager"})
+    public PumpManagerEnum strategy;
+    @Param({"10", "1000"})
+    public int pumpsPerType;
+    @Param({"0.0", "0.5"})
+    public double rejectionRatio;
+
+    private GasStationImpl gasStation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException {
+        gasStation = BenchmarkStations.create(strategy, pumpsPerType);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gasStation.close();
+    }
+
+    @Benchmark
+    public double buyGas() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final GasType gasType = BenchmarkStations.GAS_TYPES[random.nextInt(BenchmarkStations.GAS_TYPES.length)];
+        try {
+            return gasStation.buyGas(gasType, orderAmount(random), maxPrice(random));
+        } catch (NotEnoughGasException | GasTooExpensiveException e) {
+            return -1;
+        }
+    }
+
+    @Benchmark
+    public double tryBuyGas() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final GasType gasType = BenchmarkStations.GAS_TYPES[random.nextInt(BenchmarkStations.GAS_TYPES.length)];
+        return gasStation.tryBuyGas(gasType, orderAmount(random), maxPrice(random));
+    }
+
+    /**
+     * Half of the rejections ask for more than any pump has
+     */
+    private double orderAmount(ThreadLocalRandom random) {
+        return random.nextDouble() < rejectionRatio / 2 ? 2 * BenchmarkStations.PUMP_CAPACITY : BenchmarkStations.STUB_ORDER_AMOUNT;
+    }
+
+    /**
+     * Half of the rejections offer less than the price
+     */
+    private double maxPrice(ThreadLocalRandom random) {
+        return random.nextDouble() < rejectionRatio / 2 ? BenchmarkStations.PRICE / 2 : BenchmarkStations.PRICE;
+    }
+}
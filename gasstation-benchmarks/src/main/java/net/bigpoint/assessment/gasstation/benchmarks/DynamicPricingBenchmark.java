@@ -0,0 +1,58 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Purchases with the static prices and while the pricing engine publishes new prices every millisecond
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamicPricingBenchmark {
+    private static final double MAX_PRICE = 2 * BenchmarkStations.PRICE;
+
+    @Param({"false", "true"})
+    public boolean dynamicPricing;
+
+    private GasStationImpl gasStation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException {
+        gasStation = BenchmarkStations.create(PumpManagerEnum.SteadyBlockingPumpManager, 10);
+        // Every tick changes the prices, so every tick publishes a new version
+        if (dynamicPricing)
+            gasStation.startDynamicPricing((basePrice, signals) -> basePrice * (1 + ThreadLocalRandom.current().nextDouble(0.5)), 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gasStation.close();
+    }
+
+    @Benchmark
+    public double buyGas() {
+        final GasType gasType = BenchmarkStations.GAS_TYPES[ThreadLocalRandom.current().nextInt(BenchmarkStations.GAS_TYPES.length)];
+        try {
+            return gasStation.buyGas(gasType, BenchmarkStations.STUB_ORDER_AMOUNT, MAX_PRICE);
+        } catch (NotEnoughGasException | GasTooExpensiveException e) {
+            return -1;
+        }
+    }
+
+    @Benchmark
+    public double tryBuyGas() {
+        final GasType gasType = BenchmarkStations.GAS_TYPES[ThreadLocalRandom.current().nextInt(BenchmarkStations.GAS_TYPES.length)];
+        return gasStation.tryBuyGas(gasType, BenchmarkStations.STUB_ORDER_AMOUNT, MAX_PRICE);
+    }
+}
@@ -0,0 +1,56 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.fleet.GasStationFleet;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Purchases per second of a fleet with the same pumps split into 1..8 station shards.
+ * Run with several thread counts: a single station serialises the buyers on its pump manager,
+ * the shards let them proceed in parallel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FleetBenchmark {
+    private static final int PUMPS_PER_TYPE = 8;
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    @Param({"SteadyBlockingPumpManager", "ShortestCompletionPumpManager"})
+    public PumpManagerEnum strategy;
+
+    private GasStationFleet fleet;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException {
+        fleet = GasStationFleet.create(shards, strategy);
+        for (GasType gasType : BenchmarkStations.GAS_TYPES) {
+            fleet.setPrice(gasType, BenchmarkStations.PRICE);
+            for (int i = 0; i < PUMPS_PER_TYPE; i++)
+                fleet.addGasPump(new GasPump(gasType, BenchmarkStations.PUMP_CAPACITY));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fleet.close();
+    }
+
+    @Benchmark
+    public double buyGas() throws NotEnoughGasException, GasTooExpensiveException {
+        final GasType gasType = BenchmarkStations.GAS_TYPES[ThreadLocalRandom.current().nextInt(BenchmarkStations.GAS_TYPES.length)];
+        return fleet.buyGas(gasType, BenchmarkStations.STUB_ORDER_AMOUNT, BenchmarkStations.PRICE);
+    }
+}
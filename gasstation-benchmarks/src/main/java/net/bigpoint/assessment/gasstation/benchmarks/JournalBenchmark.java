@@ -0,0 +1,64 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sales per second with the sales journal switched on and off
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+    @Param({"true", "false"})
+    public boolean journaling;
+
+    private Path journalFile;
+    private GasStationImpl gasStation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException, IOException {
+        if (journaling) {
+            journalFile = Files.createTempFile("sales", ".journal");
+            gasStation = BenchmarkStations.createJournaled(PumpManagerEnum.SteadyBlockingPumpManager, 10, journalFile);
+        } else {
+            gasStation = BenchmarkStations.create(PumpManagerEnum.SteadyBlockingPumpManager, 10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        gasStation.close();
+        if (journalFile != null)
+            Files.delete(journalFile);
+    }
+
+    @Benchmark
+    public double buyGas() {
+        final GasType gasType = BenchmarkStations.GAS_TYPES[ThreadLocalRandom.current().nextInt(BenchmarkStations.GAS_TYPES.length)];
+        try {
+            return gasStation.buyGas(gasType, BenchmarkStations.STUB_ORDER_AMOUNT, BenchmarkStations.PRICE);
+        } catch (NotEnoughGasException | GasTooExpensiveException e) {
+            return -1;
+        }
+    }
+
+    @Benchmark
+    public double tryBuyGas() {
+        final GasType gasType = BenchmarkStations.GAS_TYPES[ThreadLocalRandom.current().nextInt(BenchmarkStations.GAS_TYPES.length)];
+        return gasStation.tryBuyGas(gasType, BenchmarkStations.STUB_ORDER_AMOUNT, BenchmarkStations.PRICE);
+    }
+}
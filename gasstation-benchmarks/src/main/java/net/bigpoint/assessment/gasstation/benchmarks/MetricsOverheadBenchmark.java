@@ -0,0 +1,53 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Purchase cost with the latency recording switched on and off
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+    @Param({"true", "false"})
+    public boolean metricsEnabled;
+
+    private GasStationImpl gasStation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException {
+        gasStation = BenchmarkStations.create(PumpManagerEnum.SteadyBlockingPumpManager, 10);
+        gasStation.getMetrics().setEnabled(metricsEnabled);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gasStation.close();
+    }
+
+    @Benchmark
+    public double buyGas() {
+        final GasType gasType = BenchmarkStations.GAS_TYPES[ThreadLocalRandom.current().nextInt(BenchmarkStations.GAS_TYPES.length)];
+        try {
+            return gasStation.buyGas(gasType, BenchmarkStations.STUB_ORDER_AMOUNT, BenchmarkStations.PRICE);
+        } catch (NotEnoughGasException | GasTooExpensiveException e) {
+            return -1;
+        }
+    }
+
+    @Benchmark
+    public double rejectTooExpensive() {
+        return gasStation.tryBuyGas(GasType.DIESEL, BenchmarkStations.STUB_ORDER_AMOUNT, BenchmarkStations.PRICE / 2);
+    }
+}
@@ -0,0 +1,46 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Price reads while another thread keeps changing the price
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceContentionBenchmark {
+    private GasStationImpl gasStation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException {
+        gasStation = BenchmarkStations.create(PumpManagerEnum.SteadyBlockingPumpManager, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gasStation.close();
+    }
+
+    @Benchmark
+    @Group("price")
+    @GroupThreads(3)
+    public double getPrice() {
+        return gasStation.getPrice(GasType.DIESEL);
+    }
+
+    @Benchmark
+    @Group("price")
+    @GroupThreads(1)
+    public void setPrice() {
+        gasStation.setPrice(GasType.DIESEL, BenchmarkStations.PRICE + ThreadLocalRandom.current().nextDouble());
+    }
+}
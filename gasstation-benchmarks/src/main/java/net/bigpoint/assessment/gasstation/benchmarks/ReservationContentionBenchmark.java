@@ -0,0 +1,64 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpExecutionEngine;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpWorker;
+import net.bigpoint.assessment.gasstation.impl.managers.SteadyBlockingPumpManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reservations of 64 buyers on the pumps of SteadyBlockingPumpManager: the lock-free CAS reservation against
+ * the synchronized selection it replaced, where every buyer took the manager monitor for the selection.
+ * The synchronized variant serializes the same reservation under one monitor, so the difference is the cost
+ * of the lock hand-off between the buyers. Run on a multi-core host, one core can not show the contention
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(64)
+public class ReservationContentionBenchmark {
+    @Param({"128", "1024"})
+    public int pumps;
+
+    @Param({"cas", "synchronized"})
+    public String selection;
+
+    private PumpExecutionEngine executionEngine;
+    private SteadyBlockingPumpManager pumpManager;
+    private boolean synchronizedSelection;
+    private final Object selectionLock = new Object();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executionEngine = PumpExecutionEngine.newDefault();
+        pumpManager = new SteadyBlockingPumpManager(executionEngine);
+        for (int i = 0; i < pumps; i++)
+            pumpManager.addGasPump(new GasPump(GasType.DIESEL, BenchmarkStations.PUMP_CAPACITY));
+        synchronizedSelection = "synchronized".equals(selection);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executionEngine.close();
+    }
+
+    @Benchmark
+    public PumpWorker reserveAndRelease() {
+        final PumpWorker pumpWorker;
+        if (synchronizedSelection) {
+            synchronized (selectionLock) {
+                pumpWorker = pumpManager.reserveGas(BenchmarkStations.STUB_ORDER_AMOUNT);
+            }
+        } else {
+            pumpWorker = pumpManager.reserveGas(BenchmarkStations.STUB_ORDER_AMOUNT);
+        }
+        pumpManager.releaseGas(pumpWorker, BenchmarkStations.STUB_ORDER_AMOUNT);
+        return pumpWorker;
+    }
+}
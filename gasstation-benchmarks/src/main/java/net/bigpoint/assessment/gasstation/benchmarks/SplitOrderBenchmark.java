@@ -0,0 +1,91 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall-clock latency of the large orders served by a single pump and split across several pumps.
+ * Unlike the other benchmarks GasPump::pumpGas really sleeps: 2 liters take 200 ms on a single pump.
+ * fillRate counts the sales and the rejections of the orders up to twice the pump capacity:
+ * the fill rate is sales / (sales + rejections)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class SplitOrderBenchmark {
+    private static final double LARGE_ORDER_AMOUNT = 2;
+    /**
+     * Fill rate runs: amounts are multiples of 1/64 liter, so the remaining amounts are exact
+     */
+    private static final double LITER_UNIT = 1d / 64;
+    private static final int PUMP_UNITS = 8;
+    private static final int FILL_RATE_PUMPS = 10;
+    private static final int ORDERS_PER_RUN = 20;
+
+    @Param({"1", "2", "4"})
+    public int maxSlices;
+
+    private GasStationImpl gasStation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException {
+        gasStation = BenchmarkStations.create(PumpManagerEnum.SteadyBlockingPumpManager, 10);
+        gasStation.setSplitFulfilment(GasType.DIESEL, maxSlices, 0.1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gasStation.close();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class FillCounters {
+        public long sales;
+        public long rejections;
+        private int run;
+    }
+
+    @Benchmark
+    public double buyGas() {
+        try {
+            return gasStation.buyGas(GasType.DIESEL, LARGE_ORDER_AMOUNT, BenchmarkStations.PRICE);
+        } catch (NotEnoughGasException | GasTooExpensiveException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * One run of the seeded order stream on a fresh station of the small pumps
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void fillRate(FillCounters counters) throws ClassNotFoundException {
+        final Random random = new Random(counters.run++);
+        try (GasStationImpl station = new GasStationImpl(PumpManagerEnum.SteadyBlockingPumpManager)) {
+            station.setPrice(GasType.DIESEL, BenchmarkStations.PRICE);
+            station.setSplitFulfilment(GasType.DIESEL, maxSlices, LITER_UNIT);
+            for (int i = 0; i < FILL_RATE_PUMPS; i++)
+                station.addGasPump(new GasPump(GasType.DIESEL, PUMP_UNITS * LITER_UNIT));
+            for (int i = 0; i < ORDERS_PER_RUN; i++) {
+                final double amountInLiters = (1 + random.nextInt(2 * PUMP_UNITS)) * LITER_UNIT;
+                if (station.tryBuyGas(GasType.DIESEL, amountInLiters, BenchmarkStations.PRICE) >= 0)
+                    counters.sales++;
+                else
+                    counters.rejections++;
+            }
+        }
+    }
+}
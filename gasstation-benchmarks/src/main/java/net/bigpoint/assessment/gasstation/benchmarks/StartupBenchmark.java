@@ -0,0 +1,87 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.persistence.StationSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to build a large station: addGasPump loop, bulk addGasPumps and restore from the snapshot file
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StartupBenchmark {
+    @Param({"SteadyPumpManager", "SteadyBlockingPumpManager", "MaxSalesPumpManager", "BiddingPumpManager"})
+    public PumpManagerEnum strategy;
+    @Param({"10000"})
+    public int pumps;
+
+    private Path snapshotFile;
+    private GasStationImpl gasStation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException, IOException {
+        snapshotFile = Files.createTempFile("station", ".snapshot");
+        try (GasStationImpl template = new GasStationImpl(strategy)) {
+            for (GasType gasType : BenchmarkStations.GAS_TYPES)
+                template.setPrice(gasType, BenchmarkStations.PRICE);
+            template.addGasPumps(newPumps());
+            template.snapshot().write(snapshotFile);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeStation() {
+        gasStation.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(snapshotFile);
+    }
+
+    @Benchmark
+    public GasStationImpl addGasPumpLoop() throws ClassNotFoundException {
+        gasStation = new GasStationImpl(strategy);
+        for (GasType gasType : BenchmarkStations.GAS_TYPES)
+            gasStation.setPrice(gasType, BenchmarkStations.PRICE);
+        for (GasPump pump : newPumps())
+            gasStation.addGasPump(pump);
+        return gasStation;
+    }
+
+    @Benchmark
+    public GasStationImpl addGasPumps() throws ClassNotFoundException {
+        gasStation = new GasStationImpl(strategy);
+        for (GasType gasType : BenchmarkStations.GAS_TYPES)
+            gasStation.setPrice(gasType, BenchmarkStations.PRICE);
+        gasStation.addGasPumps(newPumps());
+        return gasStation;
+    }
+
+    @Benchmark
+    public GasStationImpl restoreSnapshot() throws ClassNotFoundException, IOException {
+        gasStation = GasStationImpl.restore(StationSnapshot.read(snapshotFile));
+        return gasStation;
+    }
+
+    private List<GasPump> newPumps() {
+        final List<GasPump> gasPumps = new ArrayList<>(pumps);
+        for (int i = 0; i < pumps; i++)
+            gasPumps.add(new GasPump(BenchmarkStations.GAS_TYPES[i % BenchmarkStations.GAS_TYPES.length], BenchmarkStations.PUMP_CAPACITY));
+        return gasPumps;
+    }
+}
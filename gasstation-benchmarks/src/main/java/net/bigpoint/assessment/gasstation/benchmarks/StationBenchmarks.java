@@ -0,0 +1,23 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count. Thread counts are taken from the "threads" system property (default "1,4,16"),
+ * all the other arguments are the usual JMH command line options
+ */
+public class StationBenchmarks {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        for (String threads : System.getProperty("threads", "1,4,16").split(",")) {
+            new Runner(new OptionsBuilder()
+                    .parent(commandLineOptions)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .build()).run();
+        }
+    }
+}
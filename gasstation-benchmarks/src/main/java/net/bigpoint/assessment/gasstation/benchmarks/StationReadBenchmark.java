@@ -0,0 +1,61 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.PumpInventory;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the station reads: pumps copy, inventory snapshot, price and counters
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StationReadBenchmark {
+    @Param({"10", "1000"})
+    public int pumpsPerType;
+
+    private GasStationImpl gasStation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ClassNotFoundException {
+        gasStation = BenchmarkStations.create(PumpManagerEnum.SteadyBlockingPumpManager, pumpsPerType);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        gasStation.close();
+    }
+
+    @Benchmark
+    public Collection<GasPump> getGasPumps() {
+        return gasStation.getGasPumps();
+    }
+
+    @Benchmark
+    public PumpInventory getInventory() {
+        return gasStation.getInventory();
+    }
+
+    @Benchmark
+    public double getPrice() {
+        return gasStation.getPrice(GasType.DIESEL);
+    }
+
+    @Benchmark
+    public void getCounters(Blackhole blackhole) {
+        blackhole.consume(gasStation.getRevenue());
+        blackhole.consume(gasStation.getNumberOfSales());
+        blackhole.consume(gasStation.getNumberOfCancellationsNoGas());
+        blackhole.consume(gasStation.getNumberOfCancellationsTooExpensive());
+    }
+}
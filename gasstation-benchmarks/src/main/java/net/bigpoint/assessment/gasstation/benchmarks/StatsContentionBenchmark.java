@@ -0,0 +1,45 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.stats.StationCounters;
+import net.bigpoint.assessment.gasstation.impl.stats.StationStats;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Books of a sale under contention: the former station counters (a DoubleAdder for the revenue and a shared
+ * AtomicInteger for the sales) against the striped fixed-point StationCounters, and the cost of a consistent snapshot
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatsContentionBenchmark {
+    private static final double AMOUNT = 0.5;
+    private static final double PURCHASE_PRICE = AMOUNT * BenchmarkStations.PRICE;
+
+    private final DoubleAdder revenueSum = new DoubleAdder();
+    private final AtomicInteger salesCounter = new AtomicInteger(0);
+    private final StationCounters counters = new StationCounters();
+
+    @Benchmark
+    public int atomicCounters() {
+        revenueSum.add(PURCHASE_PRICE);
+        return salesCounter.getAndIncrement();
+    }
+
+    @Benchmark
+    public void stripedCounters() {
+        counters.recordSale(GasType.DIESEL, AMOUNT, PURCHASE_PRICE);
+    }
+
+    @Benchmark
+    public StationStats stripedSnapshot() {
+        return counters.snapshot();
+    }
+}
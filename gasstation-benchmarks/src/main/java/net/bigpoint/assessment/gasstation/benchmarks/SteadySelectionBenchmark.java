@@ -0,0 +1,58 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpExecutionEngine;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpWorker;
+import net.bigpoint.assessment.gasstation.impl.managers.SteadyPumpManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pump selection of SteadyPumpManager with thousands of pumps of a gas type: one heap under one lock (1 shard)
+ * against the sharded heaps with the choice of two (0 takes the default number of shards).
+ * reserveAndRelease measures the selection and the reordering only, tryPumpGas the whole purchase on the manager.
+ * Run with several thread counts
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SteadySelectionBenchmark {
+    @Param({"1000", "10000"})
+    public int pumps;
+
+    @Param({"1", "0"})
+    public int shards;
+
+    private PumpExecutionEngine executionEngine;
+    private SteadyPumpManager pumpManager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executionEngine = PumpExecutionEngine.newDefault();
+        pumpManager = shards == 0 ? new SteadyPumpManager(executionEngine) : new SteadyPumpManager(executionEngine, shards);
+        for (int i = 0; i < pumps; i++)
+            pumpManager.addGasPump(new GasPump(GasType.DIESEL, BenchmarkStations.PUMP_CAPACITY));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executionEngine.close();
+    }
+
+    @Benchmark
+    public PumpWorker reserveAndRelease() {
+        final PumpWorker pumpWorker = pumpManager.reserveGas(BenchmarkStations.STUB_ORDER_AMOUNT);
+        pumpManager.releaseGas(pumpWorker, BenchmarkStations.STUB_ORDER_AMOUNT);
+        return pumpWorker;
+    }
+
+    @Benchmark
+    public int tryPumpGas() {
+        return pumpManager.tryPumpGas(BenchmarkStations.STUB_ORDER_AMOUNT);
+    }
+}
@@ -0,0 +1,48 @@
+package net.bigpoint.assessment.gasstation.benchmarks;
+
+import net.bigpoint.assessment.gasstation.impl.workload.ArrivalProcess;
+import net.bigpoint.assessment.gasstation.impl.workload.Distribution;
+import net.bigpoint.assessment.gasstation.impl.workload.WorkloadHarness;
+import net.bigpoint.assessment.gasstation.impl.workload.WorkloadReport;
+import net.bigpoint.assessment.gasstation.impl.workload.WorkloadSpec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prints the JSON report of all the strategies on the seeded workloads.
+ * Arguments: [poisson|bursty|closed|all] [seed] [orders] [real|simulated], defaults are "all 42 1000 real".
+ * The simulated mode replays the orders in the virtual time
+ */
+public class WorkloadComparison {
+    public static void main(String[] args) throws ClassNotFoundException, InterruptedException {
+        final String workload = args.length > 0 ? args[0] : "all";
+        final long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        final int orders = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        final boolean simulated = args.length > 3 && args[3].equals("simulated");
+
+        final List<WorkloadReport> reports = new ArrayList<>();
+        for (WorkloadSpec spec : workloads(seed, orders))
+            if (workload.equals("all") || workload.equals(spec.getName()))
+                reports.addAll(simulated ? WorkloadHarness.compareSimulated(spec) : WorkloadHarness.compare(spec));
+        if (reports.isEmpty())
+            throw new IllegalArgumentException("Unknown workload " + workload);
+        System.out.println(WorkloadReport.toJson(reports));
+    }
+
+    private static List<WorkloadSpec> workloads(long seed, int orders) {
+        final List<WorkloadSpec> workloads = new ArrayList<>();
+        // About half of the pumping capacity of 4 pumps per gas type
+        workloads.add(WorkloadSpec.of("poisson", seed, orders, ArrivalProcess.poisson(200))
+                .withPumps(4, orders / 50d));
+        // Bursts overload the pumps for a while, mixed sizes make some pumps much busier than the others
+        workloads.add(WorkloadSpec.of("bursty", seed, orders, ArrivalProcess.bursty(48, 150))
+                .withOrderSizes(Distribution.choice(new double[]{1d / 32, 1d / 4}, new double[]{4, 1}))
+                .withPumps(4, orders / 50d));
+        // Scarce gas: the fill rate depends on which pumps the strategy drains
+        workloads.add(WorkloadSpec.of("closed", seed, orders, ArrivalProcess.closedLoop(16, 1))
+                .withOrderSizes(Distribution.exponential(1d / 16, 1d / 2))
+                .withPumps(4, orders / 100d));
+        return workloads;
+    }
+}
@@ -0,0 +1,290 @@
+package net.bigpoint.assessment.gasstation.server;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasStation;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.fleet.GasStationFleet;
+import net.bigpoint.assessment.gasstation.impl.managers.OrderShedException;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpFutures;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking network front-end of a station, speaking the binary Protocol. A few reactor threads serve
+ * all the connections: the requests are parsed from the connection buffers, the purchases are dispatched
+ * to buyGasAsync and their responses are written when the pumping completes, so neither a terminal
+ * nor an in-flight purchase holds a thread. The prices and the stats are answered by the reactor at once.
+ * The server does not own the station, it is left open on close
+ */
+public class GasStationServer implements AutoCloseable {
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+
+    /**
+     * Asynchronous purchase of the served station
+     */
+    interface AsyncPurchases {
+        CompletableFuture<Double> buyGasAsync(GasType gasType, double amountInLiters, double maxPricePerLiter);
+    }
+
+    private final GasStation gasStation;
+    private final AsyncPurchases purchases;
+    private final ServerSocketChannel serverChannel;
+    private final Reactor[] reactors;
+    private final int maxInFlight;
+    private final AtomicInteger connectionCounter = new AtomicInteger(0);
+    private final AtomicLong requestCounter = new AtomicLong(0);
+    private int nextReactor = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * Serves the station by one reactor
+     * @param gasStation
+     * @param address port 0 binds an ephemeral port, see getLocalAddress
+     * @throws IOException
+     */
+    public GasStationServer(GasStationImpl gasStation, SocketAddress address) throws IOException {
+        this(gasStation, address, 1, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param gasStation
+     * @param address
+     * @param reactorCount selector threads
+     * @param maxInFlight requests per connection, which are dispatched, but not answered yet, before the connection is paused
+     * @throws IOException
+     */
+    public GasStationServer(GasStationImpl gasStation, SocketAddress address, int reactorCount, int maxInFlight) throws IOException {
+        this(gasStation, gasStation::buyGasAsync, address, reactorCount, maxInFlight);
+    }
+
+    /**
+     * Serves the fleet by one reactor
+     * @param fleet
+     * @param address
+     * @throws IOException
+     */
+    public GasStationServer(GasStationFleet fleet, SocketAddress address) throws IOException {
+        this(fleet, address, 1, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public GasStationServer(GasStationFleet fleet, SocketAddress address, int reactorCount, int maxInFlight) throws IOException {
+        this(fleet, fleet::buyGasAsync, address, reactorCount, maxInFlight);
+    }
+
+    GasStationServer(GasStation gasStation, AsyncPurchases purchases, SocketAddress address, int reactorCount, int maxInFlight) throws IOException {
+        if (reactorCount < 1 || maxInFlight < 1)
+            throw new IllegalArgumentException("Inappropriate server of " + reactorCount + " reactors with " + maxInFlight + " requests in flight");
+        this.gasStation = gasStation;
+        this.purchases = purchases;
+        this.maxInFlight = maxInFlight;
+        this.reactors = new Reactor[reactorCount];
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            for (int i = 0; i < reactorCount; i++)
+                reactors[i] = new Reactor(this, "station-server-" + i);
+            // The first reactor accepts the connections as well
+            serverChannel.register(reactors[0].getSelector(), SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            for (Reactor reactor : reactors)
+                if (reactor != null)
+                    reactor.close();
+            serverChannel.close();
+            throw e;
+        }
+        for (Reactor reactor : reactors)
+            reactor.start();
+    }
+
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    public int getNumberOfConnections() {
+        return connectionCounter.get();
+    }
+
+    public long getNumberOfRequests() {
+        return requestCounter.get();
+    }
+
+    /**
+     * Stops the reactors and closes all the connections, the responses of the purchases in flight are dropped
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        for (Reactor reactor : reactors)
+            reactor.close();
+        serverChannel.close();
+    }
+
+    /**
+     * Accepts the pending connections and spreads them over the reactors round-robin. Called by the first reactor
+     */
+    void accept() {
+        try {
+            for (SocketChannel channel = serverChannel.accept(); channel != null; channel = serverChannel.accept()) {
+                try {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                } catch (IOException e) {
+                    closeQuietly(channel);
+                    continue;
+                }
+                reactors[nextReactor].register(channel);
+                nextReactor = (nextReactor + 1) % reactors.length;
+            }
+        } catch (IOException e) {
+            // The server channel is closed
+        }
+    }
+
+    ServerConnection newConnection(Reactor reactor, SocketChannel channel, SelectionKey key) {
+        connectionCounter.getAndIncrement();
+        return new ServerConnection(this, reactor, channel, key, DEFAULT_BUFFER_SIZE, maxInFlight);
+    }
+
+    void connectionClosed() {
+        connectionCounter.getAndDecrement();
+    }
+
+    void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing to do
+        }
+    }
+
+    /**
+     * Serves the request, which header is already read. Called by the reactor of the connection.
+     * A request, which the station rejects, is answered with its status, it never fails the reactor
+     * @param connection
+     * @param opcode
+     * @param requestId
+     * @param buffer positioned at the payload of the complete request
+     */
+    void dispatch(ServerConnection connection, byte opcode, int requestId, ByteBuffer buffer) {
+        requestCounter.getAndIncrement();
+        switch (opcode) {
+            case Protocol.BUY_GAS: {
+                final GasType gasType = Protocol.gasType(buffer.get());
+                final double amountInLiters = buffer.getDouble();
+                final double maxPricePerLiter = buffer.getDouble();
+                if (gasType == null) {
+                    connection.complete(Response.failure(opcode, Protocol.BAD_REQUEST, requestId));
+                    return;
+                }
+                final CompletableFuture<Double> purchaseFuture;
+                try {
+                    purchaseFuture = purchases.buyGasAsync(gasType, amountInLiters, maxPricePerLiter);
+                } catch (RuntimeException e) {
+                    connection.complete(Response.failure(opcode, status(e), requestId));
+                    return;
+                }
+                purchaseFuture.whenComplete((purchasePrice, e) -> connection.complete(e == null
+                        ? Response.value(Protocol.BUY_GAS, requestId, purchasePrice)
+                        : Response.failure(Protocol.BUY_GAS, status(e), requestId)));
+                return;
+            }
+            case Protocol.GET_PRICE: {
+                final GasType gasType = Protocol.gasType(buffer.get());
+                Response response;
+                try {
+                    response = gasType == null
+                            ? Response.failure(opcode, Protocol.BAD_REQUEST, requestId)
+                            : Response.value(opcode, requestId, gasStation.getPrice(gasType));
+                } catch (RuntimeException e) {
+                    response = Response.failure(opcode, status(e), requestId);
+                }
+                connection.complete(response);
+                return;
+            }
+            case Protocol.GET_STATS: {
+                Response response;
+                try {
+                    response = Response.stats(requestId, gasStation.getRevenue(), gasStation.getNumberOfSales(),
+                            gasStation.getNumberOfCancellationsNoGas(), gasStation.getNumberOfCancellationsTooExpensive());
+                } catch (RuntimeException e) {
+                    response = Response.failure(opcode, status(e), requestId);
+                }
+                connection.complete(response);
+                return;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown opcode " + opcode);
+        }
+    }
+
+    private static byte status(Throwable throwable) {
+        final Throwable cause = PumpFutures.unwrap(throwable);
+        if (cause instanceof OrderShedException)
+            return Protocol.SHED;
+        if (cause instanceof NotEnoughGasException)
+            return Protocol.NOT_ENOUGH_GAS;
+        if (cause instanceof GasTooExpensiveException)
+            return Protocol.TOO_EXPENSIVE;
+        if (cause instanceof IllegalArgumentException)
+            return Protocol.BAD_REQUEST;
+        return Protocol.ERROR;
+    }
+
+    /**
+     * @param strategy
+     * @param pumps per gas type
+     * @return station of the practically endless pumps at LoadClient.DEFAULT_PRICE
+     */
+    static GasStationImpl newLoadTestStation(PumpManagerEnum strategy, int pumps) throws ClassNotFoundException {
+        final GasStationImpl gasStation = new GasStationImpl(strategy);
+        for (GasType gasType : GasType.values()) {
+            gasStation.setPrice(gasType, LoadClient.DEFAULT_PRICE);
+            for (int i = 0; i < pumps; i++)
+                gasStation.addGasPump(new GasPump(gasType, 1e9));
+        }
+        return gasStation;
+    }
+
+    /**
+     * Serves a station of the large pumps till the process is stopped, for the load tests on one machine.
+     * Arguments: [port] [strategy] [pumps per gas type], defaults are "7878 SteadyBlockingPumpManager 4"
+     */
+    public static void main(String[] args) throws Exception {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : 7878;
+        final PumpManagerEnum strategy = args.length > 1 ? PumpManagerEnum.valueOf(args[1]) : PumpManagerEnum.SteadyBlockingPumpManager;
+        final int pumps = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        final GasStationImpl gasStation = newLoadTestStation(strategy, pumps);
+        final GasStationServer server = new GasStationServer(gasStation, new InetSocketAddress(port));
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                gasStation.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+            stopped.countDown();
+        }));
+        System.out.println("Serving " + strategy + " with " + pumps + " pumps per gas type on " + server.getLocalAddress());
+        stopped.await();
+    }
+}
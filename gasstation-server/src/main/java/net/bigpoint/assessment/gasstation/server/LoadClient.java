@@ -0,0 +1,240 @@
+package net.bigpoint.assessment.gasstation.server;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.metrics.LatencyRecorder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback load test of a GasStationServer: one selector thread keeps the pipeline of every connection full,
+ * a new request is sent on the answer to the previous one, and the round-trip latency of every request
+ * is recorded. Purchases are small enough that the pumps do not sleep, so the front-end and the station
+ * overhead are measured. The requests are not sent after the duration, the requests in flight are awaited
+ */
+public class LoadClient {
+    public static final double DEFAULT_PRICE = 1.5;
+    public static final double DEFAULT_AMOUNT = 1e-6;
+    public static final double DEFAULT_BUY_RATIO = 0.9;
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final GasType[] GAS_TYPES = GasType.values();
+
+    private final InetSocketAddress address;
+    private final int connections;
+    private final int pipelineDepth;
+    private final double buyRatio;
+    private final double amountInLiters;
+
+    /**
+     * Buys DEFAULT_AMOUNT in DEFAULT_BUY_RATIO of the requests and asks the price in the others
+     * @param address
+     * @param connections
+     * @param pipelineDepth requests in flight per connection
+     */
+    public LoadClient(InetSocketAddress address, int connections, int pipelineDepth) {
+        this(address, connections, pipelineDepth, DEFAULT_BUY_RATIO, DEFAULT_AMOUNT);
+    }
+
+    /**
+     * @param address
+     * @param connections
+     * @param pipelineDepth requests in flight per connection
+     * @param buyRatio share of the purchases, the rest are the price requests and a stats request per 100 requests
+     * @param amountInLiters of every purchase, bought at DEFAULT_PRICE at most
+     */
+    public LoadClient(InetSocketAddress address, int connections, int pipelineDepth, double buyRatio, double amountInLiters) {
+        if (connections < 1 || pipelineDepth < 1)
+            throw new IllegalArgumentException("Inappropriate load of " + connections + " connections with " + pipelineDepth + " requests in flight");
+        this.address = address;
+        this.connections = connections;
+        this.pipelineDepth = pipelineDepth;
+        this.buyRatio = buyRatio;
+        this.amountInLiters = amountInLiters;
+    }
+
+    /**
+     * @param duration
+     * @param unit
+     * @return report of the run
+     * @throws IOException if a connection fails
+     */
+    public LoadReport run(long duration, TimeUnit unit) throws IOException {
+        final LatencyRecorder latencies = new LatencyRecorder();
+        final Counts counts = new Counts();
+        final SplittableRandom random = new SplittableRandom(42);
+        final List<ClientConnection> clientConnections = new ArrayList<>(connections);
+        try (Selector selector = Selector.open()) {
+            try {
+                for (int i = 0; i < connections; i++) {
+                    final SocketChannel channel = SocketChannel.open(address);
+                    channel.socket().setTcpNoDelay(true);
+                    channel.configureBlocking(false);
+                    final ClientConnection connection = new ClientConnection(channel, pipelineDepth);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    clientConnections.add(connection);
+                }
+
+                final long startTime = System.nanoTime();
+                final long deadline = startTime + unit.toNanos(duration);
+                long lastResponseTime = startTime;
+                for (ClientConnection connection : clientConnections) {
+                    for (int slot = 0; slot < pipelineDepth; slot++)
+                        send(connection, slot, random);
+                    connection.write();
+                }
+                int inFlight = connections * pipelineDepth;
+                while (inFlight > 0 && System.nanoTime() - deadline < DRAIN_TIMEOUT_NANOS) {
+                    selector.select(100);
+                    final Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                    while (selectedKeys.hasNext()) {
+                        final SelectionKey key = selectedKeys.next();
+                        selectedKeys.remove();
+                        final ClientConnection connection = (ClientConnection) key.attachment();
+                        if (key.isWritable())
+                            connection.write();
+                        if (!key.isReadable())
+                            continue;
+                        if (connection.channel.read(connection.readBuffer) < 0)
+                            throw new IOException("Connection closed by the server");
+
+                        final long now = System.nanoTime();
+                        final ByteBuffer readBuffer = connection.readBuffer;
+                        readBuffer.flip();
+                        while (readBuffer.remaining() >= Protocol.RESPONSE_HEADER_SIZE) {
+                            final int responseSize = Protocol.responseSize(readBuffer.get(readBuffer.position()), readBuffer.get(readBuffer.position() + 1));
+                            if (responseSize < 0)
+                                throw new IOException("Malformed response");
+                            if (readBuffer.remaining() < responseSize)
+                                break;
+                            final byte opcode = readBuffer.get();
+                            final byte status = readBuffer.get();
+                            final int requestId = readBuffer.getInt();
+                            readBuffer.position(readBuffer.position() + responseSize - Protocol.RESPONSE_HEADER_SIZE);
+
+                            final int slot = Integer.remainderUnsigned(requestId, pipelineDepth);
+                            if (connection.requestIds[slot] != requestId) {
+                                counts.errors++;
+                                continue;
+                            }
+                            latencies.record(now - connection.sentAt[slot]);
+                            counts.count(opcode, status);
+                            inFlight--;
+                            if (now - deadline < 0) {
+                                send(connection, slot, random);
+                                inFlight++;
+                            }
+                        }
+                        readBuffer.compact();
+                        connection.write();
+                        lastResponseTime = now;
+                    }
+                }
+                return new LoadReport(connections, pipelineDepth, latencies.getCount(), counts.purchases, counts.sales,
+                        counts.rejections, counts.errors + inFlight, lastResponseTime - startTime,
+                        latencies.getValueAtPercentile(50), latencies.getValueAtPercentile(99),
+                        latencies.getValueAtPercentile(99.9), latencies.getValueAtPercentile(100));
+            } finally {
+                for (ClientConnection connection : clientConnections)
+                    connection.channel.close();
+            }
+        }
+    }
+
+    private void send(ClientConnection connection, int slot, SplittableRandom random) {
+        final int requestId = connection.requestIds[slot] + pipelineDepth;
+        connection.requestIds[slot] = requestId;
+        final GasType gasType = GAS_TYPES[random.nextInt(GAS_TYPES.length)];
+        final double kind = random.nextDouble();
+        if (kind < buyRatio)
+            Protocol.putBuyGas(connection.writeBuffer, requestId, gasType, amountInLiters, DEFAULT_PRICE);
+        else if (kind < 0.99)
+            Protocol.putGetPrice(connection.writeBuffer, requestId, gasType);
+        else
+            Protocol.putGetStats(connection.writeBuffer, requestId);
+        connection.sentAt[slot] = System.nanoTime();
+    }
+
+    private static final class ClientConnection {
+        final SocketChannel channel;
+        SelectionKey key;
+        final ByteBuffer readBuffer;
+        final ByteBuffer writeBuffer;
+        /**
+         * Request in flight per slot of the pipeline: slot + k * depth
+         */
+        final int[] requestIds;
+        final long[] sentAt;
+
+        ClientConnection(SocketChannel channel, int pipelineDepth) {
+            this.channel = channel;
+            // Every slot has one request or one response in the buffers at most
+            this.readBuffer = ByteBuffer.allocate(pipelineDepth * Protocol.MAX_RESPONSE_SIZE);
+            this.writeBuffer = ByteBuffer.allocate(pipelineDepth * Protocol.requestSize(Protocol.BUY_GAS));
+            this.requestIds = new int[pipelineDepth];
+            for (int slot = 0; slot < pipelineDepth; slot++)
+                requestIds[slot] = slot - pipelineDepth;
+            this.sentAt = new long[pipelineDepth];
+        }
+
+        void write() throws IOException {
+            writeBuffer.flip();
+            channel.write(writeBuffer);
+            writeBuffer.compact();
+            key.interestOps(writeBuffer.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+    }
+
+    private static final class Counts {
+        long purchases;
+        long sales;
+        long rejections;
+        long errors;
+
+        void count(byte opcode, byte status) {
+            if (status == Protocol.BAD_REQUEST || status == Protocol.ERROR) {
+                errors++;
+                return;
+            }
+            if (opcode != Protocol.BUY_GAS)
+                return;
+            purchases++;
+            if (status == Protocol.OK)
+                sales++;
+            else
+                rejections++;
+        }
+    }
+
+    /**
+     * Prints the JSON report of the load test.
+     * Arguments: [host|embedded] [port] [connections] [pipeline depth] [seconds], defaults are "embedded 7878 64 16 10".
+     * The embedded mode serves a station of 4 pumps per gas type in the same process, on an ephemeral port
+     */
+    public static void main(String[] args) throws Exception {
+        final String host = args.length > 0 ? args[0] : "embedded";
+        final int port = args.length > 1 ? Integer.parseInt(args[1]) : 7878;
+        final int connections = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        final int pipelineDepth = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        final int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+        if (!host.equals("embedded")) {
+            System.out.println(new LoadClient(new InetSocketAddress(host, port), connections, pipelineDepth).run(seconds, TimeUnit.SECONDS));
+            return;
+        }
+        try (GasStationImpl gasStation = GasStationServer.newLoadTestStation(PumpManagerEnum.SteadyBlockingPumpManager, 4);
+             GasStationServer server = new GasStationServer(gasStation, new InetSocketAddress("127.0.0.1", 0))) {
+            System.out.println(new LoadClient(server.getLocalAddress(), connections, pipelineDepth).run(seconds, TimeUnit.SECONDS));
+        }
+    }
+}
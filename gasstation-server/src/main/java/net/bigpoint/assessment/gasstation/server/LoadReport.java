@@ -0,0 +1,117 @@
+package net.bigpoint.assessment.gasstation.server;
+
+import java.util.Locale;
+
+/**
+ * Result of a LoadClient run: requests per second and the round-trip latency percentiles, which are within ~6%
+ * of the measured values (LatencyRecorder buckets)
+ */
+public class LoadReport {
+    private final int connections;
+    private final int pipelineDepth;
+    private final long responses;
+    private final long purchases;
+    private final long sales;
+    private final long rejections;
+    private final long errors;
+    private final long elapsedNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+
+    LoadReport(int connections, int pipelineDepth, long responses, long purchases, long sales, long rejections, long errors,
+               long elapsedNanos, long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+        this.connections = connections;
+        this.pipelineDepth = pipelineDepth;
+        this.responses = responses;
+        this.purchases = purchases;
+        this.sales = sales;
+        this.rejections = rejections;
+        this.errors = errors;
+        this.elapsedNanos = elapsedNanos;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    /**
+     * @return answered requests of all the kinds
+     */
+    public long getResponses() {
+        return responses;
+    }
+
+    public long getPurchases() {
+        return purchases;
+    }
+
+    public long getSales() {
+        return sales;
+    }
+
+    /**
+     * @return purchases rejected for no gas, the price or by the admission control
+     */
+    public long getRejections() {
+        return rejections;
+    }
+
+    /**
+     * @return BAD_REQUEST and ERROR responses, the responses to unknown request ids and the requests unanswered after the drain timeout
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return responses per second
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : responses * 1e9 / elapsedNanos;
+    }
+
+    public long getLatencyNanosP50() {
+        return p50Nanos;
+    }
+
+    public long getLatencyNanosP99() {
+        return p99Nanos;
+    }
+
+    public long getLatencyNanosP999() {
+        return p999Nanos;
+    }
+
+    public long getLatencyNanosMax() {
+        return maxNanos;
+    }
+
+    public String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"connections\":%d,\"pipelineDepth\":%d,\"responses\":%d,\"purchases\":%d,\"sales\":%d,\"rejections\":%d,\"errors\":%d,"
+                        + "\"elapsedMillis\":%.3f,\"throughputPerSecond\":%.2f,"
+                        + "\"latencyMillis\":{\"p50\":%.3f,\"p99\":%.3f,\"p999\":%.3f,\"max\":%.3f}}",
+                connections, pipelineDepth, responses, purchases, sales, rejections, errors,
+                elapsedNanos / 1e6, getThroughput(),
+                p50Nanos / 1e6, p99Nanos / 1e6, p999Nanos / 1e6, maxNanos / 1e6);
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
@@ -0,0 +1,102 @@
+package net.bigpoint.assessment.gasstation.server;
+
+import net.bigpoint.assessment.gasstation.GasType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary protocol of the GasStationServer. Frames are big-endian and have no length prefix: the size follows
+ * from the first byte. Requests are pipelined, a connection may send the next request before the response
+ * to the previous one, and the responses come in the order of completion, matched by the request id.
+ * <pre>
+ * request:  opcode(1) requestId(4) payload
+ *   BUY_GAS    gasType(1) amountInLiters(8) maxPricePerLiter(8)
+ *   GET_PRICE  gasType(1)
+ *   GET_STATS  -
+ * response: opcode(1) status(1) requestId(4) payload, the payload is sent with the OK status only
+ *   BUY_GAS    purchasePrice(8)
+ *   GET_PRICE  pricePerLiter(8)
+ *   GET_STATS  revenue(8) sales(4) cancellationsNoGas(4) cancellationsTooExpensive(4)
+ * </pre>
+ * The gas type is the GasType ordinal. A request with an unknown opcode closes the connection
+ */
+public final class Protocol {
+    public static final byte BUY_GAS = 1;
+    public static final byte GET_PRICE = 2;
+    public static final byte GET_STATS = 3;
+
+    public static final byte OK = 0;
+    public static final byte NOT_ENOUGH_GAS = 1;
+    public static final byte TOO_EXPENSIVE = 2;
+    /**
+     * The order is shed by the admission control of the station
+     */
+    public static final byte SHED = 3;
+    /**
+     * Unknown gas type, or the gas type, which has no pumps
+     */
+    public static final byte BAD_REQUEST = 4;
+    public static final byte ERROR = 5;
+
+    static final int REQUEST_HEADER_SIZE = 5;
+    static final int RESPONSE_HEADER_SIZE = 6;
+    /**
+     * Largest response, GET_STATS
+     */
+    static final int MAX_RESPONSE_SIZE = RESPONSE_HEADER_SIZE + 20;
+
+    private static final GasType[] GAS_TYPES = GasType.values();
+
+    private Protocol() {
+    }
+
+    /**
+     * @param opcode
+     * @return size of the request including the header, -1 for an unknown opcode
+     */
+    public static int requestSize(byte opcode) {
+        switch (opcode) {
+            case BUY_GAS:
+                return REQUEST_HEADER_SIZE + 17;
+            case GET_PRICE:
+                return REQUEST_HEADER_SIZE + 1;
+            case GET_STATS:
+                return REQUEST_HEADER_SIZE;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @param opcode
+     * @param status
+     * @return size of the response including the header, -1 for an unknown opcode
+     */
+    public static int responseSize(byte opcode, byte status) {
+        if (opcode != BUY_GAS && opcode != GET_PRICE && opcode != GET_STATS)
+            return -1;
+        if (status != OK)
+            return RESPONSE_HEADER_SIZE;
+        return RESPONSE_HEADER_SIZE + (opcode == GET_STATS ? 20 : 8);
+    }
+
+    public static void putBuyGas(ByteBuffer buffer, int requestId, GasType gasType, double amountInLiters, double maxPricePerLiter) {
+        buffer.put(BUY_GAS).putInt(requestId).put((byte) gasType.ordinal()).putDouble(amountInLiters).putDouble(maxPricePerLiter);
+    }
+
+    public static void putGetPrice(ByteBuffer buffer, int requestId, GasType gasType) {
+        buffer.put(GET_PRICE).putInt(requestId).put((byte) gasType.ordinal());
+    }
+
+    public static void putGetStats(ByteBuffer buffer, int requestId) {
+        buffer.put(GET_STATS).putInt(requestId);
+    }
+
+    /**
+     * @param ordinal
+     * @return the gas type, null for an unknown ordinal
+     */
+    static GasType gasType(byte ordinal) {
+        return ordinal >= 0 && ordinal < GAS_TYPES.length ? GAS_TYPES[ordinal] : null;
+    }
+}
@@ -0,0 +1,151 @@
+package net.bigpoint.assessment.gasstation.server;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Selector thread, which serves its share of the connections: reads and dispatches the requests
+ * and writes the responses. The threads completing the purchases put the connection to the signalled queue
+ * and wake the selector up once per batch, not once per response
+ */
+final class Reactor implements Runnable {
+    private final GasStationServer server;
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<SocketChannel> acceptedChannels = new ConcurrentLinkedQueue<>();
+    private final Queue<ServerConnection> signalledConnections = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+    private volatile boolean running = true;
+
+    Reactor(GasStationServer server, String name) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    boolean inReactorThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Hands the accepted channel over to the reactor
+     * @param channel
+     */
+    void register(SocketChannel channel) {
+        acceptedChannels.add(channel);
+        wakeup();
+    }
+
+    /**
+     * Makes the reactor flush the connection
+     * @param connection
+     */
+    void signal(ServerConnection connection) {
+        if (connection.signalled.compareAndSet(false, true)) {
+            signalledConnections.add(connection);
+            wakeup();
+        }
+    }
+
+    void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys())
+            if (key.attachment() instanceof ServerConnection)
+                ((ServerConnection) key.attachment()).close();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // Nothing to do
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                wakeupPending.set(false);
+                registerAccepted();
+                for (ServerConnection connection = signalledConnections.poll(); connection != null; connection = signalledConnections.poll()) {
+                    connection.signalled.set(false);
+                    serve(connection, null);
+                }
+
+                final Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    final SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        server.accept();
+                        continue;
+                    }
+                    serve((ServerConnection) key.attachment(), key);
+                }
+                // Channels accepted by this reactor for itself
+                registerAccepted();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            running = false;
+        }
+    }
+
+    /**
+     * Reads and flushes the connection. A connection, which fails, is closed, the reactor goes on with the others
+     * @param connection
+     * @param key selected key of the connection, or null to flush the signalled connection only
+     */
+    private void serve(ServerConnection connection, SelectionKey key) {
+        try {
+            if (key == null) {
+                connection.flush();
+                return;
+            }
+            if (key.isReadable())
+                connection.read();
+            if (key.isValid() && key.isWritable())
+                connection.flush();
+        } catch (RuntimeException e) {
+            connection.close();
+        }
+    }
+
+    private void wakeup() {
+        if (!inReactorThread() && wakeupPending.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    private void registerAccepted() {
+        for (SocketChannel channel = acceptedChannels.poll(); channel != null; channel = acceptedChannels.poll()) {
+            try {
+                final SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(server.newConnection(this, channel, key));
+            } catch (IOException e) {
+                server.closeQuietly(channel);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package net.bigpoint.assessment.gasstation.server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Response, which waits in the connection for its turn to be written. Completed purchases hand it over
+ * from the pump worker threads to the reactor, so it is immutable
+ */
+final class Response {
+    private final byte opcode;
+    private final byte status;
+    private final int requestId;
+    private final double value;
+    private final int sales;
+    private final int cancellationsNoGas;
+    private final int cancellationsTooExpensive;
+
+    private Response(byte opcode, byte status, int requestId, double value, int sales, int cancellationsNoGas, int cancellationsTooExpensive) {
+        this.opcode = opcode;
+        this.status = status;
+        this.requestId = requestId;
+        this.value = value;
+        this.sales = sales;
+        this.cancellationsNoGas = cancellationsNoGas;
+        this.cancellationsTooExpensive = cancellationsTooExpensive;
+    }
+
+    static Response value(byte opcode, int requestId, double value) {
+        return new Response(opcode, Protocol.OK, requestId, value, 0, 0, 0);
+    }
+
+    static Response stats(int requestId, double revenue, int sales, int cancellationsNoGas, int cancellationsTooExpensive) {
+        return new Response(Protocol.GET_STATS, Protocol.OK, requestId, revenue, sales, cancellationsNoGas, cancellationsTooExpensive);
+    }
+
+    static Response failure(byte opcode, byte status, int requestId) {
+        return new Response(opcode, status, requestId, 0, 0, 0, 0);
+    }
+
+    /**
+     * @param buffer has at least Protocol.MAX_RESPONSE_SIZE bytes remaining
+     */
+    void writeTo(ByteBuffer buffer) {
+        buffer.put(opcode).put(status).putInt(requestId);
+        if (status != Protocol.OK)
+            return;
+        buffer.putDouble(value);
+        if (opcode == Protocol.GET_STATS)
+            buffer.putInt(sales).putInt(cancellationsNoGas).putInt(cancellationsTooExpensive);
+    }
+}
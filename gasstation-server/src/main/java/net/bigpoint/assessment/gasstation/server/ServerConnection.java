@@ -0,0 +1,162 @@
+package net.bigpoint.assessment.gasstation.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Terminal connection served by one reactor. The buffers, the interest ops and the in-flight count belong
+ * to the reactor thread, only the response queue and the signalled flag are shared with the threads,
+ * which complete the purchases. A connection with too many requests in flight is not read
+ * till the half of its responses are written, so a slow terminal can not pile up the orders
+ */
+final class ServerConnection {
+    private final GasStationServer server;
+    private final Reactor reactor;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    /**
+     * Both buffers are in the fill mode between the calls
+     */
+    private final ByteBuffer readBuffer;
+    private final ByteBuffer writeBuffer;
+    private final Queue<Response> responses = new ConcurrentLinkedQueue<>();
+    /**
+     * The connection is in the signalled queue of the reactor
+     */
+    final AtomicBoolean signalled = new AtomicBoolean(false);
+    private final int maxInFlight;
+    /**
+     * Requests dispatched and not yet written to the write buffer
+     */
+    private int inFlight = 0;
+    private boolean paused = false;
+    private boolean inputClosed = false;
+    private volatile boolean closed = false;
+
+    ServerConnection(GasStationServer server, Reactor reactor, SocketChannel channel, SelectionKey key, int bufferSize, int maxInFlight) {
+        this.server = server;
+        this.reactor = reactor;
+        this.channel = channel;
+        this.key = key;
+        this.readBuffer = ByteBuffer.allocate(bufferSize);
+        this.writeBuffer = ByteBuffer.allocate(Math.max(bufferSize, Protocol.MAX_RESPONSE_SIZE));
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Queues the response and wakes the reactor up. Called from any thread
+     * @param response
+     */
+    void complete(Response response) {
+        responses.add(response);
+        // The reactor flushes after the dispatch, so it does not signal itself
+        if (!closed && !reactor.inReactorThread())
+            reactor.signal(this);
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Reads and dispatches the complete requests, then writes the responses, which are ready
+     */
+    void read() {
+        try {
+            if (channel.read(readBuffer) < 0) {
+                inputClosed = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            if (!dispatchRequests())
+                return;
+            flush();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * Writes the queued responses as far as the socket takes them, and resumes the paused reading
+     */
+    void flush() {
+        if (closed)
+            return;
+        try {
+            boolean progress = true;
+            while (progress) {
+                while (writeBuffer.remaining() >= Protocol.MAX_RESPONSE_SIZE) {
+                    final Response response = responses.poll();
+                    if (response == null)
+                        break;
+                    response.writeTo(writeBuffer);
+                    inFlight--;
+                }
+                writeBuffer.flip();
+                progress = channel.write(writeBuffer) > 0 && !responses.isEmpty();
+                writeBuffer.compact();
+
+                if (paused && inFlight <= maxInFlight / 2) {
+                    paused = false;
+                    if (!inputClosed)
+                        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                    if (!dispatchRequests())
+                        return;
+                    progress = true;
+                }
+            }
+            if (writeBuffer.position() > 0) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                if (inputClosed && inFlight == 0)
+                    close();
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    void close() {
+        if (closed)
+            return;
+        closed = true;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing to do
+        }
+        server.connectionClosed();
+    }
+
+    /**
+     * @return false if the connection is closed because of a malformed request
+     */
+    private boolean dispatchRequests() {
+        readBuffer.flip();
+        while (inFlight < maxInFlight && readBuffer.hasRemaining()) {
+            final int requestSize = Protocol.requestSize(readBuffer.get(readBuffer.position()));
+            if (requestSize < 0) {
+                close();
+                return false;
+            }
+            if (readBuffer.remaining() < requestSize)
+                break;
+            final byte opcode = readBuffer.get();
+            final int requestId = readBuffer.getInt();
+            inFlight++;
+            server.dispatch(this, opcode, requestId, readBuffer);
+        }
+        readBuffer.compact();
+        if (inFlight >= maxInFlight && !paused) {
+            paused = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+        return true;
+    }
+}
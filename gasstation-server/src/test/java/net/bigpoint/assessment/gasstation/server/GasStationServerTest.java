@@ -0,0 +1,232 @@
+package net.bigpoint.assessment.gasstation.server;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.fleet.GasStationFleet;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GasStationServerTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = 1.5;
+    private final InetSocketAddress LOOPBACK = new InetSocketAddress("127.0.0.1", 0);
+
+    @Test
+    public void testPipelinedRequests() throws Exception {
+        try (GasStationImpl gasStation = newGasStation(1, 1);
+             GasStationServer server = new GasStationServer(gasStation, LOOPBACK);
+             SocketChannel channel = SocketChannel.open(server.getLocalAddress())) {
+            // All the requests are sent before the first response is read
+            final ByteBuffer requests = ByteBuffer.allocate(256);
+            Protocol.putBuyGas(requests, 1, GasType.DIESEL, 0.5, DIESEL_PRICE);
+            Protocol.putBuyGas(requests, 2, GasType.DIESEL, 0.1, DIESEL_PRICE - 0.5);
+            Protocol.putBuyGas(requests, 3, GasType.DIESEL, 5, DIESEL_PRICE);
+            Protocol.putGetPrice(requests, 4, GasType.DIESEL);
+            requests.put(Protocol.BUY_GAS).putInt(5).put((byte) 99).putDouble(0.1).putDouble(DIESEL_PRICE);
+            Protocol.putBuyGas(requests, 6, GasType.SUPER, 0.1, DIESEL_PRICE);
+            requests.flip();
+            channel.write(requests);
+
+            final Map<Integer, ByteBuffer> responses = readResponses(channel, 6);
+            assertResponse(responses.get(1), Protocol.BUY_GAS, Protocol.OK);
+            assertEquals(0.5 * DIESEL_PRICE, responses.get(1).getDouble(), DELTA);
+            assertResponse(responses.get(2), Protocol.BUY_GAS, Protocol.TOO_EXPENSIVE);
+            assertResponse(responses.get(3), Protocol.BUY_GAS, Protocol.NOT_ENOUGH_GAS);
+            assertResponse(responses.get(4), Protocol.GET_PRICE, Protocol.OK);
+            assertEquals(DIESEL_PRICE, responses.get(4).getDouble(), DELTA);
+            assertResponse(responses.get(5), Protocol.BUY_GAS, Protocol.BAD_REQUEST);
+            // No pumps of the gas type
+            assertResponse(responses.get(6), Protocol.BUY_GAS, Protocol.BAD_REQUEST);
+
+            final ByteBuffer statsRequest = ByteBuffer.allocate(Protocol.requestSize(Protocol.GET_STATS));
+            Protocol.putGetStats(statsRequest, 7);
+            statsRequest.flip();
+            channel.write(statsRequest);
+            final ByteBuffer stats = readResponses(channel, 1).get(7);
+            assertResponse(stats, Protocol.GET_STATS, Protocol.OK);
+            assertEquals(0.5 * DIESEL_PRICE, stats.getDouble(), DELTA);
+            assertEquals(1, stats.getInt());
+            assertEquals(1, stats.getInt());
+            assertEquals(1, stats.getInt());
+            assertEquals(7, server.getNumberOfRequests());
+        }
+    }
+
+    /**
+     * Purchases, which wait for the pumps, hold no thread: hundreds of terminals are served by one reactor
+     */
+    @Test
+    public void testManyTerminals() throws Exception {
+        final int terminals = 200;
+        try (GasStationImpl gasStation = newGasStation(4, 100);
+             GasStationServer server = new GasStationServer(gasStation, LOOPBACK)) {
+            final int threadsBefore = Thread.activeCount();
+            final List<SocketChannel> channels = new ArrayList<>(terminals);
+            try {
+                final ByteBuffer request = ByteBuffer.allocate(Protocol.requestSize(Protocol.BUY_GAS));
+                for (int i = 0; i < terminals; i++) {
+                    final SocketChannel channel = SocketChannel.open(server.getLocalAddress());
+                    channels.add(channel);
+                    request.clear();
+                    Protocol.putBuyGas(request, i, GasType.DIESEL, 0.01, DIESEL_PRICE);
+                    request.flip();
+                    channel.write(request);
+                }
+                // The pump workers may start on the first purchases, but no thread is started per terminal
+                assertTrue(Thread.activeCount() - threadsBefore < 20);
+
+                for (int i = 0; i < terminals; i++) {
+                    final ByteBuffer response = readResponses(channels.get(i), 1).get(i);
+                    assertResponse(response, Protocol.BUY_GAS, Protocol.OK);
+                }
+                assertEquals(terminals, server.getNumberOfConnections());
+                assertEquals(terminals, gasStation.getNumberOfSales());
+            } finally {
+                for (SocketChannel channel : channels)
+                    channel.close();
+            }
+        }
+    }
+
+    @Test
+    public void testLoadClient() throws Exception {
+        try (GasStationImpl gasStation = GasStationServer.newLoadTestStation(PumpManagerEnum.SteadyBlockingPumpManager, 2);
+             GasStationServer server = new GasStationServer(gasStation, LOOPBACK)) {
+            final LoadReport report = new LoadClient(server.getLocalAddress(), 8, 16).run(500, TimeUnit.MILLISECONDS);
+            assertTrue(report.getResponses() > 0);
+            assertEquals(0, report.getErrors());
+            assertEquals(0, report.getRejections());
+            assertEquals(report.getPurchases(), report.getSales());
+            assertEquals(report.getSales(), gasStation.getNumberOfSales());
+            assertEquals(server.getNumberOfRequests(), report.getResponses());
+            assertTrue(report.getLatencyNanosP50() <= report.getLatencyNanosP99());
+        }
+    }
+
+    /**
+     * Pipelines deeper than the in-flight limit of the server: the connections are paused and resumed, nothing is lost
+     */
+    @Test
+    public void testPausedConnections() throws Exception {
+        try (GasStationFleet fleet = GasStationFleet.create(2, PumpManagerEnum.SteadyBlockingPumpManager)) {
+            for (GasType gasType : GasType.values()) {
+                fleet.setPrice(gasType, LoadClient.DEFAULT_PRICE);
+                for (int i = 0; i < 4; i++)
+                    fleet.addGasPump(new GasPump(gasType, 1e9));
+            }
+            try (GasStationServer server = new GasStationServer(fleet, LOOPBACK, 2, 4)) {
+                final LoadReport report = new LoadClient(server.getLocalAddress(), 4, 64).run(500, TimeUnit.MILLISECONDS);
+                assertTrue(report.getResponses() > 4 * 64);
+                assertEquals(0, report.getErrors());
+                assertEquals(report.getSales(), fleet.getNumberOfSales());
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedRequestClosesConnection() throws Exception {
+        try (GasStationImpl gasStation = newGasStation(1, 1);
+             GasStationServer server = new GasStationServer(gasStation, LOOPBACK);
+             SocketChannel channel = SocketChannel.open(server.getLocalAddress())) {
+            channel.write(ByteBuffer.wrap(new byte[]{42, 0, 0, 0, 1}));
+            assertEquals(-1, channel.read(ByteBuffer.allocate(16)));
+
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (server.getNumberOfConnections() > 0 && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertEquals(0, server.getNumberOfConnections());
+        }
+    }
+
+    /**
+     * Requests, which the station rejects, are answered with BAD_REQUEST, the connection and the reactor go on serving
+     */
+    @Test
+    public void testRejectedRequestsKeepServing() throws Exception {
+        try (GasStationImpl gasStation = newGasStation(1, 10);
+             GasStationServer server = new GasStationServer(gasStation, LOOPBACK);
+             SocketChannel channel = SocketChannel.open(server.getLocalAddress())) {
+            final ByteBuffer requests = ByteBuffer.allocate(256);
+            // No price of the gas type
+            Protocol.putGetPrice(requests, 1, GasType.REGULAR);
+            Protocol.putBuyGas(requests, 2, GasType.DIESEL, -1, DIESEL_PRICE);
+            Protocol.putBuyGas(requests, 3, GasType.DIESEL, Double.NaN, DIESEL_PRICE);
+            Protocol.putBuyGas(requests, 4, GasType.DIESEL, Double.POSITIVE_INFINITY, DIESEL_PRICE);
+            Protocol.putBuyGas(requests, 5, GasType.DIESEL, 1, Double.NaN);
+            Protocol.putBuyGas(requests, 6, GasType.DIESEL, 1, DIESEL_PRICE);
+            requests.flip();
+            channel.write(requests);
+
+            final Map<Integer, ByteBuffer> responses = readResponses(channel, 6);
+            assertResponse(responses.get(1), Protocol.GET_PRICE, Protocol.BAD_REQUEST);
+            for (int requestId = 2; requestId <= 5; requestId++)
+                assertResponse(responses.get(requestId), Protocol.BUY_GAS, Protocol.BAD_REQUEST);
+            assertResponse(responses.get(6), Protocol.BUY_GAS, Protocol.OK);
+            assertEquals(DIESEL_PRICE, responses.get(6).getDouble(), DELTA);
+
+            // The reactor still serves the new connections
+            try (SocketChannel other = SocketChannel.open(server.getLocalAddress())) {
+                final ByteBuffer request = ByteBuffer.allocate(Protocol.requestSize(Protocol.GET_PRICE));
+                Protocol.putGetPrice(request, 7, GasType.DIESEL);
+                request.flip();
+                other.write(request);
+                final ByteBuffer price = readResponses(other, 1).get(7);
+                assertResponse(price, Protocol.GET_PRICE, Protocol.OK);
+                assertEquals(DIESEL_PRICE, price.getDouble(), DELTA);
+            }
+            assertEquals(1, gasStation.getNumberOfSales());
+            assertEquals(DIESEL_PRICE, gasStation.getRevenue(), DELTA);
+        }
+    }
+
+    private GasStationImpl newGasStation(int pumpCount, double pumpCapacity) throws ClassNotFoundException {
+        final GasStationImpl gasStation = new GasStationImpl(PumpManagerEnum.SteadyBlockingPumpManager);
+        gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+        for (int i = 0; i < pumpCount; i++)
+            gasStation.addGasPump(new GasPump(GasType.DIESEL, pumpCapacity));
+        return gasStation;
+    }
+
+    /**
+     * @return responses by the request id, positioned at the payload
+     */
+    private static Map<Integer, ByteBuffer> readResponses(SocketChannel channel, int count) throws IOException {
+        final Map<Integer, ByteBuffer> responses = new HashMap<>();
+        final ByteBuffer buffer = ByteBuffer.allocate(count * Protocol.MAX_RESPONSE_SIZE);
+        while (responses.size() < count) {
+            if (channel.read(buffer) < 0)
+                throw new IOException("Connection closed by the server");
+            buffer.flip();
+            while (buffer.remaining() >= Protocol.RESPONSE_HEADER_SIZE) {
+                final int responseSize = Protocol.responseSize(buffer.get(buffer.position()), buffer.get(buffer.position() + 1));
+                if (buffer.remaining() < responseSize)
+                    break;
+                final byte[] response = new byte[responseSize];
+                buffer.get(response);
+                responses.put(ByteBuffer.wrap(response, 2, 4).getInt(), ByteBuffer.wrap(response));
+            }
+            buffer.compact();
+        }
+        return responses;
+    }
+
+    private static void assertResponse(ByteBuffer response, byte opcode, byte status) {
+        assertEquals(opcode, response.get());
+        assertEquals(status, response.get());
+        response.getInt();
+    }
+}
@@ -0,0 +1,127 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.adaptive.StrategySelector;
+import net.bigpoint.assessment.gasstation.impl.adaptive.WorkloadStats;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerFactory;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpWorker;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Switches the strategy of every gas type by the strategy selector on a background tick.
+ * The buyers only bump striped counters of the arrived orders, all the statistics are aggregated by the tick.
+ * The strategy is switched when the selector picks the same new strategy on several ticks in a row,
+ * so a single burst does not make the gas type flap between the strategies
+ */
+final class AdaptiveStrategyEngine implements AutoCloseable {
+    static final int STABLE_TICKS = 3;
+
+    private final GasStationImpl gasStation;
+    private final StrategySelector strategySelector;
+    /**
+     * Orders, their volume and their squared volume since the previous tick indexed by GasType ordinal
+     */
+    private final LongAdder[] orders = new LongAdder[GasType.values().length];
+    private final DoubleAdder[] volumes = new DoubleAdder[GasType.values().length];
+    private final DoubleAdder[] squaredVolumes = new DoubleAdder[GasType.values().length];
+    /**
+     * Strategy picked on the previous ticks and the number of ticks in a row. Accessed by the tick only
+     */
+    private final PumpManagerFactory[] candidates = new PumpManagerFactory[GasType.values().length];
+    private final int[] candidateTicks = new int[GasType.values().length];
+    private long previousTickNanos = System.nanoTime();
+    private final ScheduledExecutorService ticker;
+
+    AdaptiveStrategyEngine(GasStationImpl gasStation, StrategySelector strategySelector, long tickMillis) {
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("Inappropriate strategy selection tick");
+        this.gasStation = gasStation;
+        this.strategySelector = strategySelector;
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = new LongAdder();
+            volumes[i] = new DoubleAdder();
+            squaredVolumes[i] = new DoubleAdder();
+        }
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "station-strategy");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::tickQuietly, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param gasType
+     * @param amountInLiters
+     */
+    void recordOrder(GasType gasType, double amountInLiters) {
+        orders[gasType.ordinal()].increment();
+        volumes[gasType.ordinal()].add(amountInLiters);
+        squaredVolumes[gasType.ordinal()].add(amountInLiters * amountInLiters);
+    }
+
+    /**
+     * Aggregates the pump workers and the counters, lets the selector pick the strategies and switches the stable picks
+     */
+    void tick() {
+        final long now = System.nanoTime();
+        final long intervalNanos = now - previousTickNanos;
+        previousTickNanos = now;
+
+        final GasType[] gasTypes = GasType.values();
+        final int[] pumpCounts = new int[gasTypes.length];
+        final double[] remainingAmounts = new double[gasTypes.length];
+        for (PumpWorker pumpWorker : gasStation.getPumpWorkers()) {
+            pumpCounts[pumpWorker.getGasType().ordinal()]++;
+            remainingAmounts[pumpWorker.getGasType().ordinal()] += pumpWorker.getRemainingGas();
+        }
+        for (GasType gasType : gasTypes) {
+            final int i = gasType.ordinal();
+            final long orderCount = orders[i].sumThenReset();
+            final double volume = volumes[i].sumThenReset();
+            final double squaredVolume = squaredVolumes[i].sumThenReset();
+            final double mean = orderCount > 0 ? volume / orderCount : 0;
+            final double deviation = orderCount > 0 ? Math.sqrt(Math.max(0, squaredVolume / orderCount - mean * mean)) : 0;
+            final PumpManagerFactory selected = strategySelector.select(new WorkloadStats(gasType, pumpCounts[i], remainingAmounts[i],
+                    orderCount, intervalNanos, mean, deviation));
+            if (selected == null || selected.equals(gasStation.getPumpManagerFactory(gasType))) {
+                candidates[i] = null;
+                candidateTicks[i] = 0;
+                continue;
+            }
+            candidateTicks[i] = selected.equals(candidates[i]) ? candidateTicks[i] + 1 : 1;
+            candidates[i] = selected;
+            if (candidateTicks[i] >= STABLE_TICKS) {
+                gasStation.switchPumpManager(this, gasType, selected);
+                candidates[i] = null;
+                candidateTicks[i] = 0;
+            }
+        }
+    }
+
+    private void tickQuietly() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            // The next tick retries, the current strategies stay
+        }
+    }
+
+    /**
+     * Stops the ticker and waits for the running tick
+     */
+    @Override
+    public void close() {
+        ticker.shutdown();
+        try {
+            ticker.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
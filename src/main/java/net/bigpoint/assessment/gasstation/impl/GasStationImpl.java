@@ -5,127 +5,1237 @@ import net.bigpoint.assessment.gasstation.GasStation;
 import net.bigpoint.assessment.gasstation.GasType;
 import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
 import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpExecutionEngine;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpFutures;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpListener;
 import net.bigpoint.assessment.gasstation.impl.managers.PumpManager;
+import net.bigpoint.assessment.gasstation.impl.managers.OrderShedException;
 import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerFactory;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpWorker;
+import net.bigpoint.assessment.gasstation.impl.adaptive.StrategySelector;
+import net.bigpoint.assessment.gasstation.impl.metrics.StationMetrics;
+import net.bigpoint.assessment.gasstation.impl.metrics.StationMetrics.Outcome;
+import net.bigpoint.assessment.gasstation.impl.persistence.JournalState;
+import net.bigpoint.assessment.gasstation.impl.persistence.SalesJournal;
+import net.bigpoint.assessment.gasstation.impl.persistence.StationSnapshot;
+import net.bigpoint.assessment.gasstation.impl.pricing.DemandSignals;
+import net.bigpoint.assessment.gasstation.impl.pricing.PriceSnapshot;
+import net.bigpoint.assessment.gasstation.impl.pricing.PricingPolicy;
+import net.bigpoint.assessment.gasstation.impl.stats.StationCounters;
+import net.bigpoint.assessment.gasstation.impl.stats.StationStats;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 
 /**
  * Created by aaalekseev on 06-Aug-16.
  */
-public class GasStationImpl implements GasStation {
+public class GasStationImpl implements GasStation, AutoCloseable {
+    /**
+     * Result codes of the tryBuyGas. Successful purchase returns the non-negative price
+     */
+    public static final double NOT_ENOUGH_GAS = -1;
+    public static final double TOO_EXPENSIVE = -2;
+    public static final double SHED = -3;
+    /**
+     * Time to live of a reservation, long enough for a payment authorisation
+     */
+    public static final long DEFAULT_RESERVATION_TTL_MILLIS = 30_000;
+
+    /**
+     * Published prices: a purchase reads the price and its version with a single volatile load.
+     * Replaced under the price lock by setPrice and by the pricing engine
+     */
+    private volatile PriceSnapshot prices = PriceSnapshot.empty();
+    /**
+     * Prices set by setPrice, the base of the dynamic pricing. Guarded by the price lock
+     */
+    private PriceSnapshot basePrices = PriceSnapshot.empty();
+    private final Object priceLock = new Object();
+    /**
+     * Dynamic pricing engine, null if the prices are set by setPrice only
+     */
+    private volatile PricingEngine pricingEngine;
+    /**
+     * Thread-safe table of PumpManagers indexed by GasType ordinal. Managers are created and replaced,
+     * and pumps are added to them, under the lock of the table
+     */
+    private final AtomicReferenceArray<PumpManager> pumpManagers = new AtomicReferenceArray<>(GasType.values().length);
+    /**
+     * Factories of the current strategies indexed by GasType ordinal
+     */
+    private final AtomicReferenceArray<PumpManagerFactory> pumpManagerFactories = new AtomicReferenceArray<>(GasType.values().length);
+    /**
+     * Adaptive strategy selection, null if the strategies are set explicitly only. Guarded by the lock of the pumpManagers
+     */
+    private volatile AdaptiveStrategyEngine adaptiveEngine;
+    /**
+     * Thread-safe queue of all the pump workers in the order of addition
+     */
+    private final Queue<PumpWorker> allPumpWorkers = new ConcurrentLinkedQueue<>();
+    /**
+     * Pump workers by the pump id, for the refills
+     */
+    private final Map<Long, PumpWorker> pumpWorkersById = new ConcurrentHashMap<>();
     /**
-     * Thread-safe map for Prices
+     * Live summaries of the pumps indexed by GasType ordinal, for the routing between stations
      */
-    private final Map<GasType, Double> gasPricesMap = new ConcurrentHashMap<GasType, Double>();
+    private final GasTypeAvailability[] availabilities = newAvailabilities();
     /**
-     * Thread-safe map for PumpManagers
+     * Lazily rebuilt snapshot of the pumps. Rebuilt by the first reader after any change
      */
-    private final Map<GasType, PumpManager> pumpManagersMap = new ConcurrentHashMap<GasType, PumpManager>();
+    private final AtomicReference<PumpInventory> inventory = new AtomicReference<>(PumpInventory.of(0, Collections.emptyList()));
+    private volatile boolean inventoryChanged = false;
     /**
-     * Thread-safe List of all the pums (
+     * Striped fixed-point books: sales, revenue and cancellations foreach gas type and the pumped gas foreach pump.
+     * Shed and timed out orders are operational counters, they are not journaled
      */
-    private final Collection<GasPump> allGasPumps = Collections.synchronizedList(new ArrayList<>());
+    private final StationCounters counters = new StationCounters();
     /**
-     * Atomic counters for volatile station attrivutes
+     * Active reservations of the two-phase purchases by their expiry, and the reservations reclaimed by the expiry
      */
-    private final DoubleAdder revenueSum = new DoubleAdder();
-    private final AtomicInteger salesCounter = new AtomicInteger(0);
-    private final AtomicInteger cancellationsNoGasCounter = new AtomicInteger(0);
-    private final AtomicInteger cancellationsTooExpensiveCounter = new AtomicInteger(0);
+    private final ReservationWheel reservationWheel;
+    private final AtomicInteger expiredReservationsCounter = new AtomicInteger(0);
 
     /**
-     * PumpManager encapsulates strategy for the pump selection process.
+     * PumpManager encapsulates strategy for the pump selection process. Default strategy of the gas types,
+     * it is the strategy of the station snapshot
+     */
+    private final PumpManagerEnum pumpManagerStrategy;
+    /**
+     * Shared engine for the pumping of all the station pumps. It is owned by the station
      */
-    private final Class<PumpManager> pumpManagerClass;
+    private final PumpExecutionEngine executionEngine;
+    /**
+     * Latency histograms and queue depths of the station
+     */
+    private final StationMetrics metrics = new StationMetrics();
+    /**
+     * Journal of the station events, null if the journaling is off. It is owned by the station
+     */
+    private final SalesJournal journal;
+    private volatile boolean closed = false;
 
     /**
      * Constructors
      * @param pumpManagerStrategy - required for the gas station creation
      */
     public GasStationImpl(PumpManagerEnum pumpManagerStrategy) throws ClassNotFoundException {
-        this.pumpManagerClass = (Class<PumpManager>)Class.forName(pumpManagerStrategy.toString());
+        this(pumpManagerStrategy, PumpExecutionEngine.newDefault());
+    }
+    public GasStationImpl(PumpManagerEnum pumpManagerStrategy, PumpExecutionEngine executionEngine) throws ClassNotFoundException {
+        this(pumpManagerStrategy, executionEngine, null);
+    }
+    private GasStationImpl(PumpManagerEnum pumpManagerStrategy, PumpExecutionEngine executionEngine, SalesJournal journal) throws ClassNotFoundException {
+        if (pumpManagerStrategy == null)
+            throw new IllegalArgumentException("Pump manager strategy is not provided");
+        this.pumpManagerStrategy = pumpManagerStrategy;
+        for (int i = 0; i < pumpManagerFactories.length(); i++)
+            pumpManagerFactories.set(i, pumpManagerStrategy);
+        this.executionEngine = executionEngine;
+        this.journal = journal;
+        this.reservationWheel = new ReservationWheel(executionEngine, this::expireReservation);
+        executionEngine.setPumpListener(new StationPumpListener());
     }
     public GasStationImpl(PumpManagerEnum pumpManagerStrategy, Map<GasType, Double> gasPrices, Collection<GasPump> initialPumps) throws ClassNotFoundException {
-        this.pumpManagerClass = (Class<PumpManager>)Class.forName(pumpManagerStrategy.toString());
-        gasPricesMap.putAll(gasPrices);
+        this(pumpManagerStrategy);
+        gasPrices.forEach(this::setPrice);
         initialPumps.forEach(this::addGasPump);
     }
 
-    public void addGasPump(GasPump gasPump) {
-        // Add a new Manager if absent
+    /**
+     * Station with the strategy per gas type
+     * @param pumpManagerStrategy strategy of the gas types without their own one
+     * @param pumpManagerFactories strategies of the gas types, e.g. PumpManagerEnum constants or configured managers
+     */
+    public GasStationImpl(PumpManagerEnum pumpManagerStrategy, Map<GasType, ? extends PumpManagerFactory> pumpManagerFactories) throws ClassNotFoundException {
+        this(pumpManagerStrategy);
+        pumpManagerFactories.forEach(this::switchPumpManager);
+    }
+
+    /**
+     * Station with the journaling: prices, pumps, sales and cancellations are appended to the journal file.
+     * The state found in the file is restored first, so the station continues the books after a restart or a crash.
+     * Pumpings, which were not finished before a crash, are lost together with their sales
+     * @param pumpManagerStrategy
+     * @param executionEngine new engine, the pump ids of the journal are assigned by it
+     * @param journalFile created if absent
+     * @return
+     * @throws IOException
+     * @throws IllegalStateException if the journal is inconsistent
+     */
+    public static GasStationImpl openJournaled(PumpManagerEnum pumpManagerStrategy, PumpExecutionEngine executionEngine, Path journalFile) throws ClassNotFoundException, IOException {
+        final SalesJournal journal = SalesJournal.open(journalFile);
         try {
-            pumpManagersMap.putIfAbsent(gasPump.getGasType(), pumpManagerClass.newInstance());
-        } catch (IllegalAccessException|InstantiationException e) {
-            e.printStackTrace(); // Ignored
+            final GasStationImpl gasStation = new GasStationImpl(pumpManagerStrategy, executionEngine, journal);
+            gasStation.restore(journal.getRecoveredState());
+            return gasStation;
+        } catch (ClassNotFoundException | RuntimeException e) {
+            journal.close();
+            throw e;
         }
-        // Add to allPumps Collection
-        allGasPumps.add(gasPump);
-        pumpManagersMap.get(gasPump.getGasType()).addGasPump(gasPump);
+    }
+    public static GasStationImpl openJournaled(PumpManagerEnum pumpManagerStrategy, Path journalFile) throws ClassNotFoundException, IOException {
+        return openJournaled(pumpManagerStrategy, PumpExecutionEngine.newDefault(), journalFile);
+    }
+
+    /**
+     * Applies the replayed state without journaling it again. The pumps get the same ids in the same order
+     * @param state
+     */
+    private void restore(JournalState state) {
+        state.getPumps().forEach(this::addPumpWorker);
+        restoreBooks(state.getPrices(), state.getPriceVersion(), state.getNumberOfSales(), state.getNumberOfCancellationsNoGas(),
+                state.getNumberOfCancellationsTooExpensive(), state.getRevenue());
+    }
+
+    /**
+     * Station rebuilt from the snapshot in bulk: one manager per gas type, all its pumps added at once
+     * @param snapshot
+     * @param executionEngine
+     * @return
+     */
+    public static GasStationImpl restore(StationSnapshot snapshot, PumpExecutionEngine executionEngine) throws ClassNotFoundException {
+        final GasStationImpl gasStation = new GasStationImpl(snapshot.getPumpManagerStrategy(), executionEngine);
+        // The snapshot may be restored again, so it keeps its pumps
+        final List<GasPump> pumps = new ArrayList<>(snapshot.getPumps().size());
+        for (GasPump pump : snapshot.getPumps())
+            pumps.add(new GasPump(pump.getGasType(), pump.getRemainingAmount()));
+        gasStation.addGasPumps(pumps);
+        gasStation.restoreBooks(snapshot.getPrices(), snapshot.getPriceVersion(), snapshot.getNumberOfSales(), snapshot.getNumberOfCancellationsNoGas(),
+                snapshot.getNumberOfCancellationsTooExpensive(), snapshot.getRevenue());
+        return gasStation;
+    }
+    public static GasStationImpl restore(StationSnapshot snapshot) throws ClassNotFoundException {
+        return restore(snapshot, PumpExecutionEngine.newDefault());
     }
 
+    /**
+     * The price versions continue from the restored one
+     */
+    private void restoreBooks(Map<GasType, Double> prices, long priceVersion, int numberOfSales, int numberOfCancellationsNoGas,
+                              int numberOfCancellationsTooExpensive, double revenue) {
+        synchronized (priceLock) {
+            basePrices = PriceSnapshot.of(0, prices);
+            this.prices = PriceSnapshot.of(priceVersion, prices);
+        }
+        counters.restore(numberOfSales, numberOfCancellationsNoGas, numberOfCancellationsTooExpensive, revenue);
+    }
+
+    /**
+     * Snapshot of the station books and pumps. Pumps keep the gas remaining after the scheduled pumpings,
+     * the purchases in progress are not counted yet, so take it from an idle or closed station for the exact books
+     * @return
+     */
+    public StationSnapshot snapshot() {
+        final Map<GasType, Double> snapshotPrices;
+        final long priceVersion;
+        synchronized (priceLock) {
+            snapshotPrices = basePrices.toMap();
+            priceVersion = prices.getVersion();
+        }
+        final List<GasPump> pumps = getInventory().getPumps().stream()
+                .map(x -> new GasPump(x.getGasType(), x.getCommittedRemainingAmount())).collect(Collectors.toList());
+        return new StationSnapshot(pumpManagerStrategy, snapshotPrices, priceVersion, pumps, getNumberOfSales(), getNumberOfCancellationsNoGas(),
+                getNumberOfCancellationsTooExpensive(), getRevenue());
+    }
+
+    public void addGasPump(GasPump gasPump) {
+        checkNotClosed();
+        final double initialAmount = gasPump.getRemainingAmount();
+        final PumpWorker pumpWorker = addPumpWorker(gasPump);
+        if (journal != null)
+            journal.pumpAdded(pumpWorker.getId(), gasPump.getGasType(), initialAmount);
+    }
+
+    /**
+     * Bulk version of the addGasPump. The pumps are grouped by the gas type and each manager adds its group at once
+     * @param gasPumps
+     */
+    public void addGasPumps(Collection<GasPump> gasPumps) {
+        checkNotClosed();
+        final Map<GasType, List<GasPump>> pumpsByType = new EnumMap<>(GasType.class);
+        for (GasPump gasPump : gasPumps)
+            pumpsByType.computeIfAbsent(gasPump.getGasType(), x -> new ArrayList<>()).add(gasPump);
+        pumpsByType.forEach((gasType, pumps) -> {
+            final double[] initialAmounts = pumps.stream().mapToDouble(GasPump::getRemainingAmount).toArray();
+            final List<PumpWorker> pumpWorkers;
+            // The strategy switch does not miss the pumps
+            synchronized (pumpManagers) {
+                pumpWorkers = getOrCreatePumpManager(gasType).addGasPumps(pumps);
+                allPumpWorkers.addAll(pumpWorkers);
+                for (PumpWorker pumpWorker : pumpWorkers) {
+                    pumpWorkersById.put(pumpWorker.getId(), pumpWorker);
+                    availabilities[gasType.ordinal()].pumpAdded(pumpWorker.getRemainingGas());
+                    counters.pumpAdded(pumpWorker);
+                }
+            }
+            if (journal != null)
+                for (int i = 0; i < pumpWorkers.size(); i++)
+                    journal.pumpAdded(pumpWorkers.get(i).getId(), gasType, initialAmounts[i]);
+        });
+        markInventoryChanged();
+    }
+
+    private PumpWorker addPumpWorker(GasPump gasPump) {
+        final PumpWorker pumpWorker;
+        synchronized (pumpManagers) {
+            pumpWorker = getOrCreatePumpManager(gasPump.getGasType()).addGasPump(gasPump);
+            // Add to allPumps Collection
+            allPumpWorkers.add(pumpWorker);
+            pumpWorkersById.put(pumpWorker.getId(), pumpWorker);
+            availabilities[gasPump.getGasType().ordinal()].pumpAdded(pumpWorker.getRemainingGas());
+            counters.pumpAdded(pumpWorker);
+        }
+        markInventoryChanged();
+        return pumpWorker;
+    }
+
+    /**
+     * Adds the delivered gas to the pump while the sales continue. The gas is available for the new purchases at once,
+     * the strategy reorders the pump by its new remaining amount
+     * @param pumpId id of the pump, see PumpState::getPumpId
+     * @param amountInLiters
+     * @throws IllegalArgumentException if the station has no such pump or the amount is not positive
+     */
+    public void refillGasPump(long pumpId, double amountInLiters) {
+        checkNotClosed();
+        if (!(amountInLiters > 0) || Double.isInfinite(amountInLiters))
+            throw new IllegalArgumentException("Inappropriate refill amount");
+        final PumpWorker pumpWorker = pumpWorkersById.get(pumpId);
+        if (pumpWorker == null)
+            throw new IllegalArgumentException("The Gas Station has no pump " + pumpId);
+        // The strategy switch does not miss the refill
+        synchronized (pumpManagers) {
+            pumpManagers.get(pumpWorker.getGasType().ordinal()).refillPump(pumpWorker, amountInLiters);
+            availabilities[pumpWorker.getGasType().ordinal()].refilled(amountInLiters);
+            if (journal != null)
+                journal.refilled(pumpId, pumpWorker.getGasType(), amountInLiters);
+        }
+        markInventoryChanged();
+    }
+
+    /**
+     * Add a new Manager if absent
+     * @param gasType
+     * @return
+     */
+    private PumpManager getOrCreatePumpManager(GasType gasType) {
+        final PumpManager pumpManager = pumpManagers.get(gasType.ordinal());
+        if (pumpManager != null)
+            return pumpManager;
+        synchronized (pumpManagers) {
+            if (pumpManagers.get(gasType.ordinal()) == null)
+                pumpManagers.set(gasType.ordinal(), pumpManagerFactories.get(gasType.ordinal()).create(executionEngine));
+            return pumpManagers.get(gasType.ordinal());
+        }
+    }
+
+    /**
+     * Replaces the strategy of the gas type. The new manager takes over the pump workers of the replaced one,
+     * the orders in flight keep their reservations and finish on the same pumps, the orders held back
+     * by the replaced manager (bids of the bidding strategy) are served at once. New orders go to the new manager.
+     * Settings of the replaced manager, like the admission limits, are not carried over: configure them by the factory.
+     * Without pumps of the gas type only the factory is set
+     * @param gasType
+     * @param pumpManagerFactory
+     */
+    public void switchPumpManager(GasType gasType, PumpManagerFactory pumpManagerFactory) {
+        checkNotClosed();
+        if (gasType == null || pumpManagerFactory == null)
+            throw new IllegalArgumentException("Inappropriate gas type or pump manager factory");
+        synchronized (pumpManagers) {
+            replacePumpManager(gasType, pumpManagerFactory);
+        }
+    }
+
+    /**
+     * Strategy switch of the adaptive selection. Ticks of a stopped engine are ignored
+     * @param engine
+     * @param gasType
+     * @param pumpManagerFactory
+     */
+    void switchPumpManager(AdaptiveStrategyEngine engine, GasType gasType, PumpManagerFactory pumpManagerFactory) {
+        synchronized (pumpManagers) {
+            if (adaptiveEngine == engine && !closed)
+                replacePumpManager(gasType, pumpManagerFactory);
+        }
+    }
+
+    /**
+     * Guarded by the lock of the pumpManagers
+     */
+    private void replacePumpManager(GasType gasType, PumpManagerFactory pumpManagerFactory) {
+        pumpManagerFactories.set(gasType.ordinal(), pumpManagerFactory);
+        final PumpManager replaced = pumpManagers.get(gasType.ordinal());
+        if (replaced == null)
+            return;
+        final PumpManager pumpManager = pumpManagerFactory.create(executionEngine);
+        final List<PumpWorker> pumpWorkers = new ArrayList<>();
+        for (PumpWorker pumpWorker : allPumpWorkers)
+            if (pumpWorker.getGasType() == gasType)
+                pumpWorkers.add(pumpWorker);
+        // Held back orders reserve their pumps before the new manager reads the remaining amounts
+        replaced.retire();
+        pumpManager.adoptPumpWorkers(pumpWorkers);
+        pumpManagers.set(gasType.ordinal(), pumpManager);
+    }
+
+    /**
+     * @param gasType
+     * @return factory of the current strategy of the gas type
+     */
+    public PumpManagerFactory getPumpManagerFactory(GasType gasType) {
+        return pumpManagerFactories.get(gasType.ordinal());
+    }
+
+    /**
+     * Starts switching the strategy of every gas type on a background tick by the observed arrival rate and
+     * order sizes. A strategy is switched when the selector picks it on several ticks in a row
+     * @param strategySelector e.g. WorkloadStrategySelector
+     * @param tickMillis
+     * @throws IllegalStateException if the adaptive strategies are already started
+     */
+    public void startAdaptiveStrategies(StrategySelector strategySelector, long tickMillis) {
+        checkNotClosed();
+        checkNotSimulated();
+        synchronized (pumpManagers) {
+            if (adaptiveEngine != null)
+                throw new IllegalStateException("Adaptive strategies are already started");
+            adaptiveEngine = new AdaptiveStrategyEngine(this, strategySelector, tickMillis);
+        }
+    }
+
+    /**
+     * Stops the adaptive selection, the current strategies stay
+     */
+    public void stopAdaptiveStrategies() {
+        final AdaptiveStrategyEngine engine;
+        synchronized (pumpManagers) {
+            engine = adaptiveEngine;
+            if (engine == null)
+                return;
+            adaptiveEngine = null;
+        }
+        // The running tick may wait for the lock
+        engine.close();
+    }
+
+    /**
+     * Rejects the order, which would pump a negative, zero or not finite amount, or which max price can not be compared
+     * @param amountInLiters
+     * @param maxPricePerLiter
+     * @throws IllegalArgumentException if the order is malformed
+     */
+    private static void checkOrder(double amountInLiters, double maxPricePerLiter) {
+        if (!(amountInLiters > 0) || Double.isInfinite(amountInLiters) || Double.isNaN(maxPricePerLiter))
+            throw new IllegalArgumentException("Inappropriate order of " + amountInLiters + " liters at " + maxPricePerLiter + " at most");
+    }
+
+    /**
+     * @param gasType
+     * @return manager of the gas type
+     * @throws IllegalArgumentException if the gas type is not provided by the station
+     */
+    private PumpManager getPumpManager(GasType gasType) {
+        final PumpManager pumpManager = gasType == null ? null : pumpManagers.get(gasType.ordinal());
+        if (pumpManager == null || !prices.hasPrice(gasType))
+            throw new IllegalArgumentException("This gas type is not provided by the Gas Station");
+        return pumpManager;
+    }
+
+    /**
+     * Copies of the pumps from the current inventory snapshot
+     * @return
+     */
     public Collection<GasPump> getGasPumps() {
-        return allGasPumps.stream().map(x -> new GasPump(x.getGasType(), x.getRemainingAmount())).collect(Collectors.toList());
+        return getInventory().getPumps().stream().map(x -> new GasPump(x.getGasType(), x.getPhysicalRemainingAmount())).collect(Collectors.toList());
+    }
+
+    /**
+     * Lock-free summary of the pumps of the gas type, see GasTypeAvailability
+     * @param gasType
+     * @return live summary, the same instance for the lifetime of the station
+     */
+    public GasTypeAvailability getAvailability(GasType gasType) {
+        return availabilities[gasType.ordinal()];
+    }
+
+    private static GasTypeAvailability[] newAvailabilities() {
+        final GasTypeAvailability[] availabilities = new GasTypeAvailability[GasType.values().length];
+        for (GasType gasType : GasType.values())
+            availabilities[gasType.ordinal()] = new GasTypeAvailability(gasType);
+        return availabilities;
+    }
+
+    /**
+     * Shared immutable snapshot of the pumps with the physical and the committed remaining amounts.
+     * While nothing changes, all the readers get the same snapshot in O(1)
+     * @return
+     */
+    public PumpInventory getInventory() {
+        PumpInventory current = inventory.get();
+        while (inventoryChanged) {
+            // Clear before the rebuild, so the changes made during the rebuild mark it again
+            inventoryChanged = false;
+            final PumpInventory rebuilt = PumpInventory.of(current.getVersion() + 1, allPumpWorkers);
+            if (inventory.compareAndSet(current, rebuilt))
+                return rebuilt;
+            // The snapshot of the other reader may be older than the change cleared here, so the flag is restored
+            inventoryChanged = true;
+            current = inventory.get();
+        }
+        return current;
+    }
+
+    /**
+     * Read before write, so the hot purchase path does not invalidate the cache line of the flag
+     */
+    private void markInventoryChanged() {
+        if (!inventoryChanged)
+            inventoryChanged = true;
     }
 
     public double buyGas(GasType gasType, double amountInLiters, double maxPricePerLiter) throws NotEnoughGasException, GasTooExpensiveException {
-        if (gasType == null || !gasPricesMap.containsKey(gasType) || !pumpManagersMap.containsKey(gasType))
-            throw new IllegalArgumentException("This gas type is not provided by the Gas Station");
+        checkNotSimulated();
+        // Wait in the same thread
+        try {
+            return buyGasAsync(gasType, amountInLiters, maxPricePerLiter).join();
+        } catch (CompletionException e) {
+            final Throwable cause = PumpFutures.unwrap(e);
+            if (cause instanceof NotEnoughGasException)
+                throw (NotEnoughGasException) cause;
+            if (cause instanceof GasTooExpensiveException)
+                throw (GasTooExpensiveException) cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Version of the buyGas, which should finish before the timeout. Supported by the strategies with the admission control.
+     * The order, which is not expected to finish in time, is shed immediately with OrderShedException.
+     * The admitted order, which still can not start pumping in time, fails with TimeoutException and its gas is released
+     * @param gasType
+     * @param amountInLiters
+     * @param maxPricePerLiter
+     * @param timeout
+     * @param unit
+     * @return
+     * @throws NotEnoughGasException or OrderShedException
+     * @throws GasTooExpensiveException
+     * @throws TimeoutException
+     * @throws UnsupportedOperationException if the strategy has no admission control
+     */
+    public double buyGas(GasType gasType, double amountInLiters, double maxPricePerLiter, long timeout, TimeUnit unit)
+            throws NotEnoughGasException, GasTooExpensiveException, TimeoutException {
+        checkNotSimulated();
+        // No wait timeout: the order is resolved by the pump worker at its turn, so the books match the answer
+        try {
+            return buyGasAsync(gasType, amountInLiters, maxPricePerLiter, timeout, unit).join();
+        } catch (CompletionException e) {
+            final Throwable cause = PumpFutures.unwrap(e);
+            if (cause instanceof TimeoutException)
+                throw (TimeoutException) cause;
+            if (cause instanceof NotEnoughGasException)
+                throw (NotEnoughGasException) cause;
+            if (cause instanceof GasTooExpensiveException)
+                throw (GasTooExpensiveException) cause;
+            throw e;
+        }
+    }
 
-        final double currPricePerLiter = getPrice(gasType);
+    /**
+     * Non-blocking version of the buyGas. The caller thread is released right after the pump selection.
+     * The purchase is priced by the pump manager, which charges the station price unless it is a bidding strategy.
+     * Returned future completes with the purchase price when pumping is finished,
+     * or exceptionally with GasTooExpensiveException or NotEnoughGasException
+     * @param gasType
+     * @param amountInLiters
+     * @param maxPricePerLiter
+     * @return
+     * @throws IllegalArgumentException if the gas type is not provided by the station or the order is malformed
+     */
+    public CompletableFuture<Double> buyGasAsync(GasType gasType, double amountInLiters, double maxPricePerLiter) {
+        return buyGasAsync(gasType, amountInLiters, maxPricePerLiter, false, 0);
+    }
+
+    /**
+     * Non-blocking version of the buyGas with the timeout. The purchase is charged at the station price
+     * @param gasType
+     * @param amountInLiters
+     * @param maxPricePerLiter
+     * @param timeout
+     * @param unit
+     * @return future, which completes with the purchase price, or exceptionally with GasTooExpensiveException,
+     * NotEnoughGasException, OrderShedException or TimeoutException
+     * @throws UnsupportedOperationException if the strategy has no admission control
+     */
+    public CompletableFuture<Double> buyGasAsync(GasType gasType, double amountInLiters, double maxPricePerLiter, long timeout, TimeUnit unit) {
+        return buyGasAsync(gasType, amountInLiters, maxPricePerLiter, true, executionEngine.nanoTime() + unit.toNanos(timeout));
+    }
+
+    private CompletableFuture<Double> buyGasAsync(GasType gasType, double amountInLiters, double maxPricePerLiter, boolean timed, long deadlineNanos) {
+        checkNotClosed();
+        checkOrder(amountInLiters, maxPricePerLiter);
+        final long startTime = executionEngine.nanoTime();
+        final PumpManager pumpManager = getPumpManager(gasType);
+        recordOrder(gasType, amountInLiters);
+
+        // The price and its version come from the same snapshot
+        final PriceSnapshot priceSnapshot = prices;
+        final double currPricePerLiter = priceSnapshot.getPrice(gasType);
         // Check if gas is too expensive
         if (currPricePerLiter > maxPricePerLiter) {
-            cancellationsTooExpensiveCounter.getAndIncrement();
+            registerCancellationTooExpensive(gasType, amountInLiters, maxPricePerLiter);
+            recordPurchase(gasType, Outcome.TOO_EXPENSIVE, executionEngine.nanoTime() - startTime);
+            return PumpFutures.failed(new GasTooExpensiveException());
+        }
+
+        // Schedule pumping and update counters on its completion
+        final CompletableFuture<Double> purchaseFuture = new CompletableFuture<>();
+        final CompletableFuture<Double> saleFuture = timed
+                ? pumpManager.pumpGasAsync(amountInLiters, deadlineNanos).thenApply(v -> currPricePerLiter)
+                : pumpManager.sellGasAsync(amountInLiters, currPricePerLiter, maxPricePerLiter);
+        final long selectionNanos = executionEngine.nanoTime() - startTime;
+        saleFuture.whenComplete((chargedPricePerLiter, e) -> {
+            // Books and metrics are updated before the buyer is released
+            if (e == null) {
+                final double purchasePrice = chargedPricePerLiter * amountInLiters;
+                registerSale(gasType, amountInLiters, purchasePrice, priceSnapshot.getVersion());
+                recordPurchaseMetrics(gasType, Outcome.SUCCESS, startTime, selectionNanos);
+                purchaseFuture.complete(purchasePrice);
+            } else {
+                final Throwable cause = PumpFutures.unwrap(e);
+                final Outcome outcome;
+                if (cause instanceof GasTooExpensiveException) {
+                    outcome = Outcome.TOO_EXPENSIVE;
+                    registerCancellationTooExpensive(gasType, amountInLiters, maxPricePerLiter);
+                } else if (cause instanceof OrderShedException) {
+                    outcome = Outcome.SHED;
+                    counters.recordShedOrders(gasType, 1);
+                } else if (cause instanceof TimeoutException) {
+                    outcome = Outcome.TIMED_OUT;
+                    counters.recordTimedOutOrders(gasType, 1);
+                } else {
+                    outcome = Outcome.NOT_ENOUGH_GAS;
+                    if (cause instanceof NotEnoughGasException)
+                        registerCancellationNoGas(gasType, amountInLiters);
+                }
+                recordPurchaseMetrics(gasType, outcome, startTime, selectionNanos);
+                purchaseFuture.completeExceptionally(cause);
+            }
+        });
+        return purchaseFuture;
+    }
+
+    /**
+     * First phase of the two-phase purchase, e.g. for the payment authorisation before the pumping:
+     * locks the current price and deducts the gas from a pump selected by the strategy, but does not pump it.
+     * The buyer commits or cancels the reservation, otherwise it expires after the default time to live
+     * @param gasType
+     * @param amountInLiters
+     * @param maxPricePerLiter
+     * @return reservation token
+     * @throws NotEnoughGasException
+     * @throws GasTooExpensiveException
+     */
+    public Reservation reserve(GasType gasType, double amountInLiters, double maxPricePerLiter) throws NotEnoughGasException, GasTooExpensiveException {
+        return reserve(gasType, amountInLiters, maxPricePerLiter, DEFAULT_RESERVATION_TTL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Version of the reserve with the time to live of the reservation. The expired reservation is reclaimed
+     * by the timer wheel of the station, its gas is available to the other buyers again
+     * @param gasType
+     * @param amountInLiters
+     * @param maxPricePerLiter
+     * @param timeToLive
+     * @param unit
+     * @return reservation token
+     * @throws NotEnoughGasException
+     * @throws GasTooExpensiveException
+     * @throws UnsupportedOperationException if the strategy can not reserve gas
+     */
+    public Reservation reserve(GasType gasType, double amountInLiters, double maxPricePerLiter, long timeToLive, TimeUnit unit)
+            throws NotEnoughGasException, GasTooExpensiveException {
+        checkNotClosed();
+        checkOrder(amountInLiters, maxPricePerLiter);
+        final long startTime = executionEngine.nanoTime();
+        final PumpManager pumpManager = getPumpManager(gasType);
+        recordOrder(gasType, amountInLiters);
+
+        final PriceSnapshot priceSnapshot = prices;
+        final double currPricePerLiter = priceSnapshot.getPrice(gasType);
+        if (currPricePerLiter > maxPricePerLiter) {
+            registerCancellationTooExpensive(gasType, amountInLiters, maxPricePerLiter);
+            recordPurchase(gasType, Outcome.TOO_EXPENSIVE, executionEngine.nanoTime() - startTime);
             throw new GasTooExpensiveException();
         }
+        final PumpWorker pumpWorker = pumpManager.reserveGas(amountInLiters);
+        if (pumpWorker == null) {
+            registerCancellationNoGas(gasType, amountInLiters);
+            recordPurchase(gasType, Outcome.NOT_ENOUGH_GAS, executionEngine.nanoTime() - startTime);
+            throw new NotEnoughGasException();
+        }
+        availabilities[gasType.ordinal()].reserved(amountInLiters);
+        markInventoryChanged();
+        final Reservation reservation = new Reservation(this, gasType, amountInLiters, currPricePerLiter, priceSnapshot.getVersion(),
+                executionEngine.nanoTime() + unit.toNanos(timeToLive), pumpWorker);
+        reservationWheel.add(reservation);
+        return reservation;
+    }
 
-        // Try to pump gas
+    /**
+     * Second phase of the two-phase purchase: pumps the reserved gas and charges the locked price.
+     * Waits till pumping finish in the current thread
+     * @param reservation
+     * @return the purchase price
+     * @throws ReservationExpiredException if the reservation has expired or was cancelled
+     */
+    public double commit(Reservation reservation) throws ReservationExpiredException {
+        checkNotSimulated();
         try {
-            final PumpManager pumpManager = pumpManagersMap.get(gasType);
-            // Wait in the same thread
-            pumpManager.pumpGas(amountInLiters);
-
-            salesCounter.getAndIncrement();
-            final double purchasePrice = currPricePerLiter * amountInLiters;
-            revenueSum.add(purchasePrice);
-            return purchasePrice;
-        } catch (NotEnoughGasException e) {
-            cancellationsNoGasCounter.getAndIncrement();
+            return commitAsync(reservation).join();
+        } catch (CompletionException e) {
+            final Throwable cause = PumpFutures.unwrap(e);
+            if (cause instanceof ReservationExpiredException)
+                throw (ReservationExpiredException) cause;
             throw e;
         }
     }
 
+    /**
+     * Non-blocking version of the commit
+     * @param reservation
+     * @return future, which completes with the purchase price when pumping is finished,
+     * or exceptionally with ReservationExpiredException
+     */
+    public CompletableFuture<Double> commitAsync(Reservation reservation) {
+        checkReservation(reservation);
+        checkNotClosed();
+        final long startTime = executionEngine.nanoTime();
+        // The wheel reclaims up to a tick late, the commit after the expiry time fails anyway
+        if (reservation.getExpiresAtNanos() - startTime <= 0)
+            expireReservation(reservation);
+        if (!reservation.end(Reservation.COMMITTED))
+            return PumpFutures.failed(new ReservationExpiredException());
+        final GasType gasType = reservation.getGasType();
+        final double amountInLiters = reservation.getAmountInLiters();
+        // The pumping takes over the reserved gas in the summary
+        availabilities[gasType.ordinal()].unreserved(amountInLiters);
+        final CompletableFuture<Double> purchaseFuture = new CompletableFuture<>();
+        getPumpManager(gasType).pumpReservedGas(reservation.getPumpWorker(), amountInLiters).whenComplete((v, e) -> {
+            if (e == null) {
+                final double purchasePrice = reservation.getPurchasePrice();
+                registerSale(gasType, amountInLiters, purchasePrice, reservation.getPriceVersion());
+                recordPurchase(gasType, Outcome.SUCCESS, executionEngine.nanoTime() - startTime);
+                purchaseFuture.complete(purchasePrice);
+            } else {
+                purchaseFuture.completeExceptionally(PumpFutures.unwrap(e));
+            }
+        });
+        return purchaseFuture;
+    }
+
+    /**
+     * Returns the reserved gas at once
+     * @param reservation
+     * @return false if the reservation has already been committed, cancelled or expired
+     */
+    public boolean cancel(Reservation reservation) {
+        checkReservation(reservation);
+        if (!reservation.end(Reservation.CANCELLED))
+            return false;
+        releaseReservation(reservation);
+        return true;
+    }
+
+    /**
+     * @return reservations reclaimed by the expiry, or by the close of the station
+     */
+    public int getNumberOfExpiredReservations() {
+        return expiredReservationsCounter.get();
+    }
+
+    private void expireReservation(Reservation reservation) {
+        if (!reservation.end(Reservation.EXPIRED))
+            return;
+        releaseReservation(reservation);
+        expiredReservationsCounter.getAndIncrement();
+    }
+
+    private void releaseReservation(Reservation reservation) {
+        final GasType gasType = reservation.getGasType();
+        pumpManagers.get(gasType.ordinal()).releaseGas(reservation.getPumpWorker(), reservation.getAmountInLiters());
+        availabilities[gasType.ordinal()].unreserved(reservation.getAmountInLiters());
+        markInventoryChanged();
+    }
+
+    private void checkReservation(Reservation reservation) {
+        if (reservation == null || reservation.getGasStation() != this)
+            throw new IllegalArgumentException("The reservation is not made by the Gas Station");
+    }
+
+    /**
+     * Exception-free version of the buyGas, which waits till pumping finish in the current thread.
+     * Rejected purchase allocates nothing. The purchase is charged like by the buyGas: at the station price,
+     * or at the clearing price of its auction by the bidding strategy
+     * @param gasType
+     * @param amountInLiters
+     * @param maxPricePerLiter
+     * @return the purchase price, or NOT_ENOUGH_GAS, or TOO_EXPENSIVE, or SHED by the admission control
+     */
+    public double tryBuyGas(GasType gasType, double amountInLiters, double maxPricePerLiter) {
+        checkNotClosed();
+        checkOrder(amountInLiters, maxPricePerLiter);
+        checkNotSimulated();
+        final long startTime = executionEngine.nanoTime();
+        final PumpManager pumpManager = getPumpManager(gasType);
+        recordOrder(gasType, amountInLiters);
+
+        final PriceSnapshot priceSnapshot = prices;
+        final double currPricePerLiter = priceSnapshot.getPrice(gasType);
+        // Check if gas is too expensive
+        if (currPricePerLiter > maxPricePerLiter) {
+            registerCancellationTooExpensive(gasType, amountInLiters, maxPricePerLiter);
+            recordPurchase(gasType, Outcome.TOO_EXPENSIVE, executionEngine.nanoTime() - startTime);
+            return TOO_EXPENSIVE;
+        }
+
+        final double chargedPricePerLiter = pumpManager.trySellGas(amountInLiters, currPricePerLiter, maxPricePerLiter);
+        if (chargedPricePerLiter == -PumpManager.SHED) {
+            counters.recordShedOrders(gasType, 1);
+            recordPurchase(gasType, Outcome.SHED, executionEngine.nanoTime() - startTime);
+            return SHED;
+        }
+        if (chargedPricePerLiter == -PumpManager.OUTBID) {
+            registerCancellationTooExpensive(gasType, amountInLiters, maxPricePerLiter);
+            recordPurchase(gasType, Outcome.TOO_EXPENSIVE, executionEngine.nanoTime() - startTime);
+            return TOO_EXPENSIVE;
+        }
+        if (chargedPricePerLiter == -PumpManager.NOT_ENOUGH_GAS) {
+            registerCancellationNoGas(gasType, amountInLiters);
+            recordPurchase(gasType, Outcome.NOT_ENOUGH_GAS, executionEngine.nanoTime() - startTime);
+            return NOT_ENOUGH_GAS;
+        }
+        final double purchasePrice = chargedPricePerLiter * amountInLiters;
+        registerSale(gasType, amountInLiters, purchasePrice, priceSnapshot.getVersion());
+        recordPurchase(gasType, Outcome.SUCCESS, executionEngine.nanoTime() - startTime);
+        return purchasePrice;
+    }
+
+    /**
+     * Buys all the orders at once and waits till all the pumpings finish in the current thread.
+     * Orders are grouped by the gas type: the price is read once per gas type and the pump manager selects the pumps
+     * for the whole group at once (PumpManager::sellGasBatch). All the groups are scheduled before the first wait,
+     * and the counters are updated once per batch
+     * @param orders
+     * @return results in the order of the orders: the purchase price, or NOT_ENOUGH_GAS, or TOO_EXPENSIVE, or SHED by the admission control
+     * @throws IllegalArgumentException if any gas type is not provided by the station or any order is malformed, none of the orders is bought then
+     */
+    public double[] buyGasBatch(List<Order> orders) {
+        checkNotClosed();
+        checkNotSimulated();
+        final long startTime = executionEngine.nanoTime();
+        final GasType[] gasTypes = GasType.values();
+        final int[][] groups = new int[gasTypes.length][];
+        final int[] groupSizes = new int[gasTypes.length];
+        for (Order order : orders) {
+            getPumpManager(order.getGasType());
+            checkOrder(order.getAmountInLiters(), order.getMaxPricePerLiter());
+            groupSizes[order.getGasType().ordinal()]++;
+        }
+        for (int i = 0; i < gasTypes.length; i++)
+            groups[i] = new int[groupSizes[i]];
+        Arrays.fill(groupSizes, 0);
+        for (int i = 0; i < orders.size(); i++) {
+            final int gasTypeIndex = orders.get(i).getGasType().ordinal();
+            groups[gasTypeIndex][groupSizes[gasTypeIndex]++] = i;
+        }
+
+        // Schedule all the groups
+        final double[] results = new double[orders.size()];
+        final List<CompletableFuture<Double>> sales = new ArrayList<>(orders.size());
+        final int[] saleOrders = new int[orders.size()];
+        final PriceSnapshot priceSnapshot = prices;
+        final int[] cancellationsTooExpensive = new int[gasTypes.length];
+        for (GasType gasType : gasTypes) {
+            final int[] group = groups[gasType.ordinal()];
+            if (group.length == 0)
+                continue;
+            final double currPricePerLiter = priceSnapshot.getPrice(gasType);
+            final double[] amountsInLiters = new double[group.length];
+            final double[] maxPricesPerLiter = new double[group.length];
+            int affordable = 0;
+            for (int orderIndex : group) {
+                final Order order = orders.get(orderIndex);
+                recordOrder(gasType, order.getAmountInLiters());
+                if (currPricePerLiter > order.getMaxPricePerLiter()) {
+                    results[orderIndex] = TOO_EXPENSIVE;
+                    cancellationsTooExpensive[gasType.ordinal()]++;
+                    if (journal != null)
+                        journal.cancelledTooExpensive(gasType, order.getAmountInLiters(), order.getMaxPricePerLiter());
+                    recordPurchase(gasType, Outcome.TOO_EXPENSIVE, executionEngine.nanoTime() - startTime);
+                    continue;
+                }
+                amountsInLiters[affordable] = order.getAmountInLiters();
+                maxPricesPerLiter[affordable] = order.getMaxPricePerLiter();
+                saleOrders[sales.size() + affordable] = orderIndex;
+                affordable++;
+            }
+            if (affordable > 0)
+                sales.addAll(getPumpManager(gasType).sellGasBatch(Arrays.copyOf(amountsInLiters, affordable),
+                        currPricePerLiter, Arrays.copyOf(maxPricesPerLiter, affordable)));
+        }
+
+        // Wait for the pumpings and update the books
+        final int[] salesCounts = new int[gasTypes.length];
+        final long[] soldLiters = new long[gasTypes.length];
+        final long[] revenues = new long[gasTypes.length];
+        final int[] cancellationsNoGas = new int[gasTypes.length];
+        final int[] shedOrders = new int[gasTypes.length];
+        for (int i = 0; i < sales.size(); i++) {
+            final Order order = orders.get(saleOrders[i]);
+            final GasType gasType = order.getGasType();
+            Outcome outcome;
+            try {
+                final double purchasePrice = sales.get(i).join() * order.getAmountInLiters();
+                results[saleOrders[i]] = purchasePrice;
+                salesCounts[gasType.ordinal()]++;
+                soldLiters[gasType.ordinal()] += StationCounters.toFixedPoint(order.getAmountInLiters());
+                revenues[gasType.ordinal()] += StationCounters.toFixedPoint(purchasePrice);
+                if (journal != null)
+                    journal.sale(gasType, order.getAmountInLiters(), purchasePrice, priceSnapshot.getVersion());
+                outcome = Outcome.SUCCESS;
+            } catch (CompletionException e) {
+                final Throwable cause = PumpFutures.unwrap(e);
+                if (cause instanceof GasTooExpensiveException) {
+                    results[saleOrders[i]] = TOO_EXPENSIVE;
+                    outcome = Outcome.TOO_EXPENSIVE;
+                    cancellationsTooExpensive[gasType.ordinal()]++;
+                    if (journal != null)
+                        journal.cancelledTooExpensive(gasType, order.getAmountInLiters(), order.getMaxPricePerLiter());
+                } else if (cause instanceof OrderShedException) {
+                    results[saleOrders[i]] = SHED;
+                    outcome = Outcome.SHED;
+                    shedOrders[gasType.ordinal()]++;
+                } else {
+                    results[saleOrders[i]] = NOT_ENOUGH_GAS;
+                    outcome = Outcome.NOT_ENOUGH_GAS;
+                    if (cause instanceof NotEnoughGasException) {
+                        cancellationsNoGas[gasType.ordinal()]++;
+                        if (journal != null)
+                            journal.cancelledNoGas(gasType, order.getAmountInLiters());
+                    }
+                }
+            }
+            recordPurchase(gasType, outcome, executionEngine.nanoTime() - startTime);
+        }
+        for (GasType gasType : gasTypes) {
+            final int i = gasType.ordinal();
+            if (salesCounts[i] > 0)
+                counters.recordSales(gasType, salesCounts[i], soldLiters[i], revenues[i]);
+            if (cancellationsNoGas[i] > 0)
+                counters.recordCancellationsNoGas(gasType, cancellationsNoGas[i]);
+            if (cancellationsTooExpensive[i] > 0)
+                counters.recordCancellationsTooExpensive(gasType, cancellationsTooExpensive[i]);
+            if (shedOrders[i] > 0)
+                counters.recordShedOrders(gasType, shedOrders[i]);
+        }
+        return results;
+    }
+
+    private void recordPurchaseMetrics(GasType gasType, Outcome outcome, long startTime, long selectionNanos) {
+        metrics.recordSelection(gasType, outcome, selectionNanos);
+        recordPurchase(gasType, outcome, executionEngine.nanoTime() - startTime);
+    }
+
+    /**
+     * Every arrived order goes to the adaptive strategy selection, if it is on
+     */
+    private void recordOrder(GasType gasType, double amountInLiters) {
+        final AdaptiveStrategyEngine engine = adaptiveEngine;
+        if (engine != null)
+            engine.recordOrder(gasType, amountInLiters);
+    }
+
+    /**
+     * Every purchase outcome goes to the metrics and, if the dynamic pricing is on, to the demand counters
+     */
+    private void recordPurchase(GasType gasType, Outcome outcome, long purchaseNanos) {
+        metrics.recordPurchase(gasType, outcome, purchaseNanos);
+        final PricingEngine engine = pricingEngine;
+        if (engine != null)
+            engine.recordPurchase(gasType, outcome);
+    }
+
+    /**
+     * Counters and the journal are updated together for every completed purchase or cancellation
+     */
+    private void registerSale(GasType gasType, double amountInLiters, double purchasePrice, long priceVersion) {
+        counters.recordSale(gasType, amountInLiters, purchasePrice);
+        if (journal != null)
+            journal.sale(gasType, amountInLiters, purchasePrice, priceVersion);
+    }
+
+    private void registerCancellationNoGas(GasType gasType, double amountInLiters) {
+        counters.recordCancellationsNoGas(gasType, 1);
+        if (journal != null)
+            journal.cancelledNoGas(gasType, amountInLiters);
+    }
+
+    private void registerCancellationTooExpensive(GasType gasType, double amountInLiters, double maxPricePerLiter) {
+        counters.recordCancellationsTooExpensive(gasType, 1);
+        if (journal != null)
+            journal.cancelledTooExpensive(gasType, amountInLiters, maxPricePerLiter);
+    }
+
+    /**
+     * Latency histograms of the station. Use StationMetrics::registerMBean to publish them over JMX
+     * and StationMetrics::setEnabled to switch the recording off
+     * @return
+     */
+    public StationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Consistent snapshot of the books with the breakdown by gas type and pump, it does not block the purchases
+     * @return
+     */
+    public StationStats getStats() {
+        return counters.snapshot();
+    }
+
     public double getRevenue() {
-        return revenueSum.sum();
+        return counters.getRevenue();
     }
 
     public int getNumberOfSales() {
-        return salesCounter.get();
+        return (int) counters.getSales();
     }
 
     public int getNumberOfCancellationsNoGas() {
-        return cancellationsNoGasCounter.get();
+        return (int) counters.getCancellationsNoGas();
     }
 
     public int getNumberOfCancellationsTooExpensive() {
-        return cancellationsTooExpensiveCounter.get();
+        return (int) counters.getCancellationsTooExpensive();
+    }
+
+    public int getNumberOfShedOrders() {
+        return (int) counters.getShedOrders();
+    }
+
+    public int getNumberOfTimedOutOrders() {
+        return (int) counters.getTimedOutOrders();
+    }
+
+    /**
+     * Limits the backlog of every pump of the gas type. Orders, which would exceed it, are shed
+     * @param gasType
+     * @param maxQueuedPumpings the most scheduled, but not finished pumpings per pump
+     * @param maxBacklogInLiters the most reserved, but not pumped gas per pump
+     * @throws UnsupportedOperationException if the strategy has no admission control
+     */
+    public void setAdmissionLimits(GasType gasType, int maxQueuedPumpings, double maxBacklogInLiters) {
+        getOrCreatePumpManager(gasType).setAdmissionLimits(maxQueuedPumpings, maxBacklogInLiters);
+    }
+
+    /**
+     * Splits large orders of the gas type across several pumps, which pump their slices in parallel.
+     * Split order is still a single sale
+     * @param gasType
+     * @param maxSlices the most pumps serving one order, 1 switches the split fulfilment off
+     * @param minSliceInLiters the smallest slice worth a separate pump
+     * @throws UnsupportedOperationException if the strategy can not split orders
+     */
+    public void setSplitFulfilment(GasType gasType, int maxSlices, double minSliceInLiters) {
+        getOrCreatePumpManager(gasType).setSplitFulfilment(maxSlices, minSliceInLiters);
     }
 
     public double getPrice(GasType gasType) {
-        if (gasType == null || !gasPricesMap.containsKey(gasType))
+        final double price = gasType == null ? Double.NaN : prices.getPrice(gasType);
+        if (Double.isNaN(price))
             throw new IllegalArgumentException("Inappropriate gas type");
 
-        return gasPricesMap.get(gasType);
+        return price;
     }
 
+    /**
+     * Sets the base price. It is published at once with the next version, the dynamic pricing recomputes it on the next tick
+     * @param gasType
+     * @param price
+     */
     public void setPrice(GasType gasType, double price) {
-        gasPricesMap.put(gasType, price);
+        if (gasType == null || Double.isNaN(price))
+            throw new IllegalArgumentException("Inappropriate gas type or price");
+        synchronized (priceLock) {
+            basePrices = basePrices.withPrice(gasType, price);
+            prices = prices.withPrice(gasType, price);
+            // Journaled under the lock, so the versions of the journal grow
+            if (journal != null)
+                journal.priceSet(gasType, price, prices.getVersion());
+        }
+    }
+
+    /**
+     * Currently published prices with their version. The version of every sale is journaled
+     * @return
+     */
+    public PriceSnapshot getPriceSnapshot() {
+        return prices;
+    }
+
+    /**
+     * Starts recomputing the prices on a background tick from the live load of every gas type:
+     * the backlog and the remaining gas of the pumps and the rejection rate. The purchases read the published
+     * prices lock-free as before, the tick publishes a new version only if any price changed
+     * @param pricingPolicy
+     * @param tickMillis
+     * @throws IllegalStateException if the dynamic pricing is already started
+     */
+    public void startDynamicPricing(PricingPolicy pricingPolicy, long tickMillis) {
+        checkNotClosed();
+        checkNotSimulated();
+        synchronized (priceLock) {
+            if (pricingEngine != null)
+                throw new IllegalStateException("Dynamic pricing is already started");
+            pricingEngine = new PricingEngine(this, pricingPolicy, tickMillis);
+        }
+    }
+
+    /**
+     * Stops the dynamic pricing and publishes the base prices again
+     */
+    public void stopDynamicPricing() {
+        final PricingEngine engine;
+        synchronized (priceLock) {
+            engine = pricingEngine;
+            if (engine == null)
+                return;
+            pricingEngine = null;
+        }
+        engine.close();
+        synchronized (priceLock) {
+            prices = prices.withPrices(basePrices);
+        }
+    }
+
+    /**
+     * Publishes the prices of the pricing policy. Ticks of a stopped engine are ignored
+     * @param engine
+     * @param signals demand signals indexed by GasType ordinal
+     */
+    void reprice(PricingEngine engine, DemandSignals[] signals) {
+        synchronized (priceLock) {
+            if (pricingEngine != engine)
+                return;
+            final double[] dynamicPrices = new double[signals.length];
+            for (GasType gasType : GasType.values()) {
+                final double basePrice = basePrices.getPrice(gasType);
+                final double dynamicPrice = Double.isNaN(basePrice) ? basePrice : engine.getPricingPolicy().price(basePrice, signals[gasType.ordinal()]);
+                dynamicPrices[gasType.ordinal()] = Double.isNaN(dynamicPrice) ? basePrice : dynamicPrice;
+            }
+            prices = prices.withPrices(dynamicPrices);
+        }
+    }
+
+    Collection<PumpWorker> getPumpWorkers() {
+        return allPumpWorkers;
+    }
+
+    /**
+     * Rejects new purchases, waits till all the scheduled pumpings finish and releases the pumping threads.
+     * The journal is forced to the disk and closed after the pumpings
+     */
+    @Override
+    public void close() {
+        closed = true;
+        reservationWheel.close();
+        stopDynamicPricing();
+        stopAdaptiveStrategies();
+        executionEngine.close();
+        metrics.unregisterMBean();
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Forwards the pumping progress to the metrics, the journal and the availability summaries and invalidates the inventory snapshot
+     */
+    private class StationPumpListener implements PumpListener {
+        @Override
+        public void pumpingScheduled(PumpWorker pumpWorker, double amountInLiters) {
+            markInventoryChanged();
+            availabilities[pumpWorker.getGasType().ordinal()].pumpingScheduled(amountInLiters);
+            metrics.pumpingScheduled(pumpWorker, amountInLiters);
+        }
+
+        @Override
+        public void pumpingCancelled(PumpWorker pumpWorker, double amountInLiters) {
+            markInventoryChanged();
+            availabilities[pumpWorker.getGasType().ordinal()].pumpingCancelled(amountInLiters);
+            metrics.pumpingCancelled(pumpWorker, amountInLiters);
+        }
+
+        @Override
+        public void pumpingStarted(PumpWorker pumpWorker, long queueWaitNanos) {
+            metrics.pumpingStarted(pumpWorker, queueWaitNanos);
+        }
+
+        @Override
+        public void pumpingFinished(PumpWorker pumpWorker, double amountInLiters, long pumpingNanos) {
+            markInventoryChanged();
+            availabilities[pumpWorker.getGasType().ordinal()].pumpingFinished(amountInLiters);
+            counters.pumpingFinished(pumpWorker, amountInLiters, pumpingNanos);
+            if (journal != null)
+                journal.pumped(pumpWorker.getId(), pumpWorker.getGasType(), amountInLiters);
+            metrics.pumpingFinished(pumpWorker, amountInLiters, pumpingNanos);
+        }
+    }
+
+    private void checkNotClosed() {
+        if (closed)
+            throw new IllegalStateException("The Gas Station is closed");
+    }
+
+    /**
+     * The simulation thread can not wait for the pumping, it is the one to run the virtual clock.
+     * Background engines tick in the real time
+     */
+    private void checkNotSimulated() {
+        if (executionEngine.isSimulated())
+            throw new UnsupportedOperationException("Not supported by the simulated pump execution engine");
     }
 }
@@ -0,0 +1,93 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasType;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Live summary of the pumps of one gas type, which the station publishes for the routing between stations.
+ * It is updated incrementally by the pump events, so a reader never scans the pumps and never takes a lock.
+ * The sums are eventually consistent: a reader may see a reservation before its pumping is counted in the backlog
+ */
+public final class GasTypeAvailability {
+    private final GasType gasType;
+    private final AtomicInteger pumpCount = new AtomicInteger(0);
+    /**
+     * Gas of all the pumps remaining after the scheduled pumpings
+     */
+    private final DoubleAdder remainingInLiters = new DoubleAdder();
+    /**
+     * Reserved, but not pumped gas of all the pumps
+     */
+    private final DoubleAdder backlogInLiters = new DoubleAdder();
+
+    GasTypeAvailability(GasType gasType) {
+        this.gasType = gasType;
+    }
+
+    public GasType getGasType() {
+        return gasType;
+    }
+
+    public int getPumpCount() {
+        return pumpCount.get();
+    }
+
+    /**
+     * Sum of the pumps: a single order may still not fit into any of them
+     * @return
+     */
+    public double getRemainingInLiters() {
+        return remainingInLiters.sum();
+    }
+
+    public double getBacklogInLiters() {
+        return Math.max(0, backlogInLiters.sum());
+    }
+
+    /**
+     * @return expected wait of a new order in liters of the pumping ahead of it, infinite without pumps
+     */
+    public double getBacklogPerPumpInLiters() {
+        final int pumps = pumpCount.get();
+        return pumps == 0 ? Double.POSITIVE_INFINITY : getBacklogInLiters() / pumps;
+    }
+
+    void pumpAdded(double remainingAmount) {
+        remainingInLiters.add(remainingAmount);
+        pumpCount.getAndIncrement();
+    }
+
+    void pumpingScheduled(double amountInLiters) {
+        remainingInLiters.add(-amountInLiters);
+        backlogInLiters.add(amountInLiters);
+    }
+
+    void pumpingCancelled(double amountInLiters) {
+        remainingInLiters.add(amountInLiters);
+        backlogInLiters.add(-amountInLiters);
+    }
+
+    void pumpingFinished(double amountInLiters) {
+        backlogInLiters.add(-amountInLiters);
+    }
+
+    /**
+     * Gas is reserved by the two-phase purchase, but not scheduled yet
+     */
+    void reserved(double amountInLiters) {
+        remainingInLiters.add(-amountInLiters);
+    }
+
+    /**
+     * Reservation is released, or committed right before its pumping is scheduled
+     */
+    void unreserved(double amountInLiters) {
+        remainingInLiters.add(amountInLiters);
+    }
+
+    void refilled(double amountInLiters) {
+        remainingInLiters.add(amountInLiters);
+    }
+}
@@ -0,0 +1,30 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasType;
+
+/**
+ * Immutable purchase order of the GasStationImpl::buyGasBatch
+ */
+public final class Order {
+    private final GasType gasType;
+    private final double amountInLiters;
+    private final double maxPricePerLiter;
+
+    public Order(GasType gasType, double amountInLiters, double maxPricePerLiter) {
+        this.gasType = gasType;
+        this.amountInLiters = amountInLiters;
+        this.maxPricePerLiter = maxPricePerLiter;
+    }
+
+    public GasType getGasType() {
+        return gasType;
+    }
+
+    public double getAmountInLiters() {
+        return amountInLiters;
+    }
+
+    public double getMaxPricePerLiter() {
+        return maxPricePerLiter;
+    }
+}
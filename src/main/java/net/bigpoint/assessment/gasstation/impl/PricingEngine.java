@@ -0,0 +1,106 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpWorker;
+import net.bigpoint.assessment.gasstation.impl.metrics.StationMetrics.Outcome;
+import net.bigpoint.assessment.gasstation.impl.pricing.DemandSignals;
+import net.bigpoint.assessment.gasstation.impl.pricing.PricingPolicy;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recomputes the prices of the station by the pricing policy on a background tick.
+ * The buyers only bump striped counters, all the signals are aggregated by the tick
+ */
+final class PricingEngine implements AutoCloseable {
+    private final GasStationImpl gasStation;
+    private final PricingPolicy pricingPolicy;
+    /**
+     * Purchases and rejections since the previous tick indexed by GasType ordinal
+     */
+    private final LongAdder[] purchases = newAdders();
+    private final LongAdder[] rejections = newAdders();
+    private final ScheduledExecutorService ticker;
+
+    PricingEngine(GasStationImpl gasStation, PricingPolicy pricingPolicy, long tickMillis) {
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("Inappropriate pricing tick");
+        this.gasStation = gasStation;
+        this.pricingPolicy = pricingPolicy;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "station-pricing");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::tickQuietly, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static LongAdder[] newAdders() {
+        final LongAdder[] adders = new LongAdder[GasType.values().length];
+        for (int i = 0; i < adders.length; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+    /**
+     * Too expensive purchases are not counted: the price itself turned them away
+     * @param gasType
+     * @param outcome
+     */
+    void recordPurchase(GasType gasType, Outcome outcome) {
+        if (outcome == Outcome.TOO_EXPENSIVE)
+            return;
+        purchases[gasType.ordinal()].increment();
+        if (outcome != Outcome.SUCCESS)
+            rejections[gasType.ordinal()].increment();
+    }
+
+    PricingPolicy getPricingPolicy() {
+        return pricingPolicy;
+    }
+
+    /**
+     * Aggregates the pump workers and the counters, then lets the station publish the new prices
+     */
+    void tick() {
+        final GasType[] gasTypes = GasType.values();
+        final int[] pumpCounts = new int[gasTypes.length];
+        final double[] backlogs = new double[gasTypes.length];
+        final double[] remainingAmounts = new double[gasTypes.length];
+        for (PumpWorker pumpWorker : gasStation.getPumpWorkers()) {
+            final int index = pumpWorker.getGasType().ordinal();
+            pumpCounts[index]++;
+            backlogs[index] += pumpWorker.getBacklogInLiters();
+            remainingAmounts[index] += pumpWorker.getRemainingGas();
+        }
+        final DemandSignals[] signals = new DemandSignals[gasTypes.length];
+        for (int i = 0; i < gasTypes.length; i++)
+            signals[i] = new DemandSignals(gasTypes[i], pumpCounts[i], backlogs[i], remainingAmounts[i],
+                    purchases[i].sumThenReset(), rejections[i].sumThenReset());
+        gasStation.reprice(this, signals);
+    }
+
+    private void tickQuietly() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            // The next tick retries, the published prices stay
+        }
+    }
+
+    /**
+     * Stops the ticker and waits for the running tick
+     */
+    @Override
+    public void close() {
+        ticker.shutdown();
+        try {
+            ticker.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpWorker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the station pumps shared between the readers.
+ * Version grows with every rebuild, so the readers may detect changes cheaply
+ */
+public final class PumpInventory {
+    private final long version;
+    private final List<PumpState> pumps;
+    private final double[] physicalRemainingAmounts = new double[GasType.values().length];
+    private final double[] committedRemainingAmounts = new double[GasType.values().length];
+
+    private PumpInventory(long version, List<PumpState> pumps) {
+        this.version = version;
+        this.pumps = Collections.unmodifiableList(pumps);
+        for (PumpState pump : pumps) {
+            physicalRemainingAmounts[pump.getGasType().ordinal()] += pump.getPhysicalRemainingAmount();
+            committedRemainingAmounts[pump.getGasType().ordinal()] += pump.getCommittedRemainingAmount();
+        }
+    }
+
+    static PumpInventory of(long version, Collection<PumpWorker> pumpWorkers) {
+        final List<PumpState> pumps = new ArrayList<>(pumpWorkers.size());
+        for (PumpWorker pumpWorker : pumpWorkers)
+            pumps.add(new PumpState(pumpWorker.getId(), pumpWorker.getGasType(), pumpWorker.getPhysicalRemainingGas(), pumpWorker.getRemainingGas()));
+        return new PumpInventory(version, pumps);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return unmodifiable list of the pumps in the order of addition
+     */
+    public List<PumpState> getPumps() {
+        return pumps;
+    }
+
+    public double getPhysicalRemainingAmount(GasType gasType) {
+        return physicalRemainingAmounts[gasType.ordinal()];
+    }
+
+    public double getCommittedRemainingAmount(GasType gasType) {
+        return committedRemainingAmounts[gasType.ordinal()];
+    }
+}
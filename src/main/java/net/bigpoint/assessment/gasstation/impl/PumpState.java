@@ -0,0 +1,45 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasType;
+
+/**
+ * Immutable state of a single pump in the inventory snapshot
+ */
+public final class PumpState {
+    private final long pumpId;
+    private final GasType gasType;
+    private final double physicalRemainingAmount;
+    private final double committedRemainingAmount;
+
+    PumpState(long pumpId, GasType gasType, double physicalRemainingAmount, double committedRemainingAmount) {
+        this.pumpId = pumpId;
+        this.gasType = gasType;
+        this.physicalRemainingAmount = physicalRemainingAmount;
+        this.committedRemainingAmount = committedRemainingAmount;
+    }
+
+    /**
+     * @return id of the pump in the station, e.g. for GasStationImpl::refillGasPump
+     */
+    public long getPumpId() {
+        return pumpId;
+    }
+
+    public GasType getGasType() {
+        return gasType;
+    }
+
+    /**
+     * @return amount in the pump after all the finished pumpings
+     */
+    public double getPhysicalRemainingAmount() {
+        return physicalRemainingAmount;
+    }
+
+    /**
+     * @return amount available for the new purchases, i.e. after all the scheduled pumpings
+     */
+    public double getCommittedRemainingAmount() {
+        return committedRemainingAmount;
+    }
+}
@@ -0,0 +1,97 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpWorker;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Token of the two-phase purchase (GasStationImpl::reserve): the price is locked and the gas is deducted from a pump,
+ * but not pumped till GasStationImpl::commit. The reservation ends once: committed, cancelled or expired
+ */
+public final class Reservation {
+    static final int RESERVED = 0;
+    static final int COMMITTED = 1;
+    static final int CANCELLED = 2;
+    static final int EXPIRED = 3;
+
+    private static final AtomicIntegerFieldUpdater<Reservation> STATE = AtomicIntegerFieldUpdater.newUpdater(Reservation.class, "state");
+
+    private final GasStationImpl gasStation;
+    private final GasType gasType;
+    private final double amountInLiters;
+    private final double pricePerLiter;
+    private final long priceVersion;
+    private final long expiresAtNanos;
+    private final PumpWorker pumpWorker;
+    private volatile int state = RESERVED;
+
+    Reservation(GasStationImpl gasStation, GasType gasType, double amountInLiters, double pricePerLiter, long priceVersion,
+                long expiresAtNanos, PumpWorker pumpWorker) {
+        this.gasStation = gasStation;
+        this.gasType = gasType;
+        this.amountInLiters = amountInLiters;
+        this.pricePerLiter = pricePerLiter;
+        this.priceVersion = priceVersion;
+        this.expiresAtNanos = expiresAtNanos;
+        this.pumpWorker = pumpWorker;
+    }
+
+    public GasType getGasType() {
+        return gasType;
+    }
+
+    public double getAmountInLiters() {
+        return amountInLiters;
+    }
+
+    /**
+     * @return station price at the reservation, it is charged on the commit
+     */
+    public double getPricePerLiter() {
+        return pricePerLiter;
+    }
+
+    public double getPurchasePrice() {
+        return pricePerLiter * amountInLiters;
+    }
+
+    /**
+     * @return PumpExecutionEngine::nanoTime, after which the reservation is reclaimed
+     */
+    public long getExpiresAtNanos() {
+        return expiresAtNanos;
+    }
+
+    /**
+     * @return false once the reservation is committed, cancelled or expired
+     */
+    public boolean isActive() {
+        return state == RESERVED;
+    }
+
+    GasStationImpl getGasStation() {
+        return gasStation;
+    }
+
+    long getPriceVersion() {
+        return priceVersion;
+    }
+
+    PumpWorker getPumpWorker() {
+        return pumpWorker;
+    }
+
+    /**
+     * @param endState COMMITTED, CANCELLED or EXPIRED
+     * @return true for the only caller, which ended the active reservation
+     */
+    boolean end(int endState) {
+        return STATE.compareAndSet(this, RESERVED, endState);
+    }
+
+    @Override
+    public String toString() {
+        return "Reservation{" + gasType + ", " + amountInLiters + " l at " + pricePerLiter + ", state=" + state + '}';
+    }
+}
@@ -0,0 +1,10 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+
+/**
+ * Reservation can not be committed: it has expired or was cancelled, and its gas is available to the other buyers again
+ */
+public class ReservationExpiredException extends NotEnoughGasException {
+    private static final long serialVersionUID = 1L;
+}
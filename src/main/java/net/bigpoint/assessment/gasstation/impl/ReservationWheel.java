@@ -0,0 +1,151 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.impl.managers.PumpExecutionEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel of the active reservations. A reservation is added to the bucket of its expiry tick in O(1),
+ * committed and cancelled reservations are not removed, they are dropped by their tick. One task of the execution
+ * engine advances the wheel while any reservation is pending, so the expiry costs no thread per token and nothing
+ * on an idle station. Reservations, which expire more than a round later, stay in their bucket till the round comes
+ */
+final class ReservationWheel {
+    static final long DEFAULT_TICK_MILLIS = 10;
+    static final int DEFAULT_BUCKETS = 512;
+
+    private final PumpExecutionEngine executionEngine;
+    private final Consumer<Reservation> expiry;
+    private final long tickNanos;
+    private final Queue<Reservation>[] buckets;
+    private final int bucketMask;
+    private final long startNanos;
+    /**
+     * Last tick, which buckets were processed. Written by the tick task only, before the buckets are drained
+     */
+    private volatile long processedTick;
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private final AtomicBoolean ticking = new AtomicBoolean(false);
+    private volatile boolean closed = false;
+
+    /**
+     * @param executionEngine runs the ticks and provides the time
+     * @param expiry called for the reservations, which are still active after their expiry time
+     */
+    ReservationWheel(PumpExecutionEngine executionEngine, Consumer<Reservation> expiry) {
+        this(executionEngine, expiry, DEFAULT_TICK_MILLIS, DEFAULT_BUCKETS);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ReservationWheel(PumpExecutionEngine executionEngine, Consumer<Reservation> expiry, long tickMillis, int minBuckets) {
+        if (tickMillis <= 0 || minBuckets <= 0)
+            throw new IllegalArgumentException("Inappropriate timer wheel");
+        this.executionEngine = executionEngine;
+        this.expiry = expiry;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        final int bucketCount = Integer.highestOneBit(Math.max(1, minBuckets - 1) << 1);
+        this.buckets = new Queue[bucketCount];
+        for (int i = 0; i < bucketCount; i++)
+            buckets[i] = new ConcurrentLinkedQueue<>();
+        this.bucketMask = bucketCount - 1;
+        this.startNanos = executionEngine.nanoTime();
+    }
+
+    /**
+     * Schedules the expiry of the active reservation. The expiry may come up to a tick late, never early
+     * @param reservation
+     */
+    void add(Reservation reservation) {
+        pending.getAndIncrement();
+        long tick = bucketTick(reservation);
+        buckets[(int) tick & bucketMask].add(reservation);
+        // The tick may have drained the bucket meanwhile, the reservation would wait a whole round there.
+        // Taken back, it goes to the bucket after the processed tick. Not found, it is taken by the tick
+        while (processedTick >= tick && buckets[(int) tick & bucketMask].remove(reservation)) {
+            tick = bucketTick(reservation);
+            buckets[(int) tick & bucketMask].add(reservation);
+        }
+        if (!ticking.get() && ticking.compareAndSet(false, true))
+            scheduleTick();
+    }
+
+    /**
+     * @return reservations in the wheel, including the ended ones, which wait for their tick
+     */
+    int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the ticks and expires all the active reservations at once
+     */
+    void close() {
+        closed = true;
+        for (Queue<Reservation> bucket : buckets)
+            for (Reservation reservation = bucket.poll(); reservation != null; reservation = bucket.poll()) {
+                pending.getAndDecrement();
+                if (reservation.isActive())
+                    expiry.accept(reservation);
+            }
+    }
+
+    /**
+     * The first tick after the expiry, and after the last processed tick
+     */
+    private long bucketTick(Reservation reservation) {
+        final long expiryTick = Math.floorDiv(reservation.getExpiresAtNanos() - startNanos, tickNanos) + 1;
+        return Math.max(expiryTick, processedTick + 1);
+    }
+
+    private void scheduleTick() {
+        executionEngine.schedule(this::tick, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Processes the buckets of the elapsed ticks, at most one round. Not expired reservations are put back,
+     * to the same bucket for the next round
+     */
+    private void tick() {
+        if (closed)
+            return;
+        final long now = executionEngine.nanoTime();
+        final long currentTick = Math.floorDiv(now - startNanos, tickNanos);
+        final long lastProcessedTick = processedTick;
+        final long firstTick = Math.max(lastProcessedTick + 1, currentTick - bucketMask);
+        // Published before the drain, so add() sees that its bucket may be drained already
+        if (currentTick > lastProcessedTick)
+            processedTick = currentTick;
+        final List<Reservation> due = new ArrayList<>();
+        for (long tick = firstTick; tick <= currentTick; tick++) {
+            final Queue<Reservation> bucket = buckets[(int) tick & bucketMask];
+            for (Reservation reservation = bucket.poll(); reservation != null; reservation = bucket.poll())
+                due.add(reservation);
+        }
+        for (Reservation reservation : due) {
+            if (!reservation.isActive()) {
+                pending.getAndDecrement();
+            } else if (reservation.getExpiresAtNanos() - now <= 0) {
+                pending.getAndDecrement();
+                expiry.accept(reservation);
+            } else {
+                buckets[(int) bucketTick(reservation) & bucketMask].add(reservation);
+            }
+        }
+
+        // Keep ticking while anything is pending. A reservation added after the check starts the ticks again
+        if (pending.get() > 0 && !closed) {
+            scheduleTick();
+            return;
+        }
+        ticking.set(false);
+        if (pending.get() > 0 && !closed && ticking.compareAndSet(false, true))
+            scheduleTick();
+    }
+}
@@ -0,0 +1,15 @@
+package net.bigpoint.assessment.gasstation.impl.adaptive;
+
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerFactory;
+
+/**
+ * Picks the strategy of a gas type from its observed workload. Called by the background tick of the station
+ */
+@FunctionalInterface
+public interface StrategySelector {
+    /**
+     * @param stats workload since the previous tick
+     * @return strategy for the workload, or null to keep the current one
+     */
+    PumpManagerFactory select(WorkloadStats stats);
+}
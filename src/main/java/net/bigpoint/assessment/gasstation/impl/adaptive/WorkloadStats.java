@@ -0,0 +1,89 @@
+package net.bigpoint.assessment.gasstation.impl.adaptive;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpWorker;
+
+/**
+ * Workload of one gas type observed since the previous tick of the adaptive strategy selection
+ */
+public final class WorkloadStats {
+    private final GasType gasType;
+    private final int pumpCount;
+    private final double remainingInLiters;
+    private final long orders;
+    private final long intervalNanos;
+    private final double meanOrderInLiters;
+    private final double orderDeviationInLiters;
+
+    /**
+     * @param gasType
+     * @param pumpCount
+     * @param remainingInLiters gas of all the pumps remaining after the scheduled pumpings
+     * @param orders orders arrived in the interval
+     * @param intervalNanos
+     * @param meanOrderInLiters
+     * @param orderDeviationInLiters standard deviation of the order sizes
+     */
+    public WorkloadStats(GasType gasType, int pumpCount, double remainingInLiters, long orders, long intervalNanos,
+                         double meanOrderInLiters, double orderDeviationInLiters) {
+        this.gasType = gasType;
+        this.pumpCount = pumpCount;
+        this.remainingInLiters = remainingInLiters;
+        this.orders = orders;
+        this.intervalNanos = intervalNanos;
+        this.meanOrderInLiters = meanOrderInLiters;
+        this.orderDeviationInLiters = orderDeviationInLiters;
+    }
+
+    public GasType getGasType() {
+        return gasType;
+    }
+
+    public int getPumpCount() {
+        return pumpCount;
+    }
+
+    public double getRemainingInLiters() {
+        return remainingInLiters;
+    }
+
+    public long getOrders() {
+        return orders;
+    }
+
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    public double getMeanOrderInLiters() {
+        return meanOrderInLiters;
+    }
+
+    public double getOrderDeviationInLiters() {
+        return orderDeviationInLiters;
+    }
+
+    /**
+     * @return orders per second, 0 for an empty interval
+     */
+    public double getArrivalRate() {
+        return intervalNanos > 0 ? orders * 1e9 / intervalNanos : 0;
+    }
+
+    /**
+     * @return pumping time the arrived orders need per pump and per second of the interval:
+     * at 1 and more the pumps can not keep up with the orders
+     */
+    public double getUtilization() {
+        if (pumpCount == 0)
+            return orders > 0 ? Double.POSITIVE_INFINITY : 0;
+        return getArrivalRate() * meanOrderInLiters * PumpWorker.PUMPING_NANOS_PER_LITER / 1e9 / pumpCount;
+    }
+
+    /**
+     * @return average remaining gas of a pump, 0 without pumps
+     */
+    public double getRemainingPerPumpInLiters() {
+        return pumpCount > 0 ? remainingInLiters / pumpCount : 0;
+    }
+}
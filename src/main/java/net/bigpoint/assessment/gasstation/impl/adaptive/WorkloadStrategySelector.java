@@ -0,0 +1,47 @@
+package net.bigpoint.assessment.gasstation.impl.adaptive;
+
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerFactory;
+
+/**
+ * Picks one of the built-in strategies by the arrival rate and the order sizes:
+ *  - busy pumps (utilization over the threshold): SteadyBlockingPumpManager queues the orders on the pumps,
+ *    where SteadyPumpManager would reject them while all the pumps are pumping
+ *  - large orders (mean plus one deviation over the share of the average pump): MaxSalesPumpManager serves
+ *    the small orders from the small pumps and keeps the large pumps for the large orders
+ *  - otherwise SteadyPumpManager levels the pumps
+ * Intervals without orders keep the current strategy
+ */
+public class WorkloadStrategySelector implements StrategySelector {
+    public static final double DEFAULT_BUSY_UTILIZATION = 0.7;
+    public static final double DEFAULT_LARGE_ORDER_SHARE = 0.25;
+
+    private final double busyUtilization;
+    private final double largeOrderShare;
+
+    public WorkloadStrategySelector() {
+        this(DEFAULT_BUSY_UTILIZATION, DEFAULT_LARGE_ORDER_SHARE);
+    }
+
+    /**
+     * @param busyUtilization utilization of the pumps, from which the orders are queued
+     * @param largeOrderShare share of the average remaining gas of a pump, from which the orders are large
+     */
+    public WorkloadStrategySelector(double busyUtilization, double largeOrderShare) {
+        if (!(busyUtilization > 0) || !(largeOrderShare > 0))
+            throw new IllegalArgumentException("Inappropriate strategy selection thresholds");
+        this.busyUtilization = busyUtilization;
+        this.largeOrderShare = largeOrderShare;
+    }
+
+    @Override
+    public PumpManagerFactory select(WorkloadStats stats) {
+        if (stats.getOrders() == 0 || stats.getPumpCount() == 0)
+            return null;
+        if (stats.getUtilization() >= busyUtilization)
+            return PumpManagerEnum.SteadyBlockingPumpManager;
+        if (stats.getMeanOrderInLiters() + stats.getOrderDeviationInLiters() >= largeOrderShare * stats.getRemainingPerPumpInLiters())
+            return PumpManagerEnum.MaxSalesPumpManager;
+        return PumpManagerEnum.SteadyPumpManager;
+    }
+}
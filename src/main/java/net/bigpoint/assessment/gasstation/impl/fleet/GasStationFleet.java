@@ -0,0 +1,285 @@
+package net.bigpoint.assessment.gasstation.impl.fleet;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasStation;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.GasTypeAvailability;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpFutures;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Fleet of independent GasStationImpl shards behind one GasStation. Every purchase is routed to the shard
+ * with the least backlog per pump of the gas type (more remaining gas wins the tie), read from the lock-free
+ * availability summaries of the shards. Only a few random shards are compared (power of d choices), so the router
+ * touches O(d) shards per purchase and the buyers spread over the shards instead of crowding the best one.
+ * A shard, which can not serve the order after all (NotEnoughGasException: its gas is spread over the pumps),
+ * is skipped and the best of the other shards is tried, so the caller never retries.
+ * Sales and revenue are the sums of the shard counters, the cancellations are counted once per fleet purchase
+ */
+public class GasStationFleet implements GasStation, AutoCloseable {
+    public static final int DEFAULT_CHOICES = 2;
+
+    private final GasStationImpl[] shards;
+    /**
+     * Number of the random shards compared by the router
+     */
+    private final int choices;
+    /**
+     * Pumps added by the fleet per shard and GasType ordinal, for the placement of the new pumps. Guarded by this
+     */
+    private final int[][] pumpCounts;
+    private final AtomicInteger cancellationsNoGasCounter = new AtomicInteger(0);
+    private final AtomicInteger cancellationsTooExpensiveCounter = new AtomicInteger(0);
+
+    /**
+     * @param shards stations owned by the fleet, they are closed together with it
+     */
+    public GasStationFleet(List<GasStationImpl> shards) {
+        this(shards, DEFAULT_CHOICES);
+    }
+
+    /**
+     * @param shards stations owned by the fleet, they are closed together with it
+     * @param choices number of the random shards compared per purchase, all the shards are compared if it is not less than their number
+     */
+    public GasStationFleet(List<GasStationImpl> shards, int choices) {
+        if (shards.isEmpty() || choices < 1)
+            throw new IllegalArgumentException("Inappropriate fleet of " + shards.size() + " shards with " + choices + " choices");
+        this.shards = shards.toArray(new GasStationImpl[0]);
+        this.choices = choices;
+        this.pumpCounts = new int[this.shards.length][GasType.values().length];
+    }
+
+    /**
+     * @param shardCount
+     * @param pumpManagerStrategy strategy of every shard
+     * @return fleet of the new stations
+     */
+    public static GasStationFleet create(int shardCount, PumpManagerEnum pumpManagerStrategy) throws ClassNotFoundException {
+        final List<GasStationImpl> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++)
+            shards.add(new GasStationImpl(pumpManagerStrategy));
+        return new GasStationFleet(shards);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public GasStationImpl getShard(int index) {
+        return shards[index];
+    }
+
+    /**
+     * Adds the pump to the shard with the fewest pumps of its gas type
+     * @param pump
+     */
+    public synchronized void addGasPump(GasPump pump) {
+        final int gasTypeIndex = pump.getGasType().ordinal();
+        int target = 0;
+        for (int i = 1; i < shards.length; i++)
+            if (pumpCounts[i][gasTypeIndex] < pumpCounts[target][gasTypeIndex])
+                target = i;
+        addGasPump(target, pump);
+    }
+
+    public synchronized void addGasPump(int shardIndex, GasPump pump) {
+        shards[shardIndex].addGasPump(pump);
+        pumpCounts[shardIndex][pump.getGasType().ordinal()]++;
+    }
+
+    public Collection<GasPump> getGasPumps() {
+        final List<GasPump> gasPumps = new ArrayList<>();
+        for (GasStationImpl shard : shards)
+            gasPumps.addAll(shard.getGasPumps());
+        return gasPumps;
+    }
+
+    public double buyGas(GasType type, double amountInLiters, double maxPricePerLiter) throws NotEnoughGasException, GasTooExpensiveException {
+        final boolean[] tried = new boolean[shards.length];
+        int shardIndex = selectShard(type, amountInLiters, maxPricePerLiter, null);
+        while (shardIndex >= 0) {
+            try {
+                return shards[shardIndex].buyGas(type, amountInLiters, maxPricePerLiter);
+            } catch (NotEnoughGasException | GasTooExpensiveException e) {
+                // The summary was optimistic or the price changed meanwhile
+                tried[shardIndex] = true;
+                shardIndex = selectShard(type, amountInLiters, maxPricePerLiter, tried);
+            }
+        }
+        if (shardIndex == TOO_EXPENSIVE) {
+            cancellationsTooExpensiveCounter.getAndIncrement();
+            throw new GasTooExpensiveException();
+        }
+        cancellationsNoGasCounter.getAndIncrement();
+        throw new NotEnoughGasException();
+    }
+
+    /**
+     * Non-blocking version of the buyGas, the fallback to the other shards is chained to the failed purchase
+     * @param type
+     * @param amountInLiters
+     * @param maxPricePerLiter
+     * @return future, which completes with the purchase price, or exceptionally with NotEnoughGasException or GasTooExpensiveException
+     */
+    public CompletableFuture<Double> buyGasAsync(GasType type, double amountInLiters, double maxPricePerLiter) {
+        return buyGasAsync(type, amountInLiters, maxPricePerLiter, selectShard(type, amountInLiters, maxPricePerLiter, null), null);
+    }
+
+    private CompletableFuture<Double> buyGasAsync(GasType type, double amountInLiters, double maxPricePerLiter, int shardIndex, boolean[] tried) {
+        if (shardIndex < 0)
+            return PumpFutures.failed(rejection(shardIndex));
+        return shards[shardIndex].buyGasAsync(type, amountInLiters, maxPricePerLiter)
+                .handle((purchasePrice, e) -> {
+                    if (e == null)
+                        return CompletableFuture.completedFuture(purchasePrice);
+                    final Throwable cause = PumpFutures.unwrap(e);
+                    if (!(cause instanceof NotEnoughGasException) && !(cause instanceof GasTooExpensiveException))
+                        return PumpFutures.<Double>failed(cause);
+                    final boolean[] triedShards = tried != null ? tried : new boolean[shards.length];
+                    triedShards[shardIndex] = true;
+                    return buyGasAsync(type, amountInLiters, maxPricePerLiter, selectShard(type, amountInLiters, maxPricePerLiter, triedShards), triedShards);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Without the tried shards compares the summaries of a few random shards, falls back to all the shards
+     * if none of them can serve the order. With the tried shards compares all the others
+     * @param type
+     * @param amountInLiters
+     * @param maxPricePerLiter
+     * @param tried shards, which have already rejected the order, or null for the first attempt
+     * @return index of the shard, or NO_GAS or TOO_EXPENSIVE if no shard can serve the order
+     */
+    private int selectShard(GasType type, double amountInLiters, double maxPricePerLiter, boolean[] tried) {
+        if (type == null)
+            throw new IllegalArgumentException("Inappropriate gas type");
+        int best = -1;
+        if (tried == null && choices < shards.length) {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < choices; i++) {
+                final int candidate = random.nextInt(shards.length);
+                if (canServe(candidate, type, amountInLiters, maxPricePerLiter) && isBetter(candidate, best, type))
+                    best = candidate;
+            }
+            if (best >= 0)
+                return best;
+        }
+        boolean provided = false;
+        boolean affordable = false;
+        for (int i = 0; i < shards.length; i++) {
+            final double price = shards[i].getPriceSnapshot().getPrice(type);
+            if (shards[i].getAvailability(type).getPumpCount() == 0 || Double.isNaN(price))
+                continue;
+            provided = true;
+            if (price > maxPricePerLiter)
+                continue;
+            affordable = true;
+            if ((tried == null || !tried[i]) && canServe(i, type, amountInLiters, maxPricePerLiter) && isBetter(i, best, type))
+                best = i;
+        }
+        if (best >= 0)
+            return best;
+        if (!provided)
+            throw new IllegalArgumentException("This gas type is not provided by the fleet");
+        return affordable ? NO_GAS : TOO_EXPENSIVE;
+    }
+
+    private static final int NO_GAS = -1;
+    private static final int TOO_EXPENSIVE = -2;
+
+    private boolean canServe(int shardIndex, GasType type, double amountInLiters, double maxPricePerLiter) {
+        final GasTypeAvailability availability = shards[shardIndex].getAvailability(type);
+        return availability.getPumpCount() > 0
+                && shards[shardIndex].getPriceSnapshot().getPrice(type) <= maxPricePerLiter
+                && availability.getRemainingInLiters() >= amountInLiters;
+    }
+
+    private boolean isBetter(int shardIndex, int bestIndex, GasType type) {
+        if (bestIndex < 0)
+            return true;
+        final GasTypeAvailability candidate = shards[shardIndex].getAvailability(type);
+        final GasTypeAvailability best = shards[bestIndex].getAvailability(type);
+        final double candidateBacklog = candidate.getBacklogPerPumpInLiters();
+        final double bestBacklog = best.getBacklogPerPumpInLiters();
+        return candidateBacklog < bestBacklog || (candidateBacklog == bestBacklog && candidate.getRemainingInLiters() > best.getRemainingInLiters());
+    }
+
+    private Exception rejection(int selection) {
+        if (selection == TOO_EXPENSIVE) {
+            cancellationsTooExpensiveCounter.getAndIncrement();
+            return new GasTooExpensiveException();
+        }
+        cancellationsNoGasCounter.getAndIncrement();
+        return new NotEnoughGasException();
+    }
+
+    public double getRevenue() {
+        double revenue = 0;
+        for (GasStationImpl shard : shards)
+            revenue += shard.getRevenue();
+        return revenue;
+    }
+
+    public int getNumberOfSales() {
+        int sales = 0;
+        for (GasStationImpl shard : shards)
+            sales += shard.getNumberOfSales();
+        return sales;
+    }
+
+    /**
+     * @return purchases, which no shard could serve. Rejections by a shard followed by a sale on another one are not counted
+     */
+    public int getNumberOfCancellationsNoGas() {
+        return cancellationsNoGasCounter.get();
+    }
+
+    public int getNumberOfCancellationsTooExpensive() {
+        return cancellationsTooExpensiveCounter.get();
+    }
+
+    /**
+     * Sets the price on every shard
+     * @param type
+     * @param price
+     */
+    public void setPrice(GasType type, double price) {
+        for (GasStationImpl shard : shards)
+            shard.setPrice(type, price);
+    }
+
+    /**
+     * @param type
+     * @return the lowest price of the shards, it differs between the shards only with the dynamic pricing
+     */
+    public double getPrice(GasType type) {
+        double lowestPrice = Double.NaN;
+        for (GasStationImpl shard : shards) {
+            final double price = type == null ? Double.NaN : shard.getPriceSnapshot().getPrice(type);
+            if (!Double.isNaN(price) && !(price >= lowestPrice))
+                lowestPrice = price;
+        }
+        if (Double.isNaN(lowestPrice))
+            throw new IllegalArgumentException("Inappropriate gas type");
+        return lowestPrice;
+    }
+
+    @Override
+    public void close() {
+        for (GasStationImpl shard : shards)
+            shard.close();
+    }
+}
@@ -0,0 +1,298 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Real-time bidding strategy: incoming orders are pooled for a short window (or till the batch is full)
+ * and the available pump capacity is given to the most profitable bids of the batch.
+ * Winners pay the clearing price of the batch: the highest outbid price, but not less than the station price
+ * and not more than their own bid. Without contention the clearing price is the station price.
+ * Outbid orders are rejected with GasTooExpensiveException, orders which no pump can serve with NotEnoughGasException.
+ */
+public class BiddingPumpManager implements PumpManager {
+    public static final long DEFAULT_WINDOW_MILLIS = 10;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * Pump workers with the highest remaining amount on top. Guarded by this
+     */
+    private final PumpWorkerHeap pumpWorkersHeap = new PumpWorkerHeap();
+    /**
+     * Orders waiting for the next auction
+     */
+    private final Queue<Bid> pendingBids = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingBidsCount = new AtomicInteger(0);
+    private final AtomicLong bidSequence = new AtomicLong(0);
+    /**
+     * Shared engine for the pumping and the auction timer
+     */
+    private final PumpExecutionEngine executionEngine;
+    private final long windowMillis;
+    private final int batchSize;
+
+    public BiddingPumpManager(PumpExecutionEngine executionEngine) {
+        this(executionEngine, DEFAULT_WINDOW_MILLIS, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param executionEngine
+     * @param windowMillis the longest time the first order of a batch waits for the auction
+     * @param batchSize the auction starts immediately when this number of orders is pooled
+     */
+    public BiddingPumpManager(PumpExecutionEngine executionEngine, long windowMillis, int batchSize) {
+        if (windowMillis < 0 || batchSize < 1)
+            throw new IllegalArgumentException("Inappropriate bidding window or batch size");
+        this.executionEngine = executionEngine;
+        this.windowMillis = windowMillis;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Bid without a price. It is served after all the priced bids of the batch and is never outbid
+     * @param amountInLiters
+     * @return future, which completes when pumping is finished
+     */
+    public CompletableFuture<Void> pumpGasAsync(double amountInLiters) {
+        final CompletableFuture<Void> pumpingFuture = new CompletableFuture<>();
+        sellGasAsync(amountInLiters, 0, 0).whenComplete((price, e) -> {
+            if (e == null)
+                pumpingFuture.complete(null);
+            else if (PumpFutures.unwrap(e) instanceof GasTooExpensiveException)
+                pumpingFuture.completeExceptionally(new NotEnoughGasException());
+            else
+                pumpingFuture.completeExceptionally(PumpFutures.unwrap(e));
+        });
+        return pumpingFuture;
+    }
+
+    /**
+     * Pools the bid for the next auction
+     * @param amountInLiters
+     * @param pricePerLiter current station price, the lowest price of the purchase
+     * @param maxPricePerLiter the bid
+     * @return future with the charged price per liter
+     */
+    @Override
+    public CompletableFuture<Double> sellGasAsync(double amountInLiters, double pricePerLiter, double maxPricePerLiter) {
+        final Bid bid = new Bid(amountInLiters, pricePerLiter, maxPricePerLiter, bidSequence.getAndIncrement());
+        pendingBids.add(bid);
+        final int pooledBids = pendingBidsCount.incrementAndGet();
+        if (pooledBids >= batchSize)
+            runAuction();
+        else if (pooledBids == 1)
+            executionEngine.schedule(this::runAuction, windowMillis, TimeUnit.MILLISECONDS);
+        return bid.result;
+    }
+
+    /**
+     * Bids the maximum price like the sellGasAsync and waits for the auction, the purchase is charged its clearing price.
+     * The order, which no pump can serve, is rejected without pooling and allocates nothing
+     * @param amountInLiters
+     * @param pricePerLiter current station price, the lowest price of the purchase
+     * @param maxPricePerLiter the bid
+     * @return the charged price per liter, or -NOT_ENOUGH_GAS, or -OUTBID
+     */
+    @Override
+    public double trySellGas(double amountInLiters, double pricePerLiter, double maxPricePerLiter) {
+        if (!fitsHighestPump(amountInLiters))
+            return -NOT_ENOUGH_GAS;
+        try {
+            return sellGasAsync(amountInLiters, pricePerLiter, maxPricePerLiter).join();
+        } catch (CompletionException e) {
+            final Throwable cause = PumpFutures.unwrap(e);
+            if (cause instanceof GasTooExpensiveException)
+                return -OUTBID;
+            if (cause instanceof NotEnoughGasException)
+                return -NOT_ENOUGH_GAS;
+            throw e;
+        }
+    }
+
+    /**
+     * Pools all the bids at once, so the batch is auctioned together
+     * @param amountsInLiters
+     * @param pricePerLiter current station price, the lowest price of the purchases
+     * @param maxPricesPerLiter the bids
+     * @return futures with the charged prices per liter
+     */
+    @Override
+    public List<CompletableFuture<Double>> sellGasBatch(double[] amountsInLiters, double pricePerLiter, double[] maxPricesPerLiter) {
+        final List<CompletableFuture<Double>> results = new ArrayList<>(amountsInLiters.length);
+        if (amountsInLiters.length == 0)
+            return results;
+        final long firstSequence = bidSequence.getAndAdd(amountsInLiters.length);
+        for (int i = 0; i < amountsInLiters.length; i++) {
+            final Bid bid = new Bid(amountsInLiters[i], pricePerLiter, maxPricesPerLiter[i], firstSequence + i);
+            pendingBids.add(bid);
+            results.add(bid.result);
+        }
+        final int pooledBids = pendingBidsCount.addAndGet(amountsInLiters.length);
+        if (pooledBids >= batchSize)
+            runAuction();
+        else if (pooledBids == amountsInLiters.length)
+            executionEngine.schedule(this::runAuction, windowMillis, TimeUnit.MILLISECONDS);
+        return results;
+    }
+
+    /**
+     * Add gas pump to the proper structures
+     * @param gasPump
+     * @return worker of the pump
+     */
+    public synchronized PumpWorker addGasPump(GasPump gasPump) {
+        final PumpWorker pumpWorker = new PumpWorker(gasPump, executionEngine);
+        pumpWorkersHeap.add(pumpWorker);
+        return pumpWorker;
+    }
+
+    @Override
+    public synchronized void adoptPumpWorkers(Collection<PumpWorker> pumpWorkers) {
+        for (PumpWorker pumpWorker : pumpWorkers)
+            pumpWorkersHeap.add(pumpWorker);
+    }
+
+    @Override
+    public synchronized void refillPump(PumpWorker pumpWorker, double amountInLiters) {
+        pumpWorker.refill(amountInLiters);
+        pumpWorkersHeap.update(pumpWorker);
+    }
+
+    /**
+     * Reservation is not a bid: the buyer locked the station price, so the highest pump is reserved at once
+     * @param amountInLiters
+     * @return
+     */
+    @Override
+    public synchronized PumpWorker reserveGas(double amountInLiters) {
+        final PumpWorker highest = pumpWorkersHeap.peek();
+        if (highest == null || !highest.tryReserve(amountInLiters))
+            return null;
+        pumpWorkersHeap.update(highest);
+        return highest;
+    }
+
+    @Override
+    public synchronized void releaseGas(PumpWorker pumpWorker, double amountInLiters) {
+        pumpWorker.release(amountInLiters);
+        pumpWorkersHeap.update(pumpWorker);
+    }
+
+    /**
+     * The order larger than every pump can not win the auction
+     */
+    private synchronized boolean fitsHighestPump(double amountInLiters) {
+        final PumpWorker highest = pumpWorkersHeap.peek();
+        return highest != null && highest.getRemainingGas() >= amountInLiters;
+    }
+
+    /**
+     * Pooled bids are auctioned at once instead of waiting for the window
+     */
+    @Override
+    public void retire() {
+        runAuction();
+    }
+
+    /**
+     * Takes all the pooled bids and allocates the pump capacity to them. The selection lock is taken once per batch
+     */
+    private synchronized void runAuction() {
+        final List<Bid> batch = new ArrayList<>();
+        for (Bid bid = pendingBids.poll(); bid != null; bid = pendingBids.poll())
+            batch.add(bid);
+        if (batch.isEmpty())
+            return;
+        // Bids pooled from now on belong to the next batch. A bid pooled while draining may miss its timer
+        if (pendingBidsCount.addAndGet(-batch.size()) > 0)
+            executionEngine.schedule(this::runAuction, windowMillis, TimeUnit.MILLISECONDS);
+        batch.sort(BID_PRIORITY);
+
+        // Highest bids take the capacity first
+        final List<Bid> winners = new ArrayList<>();
+        final List<Bid> losers = new ArrayList<>();
+        for (Bid bid : batch) {
+            // The top worker is reordered in place after the reservation
+            final PumpWorker pumpWorker = pumpWorkersHeap.peek();
+            try {
+                if (pumpWorker == null || pumpWorker.getRemainingGas() < bid.amountInLiters) {
+                    losers.add(bid);
+                    continue;
+                }
+                bid.pumpingFuture = pumpWorker.schedulePumpGas(bid.amountInLiters);
+                winners.add(bid);
+            } catch (NotEnoughGasException e) {
+                losers.add(bid);
+            } catch (RuntimeException e) {
+                bid.result.completeExceptionally(e);
+            } finally {
+                if (pumpWorker != null)
+                    pumpWorkersHeap.update(pumpWorker);
+            }
+        }
+
+        // The loser is outbid if any winner offered more
+        double highestWinningBid = Double.NEGATIVE_INFINITY;
+        for (Bid winner : winners)
+            highestWinningBid = Math.max(highestWinningBid, winner.maxPricePerLiter);
+        double clearingPrice = Double.NEGATIVE_INFINITY;
+        for (Bid loser : losers) {
+            if (loser.maxPricePerLiter < highestWinningBid) {
+                clearingPrice = Math.max(clearingPrice, loser.maxPricePerLiter);
+                loser.result.completeExceptionally(new GasTooExpensiveException());
+            } else {
+                loser.result.completeExceptionally(new NotEnoughGasException());
+            }
+        }
+
+        for (Bid winner : winners) {
+            final double chargedPricePerLiter = Math.min(winner.maxPricePerLiter, Math.max(winner.pricePerLiter, clearingPrice));
+            winner.pumpingFuture.whenComplete((v, e) -> {
+                if (e == null)
+                    winner.result.complete(chargedPricePerLiter);
+                else
+                    winner.result.completeExceptionally(PumpFutures.unwrap(e));
+            });
+        }
+    }
+
+    /**
+     * The most profitable bids first, the earlier bid wins a tie
+     */
+    private static final Comparator<Bid> BID_PRIORITY = (o1, o2) -> {
+        final int result = Double.compare(o2.maxPricePerLiter, o1.maxPricePerLiter);
+        return result != 0 ? result : Long.compare(o1.sequence, o2.sequence);
+    };
+
+    /**
+     * Pooled order
+     */
+    private static class Bid {
+        private final double amountInLiters;
+        private final double pricePerLiter;
+        private final double maxPricePerLiter;
+        private final long sequence;
+        private final CompletableFuture<Double> result = new CompletableFuture<>();
+        private CompletableFuture<Void> pumpingFuture;
+
+        Bid(double amountInLiters, double pricePerLiter, double maxPricePerLiter, long sequence) {
+            this.amountInLiters = amountInLiters;
+            this.pricePerLiter = pricePerLiter;
+            this.maxPricePerLiter = maxPricePerLiter;
+            this.sequence = sequence;
+        }
+    }
+}
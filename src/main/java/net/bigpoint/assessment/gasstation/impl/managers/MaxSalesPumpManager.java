@@ -0,0 +1,190 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * "Max-sales" strategy: selects the pump with the lowest, but sufficient for the current request remaining amount.
+ * Large remaining amounts are kept for the large requests, so more requests are served instantly.
+ */
+public class MaxSalesPumpManager implements PumpManager {
+    /**
+     * Ordered index of the pump workers by the remaining amount after all the scheduled pumpings.
+     * Keys are immutable, the worker is re-indexed on every reservation. Guarded by this
+     */
+    private final TreeMap<CapacityKey, PumpWorker> capacityIndex = new TreeMap<>();
+    /**
+     * Current key of every indexed worker, so the worker is found in the index even if its amount
+     * has been changed by another manager after a strategy switch. Guarded by this
+     */
+    private final Map<PumpWorker, CapacityKey> indexedKeys = new HashMap<>();
+    /**
+     * Shared engine for the pumping
+     */
+    private final PumpExecutionEngine executionEngine;
+
+    public MaxSalesPumpManager(PumpExecutionEngine executionEngine) {
+        this.executionEngine = executionEngine;
+    }
+
+    /**
+     * Schedules pumping on the best-fit pump in O(log n). The caller is not blocked while pumping
+     * @param amountInLiters
+     * @return future, which completes when pumping is finished
+     */
+    public CompletableFuture<Void> pumpGasAsync(double amountInLiters) {
+        // Synchronize re-indexing of the selected worker
+        synchronized (this) {
+            final Map.Entry<CapacityKey, PumpWorker> bestFit = capacityIndex.ceilingEntry(new CapacityKey(amountInLiters, Long.MIN_VALUE));
+            if (bestFit == null)
+                return PumpFutures.failed(new NotEnoughGasException());
+
+            final PumpWorker pumpWorker = bestFit.getValue();
+            unindex(pumpWorker);
+            try {
+                return pumpWorker.schedulePumpGas(amountInLiters);
+            } catch (NotEnoughGasException e) {
+                return PumpFutures.failed(e);
+            } finally {
+                index(pumpWorker);
+            }
+        }
+    }
+
+    /**
+     * Allocation-free rejection: the largest remaining amount is checked before the best-fit search
+     * @param amountInLiters
+     * @return PUMPED or NOT_ENOUGH_GAS if no pump has enough gas
+     */
+    @Override
+    public int tryPumpGas(double amountInLiters) {
+        final CompletableFuture<Void> pumpingFuture;
+        synchronized (this) {
+            if (capacityIndex.isEmpty() || capacityIndex.lastKey().remainingGas < amountInLiters)
+                return NOT_ENOUGH_GAS;
+            pumpingFuture = pumpGasAsync(amountInLiters);
+        }
+        pumpingFuture.join();
+        return PUMPED;
+    }
+
+    /**
+     * The index is locked once for the batch, every amount gets its best-fit pump in the order of the batch
+     * @param amountsInLiters
+     * @return pumping futures in the order of the amounts
+     */
+    @Override
+    public synchronized List<CompletableFuture<Void>> pumpGasBatch(double[] amountsInLiters) {
+        final List<CompletableFuture<Void>> pumpings = new ArrayList<>(amountsInLiters.length);
+        for (double amountInLiters : amountsInLiters)
+            pumpings.add(pumpGasAsync(amountInLiters));
+        return pumpings;
+    }
+
+    /**
+     * Add gas pump to the proper structures
+     * @param gasPump
+     * @return worker of the pump
+     */
+    public synchronized PumpWorker addGasPump(GasPump gasPump) {
+        final PumpWorker pumpWorker = new PumpWorker(gasPump, executionEngine);
+        index(pumpWorker);
+        return pumpWorker;
+    }
+
+    /**
+     * Best-fit reservation, the worker is re-indexed like on a scheduled pumping
+     * @param amountInLiters
+     * @return
+     */
+    @Override
+    public synchronized PumpWorker reserveGas(double amountInLiters) {
+        final Map.Entry<CapacityKey, PumpWorker> bestFit = capacityIndex.ceilingEntry(new CapacityKey(amountInLiters, Long.MIN_VALUE));
+        if (bestFit == null)
+            return null;
+        final PumpWorker pumpWorker = bestFit.getValue();
+        unindex(pumpWorker);
+        final boolean reserved = pumpWorker.tryReserve(amountInLiters);
+        index(pumpWorker);
+        return reserved ? pumpWorker : null;
+    }
+
+    @Override
+    public synchronized void releaseGas(PumpWorker pumpWorker, double amountInLiters) {
+        unindex(pumpWorker);
+        pumpWorker.release(amountInLiters);
+        index(pumpWorker);
+    }
+
+    /**
+     * The worker is re-indexed like on a reservation
+     * @param pumpWorker
+     * @param amountInLiters
+     */
+    @Override
+    public synchronized void refillPump(PumpWorker pumpWorker, double amountInLiters) {
+        unindex(pumpWorker);
+        pumpWorker.refill(amountInLiters);
+        index(pumpWorker);
+    }
+
+    /**
+     * Indexes the worker by its current remaining amount. Guarded by this
+     * @param pumpWorker
+     */
+    private void index(PumpWorker pumpWorker) {
+        final CapacityKey key = new CapacityKey(pumpWorker);
+        capacityIndex.put(key, pumpWorker);
+        indexedKeys.put(pumpWorker, key);
+    }
+
+    /**
+     * Removes the worker by its current key in O(log n). Guarded by this
+     * @param pumpWorker
+     */
+    private void unindex(PumpWorker pumpWorker) {
+        final CapacityKey key = indexedKeys.remove(pumpWorker);
+        if (key != null)
+            capacityIndex.remove(key);
+    }
+
+    /**
+     * Workers are indexed by their remaining amount after the pumpings scheduled by the replaced manager
+     * @param pumpWorkers
+     */
+    @Override
+    public synchronized void adoptPumpWorkers(Collection<PumpWorker> pumpWorkers) {
+        for (PumpWorker pumpWorker : pumpWorkers)
+            index(pumpWorker);
+    }
+
+    /**
+     * Snapshot of the worker remaining amount. Worker id makes keys of the equal amounts unique
+     */
+    private static class CapacityKey implements Comparable<CapacityKey> {
+        private final double remainingGas;
+        private final long workerId;
+
+        CapacityKey(double remainingGas, long workerId) {
+            this.remainingGas = remainingGas;
+            this.workerId = workerId;
+        }
+
+        CapacityKey(PumpWorker pumpWorker) {
+            this(pumpWorker.getRemainingGas(), pumpWorker.getId());
+        }
+
+        public int compareTo(CapacityKey o) {
+            final int result = Double.compare(remainingGas, o.remainingGas);
+            return result != 0 ? result : Long.compare(workerId, o.workerId);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+
+/**
+ * Order is rejected by the admission control of the pump manager: the gas is available,
+ * but the pumps are overloaded or the order can not finish before its deadline.
+ * Callers unaware of the admission control see it as NotEnoughGasException
+ */
+public class OrderShedException extends NotEnoughGasException {
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,437 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Shared execution engine for the pumping of all the station pumps.
+ * GasPump is not thread-safe, so every pump gets its own serial executor, but all of them run on one shared pool.
+ * An idle pump does not hold any thread.
+ * The engine is owned by a single gas station and closed together with it.
+ * The simulated engine pumps in the virtual time of a VirtualClock instead: pumpings are the events of the clock,
+ * GasPump::pumpGas is not called and no thread sleeps, so a day of traffic is replayed in seconds.
+ */
+public class PumpExecutionEngine implements AutoCloseable {
+    public static final long DEFAULT_SIMULATION_SEED = 0;
+
+    /**
+     * Pool, which executes the pumpings of all the pumps
+     */
+    private final ExecutorService executor;
+    /**
+     * Time of the simulated engine, null for the real time
+     */
+    private final VirtualClock virtualClock;
+    /**
+     * Random of the pump selection in the simulation, null for the real time
+     */
+    private final Random simulationRandom;
+    /**
+     * Timer for the delayed tasks of the managers. Created on demand, guarded by this
+     */
+    private ScheduledThreadPoolExecutor scheduler;
+    /**
+     * Number of accepted, but not yet finished pumpings. Guarded by this
+     */
+    private int inFlightTasks = 0;
+    private volatile boolean closed = false;
+    /**
+     * Observer of the pumpings, e.g. station metrics
+     */
+    private volatile PumpListener pumpListener = PumpListener.NONE;
+    /**
+     * All the pumpings are drained. Until then the running tasks may schedule follow-up tasks. Guarded by this
+     */
+    private boolean terminated = false;
+    /**
+     * Sequence of the pump ids, see PumpWorker::getId
+     */
+    private final AtomicLong pumpIdSequence = new AtomicLong(0);
+
+    private PumpExecutionEngine(ExecutorService executor, VirtualClock virtualClock, Random simulationRandom) {
+        this.executor = executor;
+        this.virtualClock = virtualClock;
+        this.simulationRandom = simulationRandom;
+    }
+
+    private PumpExecutionEngine(ExecutorService executor) {
+        this(executor, null, null);
+    }
+
+    /**
+     * Engine with the cached pool of platform threads. Threads are created only for the pumps, which are pumping right now
+     * @return
+     */
+    public static PumpExecutionEngine sharedPool() {
+        return new PumpExecutionEngine(Executors.newCachedThreadPool(new PumpThreadFactory()));
+    }
+
+    /**
+     * Engine with the fixed pool of platform threads. At most nThreads pumps are pumping simultaneously
+     * @param nThreads
+     * @return
+     */
+    public static PumpExecutionEngine fixedPool(int nThreads) {
+        return new PumpExecutionEngine(Executors.newFixedThreadPool(nThreads, new PumpThreadFactory()));
+    }
+
+    /**
+     * Engine with a virtual thread per pumping. Available on JDK 21+ only
+     * @return
+     * @throws UnsupportedOperationException if the current JDK does not provide virtual threads
+     */
+    public static PumpExecutionEngine virtualThreads() {
+        try {
+            return new PumpExecutionEngine((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by the current JDK", e);
+        }
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Engine of the discrete-event simulation: a pumping takes the virtual time of GasPump::pumpGas.
+     * Only the simulation thread may use the engine and its station, the blocking purchases are not supported
+     * @param virtualClock
+     * @return
+     */
+    public static PumpExecutionEngine simulated(VirtualClock virtualClock) {
+        return simulated(virtualClock, DEFAULT_SIMULATION_SEED);
+    }
+
+    /**
+     * Simulation engine, which random pump selections are drawn from the seed, so the run is reproduced by its seed
+     * @param virtualClock
+     * @param seed
+     * @return
+     */
+    public static PumpExecutionEngine simulated(VirtualClock virtualClock, long seed) {
+        return new PumpExecutionEngine(null, virtualClock, new Random(seed));
+    }
+
+    /**
+     * Virtual threads engine if the current JDK supports it, shared pool of platform threads otherwise
+     * @return
+     */
+    public static PumpExecutionEngine newDefault() {
+        return isVirtualThreadsSupported() ? virtualThreads() : sharedPool();
+    }
+
+    /**
+     * Creates executor for a single pump. Tasks are executed one by one in the submission order
+     * @return
+     * @throws UnsupportedOperationException for the simulated engine
+     */
+    public Executor newSerialExecutor() {
+        if (virtualClock != null)
+            throw new UnsupportedOperationException("Simulated engine has no threads");
+        return new SerialExecutor();
+    }
+
+    public boolean isSimulated() {
+        return virtualClock != null;
+    }
+
+    /**
+     * Random of the pump selection of the current thread
+     * @return ThreadLocalRandom, or the seeded random of the simulated engine
+     */
+    public Random selectionRandom() {
+        return simulationRandom == null ? ThreadLocalRandom.current() : simulationRandom;
+    }
+
+    /**
+     * @return System::nanoTime, or the virtual time of the simulated engine
+     */
+    public long nanoTime() {
+        return virtualClock == null ? System.nanoTime() : virtualClock.nanoTime();
+    }
+
+    /**
+     * Creates the pumping lane of a single pump
+     * @return
+     */
+    PumpLane newPumpLane() {
+        return virtualClock == null ? new RealTimeLane() : new VirtualLane();
+    }
+
+    /**
+     * Runs the task after the delay. The task is drained by close() like pumpings: once the engine is closing,
+     * the delay is skipped
+     * @param task
+     * @param delay
+     * @param unit
+     */
+    public synchronized void schedule(Runnable task, long delay, TimeUnit unit) {
+        taskAccepted();
+        final Runnable countedTask = () -> {
+            try {
+                task.run();
+            } finally {
+                taskFinished();
+            }
+        };
+        if (virtualClock != null) {
+            virtualClock.schedule(countedTask, unit.toNanos(delay));
+            return;
+        }
+        if (closed) {
+            executor.execute(countedTask);
+            return;
+        }
+        if (scheduler == null)
+            scheduler = new ScheduledThreadPoolExecutor(1, new PumpThreadFactory());
+        scheduler.schedule(countedTask, delay, unit);
+    }
+
+    /**
+     * Runs the scheduling of several pumpings, which are all accepted or, if the engine is already terminated, none of them:
+     * the engine is not terminated while the scheduling runs
+     * @param scheduling
+     * @throws RejectedExecutionException if the engine is terminated, the scheduling does not run then
+     */
+    void acceptAll(Runnable scheduling) {
+        taskAccepted();
+        try {
+            scheduling.run();
+        } finally {
+            taskFinished();
+        }
+    }
+
+    long nextPumpId() {
+        return pumpIdSequence.getAndIncrement();
+    }
+
+    public PumpListener getPumpListener() {
+        return pumpListener;
+    }
+
+    public void setPumpListener(PumpListener pumpListener) {
+        this.pumpListener = pumpListener == null ? PumpListener.NONE : pumpListener;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Waits till all the accepted pumpings (and the tasks they schedule) finish, rejects new pumpings and releases the threads.
+     * The owner is responsible to stop submitting new work before close
+     */
+    @Override
+    public void close() {
+        if (virtualClock != null) {
+            closeSimulated();
+            return;
+        }
+        // Delayed tasks are not waited for, they run right now
+        final List<Runnable> delayedTasks = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            if (scheduler != null) {
+                for (Runnable delayedTask : scheduler.getQueue().toArray(new Runnable[0]))
+                    if (scheduler.remove(delayedTask))
+                        delayedTasks.add(delayedTask);
+            }
+        }
+        // Before the timer shutdown, which would cancel them
+        delayedTasks.forEach(Runnable::run);
+
+        synchronized (this) {
+            boolean interrupted = false;
+            while (inFlightTasks > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            terminated = true;
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            if (scheduler != null)
+                scheduler.shutdown();
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the clock till the accepted pumpings finish: nobody else would run it
+     */
+    private void closeSimulated() {
+        synchronized (this) {
+            closed = true;
+        }
+        while (hasInFlightTasks() && virtualClock.runNext()) {
+        }
+        synchronized (this) {
+            terminated = true;
+        }
+    }
+
+    private synchronized boolean hasInFlightTasks() {
+        return inFlightTasks > 0;
+    }
+
+    private synchronized void taskAccepted() {
+        if (terminated)
+            throw new RejectedExecutionException("Pump execution engine is closed");
+        inFlightTasks++;
+    }
+
+    private synchronized void taskFinished() {
+        if (--inFlightTasks == 0)
+            notifyAll();
+    }
+
+    /**
+     * Executes tasks of a single pump serially on the shared pool
+     */
+    private class SerialExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private Runnable active;
+
+        public synchronized void execute(Runnable task) {
+            taskAccepted();
+            tasks.add(() -> {
+                try {
+                    task.run();
+                } finally {
+                    scheduleNext();
+                    taskFinished();
+                }
+            });
+            if (active == null)
+                scheduleNext();
+        }
+
+        private synchronized void scheduleNext() {
+            if ((active = tasks.poll()) != null)
+                executor.execute(active);
+        }
+    }
+
+    /**
+     * Serial pumping of a single pump
+     */
+    interface PumpLane {
+        /**
+         * Queues the pumping after the previous ones. The start runs when they are finished, if it returns false
+         * the pumping is skipped. Otherwise the pump takes the pumping time of the amount and the finish runs
+         * @param start
+         * @param gasPump
+         * @param amountInLiters
+         * @param finish
+         */
+        void pump(BooleanSupplier start, GasPump gasPump, double amountInLiters, Runnable finish);
+    }
+
+    /**
+     * Pumps by GasPump::pumpGas on the serial executor of the pump
+     */
+    private class RealTimeLane implements PumpLane {
+        private final Executor serialExecutor = new SerialExecutor();
+
+        @Override
+        public void pump(BooleanSupplier start, GasPump gasPump, double amountInLiters, Runnable finish) {
+            serialExecutor.execute(() -> {
+                if (!start.getAsBoolean())
+                    return;
+                try {
+                    gasPump.pumpGas(amountInLiters);
+                } finally {
+                    finish.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * Pumps in the virtual time: the start and the finish are the events of the clock. The pumping time is truncated
+     * to milliseconds like the sleep of GasPump::pumpGas, so the simulation matches the real time.
+     * Used by the simulation thread only
+     */
+    private class VirtualLane implements PumpLane {
+        private final Queue<Runnable> pumpings = new ArrayDeque<>();
+        private boolean busy = false;
+
+        @Override
+        public void pump(BooleanSupplier start, GasPump gasPump, double amountInLiters, Runnable finish) {
+            taskAccepted();
+            final long pumpingNanos = TimeUnit.MILLISECONDS.toNanos((long) (amountInLiters * 100));
+            pumpings.add(() -> {
+                if (!start.getAsBoolean()) {
+                    pumpingDone();
+                    return;
+                }
+                virtualClock.schedule(() -> {
+                    try {
+                        finish.run();
+                    } finally {
+                        pumpingDone();
+                    }
+                }, pumpingNanos);
+            });
+            if (!busy)
+                startNext();
+        }
+
+        private void pumpingDone() {
+            taskFinished();
+            startNext();
+        }
+
+        /**
+         * The start is an event, so it runs after the caller like in the real time
+         */
+        private void startNext() {
+            final Runnable next = pumpings.poll();
+            busy = next != null;
+            if (next != null)
+                virtualClock.schedule(next, 0);
+        }
+    }
+
+    /**
+     * Daemon threads, so the forgotten station does not prevent JVM shutdown
+     */
+    private static class PumpThreadFactory implements ThreadFactory {
+        private static final AtomicInteger threadCounter = new AtomicInteger(0);
+
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "pump-worker-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
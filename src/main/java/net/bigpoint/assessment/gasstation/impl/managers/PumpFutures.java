@@ -0,0 +1,52 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Helpers for the pumping futures shared by the pump managers and the gas station
+ */
+public final class PumpFutures {
+
+    private PumpFutures() {}
+
+    /**
+     * Future which is already completed with the given exception
+     * @param throwable
+     * @return
+     */
+    public static <T> CompletableFuture<T> failed(Throwable throwable) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    /**
+     * Waits till pumping finish in the current thread. Rejection of the purchase is rethrown as is
+     * @param pumpingFuture
+     * @throws NotEnoughGasException
+     */
+    public static void await(CompletableFuture<?> pumpingFuture) throws NotEnoughGasException {
+        try {
+            pumpingFuture.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof NotEnoughGasException)
+                throw (NotEnoughGasException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Strips the wrappers added by the dependent stages of CompletableFuture
+     * @param throwable
+     * @return
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        while ((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null)
+            throwable = throwable.getCause();
+        return throwable;
+    }
+}
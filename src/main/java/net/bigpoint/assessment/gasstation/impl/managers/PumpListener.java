@@ -0,0 +1,31 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+/**
+ * Callbacks of the pump workers about the pumping progress. Called in the pumping threads, so should be cheap.
+ * The worker identifies the pump (PumpWorker::getId) and its gas type
+ */
+public interface PumpListener {
+    PumpListener NONE = new PumpListener() {};
+
+    /**
+     * Pumping is reserved and queued on the pump worker
+     */
+    default void pumpingScheduled(PumpWorker pumpWorker, double amountInLiters) {}
+
+    /**
+     * Scheduled pumping is cancelled before it was started
+     */
+    default void pumpingCancelled(PumpWorker pumpWorker, double amountInLiters) {}
+
+    /**
+     * Pumping is taken from the worker queue
+     * @param queueWaitNanos time in the worker queue
+     */
+    default void pumpingStarted(PumpWorker pumpWorker, long queueWaitNanos) {}
+
+    /**
+     * Pumping is finished
+     * @param pumpingNanos time of the actual pumping
+     */
+    default void pumpingFinished(PumpWorker pumpWorker, double amountInLiters, long pumpingNanos) {}
+}
@@ -3,12 +3,216 @@ package net.bigpoint.assessment.gasstation.impl.managers;
 import net.bigpoint.assessment.gasstation.GasPump;
 import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Created by aaalekseev on 06-Aug-16.
  * Unified interface for the different pump manager strategies
  */
 public interface PumpManager {
-    void pumpGas(double amountInLiters) throws NotEnoughGasException;
+    /**
+     * Result codes of the tryPumpGas and the trySellGas
+     */
+    int PUMPED = 0;
+    int NOT_ENOUGH_GAS = 1;
+    int SHED = 2;
+    int OUTBID = 3;
+
+    /**
+     * Pumps gas and waits till pumping finish in the current thread
+     * @param amountInLiters
+     * @throws NotEnoughGasException
+     */
+    default void pumpGas(double amountInLiters) throws NotEnoughGasException {
+        PumpFutures.await(pumpGasAsync(amountInLiters));
+    }
+
+    /**
+     * Exception-free version of the pumpGas. Strategies implement it natively, so the rejection allocates nothing
+     * @param amountInLiters
+     * @return PUMPED, NOT_ENOUGH_GAS or SHED by the admission control
+     */
+    default int tryPumpGas(double amountInLiters) {
+        try {
+            pumpGas(amountInLiters);
+            return PUMPED;
+        } catch (OrderShedException e) {
+            return SHED;
+        } catch (NotEnoughGasException e) {
+            return NOT_ENOUGH_GAS;
+        }
+    }
+
+    /**
+     * Selects the pump and schedules pumping without blocking of the current thread.
+     * Returned future completes when pumping is finished, or exceptionally with NotEnoughGasException
+     * @param amountInLiters
+     * @return
+     */
+    CompletableFuture<Void> pumpGasAsync(double amountInLiters);
+
+    /**
+     * Version of the pumpGasAsync with the deadline. The order, which is not expected to finish in time, is shed
+     * immediately with OrderShedException. The admitted order, which still can not start in time, is skipped
+     * at its turn: returned future completes exceptionally with TimeoutException and the reservation is released
+     * @param amountInLiters
+     * @param deadlineNanos System::nanoTime of the deadline
+     * @return
+     * @throws UnsupportedOperationException if the strategy has no admission control
+     */
+    default CompletableFuture<Void> pumpGasAsync(double amountInLiters, long deadlineNanos) {
+        throw new UnsupportedOperationException("Deadlines are not supported by the pump manager");
+    }
+
+    /**
+     * Limits the backlog of every pump. Orders, which would exceed it, are shed with OrderShedException
+     * @param maxQueuedPumpings the most scheduled, but not finished pumpings per pump
+     * @param maxBacklogInLiters the most reserved, but not pumped gas per pump
+     * @throws UnsupportedOperationException if the strategy has no admission control
+     */
+    default void setAdmissionLimits(int maxQueuedPumpings, double maxBacklogInLiters) {
+        throw new UnsupportedOperationException("Admission control is not supported by the pump manager");
+    }
+
+    /**
+     * Lets one order be reserved on several pumps at once and pumped in parallel slices.
+     * The order completes when all the slices are pumped, its slices are reserved all or none
+     * @param maxSlices the most pumps serving one order, 1 switches the split fulfilment off
+     * @param minSliceInLiters the smallest slice worth a separate pump
+     * @throws UnsupportedOperationException if the strategy can not split orders
+     */
+    default void setSplitFulfilment(int maxSlices, double minSliceInLiters) {
+        throw new UnsupportedOperationException("Split fulfilment is not supported by the pump manager");
+    }
+
+    /**
+     * Sells gas at the station price. Strategies, which price the purchase themselves, override it.
+     * Returned future completes with the charged price per liter when pumping is finished,
+     * or exceptionally with NotEnoughGasException or GasTooExpensiveException
+     * @param amountInLiters
+     * @param pricePerLiter current station price
+     * @param maxPricePerLiter the maximum price the customer is willing to pay
+     * @return
+     */
+    default CompletableFuture<Double> sellGasAsync(double amountInLiters, double pricePerLiter, double maxPricePerLiter) {
+        return pumpGasAsync(amountInLiters).thenApply(v -> pricePerLiter);
+    }
+
+    /**
+     * Exception-free version of the sellGasAsync, which waits till pumping finish in the current thread.
+     * Strategies, which price the purchase themselves, override it
+     * @param amountInLiters
+     * @param pricePerLiter current station price
+     * @param maxPricePerLiter the maximum price the customer is willing to pay
+     * @return the charged price per liter, or the negated result code: -NOT_ENOUGH_GAS, -SHED or -OUTBID
+     */
+    default double trySellGas(double amountInLiters, double pricePerLiter, double maxPricePerLiter) {
+        final int pumpingResult = tryPumpGas(amountInLiters);
+        return pumpingResult == PUMPED ? pricePerLiter : -pumpingResult;
+    }
+
+    /**
+     * Selects the pumps for all the amounts and schedules the pumpings without waiting for any of them.
+     * Strategies override it to take their selection lock once per batch
+     * @param amountsInLiters
+     * @return pumping futures in the order of the amounts, which fail like the pumpGasAsync ones
+     */
+    default List<CompletableFuture<Void>> pumpGasBatch(double[] amountsInLiters) {
+        final List<CompletableFuture<Void>> pumpings = new ArrayList<>(amountsInLiters.length);
+        for (double amountInLiters : amountsInLiters)
+            pumpings.add(pumpGasAsync(amountInLiters));
+        return pumpings;
+    }
+
+    /**
+     * Batch version of the sellGasAsync. Strategies, which price the purchase themselves, override it
+     * @param amountsInLiters
+     * @param pricePerLiter current station price
+     * @param maxPricesPerLiter the maximum prices the customers are willing to pay
+     * @return futures of the charged prices per liter in the order of the amounts
+     */
+    default List<CompletableFuture<Double>> sellGasBatch(double[] amountsInLiters, double pricePerLiter, double[] maxPricesPerLiter) {
+        final List<CompletableFuture<Void>> pumpings = pumpGasBatch(amountsInLiters);
+        final List<CompletableFuture<Double>> sales = new ArrayList<>(pumpings.size());
+        for (CompletableFuture<Void> pumping : pumpings)
+            sales.add(pumping.thenApply(v -> pricePerLiter));
+        return sales;
+    }
+
+    /**
+     * Reserves the amount on a pump without scheduling the pumping, for the two-phase purchase:
+     * the gas is deducted from the remaining amount till pumpReservedGas or releaseGas
+     * @param amountInLiters
+     * @return worker holding the reservation, or null if no pump has enough gas
+     * @throws UnsupportedOperationException if the strategy can not reserve gas
+     */
+    default PumpWorker reserveGas(double amountInLiters) {
+        throw new UnsupportedOperationException("Reservations are not supported by the pump manager");
+    }
+
+    /**
+     * Schedules pumping of the amount reserved by reserveGas on the same pump
+     * @param pumpWorker
+     * @param amountInLiters
+     * @return future, which completes when pumping is finished
+     */
+    default CompletableFuture<Void> pumpReservedGas(PumpWorker pumpWorker, double amountInLiters) {
+        return pumpWorker.pumpReserved(amountInLiters);
+    }
+
+    /**
+     * Returns the amount reserved by reserveGas to the pump. Strategies, which order the pumps by the remaining amount,
+     * override it to reorder the pump
+     * @param pumpWorker
+     * @param amountInLiters
+     */
+    default void releaseGas(PumpWorker pumpWorker, double amountInLiters) {
+        pumpWorker.release(amountInLiters);
+    }
+
+    /**
+     * Add gas pump to the strategy structures
+     * @param gasPump
+     * @return worker of the pump
+     */
+    PumpWorker addGasPump(GasPump gasPump);
+
+    /**
+     * Bulk addition of the gas pumps. Strategies with the costly per pump addition override it
+     * @param gasPumps
+     * @return workers of the pumps in the same order
+     */
+    default List<PumpWorker> addGasPumps(Collection<GasPump> gasPumps) {
+        final List<PumpWorker> pumpWorkers = new ArrayList<>(gasPumps.size());
+        for (GasPump gasPump : gasPumps)
+            pumpWorkers.add(addGasPump(gasPump));
+        return pumpWorkers;
+    }
+
+    /**
+     * Adds the delivered gas to the pump of the manager. Strategies, which order the pumps by the remaining amount,
+     * override it to reorder the pump
+     * @param pumpWorker
+     * @param amountInLiters
+     */
+    default void refillPump(PumpWorker pumpWorker, double amountInLiters) {
+        pumpWorker.refill(amountInLiters);
+    }
+
+    /**
+     * Takes over the workers of the replaced manager of the same gas type.
+     * Their scheduled pumpings and reservations stay, so the orders in flight finish on the same pumps
+     * @param pumpWorkers
+     */
+    void adoptPumpWorkers(Collection<PumpWorker> pumpWorkers);
 
-    void addGasPump(GasPump gasPump);
+    /**
+     * Called once the manager is replaced by another one, which took over its workers.
+     * Orders accepted before are still served: the strategies, which hold orders back, serve them now
+     */
+    default void retire() {
+    }
 }
@@ -3,16 +3,27 @@ package net.bigpoint.assessment.gasstation.impl.managers;
 /**
  * Created by aaalekseev on 06-Aug-16.
  * Encapsulates all the implemented strategies for a gas station.
- * Contains full classloader paths for the runtime instantiation
+ * Every strategy is a factory of its manager. Contains full classloader paths for the logs and the tools
  */
-public enum PumpManagerEnum {
-    SteadyPumpManager("net.bigpoint.assessment.gasstation.impl.managers.SteadyPumpManager"),
-    SteadyBlockingPumpManager("net.bigpoint.assessment.gasstation.impl.managers.SteadyBlockingPumpManager");
+public enum PumpManagerEnum implements PumpManagerFactory {
+    SteadyPumpManager("net.bigpoint.assessment.gasstation.impl.managers.SteadyPumpManager", SteadyPumpManager::new),
+    SteadyBlockingPumpManager("net.bigpoint.assessment.gasstation.impl.managers.SteadyBlockingPumpManager", SteadyBlockingPumpManager::new),
+    MaxSalesPumpManager("net.bigpoint.assessment.gasstation.impl.managers.MaxSalesPumpManager", MaxSalesPumpManager::new),
+    BiddingPumpManager("net.bigpoint.assessment.gasstation.impl.managers.BiddingPumpManager", BiddingPumpManager::new),
+    ShortestCompletionPumpManager("net.bigpoint.assessment.gasstation.impl.managers.ShortestCompletionPumpManager", ShortestCompletionPumpManager::new);
 
     private final String text;
-    PumpManagerEnum(final String text) {
+    private final PumpManagerFactory factory;
+    PumpManagerEnum(final String text, final PumpManagerFactory factory) {
         this.text = text;
+        this.factory = factory;
     }
+
+    @Override
+    public PumpManager create(PumpExecutionEngine executionEngine) {
+        return factory.create(executionEngine);
+    }
+
     @Override
     public String toString() {
         return text;
@@ -0,0 +1,14 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+/**
+ * Creates the pump manager of one gas type. The station asks the factory of the gas type on its first pump
+ * and on every strategy switch, so a factory may configure the manager or pick the strategy at runtime
+ */
+@FunctionalInterface
+public interface PumpManagerFactory {
+    /**
+     * @param executionEngine shared engine of the station
+     * @return new manager without pumps
+     */
+    PumpManager create(PumpExecutionEngine executionEngine);
+}
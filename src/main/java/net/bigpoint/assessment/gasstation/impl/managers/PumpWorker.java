@@ -1,49 +1,247 @@
 package net.bigpoint.assessment.gasstation.impl.managers;
 
 import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
 import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by aaalekseev on 06-Aug-16.
  * Represents an individual worker with a single pump
  */
 public class PumpWorker {
+    /**
+     * GasPump::pumpGas takes 100 ms per liter
+     */
+    public static final long PUMPING_NANOS_PER_LITER = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Sequence number of the pump in its engine: pumps of a station are numbered from 0 in the order of addition
+     */
+    private final long id;
     /**
      * Current pump
      */
     private final GasPump gasPump;
     /**
-     * Singleton for the pumping from the current pump
+     * Serial pumping from the current pump
+     */
+    private final PumpExecutionEngine.PumpLane pumpLane;
+    /**
+     * Engine of the executor, notifies the listener about pumping progress
+     */
+    private final PumpExecutionEngine executionEngine;
+    /**
+     * Remaining amount in the current pump AFTER all the scheduled pumpings. Raw bits of the double for CAS updates
      */
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicLong remainingGasBits;
     /**
-     * Remaining amount in the current pump AFTER all the scheduled pumpings
+     * Amount in the current pump after all the FINISHED pumpings. Written by the pumping thread only.
+     * Tracked by the worker, because the simulated pumping does not call GasPump::pumpGas
      */
-    private volatile double remainingGasAmount;
+    private volatile double physicalRemainingGas;
+    /**
+     * Gas delivered by the refills. GasPump can not be refilled, so its amount is the delivered gas short.
+     * Written under the worker lock
+     */
+    private volatile double refilledGas = 0;
+    /**
+     * Number of the scheduled, but not finished pumpings
+     */
+    private final AtomicInteger queuedPumpings = new AtomicInteger(0);
+    /**
+     * Pumping in progress: its amount, 0 if the pump is idle, and its start. Written by the pumping thread only
+     */
+    private volatile double pumpingInLiters = 0;
+    private volatile long pumpingStartNanos;
 
-    PumpWorker(GasPump pump) {
+    PumpWorker(GasPump pump, PumpExecutionEngine executionEngine) {
+        this.id = executionEngine.nextPumpId();
         this.gasPump = pump;
-        this.remainingGasAmount = pump.getRemainingAmount();
+        this.pumpLane = executionEngine.newPumpLane();
+        this.executionEngine = executionEngine;
+        this.remainingGasBits = new AtomicLong(Double.doubleToRawLongBits(pump.getRemainingAmount()));
+        this.physicalRemainingGas = pump.getRemainingAmount();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public GasType getGasType() {
+        return gasPump.getGasType();
+    }
+
+    /**
+     * @return remaining amount after all the scheduled pumpings
+     */
+    public double getRemainingGas() {
+        return Double.longBitsToDouble(remainingGasBits.get());
+    }
+
+    /**
+     * @return amount in the pump after all the finished pumpings
+     */
+    public double getPhysicalRemainingGas() {
+        return physicalRemainingGas + refilledGas;
+    }
+
+    /**
+     * @return number of the scheduled, but not finished pumpings
+     */
+    public int getQueuedPumpings() {
+        return queuedPumpings.get();
+    }
+
+    /**
+     * @return amount reserved by the scheduled, but not finished pumpings
+     */
+    public double getBacklogInLiters() {
+        return Math.max(0, getPhysicalRemainingGas() - getRemainingGas());
     }
 
-    double getRemainingGas() {
-        return remainingGasAmount;
+    /**
+     * Pessimistic estimate: the pumping in progress is counted as a whole
+     * @param amountInLiters
+     * @return System::nanoTime, when pumping of the amount would finish if scheduled right now
+     */
+    public long estimateFinishNanos(double amountInLiters) {
+        return executionEngine.nanoTime() + (long) ((getBacklogInLiters() + amountInLiters) * PUMPING_NANOS_PER_LITER);
+    }
+
+    /**
+     * Expected time till the pump finishes all the scheduled pumpings: the backlog less the progress
+     * of the pumping in progress. Pumping time is proportional to the liters
+     * @return nanoseconds, 0 for an idle pump
+     */
+    public long estimateBacklogNanos() {
+        long backlogNanos = (long) (getBacklogInLiters() * PUMPING_NANOS_PER_LITER);
+        final double currentPumping = pumpingInLiters;
+        if (currentPumping > 0) {
+            final long pumpedNanos = executionEngine.nanoTime() - pumpingStartNanos;
+            backlogNanos -= Math.min(pumpedNanos, (long) (currentPumping * PUMPING_NANOS_PER_LITER));
+        }
+        return Math.max(0, backlogNanos);
+    }
+
+    /**
+     * Atomically deducts the amount from the remaining gas. Thread-safe
+     * @param amountInLiters
+     * @return false if the remaining amount is not enough
+     */
+    boolean tryReserve(double amountInLiters) {
+        while (true) {
+            final long remainingBits = remainingGasBits.get();
+            final double remainingGas = Double.longBitsToDouble(remainingBits);
+            if (remainingGas < amountInLiters)
+                return false;
+            if (remainingGasBits.compareAndSet(remainingBits, Double.doubleToRawLongBits(remainingGas - amountInLiters)))
+                return true;
+        }
     }
 
     /**
-     * Method for scheduling of gas purchase. It is NOT thread-safe and should be synchronized by the caller
+     * Returns the reserved amount back to the remaining gas. Thread-safe
      * @param amountInLiters
-     * @return
      */
-    Future schedulePumpGas(double amountInLiters) throws NotEnoughGasException {
-        if (remainingGasAmount < amountInLiters)
+    void release(double amountInLiters) {
+        while (true) {
+            final long remainingBits = remainingGasBits.get();
+            final double remainingGas = Double.longBitsToDouble(remainingBits);
+            if (remainingGasBits.compareAndSet(remainingBits, Double.doubleToRawLongBits(remainingGas + amountInLiters)))
+                return;
+        }
+    }
+
+    /**
+     * Adds the delivered gas to the pump. It is available for the new purchases at once.
+     * Thread-safe, but the callers ordering the workers by the remaining amount should reorder the worker
+     * @param amountInLiters
+     */
+    void refill(double amountInLiters) {
+        // Physical amount first, so the remaining amount never exceeds it
+        synchronized (this) {
+            refilledGas += amountInLiters;
+        }
+        release(amountInLiters);
+    }
+
+    /**
+     * Method for scheduling of gas purchase. It is thread-safe, but the callers ordering the workers by the remaining amount
+     * should synchronize it with the ordering
+     * @param amountInLiters
+     * @return future, which completes when pumping is finished
+     */
+    CompletableFuture<Void> schedulePumpGas(double amountInLiters) throws NotEnoughGasException {
+        if (!tryReserve(amountInLiters))
             throw new NotEnoughGasException();
+        return pumpReserved(amountInLiters);
+    }
+
+    /**
+     * Schedules pumping of the amount already deducted by tryReserve
+     * @param amountInLiters
+     * @return future, which completes when pumping is finished
+     */
+    CompletableFuture<Void> pumpReserved(double amountInLiters) {
+        return pumpReserved(amountInLiters, false, 0);
+    }
+
+    /**
+     * Schedules pumping of the amount already deducted by tryReserve, which should finish before the deadline.
+     * If the pumping can not start in time, it is skipped and the reservation is released
+     * @param amountInLiters
+     * @param deadlineNanos System::nanoTime of the deadline
+     * @return future, which completes when pumping is finished, or exceptionally with TimeoutException
+     */
+    CompletableFuture<Void> pumpReserved(double amountInLiters, long deadlineNanos) {
+        return pumpReserved(amountInLiters, true, deadlineNanos - (long) (amountInLiters * PUMPING_NANOS_PER_LITER));
+    }
+
+    private CompletableFuture<Void> pumpReserved(double amountInLiters, boolean timed, long startDeadlineNanos) {
+        final PumpListener pumpListener = executionEngine.getPumpListener();
+        final long scheduledTime = executionEngine.nanoTime();
+        final CompletableFuture<Void> pumping = new CompletableFuture<>();
+        queuedPumpings.getAndIncrement();
+        pumpListener.pumpingScheduled(this, amountInLiters);
+        try {
+            pumpLane.pump(() -> {
+                final long startTime = executionEngine.nanoTime();
+                if (timed && startTime - startDeadlineNanos > 0) {
+                    cancelReserved(pumpListener, amountInLiters);
+                    pumping.completeExceptionally(new TimeoutException("Pumping can not finish before the deadline"));
+                    return false;
+                }
+                pumpListener.pumpingStarted(this, startTime - scheduledTime);
+                pumpingStartNanos = startTime;
+                pumpingInLiters = amountInLiters;
+                return true;
+            }, gasPump, amountInLiters, () -> {
+                try {
+                    physicalRemainingGas -= amountInLiters;
+                    pumpingInLiters = 0;
+                    queuedPumpings.getAndDecrement();
+                    pumpListener.pumpingFinished(this, amountInLiters, executionEngine.nanoTime() - pumpingStartNanos);
+                } finally {
+                    pumping.complete(null);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Closed engine rejection should not lose the gas
+            cancelReserved(pumpListener, amountInLiters);
+            throw e;
+        }
+        return pumping;
+    }
 
-        remainingGasAmount -= amountInLiters;
-        return executor.submit(() -> gasPump.pumpGas(amountInLiters));
+    private void cancelReserved(PumpListener pumpListener, double amountInLiters) {
+        queuedPumpings.getAndDecrement();
+        pumpListener.pumpingCancelled(this, amountInLiters);
+        release(amountInLiters);
     }
 }
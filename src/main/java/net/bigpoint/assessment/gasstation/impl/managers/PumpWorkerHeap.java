@@ -0,0 +1,191 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Indexed binary heap of the pump workers with the highest remaining amount on top.
+ * A worker is ordered by the remaining amount taken on its add or update, so the amount changed outside of the heap
+ * (a refill, a reservation of another manager) never breaks the heap order. The owner calls update for the changed
+ * worker, which finds its node in O(1) and moves it up or down in O(log n). Equal amounts are ordered by the worker id.
+ * A polled worker keeps its detached node, so polling and adding it back allocates nothing. Not thread-safe, guarded by the owner
+ */
+final class PumpWorkerHeap {
+    private Node[] nodes = new Node[16];
+    private int size = 0;
+    /**
+     * Node of every worker in the heap and of the polled workers. Changed by the first add and by remove only
+     */
+    private final Map<PumpWorker, Node> index = new HashMap<>();
+
+    /**
+     * Adds the worker, or updates it if it is already in the heap
+     * @param pumpWorker
+     */
+    void add(PumpWorker pumpWorker) {
+        if (update(pumpWorker))
+            return;
+        Node node = index.get(pumpWorker);
+        if (node == null) {
+            node = new Node(pumpWorker);
+            index.put(pumpWorker, node);
+        }
+        if (size == nodes.length)
+            nodes = Arrays.copyOf(nodes, size * 2);
+        node.remainingGas = pumpWorker.getRemainingGas();
+        node.position = size++;
+        nodes[node.position] = node;
+        siftUp(node);
+    }
+
+    /**
+     * @return worker with the highest remaining amount, or null if the heap is empty
+     */
+    PumpWorker peek() {
+        return size == 0 ? null : nodes[0].pumpWorker;
+    }
+
+    /**
+     * Removes the worker with the highest remaining amount
+     * @return the worker, or null if the heap is empty
+     */
+    PumpWorker poll() {
+        if (size == 0)
+            return null;
+        final PumpWorker pumpWorker = nodes[0].pumpWorker;
+        detachAt(0);
+        return pumpWorker;
+    }
+
+    /**
+     * Removes the workers with the highest remaining amounts
+     * @param pumpWorkers collection for the removed workers, the highest first
+     * @param maxWorkers
+     * @return number of the removed workers
+     */
+    int drainTo(Collection<? super PumpWorker> pumpWorkers, int maxWorkers) {
+        int drained = 0;
+        for (; drained < maxWorkers && size > 0; drained++)
+            pumpWorkers.add(poll());
+        return drained;
+    }
+
+    /**
+     * @param pumpWorker
+     * @return false if the worker is not in the heap
+     */
+    boolean remove(PumpWorker pumpWorker) {
+        final Node node = index.remove(pumpWorker);
+        if (node == null || node.position < 0)
+            return false;
+        detachAt(node.position);
+        return true;
+    }
+
+    /**
+     * Reorders the worker by its current remaining amount
+     * @param pumpWorker
+     * @return false if the worker is not in the heap
+     */
+    boolean update(PumpWorker pumpWorker) {
+        final Node node = index.get(pumpWorker);
+        if (node == null || node.position < 0)
+            return false;
+        final double previousGas = node.remainingGas;
+        node.remainingGas = pumpWorker.getRemainingGas();
+        if (node.remainingGas > previousGas)
+            siftUp(node);
+        else if (node.remainingGas < previousGas)
+            siftDown(node);
+        return true;
+    }
+
+    boolean contains(PumpWorker pumpWorker) {
+        final Node node = index.get(pumpWorker);
+        return node != null && node.position >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void detachAt(int position) {
+        final Node removed = nodes[position];
+        removed.position = -1;
+        final Node last = nodes[--size];
+        nodes[size] = null;
+        if (last == removed)
+            return;
+        last.position = position;
+        nodes[position] = last;
+        // The last node may belong to either side of the removed one
+        siftUp(last);
+        if (last.position == position)
+            siftDown(last);
+    }
+
+    private void siftUp(Node node) {
+        int position = node.position;
+        while (position > 0) {
+            final int parentPosition = (position - 1) >>> 1;
+            final Node parent = nodes[parentPosition];
+            if (!node.isHigherThan(parent))
+                break;
+            parent.position = position;
+            nodes[position] = parent;
+            position = parentPosition;
+        }
+        node.position = position;
+        nodes[position] = node;
+    }
+
+    private void siftDown(Node node) {
+        int position = node.position;
+        final int half = size >>> 1;
+        while (position < half) {
+            int childPosition = 2 * position + 1;
+            Node child = nodes[childPosition];
+            final int rightPosition = childPosition + 1;
+            if (rightPosition < size && nodes[rightPosition].isHigherThan(child)) {
+                childPosition = rightPosition;
+                child = nodes[rightPosition];
+            }
+            if (!child.isHigherThan(node))
+                break;
+            child.position = position;
+            nodes[position] = child;
+            position = childPosition;
+        }
+        node.position = position;
+        nodes[position] = node;
+    }
+
+    private static final class Node {
+        private final PumpWorker pumpWorker;
+        private final long workerId;
+        /**
+         * Remaining amount of the worker on the latest add or update: the key of the heap
+         */
+        private double remainingGas;
+        /**
+         * Position in the heap, -1 for the polled worker
+         */
+        private int position;
+
+        Node(PumpWorker pumpWorker) {
+            this.pumpWorker = pumpWorker;
+            this.workerId = pumpWorker.getId();
+            this.remainingGas = pumpWorker.getRemainingGas();
+        }
+
+        boolean isHigherThan(Node other) {
+            return remainingGas > other.remainingGas || (remainingGas == other.remainingGas && workerId < other.workerId);
+        }
+    }
+}
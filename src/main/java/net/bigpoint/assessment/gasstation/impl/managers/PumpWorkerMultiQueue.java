@@ -0,0 +1,261 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Relaxed priority queue of the pump workers (MultiQueue): k PumpWorkerHeap shards, each with its own lock
+ * and the remaining amount of its top worker published in a volatile field. A worker lives in its home shard,
+ * assigned round-robin on the first add, so the refills and the releases find it in O(1).
+ * The selection samples two random shards and takes the better top (choice of two), so the buyers spread over
+ * the locks and the selected pump is one of the highest ones, not necessarily the highest. A contended shard
+ * is skipped instead of waited for, and so is a shard, which pumps are all out (busy): when the samples
+ * find no pump with enough gas, the tops of all the shards are scanned, and the request fails only if no shard
+ * has a pump with enough gas. Small queues (fewer than EXACT_SELECTION_PUMPS workers) are always scanned,
+ * so they select the highest pump like a single heap
+ */
+final class PumpWorkerMultiQueue {
+    static final int DEFAULT_SHARDS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    static final int EXACT_SELECTION_PUMPS = 64;
+    /**
+     * Samples of two shards before the scan of all the shards
+     */
+    private static final int SAMPLING_ATTEMPTS = 4;
+    private static final double EMPTY = Double.NEGATIVE_INFINITY;
+
+    private final Shard[] shards;
+    private final ConcurrentHashMap<PumpWorker, Shard> homeShards = new ConcurrentHashMap<>();
+    private final AtomicInteger workerCounter = new AtomicInteger(0);
+    /**
+     * Source of the random shard samples
+     */
+    private final PumpExecutionEngine executionEngine;
+
+    /**
+     * @param shardCount 1 is a single heap with the exact selection
+     * @param executionEngine
+     */
+    PumpWorkerMultiQueue(int shardCount, PumpExecutionEngine executionEngine) {
+        if (shardCount < 1)
+            throw new IllegalArgumentException("Inappropriate number of shards " + shardCount);
+        this.executionEngine = executionEngine;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++)
+            shards[i] = new Shard();
+    }
+
+    int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Adds the worker to its home shard, or updates it if it is already there
+     * @param pumpWorker
+     */
+    void add(PumpWorker pumpWorker) {
+        final Shard shard = homeShard(pumpWorker);
+        shard.lock.lock();
+        try {
+            shard.heap.add(pumpWorker);
+            shard.publishTop();
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes one of the highest workers, which has at least the amount
+     * @param amountInLiters
+     * @return the worker, or null if no worker in the queue has the amount
+     */
+    PumpWorker poll(double amountInLiters) {
+        return select(amountInLiters, true);
+    }
+
+    /**
+     * Batch version of the poll. The shard locks are taken once for the whole batch, in the order of the shards,
+     * the other operations hold one lock at a time. Every amount gets the highest worker with enough gas
+     * @param amountsInLiters
+     * @return workers in the order of the amounts, null for the amount, which no worker in the queue has
+     */
+    PumpWorker[] pollBatch(double[] amountsInLiters) {
+        final PumpWorker[] pumpWorkers = new PumpWorker[amountsInLiters.length];
+        int locked = 0;
+        try {
+            for (; locked < shards.length; locked++)
+                shards[locked].lock.lock();
+            for (int i = 0; i < amountsInLiters.length; i++) {
+                for (Shard best = bestShard(amountsInLiters[i]); best != null && pumpWorkers[i] == null; best = bestShard(amountsInLiters[i]))
+                    pumpWorkers[i] = best.select(amountsInLiters[i], true);
+            }
+        } finally {
+            for (int i = 0; i < locked; i++)
+                shards[i].lock.unlock();
+        }
+        return pumpWorkers;
+    }
+
+    /**
+     * Reserves the amount on one of the highest workers, which stays in the queue at its new place
+     * @param amountInLiters
+     * @return the worker, or null if no worker in the queue has the amount
+     */
+    PumpWorker reserve(double amountInLiters) {
+        return select(amountInLiters, false);
+    }
+
+    /**
+     * Releases the reserved amount of the worker and reorders it, if it is in the queue
+     * @param pumpWorker
+     * @param amountInLiters
+     */
+    void release(PumpWorker pumpWorker, double amountInLiters) {
+        final Shard shard = homeShard(pumpWorker);
+        shard.lock.lock();
+        try {
+            pumpWorker.release(amountInLiters);
+            shard.update(pumpWorker);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Refills the worker and reorders it, if it is in the queue
+     * @param pumpWorker
+     * @param amountInLiters
+     */
+    void refill(PumpWorker pumpWorker, double amountInLiters) {
+        final Shard shard = homeShard(pumpWorker);
+        shard.lock.lock();
+        try {
+            pumpWorker.refill(amountInLiters);
+            shard.update(pumpWorker);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * @return workers in the queue, the polled ones are not counted
+     */
+    int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                size += shard.heap.size();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private PumpWorker select(double amountInLiters, boolean poll) {
+        if (shards.length > 1 && workerCounter.get() >= EXACT_SELECTION_PUMPS) {
+            final Random random = executionEngine.selectionRandom();
+            for (int attempt = 0; attempt < SAMPLING_ATTEMPTS; attempt++) {
+                final Shard first = shards[random.nextInt(shards.length)];
+                final Shard second = shards[random.nextInt(shards.length)];
+                final Shard better = first.top >= second.top ? first : second;
+                final Shard worse = better == first ? second : first;
+                PumpWorker pumpWorker = better.trySelect(amountInLiters, poll);
+                if (pumpWorker == null)
+                    pumpWorker = worse.trySelect(amountInLiters, poll);
+                if (pumpWorker != null)
+                    return pumpWorker;
+            }
+        }
+        // The best of all the tops. A stale top is corrected by the failed selection, so the scan ends
+        while (true) {
+            final Shard best = bestShard(amountInLiters);
+            if (best == null)
+                return null;
+            best.lock.lock();
+            try {
+                final PumpWorker pumpWorker = best.select(amountInLiters, poll);
+                if (pumpWorker != null)
+                    return pumpWorker;
+            } finally {
+                best.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return shard with the highest top, which has the amount, or null
+     */
+    private Shard bestShard(double amountInLiters) {
+        Shard best = null;
+        for (Shard shard : shards)
+            if (shard.top >= amountInLiters && (best == null || shard.top > best.top))
+                best = shard;
+        return best;
+    }
+
+    private Shard homeShard(PumpWorker pumpWorker) {
+        final Shard shard = homeShards.get(pumpWorker);
+        if (shard != null)
+            return shard;
+        return homeShards.computeIfAbsent(pumpWorker, w -> shards[Math.floorMod(workerCounter.getAndIncrement(), shards.length)]);
+    }
+
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        /**
+         * Guarded by the lock
+         */
+        private final PumpWorkerHeap heap = new PumpWorkerHeap();
+        /**
+         * Remaining amount of the top worker, EMPTY if all the workers of the shard are out
+         */
+        private volatile double top = EMPTY;
+
+        /**
+         * Skips the shard, which is contended or has no worker with the amount
+         */
+        PumpWorker trySelect(double amountInLiters, boolean poll) {
+            if (top < amountInLiters || !lock.tryLock())
+                return null;
+            try {
+                return select(amountInLiters, poll);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * The top worker, if it has the amount. Guarded by the lock
+         */
+        PumpWorker select(double amountInLiters, boolean poll) {
+            final PumpWorker highest = heap.peek();
+            PumpWorker selected = null;
+            if (highest != null && highest.getRemainingGas() >= amountInLiters) {
+                if (poll) {
+                    selected = heap.poll();
+                } else if (highest.tryReserve(amountInLiters)) {
+                    heap.update(highest);
+                    selected = highest;
+                }
+            }
+            publishTop();
+            return selected;
+        }
+
+        /**
+         * Guarded by the lock
+         */
+        void update(PumpWorker pumpWorker) {
+            if (heap.update(pumpWorker))
+                publishTop();
+        }
+
+        void publishTop() {
+            final PumpWorker highest = heap.peek();
+            top = highest == null ? EMPTY : highest.getRemainingGas();
+        }
+    }
+}
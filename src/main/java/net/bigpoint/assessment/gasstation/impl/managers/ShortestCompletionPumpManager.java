@@ -0,0 +1,161 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Latency-oriented strategy: every order goes to the pump with enough gas, which is expected to finish it first.
+ * Pumping time is proportional to the liters, so the expected finish of the order is the backlog of the pump
+ * (reserved, but not pumped liters less the progress of the current pumping) plus the order itself, and the pump
+ * with the shortest backlog finishes it first. The steady strategies ignore the backlog, so an order may wait behind
+ * a long queue of the fullest pump while another pump is idle. Idle pumps of the same backlog are levelled:
+ * the highest remaining amount wins the tie.
+ * Reservation is lock-free like in the SteadyBlockingPumpManager, the selection is a scan of the pumps
+ */
+public class ShortestCompletionPumpManager implements PumpManager {
+    /**
+     * Copy-on-write array of the pump workers. Reservation is lock-free: remaining amount of the worker is updated by CAS
+     */
+    private volatile PumpWorker[] pumpWorkers = new PumpWorker[0];
+    /**
+     * Shared engine for the pumping
+     */
+    private final PumpExecutionEngine executionEngine;
+
+    public ShortestCompletionPumpManager(PumpExecutionEngine executionEngine) {
+        this.executionEngine = executionEngine;
+    }
+
+    /**
+     * Schedules pumping on the pump, which is expected to finish the order first. The caller is not blocked while pumping
+     * @param amountInLiters
+     * @return future, which completes when pumping is finished, or exceptionally with NotEnoughGasException
+     */
+    public CompletableFuture<Void> pumpGasAsync(double amountInLiters) {
+        final PumpWorker pumpWorker = reserve(amountInLiters, Long.MAX_VALUE);
+        if (pumpWorker == null)
+            return PumpFutures.failed(new NotEnoughGasException());
+        return pumpWorker.pumpReserved(amountInLiters);
+    }
+
+    /**
+     * The order is shed if even the earliest finish misses the deadline
+     * @param amountInLiters
+     * @param deadlineNanos System::nanoTime of the deadline
+     * @return
+     */
+    @Override
+    public CompletableFuture<Void> pumpGasAsync(double amountInLiters, long deadlineNanos) {
+        final PumpWorker pumpWorker = reserve(amountInLiters, deadlineNanos);
+        if (pumpWorker == null)
+            return PumpFutures.failed(hasEnoughGas(amountInLiters) ? new OrderShedException() : new NotEnoughGasException());
+        return pumpWorker.pumpReserved(amountInLiters, deadlineNanos);
+    }
+
+    /**
+     * Allocation-free rejection: only the reservation is attempted before the pumping is scheduled
+     * @param amountInLiters
+     * @return PUMPED or NOT_ENOUGH_GAS
+     */
+    @Override
+    public int tryPumpGas(double amountInLiters) {
+        final PumpWorker pumpWorker = reserve(amountInLiters, Long.MAX_VALUE);
+        if (pumpWorker == null)
+            return NOT_ENOUGH_GAS;
+        pumpWorker.pumpReserved(amountInLiters).join();
+        return PUMPED;
+    }
+
+    /**
+     * Reserves on the pump, which would finish the order first if it was committed right now
+     * @param amountInLiters
+     * @return
+     */
+    @Override
+    public PumpWorker reserveGas(double amountInLiters) {
+        return reserve(amountInLiters, Long.MAX_VALUE);
+    }
+
+    /**
+     * Selects the pump with enough gas and the shortest backlog and reserves the amount on it.
+     * If another buyer wins the race for the pump, the selection is retried
+     * @param amountInLiters
+     * @param deadlineNanos System::nanoTime, before which the order should finish, Long.MAX_VALUE for no deadline
+     * @return worker with the reserved amount, or null if no pump has enough gas or can finish in time
+     */
+    private PumpWorker reserve(double amountInLiters, long deadlineNanos) {
+        final PumpWorker[] workers = pumpWorkers;
+        final long pumpingNanos = (long) (amountInLiters * PumpWorker.PUMPING_NANOS_PER_LITER);
+        while (true) {
+            PumpWorker earliest = null;
+            long earliestBacklogNanos = Long.MAX_VALUE;
+            double earliestRemainingGas = 0;
+            for (PumpWorker pumpWorker : workers) {
+                final double remainingGas = pumpWorker.getRemainingGas();
+                if (remainingGas < amountInLiters)
+                    continue;
+                final long backlogNanos = pumpWorker.estimateBacklogNanos();
+                if (backlogNanos < earliestBacklogNanos || (backlogNanos == earliestBacklogNanos && remainingGas > earliestRemainingGas)) {
+                    earliest = pumpWorker;
+                    earliestBacklogNanos = backlogNanos;
+                    earliestRemainingGas = remainingGas;
+                }
+            }
+            if (earliest == null)
+                return null;
+            if (deadlineNanos != Long.MAX_VALUE && executionEngine.nanoTime() + earliestBacklogNanos + pumpingNanos - deadlineNanos > 0)
+                return null;
+            if (earliest.tryReserve(amountInLiters))
+                return earliest;
+        }
+    }
+
+    private boolean hasEnoughGas(double amountInLiters) {
+        for (PumpWorker pumpWorker : pumpWorkers)
+            if (pumpWorker.getRemainingGas() >= amountInLiters)
+                return true;
+        return false;
+    }
+
+    /**
+     * Add gas pump to the proper structures
+     * @param gasPump
+     * @return worker of the pump
+     */
+    public synchronized PumpWorker addGasPump(GasPump gasPump) {
+        final PumpWorker pumpWorker = new PumpWorker(gasPump, executionEngine);
+        final PumpWorker[] workers = Arrays.copyOf(pumpWorkers, pumpWorkers.length + 1);
+        workers[workers.length - 1] = pumpWorker;
+        pumpWorkers = workers;
+        return pumpWorker;
+    }
+
+    /**
+     * The array is copied once for all the pumps
+     * @param gasPumps
+     * @return workers of the pumps in the same order
+     */
+    @Override
+    public synchronized List<PumpWorker> addGasPumps(Collection<GasPump> gasPumps) {
+        final List<PumpWorker> addedWorkers = new ArrayList<>(gasPumps.size());
+        for (GasPump gasPump : gasPumps)
+            addedWorkers.add(new PumpWorker(gasPump, executionEngine));
+        adoptPumpWorkers(addedWorkers);
+        return addedWorkers;
+    }
+
+    @Override
+    public synchronized void adoptPumpWorkers(Collection<PumpWorker> pumpWorkers) {
+        final PumpWorker[] workers = Arrays.copyOf(this.pumpWorkers, this.pumpWorkers.length + pumpWorkers.size());
+        int index = this.pumpWorkers.length;
+        for (PumpWorker pumpWorker : pumpWorkers)
+            workers[index++] = pumpWorker;
+        this.pumpWorkers = workers;
+    }
+}
@@ -3,61 +3,415 @@ package net.bigpoint.assessment.gasstation.impl.managers;
 import net.bigpoint.assessment.gasstation.GasPump;
 import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
 
-import java.util.Comparator;
-import java.util.Queue;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Created by aaalekseev on 06-Aug-16.
  */
 public class SteadyBlockingPumpManager implements PumpManager {
     /**
-     * Thread-safe queue for elimination of simultaneous pumping and selecting pump with the highest remaining amount.
-     */
-    private final Queue<PumpWorker> pumpWorkersQueue = new PriorityBlockingQueue<>(1, new GasPumpWorkerComparator());
-
-    public void pumpGas(double amountInLiters) throws NotEnoughGasException {
-        // Synchronize selection of the pumpWorker with the largest amount. Release pumpWorker right after scheduling
-        Future pumpingFuture;
-        synchronized (this) {
-            PumpWorker pumpWorker = null;
-            try {
-                pumpWorker = pumpWorkersQueue.poll();
-                // We selected pumpWorker with the highest remaining amount. If it is not enough - NotEnoughGasException
-                if (pumpWorker == null || pumpWorker.getRemainingGas() < amountInLiters)
-                    throw new NotEnoughGasException();
-
-                pumpingFuture = pumpWorker.schedulePumpGas(amountInLiters);
-            } finally {
-                if(pumpWorker != null)
-                    pumpWorkersQueue.add(pumpWorker);
+     * Copy-on-write array of the pump workers. Reservation is lock-free: remaining amount of the worker is updated by CAS
+     */
+    private volatile PumpWorker[] pumpWorkers = new PumpWorker[0];
+    /**
+     * Shared engine for the pumping
+     */
+    private final PumpExecutionEngine executionEngine;
+    /**
+     * Admission limits per pump worker. Unlimited by default
+     */
+    private volatile int maxQueuedPumpings = Integer.MAX_VALUE;
+    private volatile double maxBacklogInLiters = Double.POSITIVE_INFINITY;
+    /**
+     * Split fulfilment: the most pumps serving one order and the smallest slice. Disabled by default
+     */
+    private volatile int maxSlices = 1;
+    private volatile double minSliceInLiters = Double.POSITIVE_INFINITY;
+
+    public SteadyBlockingPumpManager(PumpExecutionEngine executionEngine) {
+        this.executionEngine = executionEngine;
+    }
+
+    /**
+     * Schedules pumping on the pump with approximately the highest remaining amount after all the scheduled pumpings.
+     * If the split fulfilment is on, large orders and orders, which no single pump can serve, are pumped in slices.
+     * The caller is not blocked while pumping
+     * @param amountInLiters
+     * @return future, which completes when pumping is finished, or exceptionally with NotEnoughGasException
+     * or OrderShedException if the admission limits are exceeded
+     */
+    public CompletableFuture<Void> pumpGasAsync(double amountInLiters) {
+        final CompletableFuture<Void> pumping = schedulePumping(amountInLiters);
+        if (pumping == null)
+            return PumpFutures.failed(rejection(amountInLiters));
+        return pumping;
+    }
+
+    /**
+     * Only the pumps, which are expected to finish the order in time, are selected. Timed orders are never split
+     * @param amountInLiters
+     * @param deadlineNanos System::nanoTime of the deadline
+     * @return
+     */
+    @Override
+    public CompletableFuture<Void> pumpGasAsync(double amountInLiters, long deadlineNanos) {
+        final PumpWorker pumpWorker = reserve(amountInLiters, true, deadlineNanos);
+        if (pumpWorker == null)
+            return PumpFutures.failed(rejection(amountInLiters));
+        return pumpWorker.pumpReserved(amountInLiters, deadlineNanos);
+    }
+
+    /**
+     * Allocation-free rejection: only the reservation is attempted before the pumping is scheduled
+     * @param amountInLiters
+     * @return PUMPED, NOT_ENOUGH_GAS or SHED
+     */
+    @Override
+    public int tryPumpGas(double amountInLiters) {
+        final CompletableFuture<Void> pumping = schedulePumping(amountInLiters);
+        if (pumping == null)
+            return hasEnoughGas(amountInLiters) ? SHED : NOT_ENOUGH_GAS;
+        pumping.join();
+        return PUMPED;
+    }
+
+    /**
+     * The workers are ordered by the remaining gas once for the batch, then every amount takes the highest of them
+     * and the worker is re-ordered by its new remaining amount. Pumping of every amount is scheduled right after
+     * its reservation, so the admission limits see the earlier amounts of the batch. The ordering is local to the batch
+     * and keyed on the amounts taken by the batch: the top worker, which concurrent buyers have changed, is re-ordered
+     * by the failed reservation, inadmissible workers are skipped for the rest of the batch, and an amount, which the top
+     * worker can not serve, falls back to the reservation on all the workers before it is rejected
+     * @param amountsInLiters
+     * @return pumping futures in the order of the amounts
+     */
+    @Override
+    public List<CompletableFuture<Void>> pumpGasBatch(double[] amountsInLiters) {
+        final List<CompletableFuture<Void>> pumpings = new ArrayList<>(amountsInLiters.length);
+        final PumpWorkerHeap capacityOrdering = new PumpWorkerHeap();
+        for (PumpWorker pumpWorker : pumpWorkers)
+            capacityOrdering.add(pumpWorker);
+        final int sliceLimit = maxSlices;
+        for (double amountInLiters : amountsInLiters) {
+            CompletableFuture<Void> pumping;
+            if (sliceLimit > 1 && amountInLiters >= 2 * minSliceInLiters) {
+                pumping = pumpSlices(amountInLiters, sliceLimit);
+            } else {
+                pumping = pumpHighest(capacityOrdering, amountInLiters);
+                if (pumping == null && sliceLimit > 1)
+                    pumping = pumpSlices(amountInLiters, sliceLimit);
             }
+            pumpings.add(pumping != null ? pumping : PumpFutures.failed(rejection(amountInLiters)));
         }
+        return pumpings;
+    }
 
-        // Wait till pumping finish in the request thread
+    /**
+     * @param capacityOrdering workers of the batch, highest first
+     * @param amountInLiters
+     * @return pumping future or null if no admissible worker has enough gas
+     */
+    private CompletableFuture<Void> pumpHighest(PumpWorkerHeap capacityOrdering, double amountInLiters) {
+        while (true) {
+            final PumpWorker highest = capacityOrdering.peek();
+            if (highest == null)
+                break;
+            if (!isAdmissible(highest, amountInLiters, false, 0)) {
+                capacityOrdering.remove(highest);
+                continue;
+            }
+            final boolean reserved = highest.getRemainingGas() >= amountInLiters && highest.tryReserve(amountInLiters);
+            // Re-ordered by the new remaining amount, or by the amount left by another buyer
+            capacityOrdering.update(highest);
+            if (reserved)
+                return highest.pumpReserved(amountInLiters);
+            if (capacityOrdering.peek() == highest)
+                break;
+        }
+        // Workers below the top may have been refilled or released since the ordering
+        final PumpWorker pumpWorker = reserve(amountInLiters, false, 0);
+        return pumpWorker == null ? null : pumpWorker.pumpReserved(amountInLiters);
+    }
+
+    /**
+     * Limits are checked before the reservation, so concurrent orders may exceed them slightly
+     * @param maxQueuedPumpings the most scheduled, but not finished pumpings per pump
+     * @param maxBacklogInLiters the most reserved, but not pumped gas per pump
+     */
+    @Override
+    public void setAdmissionLimits(int maxQueuedPumpings, double maxBacklogInLiters) {
+        if (maxQueuedPumpings < 1 || !(maxBacklogInLiters > 0))
+            throw new IllegalArgumentException("Inappropriate admission limits");
+        this.maxQueuedPumpings = maxQueuedPumpings;
+        this.maxBacklogInLiters = maxBacklogInLiters;
+    }
+
+    /**
+     * Orders of at least two slices are split across the pumps with the highest remaining amounts,
+     * so pumping takes the time of the largest slice instead of the whole order
+     * @param maxSlices the most pumps serving one order, 1 switches the split fulfilment off
+     * @param minSliceInLiters the smallest slice worth a separate pump
+     */
+    @Override
+    public void setSplitFulfilment(int maxSlices, double minSliceInLiters) {
+        if (maxSlices < 1 || !(minSliceInLiters > 0))
+            throw new IllegalArgumentException("Inappropriate split fulfilment");
+        this.minSliceInLiters = minSliceInLiters;
+        this.maxSlices = maxSlices;
+    }
+
+    /**
+     * @param amountInLiters
+     * @return pumping future or null if the order can not be reserved
+     */
+    private CompletableFuture<Void> schedulePumping(double amountInLiters) {
+        final int sliceLimit = maxSlices;
+        if (sliceLimit > 1 && amountInLiters >= 2 * minSliceInLiters)
+            return pumpSlices(amountInLiters, sliceLimit);
+        final PumpWorker pumpWorker = reserve(amountInLiters, false, 0);
+        if (pumpWorker != null)
+            return pumpWorker.pumpReserved(amountInLiters);
+        // No single pump is enough, but several may be
+        return sliceLimit > 1 ? pumpSlices(amountInLiters, sliceLimit) : null;
+    }
+
+    /**
+     * Reserves all the slices of the order and pumps them in parallel. The slices are scheduled all or none,
+     * so the rejected order pumps nothing, and the order completes when every slice is pumped
+     * @param amountInLiters
+     * @param sliceLimit
+     * @return future, which completes when all the slices are pumped, or null if the order can not be reserved
+     * @throws RejectedExecutionException if the engine is closed, the slices are released then
+     */
+    private CompletableFuture<Void> pumpSlices(double amountInLiters, int sliceLimit) {
+        final PumpWorker[] slicedWorkers = new PumpWorker[sliceLimit];
+        final double[] slices = new double[sliceLimit];
+        final int sliceCount = reserveSlices(amountInLiters, slicedWorkers, slices);
+        if (sliceCount == 0)
+            return null;
+        if (sliceCount == 1)
+            return slicedWorkers[0].pumpReserved(slices[0]);
+
+        final CompletableFuture<?>[] slicePumpings = new CompletableFuture<?>[sliceCount];
         try {
-            pumpingFuture.get();
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+            executionEngine.acceptAll(() -> {
+                for (int i = 0; i < sliceCount; i++)
+                    slicePumpings[i] = slicedWorkers[i].pumpReserved(slices[i]);
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed engine: none of the slices is scheduled
+            for (int i = 0; i < sliceCount; i++)
+                slicedWorkers[i].release(slices[i]);
+            throw e;
         }
+        // Completes after the last slice, even if another one fails
+        return CompletableFuture.allOf(slicePumpings);
+    }
+
+    /**
+     * Reserves the order on several admissible workers without locking. The order is spread over as many of
+     * the highest workers, as the minimal slice allows, and over more of them, if their gas is not enough.
+     * Slices are levelled: every worker gets an equal share or all its remaining gas if it is less.
+     * All the slices are reserved or none: if another buyer wins the race for one of the workers,
+     * the reserved slices are released and the selection is retried
+     * @param amountInLiters
+     * @param slicedWorkers selected workers, highest first
+     * @param slices reserved amounts of the selected workers
+     * @return number of the reserved slices or 0 if the admissible workers have not enough gas
+     */
+    private int reserveSlices(double amountInLiters, PumpWorker[] slicedWorkers, double[] slices) {
+        final double[] remainingGas = new double[slicedWorkers.length];
+        while (true) {
+            final int candidates = selectHighest(pumpWorkers, true, slicedWorkers, remainingGas);
+            int sliceCount = (int) Math.max(1, Math.min(candidates, Math.floor(amountInLiters / minSliceInLiters)));
+            double capacity = 0;
+            for (int i = 0; i < sliceCount; i++)
+                capacity += remainingGas[i];
+            while (capacity < amountInLiters && sliceCount < candidates)
+                capacity += remainingGas[sliceCount++];
+            if (capacity < amountInLiters)
+                return 0;
+
+            // Workers are ordered by the remaining gas descending, so the first one with enough gas
+            // for the equal share is followed by the workers with enough gas as well
+            double unassigned = amountInLiters;
+            for (int i = sliceCount - 1; i >= 0; i--) {
+                final double share = unassigned / (i + 1);
+                if (remainingGas[i] < share) {
+                    slices[i] = remainingGas[i];
+                    unassigned -= remainingGas[i];
+                } else {
+                    for (int j = 1; j <= i; j++)
+                        slices[j] = share;
+                    // The highest worker takes the rounding error
+                    slices[0] = Math.min(remainingGas[0], unassigned - share * i);
+                    break;
+                }
+            }
+
+            int reserved = 0;
+            while (reserved < sliceCount && slicedWorkers[reserved].tryReserve(slices[reserved]))
+                reserved++;
+            if (reserved == sliceCount)
+                return sliceCount;
+            for (int i = 0; i < reserved; i++)
+                slicedWorkers[i].release(slices[i]);
+        }
+    }
+
+    /**
+     * Selection of the highest workers by insertion, O(n * limit)
+     * @param workers
+     * @param admissibleOnly skip the workers, which exceed the admission limits
+     * @param highest selected workers, highest first
+     * @param remainingGas remaining gas of the selected workers at the moment of the selection
+     * @return number of the selected workers with some gas
+     */
+    private int selectHighest(PumpWorker[] workers, boolean admissibleOnly, PumpWorker[] highest, double[] remainingGas) {
+        int selected = 0;
+        for (PumpWorker pumpWorker : workers) {
+            final double workerRemainingGas = pumpWorker.getRemainingGas();
+            if (workerRemainingGas <= 0 || admissibleOnly && !isAdmissible(pumpWorker, 0, false, 0))
+                continue;
+            if (selected == highest.length && workerRemainingGas <= remainingGas[selected - 1])
+                continue;
+            int i = selected == highest.length ? selected - 1 : selected++;
+            for (; i > 0 && remainingGas[i - 1] < workerRemainingGas; i--) {
+                highest[i] = highest[i - 1];
+                remainingGas[i] = remainingGas[i - 1];
+            }
+            highest[i] = pumpWorker;
+            remainingGas[i] = workerRemainingGas;
+        }
+        return selected;
+    }
+
+    /**
+     * Lock-free reservation on the higher of two random pumps like pumpGasAsync, a single pump per reservation
+     * @param amountInLiters
+     * @return
+     */
+    @Override
+    public PumpWorker reserveGas(double amountInLiters) {
+        return reserve(amountInLiters, false, 0);
+    }
+
+    /**
+     * Reserves the amount on one of the admissible workers without locking.
+     * The higher of two random workers is tried first ("power of two choices"), which keeps the remaining amounts aligned.
+     * If it is not enough, the admissible worker with the highest remaining amount is searched, retrying when another buyer wins the race
+     * @param amountInLiters
+     * @param timed the deadline is set
+     * @param deadlineNanos
+     * @return reserved worker or null if no admissible worker has enough gas
+     */
+    private PumpWorker reserve(double amountInLiters, boolean timed, long deadlineNanos) {
+        final PumpWorker[] workers = pumpWorkers;
+        if (workers.length == 0)
+            return null;
+
+        final Random random = executionEngine.selectionRandom();
+        final PumpWorker first = workers[random.nextInt(workers.length)];
+        final PumpWorker second = workers[random.nextInt(workers.length)];
+        final PumpWorker candidate = first.getRemainingGas() >= second.getRemainingGas() ? first : second;
+        if (isAdmissible(candidate, amountInLiters, timed, deadlineNanos) && candidate.tryReserve(amountInLiters))
+            return candidate;
+
+        while (true) {
+            PumpWorker highest = null;
+            double highestRemainingGas = Double.NEGATIVE_INFINITY;
+            for (PumpWorker pumpWorker : workers) {
+                final double remainingGas = pumpWorker.getRemainingGas();
+                if (remainingGas > highestRemainingGas && isAdmissible(pumpWorker, amountInLiters, timed, deadlineNanos)) {
+                    highest = pumpWorker;
+                    highestRemainingGas = remainingGas;
+                }
+            }
+            // We selected pumpWorker with the highest remaining amount. If it is not enough - NotEnoughGasException
+            if (highestRemainingGas < amountInLiters)
+                return null;
+            if (highest.tryReserve(amountInLiters))
+                return highest;
+        }
+    }
+
+    private boolean isAdmissible(PumpWorker pumpWorker, double amountInLiters, boolean timed, long deadlineNanos) {
+        if (pumpWorker.getQueuedPumpings() >= maxQueuedPumpings)
+            return false;
+        if (maxBacklogInLiters != Double.POSITIVE_INFINITY && pumpWorker.getBacklogInLiters() + amountInLiters > maxBacklogInLiters)
+            return false;
+        return !timed || pumpWorker.estimateFinishNanos(amountInLiters) - deadlineNanos <= 0;
+    }
+
+    /**
+     * Rejected order is shed if any pump (or the slices, if the split fulfilment is on) has enough gas regardless of the admission
+     * @param amountInLiters
+     * @return
+     */
+    private NotEnoughGasException rejection(double amountInLiters) {
+        return hasEnoughGas(amountInLiters) ? new OrderShedException() : new NotEnoughGasException();
+    }
+
+    private boolean hasEnoughGas(double amountInLiters) {
+        final int sliceLimit = maxSlices;
+        if (sliceLimit > 1) {
+            final double[] remainingGas = new double[sliceLimit];
+            final int candidates = selectHighest(pumpWorkers, false, new PumpWorker[sliceLimit], remainingGas);
+            double capacity = 0;
+            for (int i = 0; i < candidates; i++)
+                capacity += remainingGas[i];
+            return capacity >= amountInLiters;
+        }
+        for (PumpWorker pumpWorker : pumpWorkers)
+            if (pumpWorker.getRemainingGas() >= amountInLiters)
+                return true;
+        return false;
     }
 
     /**
      * Add gas pump to the proper structures
      * @param gasPump
+     * @return worker of the pump
      */
-    public void addGasPump(GasPump gasPump) {
-        pumpWorkersQueue.add(new PumpWorker(gasPump));
+    public synchronized PumpWorker addGasPump(GasPump gasPump) {
+        final PumpWorker pumpWorker = new PumpWorker(gasPump, executionEngine);
+        final PumpWorker[] workers = Arrays.copyOf(pumpWorkers, pumpWorkers.length + 1);
+        workers[workers.length - 1] = pumpWorker;
+        pumpWorkers = workers;
+        return pumpWorker;
     }
 
     /**
-     * Pump workers comparator for the selection of the largest remaining amount pump, excepting scheduled
+     * The array is copied once for all the pumps
+     * @param gasPumps
+     * @return workers of the pumps in the same order
      */
-    private static class GasPumpWorkerComparator implements Comparator<PumpWorker> {
-        public int compare(PumpWorker o1, PumpWorker o2) {
-            return Double.compare(o2.getRemainingGas(), o1.getRemainingGas());
+    @Override
+    public synchronized List<PumpWorker> addGasPumps(Collection<GasPump> gasPumps) {
+        final List<PumpWorker> addedWorkers = new ArrayList<>(gasPumps.size());
+        final PumpWorker[] workers = Arrays.copyOf(pumpWorkers, pumpWorkers.length + gasPumps.size());
+        int index = pumpWorkers.length;
+        for (GasPump gasPump : gasPumps) {
+            final PumpWorker pumpWorker = new PumpWorker(gasPump, executionEngine);
+            workers[index++] = pumpWorker;
+            addedWorkers.add(pumpWorker);
         }
+        pumpWorkers = workers;
+        return addedWorkers;
+    }
+
+    @Override
+    public synchronized void adoptPumpWorkers(Collection<PumpWorker> pumpWorkers) {
+        final PumpWorker[] workers = Arrays.copyOf(this.pumpWorkers, this.pumpWorkers.length + pumpWorkers.size());
+        int index = this.pumpWorkers.length;
+        for (PumpWorker pumpWorker : pumpWorkers)
+            workers[index++] = pumpWorker;
+        this.pumpWorkers = workers;
     }
 }
@@ -4,52 +4,162 @@ import net.bigpoint.assessment.gasstation.GasPump;
 import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
 
 import java.util.*;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Created by aaalekseev on 06-Aug-16.
  */
 public class SteadyPumpManager implements PumpManager {
     /**
-     * Thread-safe queue for elimination of simultaneous pumping and selecting pump with the highest remaining amount
+     * Sharded heaps for elimination of simultaneous pumping and selecting one of the pumps with the highest remaining amount.
+     * The pump worker is out of the queue while it is pumping, so the buyers skip it. Refilled worker is reordered in its shard
      */
-    private final Queue<GasPump> gasPumpQueue = new PriorityBlockingQueue(1, new GasPumpComparator());
+    private final PumpWorkerMultiQueue pumpWorkersQueue;
 
-    public SteadyPumpManager() {}
+    /**
+     * Shared engine for the pumping
+     */
+    private final PumpExecutionEngine executionEngine;
+
+    public SteadyPumpManager(PumpExecutionEngine executionEngine) {
+        this(executionEngine, PumpWorkerMultiQueue.DEFAULT_SHARDS);
+    }
+
+    /**
+     * @param executionEngine
+     * @param shardCount heaps of the pumps, 1 selects the highest pump exactly under one lock
+     */
+    public SteadyPumpManager(PumpExecutionEngine executionEngine, int shardCount) {
+        this.executionEngine = executionEngine;
+        this.pumpWorkersQueue = new PumpWorkerMultiQueue(shardCount, executionEngine);
+    }
+
+    /**
+     * Takes one of the pumps with largest remaining amount and pump it. If no pump with enough gas is available at this moment -
+     * NotEnoughGasException is thrown
+     * @param amountInLiters
+     * @return future, which completes when pumping is finished and the pump is available again
+     */
+    public CompletableFuture<Void> pumpGasAsync(double amountInLiters) {
+        final PumpWorker pumpWorker = pumpWorkersQueue.poll(amountInLiters);
+        if (pumpWorker == null)
+            return PumpFutures.failed(new NotEnoughGasException());
+        return pumpPolled(pumpWorker, amountInLiters);
+    }
 
     /**
-     * Takes the pump with largest remaining amount and pump it. If no pumps available at this moment - NotEnoughGasException is thrown
+     * Pumps on the worker taken out of the queue. The worker returns to the queue when the pumping is finished,
+     * or at once if the pumping is not scheduled
+     * @param pumpWorker
      * @param amountInLiters
-     * @throws NotEnoughGasException
+     * @return
      */
-    public void pumpGas(double amountInLiters) throws NotEnoughGasException {
-        GasPump gasPump = null;
+    private CompletableFuture<Void> pumpPolled(PumpWorker pumpWorker, double amountInLiters) {
+        if (!pumpWorker.tryReserve(amountInLiters)) {
+            pumpWorkersQueue.add(pumpWorker);
+            return PumpFutures.failed(new NotEnoughGasException());
+        }
         try {
-            gasPump = gasPumpQueue.poll();
-            if (gasPump == null || gasPump.getRemainingAmount() < amountInLiters)
-                throw new NotEnoughGasException();
+            // Return the pump to the queue before the caller is notified about the finished pumping
+            return pumpWorker.pumpReserved(amountInLiters).whenComplete((v, e) -> pumpWorkersQueue.add(pumpWorker));
+        } catch (RuntimeException e) {
+            // Rejected by the closing engine, the worker has released the gas
+            pumpWorkersQueue.add(pumpWorker);
+            throw e;
+        }
+    }
 
-            gasPump.pumpGas(amountInLiters);
+    /**
+     * Allocation-free rejection: the shard tops are checked in place, the polled pump reuses its heap node
+     * @param amountInLiters
+     * @return PUMPED or NOT_ENOUGH_GAS if no pump with enough gas is available at this moment
+     */
+    @Override
+    public int tryPumpGas(double amountInLiters) {
+        final PumpWorker pumpWorker = pumpWorkersQueue.poll(amountInLiters);
+        if (pumpWorker == null)
+            return NOT_ENOUGH_GAS;
+        try {
+            if (!pumpWorker.tryReserve(amountInLiters))
+                return NOT_ENOUGH_GAS;
+            pumpWorker.pumpReserved(amountInLiters).join();
+            return PUMPED;
         } finally {
-            if (gasPump != null)
-                gasPumpQueue.add(gasPump);
+            pumpWorkersQueue.add(pumpWorker);
         }
     }
 
+    /**
+     * The pumps are polled for the whole batch with one pass over the shard locks, every amount takes the highest
+     * pump with enough gas, or is rejected like in pumpGasAsync
+     * @param amountsInLiters
+     * @return pumping futures in the order of the amounts
+     */
+    @Override
+    public List<CompletableFuture<Void>> pumpGasBatch(double[] amountsInLiters) {
+        final PumpWorker[] pumpWorkers = pumpWorkersQueue.pollBatch(amountsInLiters);
+        final List<CompletableFuture<Void>> pumpings = new ArrayList<>(amountsInLiters.length);
+        try {
+            for (int i = 0; i < amountsInLiters.length; i++)
+                pumpings.add(pumpWorkers[i] == null ? PumpFutures.failed(new NotEnoughGasException()) : pumpPolled(pumpWorkers[i], amountsInLiters[i]));
+        } finally {
+            // Pumps of the amounts after a rejected pumping
+            for (int i = pumpings.size() + 1; i < pumpWorkers.length; i++)
+                if (pumpWorkers[i] != null)
+                    pumpWorkersQueue.add(pumpWorkers[i]);
+        }
+        return pumpings;
+    }
+
+    /**
+     * Reserves on one of the highest pumps, which stays in the queue at its new place.
+     * The reservation does not occupy the pump, the committed pumping is serialized by the worker
+     * @param amountInLiters
+     * @return
+     */
+    @Override
+    public PumpWorker reserveGas(double amountInLiters) {
+        return pumpWorkersQueue.reserve(amountInLiters);
+    }
+
+    /**
+     * The worker out of the queue gets its new place on return
+     * @param pumpWorker
+     * @param amountInLiters
+     */
+    @Override
+    public void releaseGas(PumpWorker pumpWorker, double amountInLiters) {
+        pumpWorkersQueue.release(pumpWorker, amountInLiters);
+    }
+
     /**
      * Add gas pump to the proper structures
      * @param gasPump
+     * @return worker of the pump
      */
-    public void addGasPump(GasPump gasPump) {
-        gasPumpQueue.add(gasPump);
+    public PumpWorker addGasPump(GasPump gasPump) {
+        final PumpWorker pumpWorker = new PumpWorker(gasPump, executionEngine);
+        pumpWorkersQueue.add(pumpWorker);
+        return pumpWorker;
     }
 
     /**
-     * Gas pump comparator for the selection of the largest remaining amount pump
+     * Workers busy for the replaced manager are queued at once, their pumpings are serialized by the workers
+     * @param pumpWorkers
      */
-    private static class GasPumpComparator implements Comparator<GasPump> {
-        public int compare(GasPump o1, GasPump o2) {
-            return Double.compare(o2.getRemainingAmount(), o1.getRemainingAmount());
-        }
+    @Override
+    public void adoptPumpWorkers(Collection<PumpWorker> pumpWorkers) {
+        for (PumpWorker pumpWorker : pumpWorkers)
+            pumpWorkersQueue.add(pumpWorker);
+    }
+
+    /**
+     * The pumping worker is out of the queue and gets its new place on return
+     * @param pumpWorker
+     * @param amountInLiters
+     */
+    @Override
+    public void refillPump(PumpWorker pumpWorker, double amountInLiters) {
+        pumpWorkersQueue.refill(pumpWorker, amountInLiters);
     }
 }
@@ -0,0 +1,97 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+import java.util.PriorityQueue;
+
+/**
+ * Discrete-event clock of the simulated pumping: time does not pass by itself, it jumps to the next event.
+ * Events of the same time run in the order of scheduling, so a simulation is deterministic.
+ * Not thread-safe: the events are scheduled and run by a single simulation thread, which also places the orders
+ * (from the events or before the run)
+ */
+public final class VirtualClock {
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long nowNanos = 0;
+    private long sequence = 0;
+    private long processedEvents = 0;
+
+    /**
+     * @return virtual time, 0 at the start of the simulation
+     */
+    public long nanoTime() {
+        return nowNanos;
+    }
+
+    /**
+     * @param task
+     * @param delayNanos
+     */
+    public void schedule(Runnable task, long delayNanos) {
+        scheduleAt(task, nowNanos + Math.max(0, delayNanos));
+    }
+
+    /**
+     * @param task
+     * @param atNanos virtual time of the task, the past is run at the current time
+     */
+    public void scheduleAt(Runnable task, long atNanos) {
+        events.add(new Event(Math.max(atNanos, nowNanos), sequence++, task));
+    }
+
+    /**
+     * Advances the time to the next event and runs it
+     * @return false if there are no events
+     */
+    public boolean runNext() {
+        final Event event = events.poll();
+        if (event == null)
+            return false;
+        nowNanos = event.atNanos;
+        processedEvents++;
+        event.task.run();
+        return true;
+    }
+
+    /**
+     * Runs the events till there are no more of them, including the events scheduled by the events
+     */
+    public void run() {
+        while (runNext()) {
+        }
+    }
+
+    /**
+     * Runs the events up to the time inclusive and advances the time to it
+     * @param atNanos
+     */
+    public void runUntil(long atNanos) {
+        while (!events.isEmpty() && events.peek().atNanos <= atNanos)
+            runNext();
+        nowNanos = Math.max(nowNanos, atNanos);
+    }
+
+    public boolean isIdle() {
+        return events.isEmpty();
+    }
+
+    public long getProcessedEvents() {
+        return processedEvents;
+    }
+
+    private static final class Event implements Comparable<Event> {
+        private final long atNanos;
+        private final long sequence;
+        private final Runnable task;
+
+        Event(long atNanos, long sequence, Runnable task) {
+            this.atNanos = atNanos;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            final int byTime = Long.compare(atNanos, other.atNanos);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+}
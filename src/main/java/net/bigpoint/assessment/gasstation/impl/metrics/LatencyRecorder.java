@@ -0,0 +1,67 @@
+package net.bigpoint.assessment.gasstation.impl.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets (HdrHistogram-style):
+ * every power of two range is split into 16 linear sub-buckets, so the reported values are within ~6% of the recorded ones.
+ * Recording is a single atomic increment and allocates nothing
+ */
+public class LatencyRecorder {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long valueNanos) {
+        counts.getAndIncrement(bucketIndex(Math.max(valueNanos, 0)));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            count += counts.get(i);
+        return count;
+    }
+
+    /**
+     * @param percentile in the range [0, 100]
+     * @return the highest value equivalent to the percentile bucket, 0 if nothing is recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        final long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0)
+            return 0;
+
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= target)
+                return highestEquivalentValue(i);
+        }
+        return highestEquivalentValue(BUCKETS - 1);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestEquivalentValue(int bucketIndex) {
+        if (bucketIndex < SUB_BUCKETS)
+            return bucketIndex;
+        final int shift = bucketIndex / SUB_BUCKETS - 1;
+        final long lowestValue = (long) (SUB_BUCKETS + bucketIndex % SUB_BUCKETS) << shift;
+        return lowestValue + (1L << shift) - 1;
+    }
+}
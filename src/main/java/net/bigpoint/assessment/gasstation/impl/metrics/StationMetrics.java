@@ -0,0 +1,168 @@
+package net.bigpoint.assessment.gasstation.impl.metrics;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpListener;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpWorker;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms of the station broken down by gas type and purchase outcome:
+ *  - purchase: the whole purchase from the request till the result
+ *  - selection: pump selection including the manager lock wait
+ *  - queueWait: time of the pumping in the pump worker queue
+ *  - pumping: actual pumping time
+ * Recording is lock-free and allocation-free. It can be switched off at runtime
+ */
+public class StationMetrics implements PumpListener, StationMetricsMXBean {
+    private static final double[] PUBLISHED_PERCENTILES = {50, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p99", "p999"};
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    private final LatencyRecorder[][] purchaseRecorders = newRecorders(Outcome.values().length);
+    private final LatencyRecorder[][] selectionRecorders = newRecorders(Outcome.values().length);
+    private final LatencyRecorder[][] queueWaitRecorders = newRecorders(1);
+    private final LatencyRecorder[][] pumpingRecorders = newRecorders(1);
+    private final AtomicLongArray queueDepths = new AtomicLongArray(GasType.values().length);
+    private volatile boolean enabled = true;
+    private volatile ObjectName objectName;
+
+    /**
+     * Outcome of the purchase
+     */
+    public enum Outcome {
+        SUCCESS,
+        NOT_ENOUGH_GAS,
+        TOO_EXPENSIVE,
+        SHED,
+        TIMED_OUT
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void recordPurchase(GasType gasType, Outcome outcome, long purchaseNanos) {
+        if (enabled)
+            purchaseRecorders[gasType.ordinal()][outcome.ordinal()].record(purchaseNanos);
+    }
+
+    public void recordSelection(GasType gasType, Outcome outcome, long selectionNanos) {
+        if (enabled)
+            selectionRecorders[gasType.ordinal()][outcome.ordinal()].record(selectionNanos);
+    }
+
+    /**
+     * Queue depth is tracked even when the recording is disabled, so it stays correct after enabling
+     */
+    @Override
+    public void pumpingScheduled(PumpWorker pumpWorker, double amountInLiters) {
+        queueDepths.getAndIncrement(pumpWorker.getGasType().ordinal());
+    }
+
+    @Override
+    public void pumpingCancelled(PumpWorker pumpWorker, double amountInLiters) {
+        queueDepths.getAndDecrement(pumpWorker.getGasType().ordinal());
+    }
+
+    @Override
+    public void pumpingStarted(PumpWorker pumpWorker, long queueWaitNanos) {
+        if (enabled)
+            queueWaitRecorders[pumpWorker.getGasType().ordinal()][0].record(queueWaitNanos);
+    }
+
+    @Override
+    public void pumpingFinished(PumpWorker pumpWorker, double amountInLiters, long pumpingNanos) {
+        queueDepths.getAndDecrement(pumpWorker.getGasType().ordinal());
+        if (enabled)
+            pumpingRecorders[pumpWorker.getGasType().ordinal()][0].record(pumpingNanos);
+    }
+
+    public LatencyRecorder getPurchaseRecorder(GasType gasType, Outcome outcome) {
+        return purchaseRecorders[gasType.ordinal()][outcome.ordinal()];
+    }
+
+    public LatencyRecorder getSelectionRecorder(GasType gasType, Outcome outcome) {
+        return selectionRecorders[gasType.ordinal()][outcome.ordinal()];
+    }
+
+    public LatencyRecorder getQueueWaitRecorder(GasType gasType) {
+        return queueWaitRecorders[gasType.ordinal()][0];
+    }
+
+    public LatencyRecorder getPumpingRecorder(GasType gasType) {
+        return pumpingRecorders[gasType.ordinal()][0];
+    }
+
+    public Map<String, Double> getLatencyPercentilesMillis() {
+        final Map<String, Double> percentiles = new LinkedHashMap<>();
+        for (GasType gasType : GasType.values()) {
+            for (Outcome outcome : Outcome.values()) {
+                putPercentiles(percentiles, gasType + ".purchase." + outcome, getPurchaseRecorder(gasType, outcome));
+                putPercentiles(percentiles, gasType + ".selection." + outcome, getSelectionRecorder(gasType, outcome));
+            }
+            putPercentiles(percentiles, gasType + ".queueWait", getQueueWaitRecorder(gasType));
+            putPercentiles(percentiles, gasType + ".pumping", getPumpingRecorder(gasType));
+        }
+        return percentiles;
+    }
+
+    public Map<String, Long> getQueueDepths() {
+        final Map<String, Long> depths = new LinkedHashMap<>();
+        for (GasType gasType : GasType.values())
+            depths.put(gasType.toString(), queueDepths.get(gasType.ordinal()));
+        return depths;
+    }
+
+    /**
+     * Publishes the metrics through the platform MBean server
+     * @param stationName unique name of the station
+     */
+    public synchronized void registerMBean(String stationName) {
+        try {
+            final ObjectName name = new ObjectName("net.bigpoint.assessment.gasstation:type=StationMetrics,name=" + ObjectName.quote(stationName));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            throw new IllegalStateException("Station metrics can not be registered", e);
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (objectName == null)
+            return;
+        try {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(objectName))
+                mBeanServer.unregisterMBean(objectName);
+        } catch (JMException e) {
+            e.printStackTrace(); // Ignored
+        }
+        objectName = null;
+    }
+
+    private static void putPercentiles(Map<String, Double> percentiles, String prefix, LatencyRecorder recorder) {
+        if (recorder.getCount() == 0)
+            return;
+        for (int i = 0; i < PUBLISHED_PERCENTILES.length; i++)
+            percentiles.put(prefix + "." + PERCENTILE_NAMES[i], recorder.getValueAtPercentile(PUBLISHED_PERCENTILES[i]) / NANOS_PER_MILLI);
+    }
+
+    private static LatencyRecorder[][] newRecorders(int recordersPerGasType) {
+        final LatencyRecorder[][] recorders = new LatencyRecorder[GasType.values().length][recordersPerGasType];
+        for (LatencyRecorder[] gasTypeRecorders : recorders)
+            for (int i = 0; i < recordersPerGasType; i++)
+                gasTypeRecorders[i] = new LatencyRecorder();
+        return recorders;
+    }
+}
@@ -0,0 +1,23 @@
+package net.bigpoint.assessment.gasstation.impl.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the station metrics
+ */
+public interface StationMetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return p50, p99 and p999 in milliseconds foreach recorded gas type, phase and outcome.
+     * Keys look like "DIESEL.purchase.SUCCESS.p99" or "DIESEL.pumping.p999"
+     */
+    Map<String, Double> getLatencyPercentilesMillis();
+
+    /**
+     * @return number of the scheduled, but not finished pumpings foreach gas type
+     */
+    Map<String, Long> getQueueDepths();
+}
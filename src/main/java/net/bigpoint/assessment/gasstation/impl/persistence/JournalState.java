@@ -0,0 +1,127 @@
+package net.bigpoint.assessment.gasstation.impl.persistence;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Station state rebuilt by the replay of the sales journal: prices, pump levels, counters and revenue
+ */
+public final class JournalState {
+    private final Map<GasType, Double> prices = new EnumMap<>(GasType.class);
+    /**
+     * Gas types and remaining amounts of the pumps indexed by the pump id
+     */
+    private final List<GasType> pumpGasTypes = new ArrayList<>();
+    private final List<Double> pumpRemainingAmounts = new ArrayList<>();
+    private int numberOfSales;
+    private int numberOfCancellationsNoGas;
+    private int numberOfCancellationsTooExpensive;
+    private double revenue;
+    /**
+     * The latest price version of the prices and the sales
+     */
+    private long priceVersion;
+
+    JournalState() {
+    }
+
+    void pumpAdded(long pumpId, GasType gasType, double amountInLiters) {
+        // Pumps of a station are numbered without gaps, but the records of concurrent additions may be reordered
+        final int index = checkPumpId(pumpId);
+        while (pumpGasTypes.size() <= index) {
+            pumpGasTypes.add(null);
+            pumpRemainingAmounts.add(0.0);
+        }
+        if (pumpGasTypes.get(index) != null)
+            throw new IllegalStateException("Pump " + pumpId + " is added twice");
+        pumpGasTypes.set(index, gasType);
+        pumpRemainingAmounts.set(index, pumpRemainingAmounts.get(index) + amountInLiters);
+    }
+
+    void pumped(long pumpId, double amountInLiters) {
+        final int index = checkPumpId(pumpId);
+        while (pumpGasTypes.size() <= index) {
+            pumpGasTypes.add(null);
+            pumpRemainingAmounts.add(0.0);
+        }
+        pumpRemainingAmounts.set(index, pumpRemainingAmounts.get(index) - amountInLiters);
+    }
+
+    void refilled(long pumpId, double amountInLiters) {
+        pumped(pumpId, -amountInLiters);
+    }
+
+    void priceSet(GasType gasType, double price, long priceVersion) {
+        prices.put(gasType, price);
+        this.priceVersion = Math.max(this.priceVersion, priceVersion);
+    }
+
+    void sale(double purchasePrice, long priceVersion) {
+        numberOfSales++;
+        revenue += purchasePrice;
+        this.priceVersion = Math.max(this.priceVersion, priceVersion);
+    }
+
+    void cancelledNoGas() {
+        numberOfCancellationsNoGas++;
+    }
+
+    void cancelledTooExpensive() {
+        numberOfCancellationsTooExpensive++;
+    }
+
+    /**
+     * @throws IllegalStateException if a pumped pump was never added
+     */
+    void validate() {
+        for (int i = 0; i < pumpGasTypes.size(); i++)
+            if (pumpGasTypes.get(i) == null)
+                throw new IllegalStateException("Pump " + i + " is not added by the journal");
+    }
+
+    private static int checkPumpId(long pumpId) {
+        if (pumpId < 0 || pumpId > Integer.MAX_VALUE)
+            throw new IllegalStateException("Inappropriate pump id " + pumpId);
+        return (int) pumpId;
+    }
+
+    public Map<GasType, Double> getPrices() {
+        return Collections.unmodifiableMap(prices);
+    }
+
+    /**
+     * @return new pumps with the recovered remaining amounts in the order of the pump ids
+     */
+    public List<GasPump> getPumps() {
+        final List<GasPump> pumps = new ArrayList<>(pumpGasTypes.size());
+        for (int i = 0; i < pumpGasTypes.size(); i++)
+            pumps.add(new GasPump(pumpGasTypes.get(i), pumpRemainingAmounts.get(i)));
+        return pumps;
+    }
+
+    public int getNumberOfSales() {
+        return numberOfSales;
+    }
+
+    public int getNumberOfCancellationsNoGas() {
+        return numberOfCancellationsNoGas;
+    }
+
+    public int getNumberOfCancellationsTooExpensive() {
+        return numberOfCancellationsTooExpensive;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+
+    public long getPriceVersion() {
+        return priceVersion;
+    }
+}
@@ -0,0 +1,337 @@
+package net.bigpoint.assessment.gasstation.impl.persistence;
+
+import net.bigpoint.assessment.gasstation.GasType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Append-only journal of the station events in a memory-mapped file.
+ * Every event is a fixed-size record. A writer claims its slot with a single atomic increment and fills it
+ * without locking, so the purchase never pays a syscall. The mapped pages are forced to the disk by a background
+ * thread every flush interval (group commit):
+ *  - a killed process loses nothing, the written records are in the page cache already
+ *  - a crash of the OS loses at most the records of the last flush interval
+ *
+ * Record layout, 32 bytes:
+ *  0      type, written last
+ *  1      gas type ordinal
+ *  4..7   checksum of the record
+ *  8..15  pump id
+ *  16..23 amount in liters
+ *  24..31 price per liter or purchase price
+ *
+ * The journal is replayed on open. Writers fill their slots concurrently, so a crash may leave empty or torn slots
+ * before the records of the faster writers. The replay skips them and erases the torn ones, it ends after
+ * MAX_WRITERS_IN_FLIGHT invalid slots in a row.
+ */
+public final class SalesJournal implements AutoCloseable {
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 10;
+
+    static final int RECORD_SIZE = 32;
+    /**
+     * The file is mapped and grows by segments
+     */
+    static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final int RECORDS_PER_SEGMENT = SEGMENT_SIZE / RECORD_SIZE;
+    private static final int MAX_SEGMENTS = 4096;
+    /**
+     * Writers, which may have claimed their slots without filling them yet. No valid record is further than that
+     * from the last valid one
+     */
+    static final int MAX_WRITERS_IN_FLIGHT = 4096;
+
+    private static final byte EMPTY = 0;
+    private static final byte PUMP_ADDED = 1;
+    private static final byte PRICE_SET = 2;
+    private static final byte PUMPED = 3;
+    private static final byte SALE = 4;
+    private static final byte CANCELLED_NO_GAS = 5;
+    private static final byte CANCELLED_TOO_EXPENSIVE = 6;
+    private static final byte REFILLED = 7;
+    private static final byte NO_GAS_TYPE = -1;
+
+    private final FileChannel channel;
+    /**
+     * Mapped segments of the file. Mapped on demand under the lock of the array
+     */
+    private final AtomicReferenceArray<MappedByteBuffer> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+    /**
+     * Next free record slot
+     */
+    private final AtomicLong nextSlot;
+    /**
+     * Slots before it are forced to the disk. Guarded by this
+     */
+    private long flushedSlot;
+    private final ScheduledExecutorService flusher;
+    private final JournalState recoveredState;
+    private volatile boolean closed = false;
+
+    private SalesJournal(FileChannel channel, long flushIntervalMillis) throws IOException {
+        this.channel = channel;
+        this.recoveredState = new JournalState();
+        final long recordsCount = replay(recoveredState);
+        this.nextSlot = new AtomicLong(recordsCount);
+        this.flushedSlot = recordsCount;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "sales-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static SalesJournal open(Path file) throws IOException {
+        return open(file, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens the journal, creating the file if absent, and replays its records
+     * @param file
+     * @param flushIntervalMillis group commit interval
+     * @return
+     * @throws IOException
+     * @throws IllegalStateException if the journal is inconsistent
+     */
+    public static SalesJournal open(Path file, long flushIntervalMillis) throws IOException {
+        if (flushIntervalMillis <= 0)
+            throw new IllegalArgumentException("Inappropriate flush interval");
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new SalesJournal(channel, flushIntervalMillis);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * State of the station rebuilt from the records found on open
+     * @return
+     */
+    public JournalState getRecoveredState() {
+        return recoveredState;
+    }
+
+    /**
+     * @return number of the records in the journal
+     */
+    public long getRecordsCount() {
+        return nextSlot.get();
+    }
+
+    public void pumpAdded(long pumpId, GasType gasType, double amountInLiters) {
+        append(PUMP_ADDED, gasType, pumpId, amountInLiters, 0);
+    }
+
+    public void priceSet(GasType gasType, double price, long priceVersion) {
+        append(PRICE_SET, gasType, priceVersion, 0, price);
+    }
+
+    public void pumped(long pumpId, GasType gasType, double amountInLiters) {
+        append(PUMPED, gasType, pumpId, amountInLiters, 0);
+    }
+
+    public void refilled(long pumpId, GasType gasType, double amountInLiters) {
+        append(REFILLED, gasType, pumpId, amountInLiters, 0);
+    }
+
+    public void sale(GasType gasType, double amountInLiters, double purchasePrice, long priceVersion) {
+        append(SALE, gasType, priceVersion, amountInLiters, purchasePrice);
+    }
+
+    public void cancelledNoGas(GasType gasType, double amountInLiters) {
+        append(CANCELLED_NO_GAS, gasType, -1, amountInLiters, 0);
+    }
+
+    public void cancelledTooExpensive(GasType gasType, double amountInLiters, double maxPricePerLiter) {
+        append(CANCELLED_TOO_EXPENSIVE, gasType, -1, amountInLiters, maxPricePerLiter);
+    }
+
+    /**
+     * Forces all the appended records to the disk without waiting for the flusher
+     */
+    public synchronized void sync() {
+        final long slot = nextSlot.get();
+        if (slot == flushedSlot)
+            return;
+        final int lastSegment = segmentIndex(slot - 1);
+        // A writer may still be filling a slot claimed before the previous flush, so its segment is forced again
+        for (int i = Math.max(0, segmentIndex(flushedSlot) - 1); i <= lastSegment; i++) {
+            final MappedByteBuffer segment = segments.get(i);
+            if (segment != null)
+                segment.force();
+        }
+        flushedSlot = slot;
+    }
+
+    /**
+     * Stops the flusher and forces the records. Records appended after close are kept in the page cache only
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+        channel.close();
+    }
+
+    /**
+     * Writes the record into its own slot. The type goes last, the checksum catches the records torn by a crash anyway
+     */
+    private void append(byte type, GasType gasType, long pumpId, double amountInLiters, double value) {
+        final long slot = nextSlot.getAndIncrement();
+        final MappedByteBuffer segment = segment(segmentIndex(slot));
+        final int offset = (int) (slot % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+        final byte gasTypeOrdinal = gasType == null ? NO_GAS_TYPE : (byte) gasType.ordinal();
+        final long amountBits = Double.doubleToRawLongBits(amountInLiters);
+        final long valueBits = Double.doubleToRawLongBits(value);
+        segment.put(offset + 1, gasTypeOrdinal);
+        segment.putInt(offset + 4, checksum(type, gasTypeOrdinal, pumpId, amountBits, valueBits));
+        segment.putLong(offset + 8, pumpId);
+        segment.putLong(offset + 16, amountBits);
+        segment.putLong(offset + 24, valueBits);
+        segment.put(offset, type);
+    }
+
+    /**
+     * Reads the records from the beginning, skips the invalid slots and erases the torn ones.
+     * Only the segments of the erased slots are forced
+     * @param state
+     * @return number of the slots up to the last valid record
+     */
+    private long replay(JournalState state) throws IOException {
+        final long capacity = channel.size() / RECORD_SIZE;
+        final BitSet erasedSegments = new BitSet();
+        long recordsCount = 0;
+        for (long slot = 0; slot < capacity && slot - recordsCount < MAX_WRITERS_IN_FLIGHT; slot++) {
+            final MappedByteBuffer segment = segment(segmentIndex(slot));
+            final int offset = (int) (slot % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+            final byte type = segment.get(offset);
+            final byte gasTypeOrdinal = segment.get(offset + 1);
+            final int checksum = segment.getInt(offset + 4);
+            final long pumpId = segment.getLong(offset + 8);
+            final long amountBits = segment.getLong(offset + 16);
+            final long valueBits = segment.getLong(offset + 24);
+            if (type != EMPTY && checksum == checksum(type, gasTypeOrdinal, pumpId, amountBits, valueBits)) {
+                apply(state, type, gasTypeOrdinal, pumpId, Double.longBitsToDouble(amountBits), Double.longBitsToDouble(valueBits));
+                recordsCount = slot + 1;
+            } else if (erase(segment, offset)) {
+                // A torn record must not become valid when its slot is written partially after the next crash
+                erasedSegments.set(segmentIndex(slot));
+            }
+        }
+        state.validate();
+
+        for (int i = erasedSegments.nextSetBit(0); i >= 0; i = erasedSegments.nextSetBit(i + 1))
+            segments.get(i).force();
+        return recordsCount;
+    }
+
+    /**
+     * Zeroes the invalid record
+     * @return false if the record is empty already
+     */
+    private static boolean erase(MappedByteBuffer segment, int offset) {
+        boolean erased = false;
+        for (int i = 0; i < RECORD_SIZE; i += Long.BYTES) {
+            if (segment.getLong(offset + i) != 0) {
+                segment.putLong(offset + i, 0);
+                erased = true;
+            }
+        }
+        return erased;
+    }
+
+    private static void apply(JournalState state, byte type, byte gasTypeOrdinal, long pumpId, double amountInLiters, double value) {
+        final GasType gasType = gasTypeOrdinal == NO_GAS_TYPE ? null : GasType.values()[gasTypeOrdinal];
+        switch (type) {
+            case PUMP_ADDED:
+                state.pumpAdded(pumpId, gasType, amountInLiters);
+                break;
+            case PRICE_SET:
+                state.priceSet(gasType, value, pumpId);
+                break;
+            case PUMPED:
+                state.pumped(pumpId, amountInLiters);
+                break;
+            case REFILLED:
+                state.refilled(pumpId, amountInLiters);
+                break;
+            case SALE:
+                state.sale(value, pumpId);
+                break;
+            case CANCELLED_NO_GAS:
+                state.cancelledNoGas();
+                break;
+            case CANCELLED_TOO_EXPENSIVE:
+                state.cancelledTooExpensive();
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    private static int checksum(byte type, byte gasTypeOrdinal, long pumpId, long amountBits, long valueBits) {
+        long hash = type * 31L + gasTypeOrdinal;
+        hash = hash * 0x9E3779B97F4A7C15L + pumpId;
+        hash = hash * 0x9E3779B97F4A7C15L + amountBits;
+        hash = hash * 0x9E3779B97F4A7C15L + valueBits;
+        // Never zero, so an erased record is not valid
+        return (int) (hash ^ (hash >>> 32)) | 1;
+    }
+
+    private static int segmentIndex(long slot) {
+        return (int) (slot / RECORDS_PER_SEGMENT);
+    }
+
+    private MappedByteBuffer segment(int index) {
+        final MappedByteBuffer segment = index < MAX_SEGMENTS ? segments.get(index) : null;
+        return segment != null ? segment : mapSegment(index);
+    }
+
+    private MappedByteBuffer mapSegment(int index) {
+        if (index >= MAX_SEGMENTS)
+            throw new IllegalStateException("The sales journal is full");
+        synchronized (segments) {
+            MappedByteBuffer segment = segments.get(index);
+            if (segment == null) {
+                try {
+                    // Mapping beyond the end grows the file
+                    segment = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * SEGMENT_SIZE, SEGMENT_SIZE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                segments.set(index, segment);
+            }
+            return segment;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            // The next flush retries, the records stay in the page cache
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package net.bigpoint.assessment.gasstation.impl.persistence;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Complete state of a station: strategy, prices, pumps and counters. Saved as a compact binary file:
+ *  - header: magic, format version, strategy name
+ *  - prices: count, then gas type ordinal and price, then the price version (since the format version 2)
+ *  - counters: sales, cancellations (no gas, too expensive), revenue
+ *  - pumps: count, then gas type ordinal and remaining amount, 9 bytes per pump
+ */
+public final class StationSnapshot {
+    private static final int MAGIC = 0x47534E50;
+    private static final int FORMAT_VERSION = 2;
+
+    private final PumpManagerEnum pumpManagerStrategy;
+    private final Map<GasType, Double> prices;
+    private final long priceVersion;
+    private final List<GasPump> pumps;
+    private final int numberOfSales;
+    private final int numberOfCancellationsNoGas;
+    private final int numberOfCancellationsTooExpensive;
+    private final double revenue;
+
+    public StationSnapshot(PumpManagerEnum pumpManagerStrategy, Map<GasType, Double> prices, long priceVersion, List<GasPump> pumps,
+                           int numberOfSales, int numberOfCancellationsNoGas, int numberOfCancellationsTooExpensive, double revenue) {
+        this.pumpManagerStrategy = pumpManagerStrategy;
+        this.prices = prices.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(new EnumMap<>(prices));
+        this.priceVersion = priceVersion;
+        this.pumps = Collections.unmodifiableList(new ArrayList<>(pumps));
+        this.numberOfSales = numberOfSales;
+        this.numberOfCancellationsNoGas = numberOfCancellationsNoGas;
+        this.numberOfCancellationsTooExpensive = numberOfCancellationsTooExpensive;
+        this.revenue = revenue;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file and moves it over the target, so a crash never leaves a half-written snapshot
+     * @param file
+     * @throws IOException
+     */
+    public void write(Path file) throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        final Path temporaryFile = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeUTF(pumpManagerStrategy.name());
+                output.writeInt(prices.size());
+                for (Map.Entry<GasType, Double> price : prices.entrySet()) {
+                    output.writeByte(price.getKey().ordinal());
+                    output.writeDouble(price.getValue());
+                }
+                output.writeLong(priceVersion);
+                output.writeInt(numberOfSales);
+                output.writeInt(numberOfCancellationsNoGas);
+                output.writeInt(numberOfCancellationsTooExpensive);
+                output.writeDouble(revenue);
+                output.writeInt(pumps.size());
+                for (GasPump pump : pumps) {
+                    output.writeByte(pump.getGasType().ordinal());
+                    output.writeDouble(pump.getRemainingAmount());
+                }
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * @param file
+     * @return
+     * @throws IOException if the file is not a station snapshot
+     */
+    public static StationSnapshot read(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            final int formatVersion = input.readInt() == MAGIC ? input.readInt() : -1;
+            if (formatVersion < 1 || formatVersion > FORMAT_VERSION)
+                throw new IOException("Not a station snapshot: " + file);
+            final PumpManagerEnum pumpManagerStrategy;
+            try {
+                pumpManagerStrategy = PumpManagerEnum.valueOf(input.readUTF());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown pump manager strategy in " + file, e);
+            }
+            final int pricesCount = input.readInt();
+            final Map<GasType, Double> prices = new EnumMap<>(GasType.class);
+            for (int i = 0; i < pricesCount; i++)
+                prices.put(readGasType(input), input.readDouble());
+            final long priceVersion = formatVersion >= 2 ? input.readLong() : 0;
+            final int numberOfSales = input.readInt();
+            final int numberOfCancellationsNoGas = input.readInt();
+            final int numberOfCancellationsTooExpensive = input.readInt();
+            final double revenue = input.readDouble();
+            final int pumpsCount = input.readInt();
+            if (pumpsCount < 0)
+                throw new IOException("Inappropriate number of pumps in " + file);
+            final List<GasPump> pumps = new ArrayList<>(pumpsCount);
+            for (int i = 0; i < pumpsCount; i++)
+                pumps.add(new GasPump(readGasType(input), input.readDouble()));
+            return new StationSnapshot(pumpManagerStrategy, prices, priceVersion, pumps,
+                    numberOfSales, numberOfCancellationsNoGas, numberOfCancellationsTooExpensive, revenue);
+        }
+    }
+
+    private static GasType readGasType(DataInputStream input) throws IOException {
+        final int ordinal = input.readUnsignedByte();
+        if (ordinal >= GasType.values().length)
+            throw new IOException("Unknown gas type " + ordinal);
+        return GasType.values()[ordinal];
+    }
+
+    public PumpManagerEnum getPumpManagerStrategy() {
+        return pumpManagerStrategy;
+    }
+
+    public Map<GasType, Double> getPrices() {
+        return prices;
+    }
+
+    /**
+     * @return version of the published prices, the restored station continues from it
+     */
+    public long getPriceVersion() {
+        return priceVersion;
+    }
+
+    public List<GasPump> getPumps() {
+        return pumps;
+    }
+
+    public int getNumberOfSales() {
+        return numberOfSales;
+    }
+
+    public int getNumberOfCancellationsNoGas() {
+        return numberOfCancellationsNoGas;
+    }
+
+    public int getNumberOfCancellationsTooExpensive() {
+        return numberOfCancellationsTooExpensive;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+}
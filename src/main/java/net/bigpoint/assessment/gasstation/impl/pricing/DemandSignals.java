@@ -0,0 +1,63 @@
+package net.bigpoint.assessment.gasstation.impl.pricing;
+
+import net.bigpoint.assessment.gasstation.GasType;
+
+/**
+ * Live load of a gas type at the pricing tick
+ */
+public final class DemandSignals {
+    private final GasType gasType;
+    private final int pumpCount;
+    private final double backlogInLiters;
+    private final double remainingInLiters;
+    private final long purchases;
+    private final long rejections;
+
+    /**
+     * @param gasType
+     * @param pumpCount
+     * @param backlogInLiters reserved, but not pumped gas of all the pumps
+     * @param remainingInLiters gas of all the pumps after the scheduled pumpings
+     * @param purchases purchases since the previous tick, except the too expensive ones
+     * @param rejections purchases since the previous tick rejected for the lack of gas, shed or timed out
+     */
+    public DemandSignals(GasType gasType, int pumpCount, double backlogInLiters, double remainingInLiters, long purchases, long rejections) {
+        this.gasType = gasType;
+        this.pumpCount = pumpCount;
+        this.backlogInLiters = backlogInLiters;
+        this.remainingInLiters = remainingInLiters;
+        this.purchases = purchases;
+        this.rejections = rejections;
+    }
+
+    public GasType getGasType() {
+        return gasType;
+    }
+
+    public int getPumpCount() {
+        return pumpCount;
+    }
+
+    public double getBacklogInLiters() {
+        return backlogInLiters;
+    }
+
+    public double getRemainingInLiters() {
+        return remainingInLiters;
+    }
+
+    public long getPurchases() {
+        return purchases;
+    }
+
+    public long getRejections() {
+        return rejections;
+    }
+
+    /**
+     * @return share of the rejected purchases since the previous tick, 0 without purchases
+     */
+    public double getRejectionRate() {
+        return purchases == 0 ? 0 : (double) rejections / purchases;
+    }
+}
@@ -0,0 +1,37 @@
+package net.bigpoint.assessment.gasstation.impl.pricing;
+
+/**
+ * Surcharge over the base price by the highest of three pressures, each of them from 0 to 1:
+ *  - backlog: reserved, but not pumped liters per pump relative to the target backlog
+ *  - scarcity: how much of the reserve is already sold
+ *  - rejections: share of the rejected purchases since the previous tick
+ * The price is the base price without pressure and the base price plus the max surcharge at full pressure
+ */
+public class LoadPricingPolicy implements PricingPolicy {
+    private final double maxSurcharge;
+    private final double targetBacklogPerPumpInLiters;
+    private final double reserveInLiters;
+
+    /**
+     * @param maxSurcharge surcharge at full pressure, share of the base price
+     * @param targetBacklogPerPumpInLiters backlog per pump, which is full pressure
+     * @param reserveInLiters remaining gas, under which the scarcity pressure grows, 0 switches it off
+     */
+    public LoadPricingPolicy(double maxSurcharge, double targetBacklogPerPumpInLiters, double reserveInLiters) {
+        if (!(maxSurcharge >= 0) || !(targetBacklogPerPumpInLiters > 0) || !(reserveInLiters >= 0))
+            throw new IllegalArgumentException("Inappropriate pricing policy");
+        this.maxSurcharge = maxSurcharge;
+        this.targetBacklogPerPumpInLiters = targetBacklogPerPumpInLiters;
+        this.reserveInLiters = reserveInLiters;
+    }
+
+    @Override
+    public double price(double basePrice, DemandSignals signals) {
+        double pressure = signals.getRejectionRate();
+        if (signals.getPumpCount() > 0)
+            pressure = Math.max(pressure, signals.getBacklogInLiters() / signals.getPumpCount() / targetBacklogPerPumpInLiters);
+        if (reserveInLiters > 0)
+            pressure = Math.max(pressure, 1 - signals.getRemainingInLiters() / reserveInLiters);
+        return basePrice * (1 + maxSurcharge * Math.min(1, Math.max(0, pressure)));
+    }
+}
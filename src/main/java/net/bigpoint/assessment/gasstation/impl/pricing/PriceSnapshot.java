@@ -0,0 +1,106 @@
+package net.bigpoint.assessment.gasstation.impl.pricing;
+
+import net.bigpoint.assessment.gasstation.GasType;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Immutable versioned table of the prices indexed by GasType ordinal. Every change publishes a new snapshot
+ * with the next version, so a purchase reads the price and its version with a single volatile load of the snapshot
+ */
+public final class PriceSnapshot {
+    private static final PriceSnapshot EMPTY = new PriceSnapshot(0, newPrices());
+
+    private final long version;
+    /**
+     * NaN marks the gas type without a price
+     */
+    private final double[] prices;
+
+    private PriceSnapshot(long version, double[] prices) {
+        this.version = version;
+        this.prices = prices;
+    }
+
+    /**
+     * @return snapshot of the version 0 without prices
+     */
+    public static PriceSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param version
+     * @param prices
+     * @return snapshot of the prices with the given version, for the recovery
+     */
+    public static PriceSnapshot of(long version, Map<GasType, Double> prices) {
+        final double[] pricesArray = newPrices();
+        prices.forEach((gasType, price) -> pricesArray[gasType.ordinal()] = price);
+        return new PriceSnapshot(version, pricesArray);
+    }
+
+    private static double[] newPrices() {
+        final double[] prices = new double[GasType.values().length];
+        Arrays.fill(prices, Double.NaN);
+        return prices;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param gasType
+     * @return price or NaN if the gas type has no price
+     */
+    public double getPrice(GasType gasType) {
+        return prices[gasType.ordinal()];
+    }
+
+    public boolean hasPrice(GasType gasType) {
+        return !Double.isNaN(prices[gasType.ordinal()]);
+    }
+
+    /**
+     * @param gasType
+     * @param price
+     * @return next version with the changed price
+     */
+    public PriceSnapshot withPrice(GasType gasType, double price) {
+        final double[] changedPrices = prices.clone();
+        changedPrices[gasType.ordinal()] = price;
+        return new PriceSnapshot(version + 1, changedPrices);
+    }
+
+    /**
+     * @param changedPrices prices indexed by GasType ordinal, NaN for the gas types without a price
+     * @return next version with the prices, or this snapshot if nothing changed
+     */
+    public PriceSnapshot withPrices(double[] changedPrices) {
+        if (Arrays.equals(prices, changedPrices))
+            return this;
+        return new PriceSnapshot(version + 1, changedPrices.clone());
+    }
+
+    /**
+     * @param other
+     * @return next version with the prices of the other snapshot, or this snapshot if nothing changed
+     */
+    public PriceSnapshot withPrices(PriceSnapshot other) {
+        return withPrices(other.prices);
+    }
+
+    /**
+     * @return prices of the gas types with a price
+     */
+    public Map<GasType, Double> toMap() {
+        final Map<GasType, Double> priceMap = new EnumMap<>(GasType.class);
+        for (GasType gasType : GasType.values())
+            if (hasPrice(gasType))
+                priceMap.put(gasType, getPrice(gasType));
+        return priceMap;
+    }
+}
@@ -0,0 +1,14 @@
+package net.bigpoint.assessment.gasstation.impl.pricing;
+
+/**
+ * Price of a gas type by its load. Called by the pricing engine on every tick, so it should be cheap
+ */
+@FunctionalInterface
+public interface PricingPolicy {
+    /**
+     * @param basePrice price set by GasStationImpl::setPrice
+     * @param signals load of the gas type
+     * @return price to publish
+     */
+    double price(double basePrice, DemandSignals signals);
+}
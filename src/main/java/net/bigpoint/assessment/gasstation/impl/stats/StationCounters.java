@@ -0,0 +1,289 @@
+package net.bigpoint.assessment.gasstation.impl.stats;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpListener;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpWorker;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Striped fixed-point books of the station. Every stripe is a row of long cells (totals and a block per gas type)
+ * guarded by its own sequence number: a writer claims a free stripe with one CAS, adds all the cells of the event
+ * and publishes the next even sequence, a busy stripe is skipped for the next one. Readers never block the writers:
+ * a stripe, which changed while it was read, is read again. So every event (e.g. the sale count with its revenue
+ * and liters) is either entirely in a snapshot or not at all.
+ * Money and liters are kept in billionths (FIXED_POINT_SCALE): the sums are exact and do not drift with the order
+ * of the additions, up to about 9 billion units of the currency or liters.
+ * The per-pump cells are updated by the pumping thread of the pump only
+ */
+public final class StationCounters implements PumpListener {
+    public static final double FIXED_POINT_SCALE = 1e9;
+
+    static final int SALES = 0;
+    static final int REVENUE = 1;
+    static final int LITERS = 2;
+    static final int CANCELLATIONS_NO_GAS = 3;
+    static final int CANCELLATIONS_TOO_EXPENSIVE = 4;
+    static final int SHED = 5;
+    static final int TIMED_OUT = 6;
+    static final int CELLS_PER_BLOCK = 7;
+
+    /**
+     * Cells of the neighbouring stripes do not share a cache line
+     */
+    private static final int PADDING = 8;
+    private static final int SEQUENCE = PADDING;
+    private static final int TOTAL = PADDING + 1;
+    private static final int STRIPE_LENGTH = TOTAL + (1 + GasType.values().length) * CELLS_PER_BLOCK + PADDING;
+    private static final int MAX_READ_ATTEMPTS = 64;
+
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
+    private final Map<Long, PumpCells> pumpCells = new ConcurrentHashMap<>();
+
+    public StationCounters() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param minStripes rounded up to a power of two
+     */
+    public StationCounters(int minStripes) {
+        final int stripeCount = Integer.highestOneBit(Math.max(2, minStripes - 1) << 1);
+        stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++)
+            stripes[i] = new AtomicLongArray(STRIPE_LENGTH);
+        stripeMask = stripeCount - 1;
+    }
+
+    public static long toFixedPoint(double value) {
+        return Math.round(value * FIXED_POINT_SCALE);
+    }
+
+    public static double fromFixedPoint(long value) {
+        return value / FIXED_POINT_SCALE;
+    }
+
+    public void recordSale(GasType gasType, double amountInLiters, double purchasePrice) {
+        recordSales(gasType, 1, toFixedPoint(amountInLiters), toFixedPoint(purchasePrice));
+    }
+
+    /**
+     * Several sales of the gas type as one event, e.g. a batch
+     * @param gasType
+     * @param sales
+     * @param litersFixedPoint
+     * @param revenueFixedPoint
+     */
+    public void recordSales(GasType gasType, int sales, long litersFixedPoint, long revenueFixedPoint) {
+        final AtomicLongArray stripe = acquire();
+        final int block = block(gasType);
+        add(stripe, TOTAL + SALES, sales);
+        add(stripe, TOTAL + REVENUE, revenueFixedPoint);
+        add(stripe, TOTAL + LITERS, litersFixedPoint);
+        add(stripe, block + SALES, sales);
+        add(stripe, block + REVENUE, revenueFixedPoint);
+        add(stripe, block + LITERS, litersFixedPoint);
+        release(stripe);
+    }
+
+    /**
+     * Rejected orders of the gas type
+     * @param gasType
+     * @param cell one of CANCELLATIONS_NO_GAS, CANCELLATIONS_TOO_EXPENSIVE, SHED or TIMED_OUT
+     * @param count
+     */
+    void recordRejections(GasType gasType, int cell, int count) {
+        final AtomicLongArray stripe = acquire();
+        add(stripe, TOTAL + cell, count);
+        add(stripe, block(gasType) + cell, count);
+        release(stripe);
+    }
+
+    public void recordCancellationsNoGas(GasType gasType, int count) {
+        recordRejections(gasType, CANCELLATIONS_NO_GAS, count);
+    }
+
+    public void recordCancellationsTooExpensive(GasType gasType, int count) {
+        recordRejections(gasType, CANCELLATIONS_TOO_EXPENSIVE, count);
+    }
+
+    public void recordShedOrders(GasType gasType, int count) {
+        recordRejections(gasType, SHED, count);
+    }
+
+    public void recordTimedOutOrders(GasType gasType, int count) {
+        recordRejections(gasType, TIMED_OUT, count);
+    }
+
+    /**
+     * Adds the books of a restored station to the totals, the gas type breakdown starts from zero
+     */
+    public void restore(int sales, int cancellationsNoGas, int cancellationsTooExpensive, double revenue) {
+        final AtomicLongArray stripe = acquire();
+        add(stripe, TOTAL + SALES, sales);
+        add(stripe, TOTAL + REVENUE, toFixedPoint(revenue));
+        add(stripe, TOTAL + CANCELLATIONS_NO_GAS, cancellationsNoGas);
+        add(stripe, TOTAL + CANCELLATIONS_TOO_EXPENSIVE, cancellationsTooExpensive);
+        release(stripe);
+    }
+
+    /**
+     * Single total cell summed over the stripes, e.g. for getNumberOfSales. Cheaper than the snapshot, but not consistent with the other cells
+     * @param cell
+     * @return
+     */
+    long sumTotal(int cell) {
+        long sum = 0;
+        for (AtomicLongArray stripe : stripes)
+            sum += stripe.get(TOTAL + cell);
+        return sum;
+    }
+
+    public long getSales() {
+        return sumTotal(SALES);
+    }
+
+    public double getRevenue() {
+        return fromFixedPoint(sumTotal(REVENUE));
+    }
+
+    public long getCancellationsNoGas() {
+        return sumTotal(CANCELLATIONS_NO_GAS);
+    }
+
+    public long getCancellationsTooExpensive() {
+        return sumTotal(CANCELLATIONS_TOO_EXPENSIVE);
+    }
+
+    public long getShedOrders() {
+        return sumTotal(SHED);
+    }
+
+    public long getTimedOutOrders() {
+        return sumTotal(TIMED_OUT);
+    }
+
+    /**
+     * Consistent view of all the cells without blocking the writers
+     * @return
+     */
+    public StationStats snapshot() {
+        final long[] cells = new long[STRIPE_LENGTH - TOTAL - PADDING];
+        for (AtomicLongArray stripe : stripes)
+            readStripe(stripe, cells);
+        final Map<Long, StationStats.PumpStats> pumps = new TreeMap<>();
+        for (PumpCells pump : pumpCells.values())
+            pumps.put(pump.pumpId, pump.snapshot());
+        return new StationStats(cells, pumps);
+    }
+
+    /**
+     * Adds the stripe to the cells. An odd or changed sequence means a writer is in the stripe: it is read again,
+     * the writer leaves it after a few additions. A writer, which is descheduled inside the stripe, makes the reader yield
+     */
+    private static void readStripe(AtomicLongArray stripe, long[] cells) {
+        final long[] copy = new long[cells.length];
+        for (int attempt = 0; ; attempt++) {
+            final long sequence = stripe.get(SEQUENCE);
+            if ((sequence & 1) == 0) {
+                for (int i = 0; i < copy.length; i++)
+                    copy[i] = stripe.get(TOTAL + i);
+                if (stripe.get(SEQUENCE) == sequence)
+                    break;
+            }
+            if (attempt >= MAX_READ_ATTEMPTS)
+                Thread.yield();
+        }
+        for (int i = 0; i < cells.length; i++)
+            cells[i] += copy[i];
+    }
+
+    /**
+     * Claims a stripe starting from the one of the current thread. A busy stripe (odd sequence or a lost CAS) is skipped
+     * @return
+     */
+    private AtomicLongArray acquire() {
+        int index = hash(Thread.currentThread().getId());
+        while (true) {
+            final AtomicLongArray stripe = stripes[index & stripeMask];
+            final long sequence = stripe.get(SEQUENCE);
+            if ((sequence & 1) == 0 && stripe.compareAndSet(SEQUENCE, sequence, sequence + 1))
+                return stripe;
+            index++;
+        }
+    }
+
+    /**
+     * The stripe is owned by the writer: plain addition, published by the release of the sequence
+     */
+    private static void add(AtomicLongArray stripe, int index, long delta) {
+        stripe.lazySet(index, stripe.get(index) + delta);
+    }
+
+    private static void release(AtomicLongArray stripe) {
+        stripe.lazySet(SEQUENCE, stripe.get(SEQUENCE) + 1);
+    }
+
+    private static int block(GasType gasType) {
+        return TOTAL + (1 + gasType.ordinal()) * CELLS_PER_BLOCK;
+    }
+
+    private static int hash(long threadId) {
+        final long h = threadId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Pump is known to the books before its first pumping
+     * @param pumpWorker
+     */
+    public void pumpAdded(PumpWorker pumpWorker) {
+        pumpCells.computeIfAbsent(pumpWorker.getId(), id -> new PumpCells(id, pumpWorker.getGasType()));
+    }
+
+    @Override
+    public void pumpingFinished(PumpWorker pumpWorker, double amountInLiters, long pumpingNanos) {
+        PumpCells cells = pumpCells.get(pumpWorker.getId());
+        if (cells == null)
+            cells = pumpCells.computeIfAbsent(pumpWorker.getId(), id -> new PumpCells(id, pumpWorker.getGasType()));
+        cells.pumped(toFixedPoint(amountInLiters));
+    }
+
+    /**
+     * Cells of one pump with a single writer, the pumping thread of the pump
+     */
+    private static final class PumpCells {
+        private final long pumpId;
+        private final GasType gasType;
+        private volatile long sequence;
+        private volatile long pumpings;
+        private volatile long pumpedFixedPoint;
+
+        PumpCells(long pumpId, GasType gasType) {
+            this.pumpId = pumpId;
+            this.gasType = gasType;
+        }
+
+        void pumped(long litersFixedPoint) {
+            sequence++;
+            pumpings++;
+            pumpedFixedPoint += litersFixedPoint;
+            sequence++;
+        }
+
+        StationStats.PumpStats snapshot() {
+            while (true) {
+                final long before = sequence;
+                final long currentPumpings = pumpings;
+                final long currentPumped = pumpedFixedPoint;
+                if ((before & 1) == 0 && sequence == before)
+                    return new StationStats.PumpStats(pumpId, gasType, currentPumpings, fromFixedPoint(currentPumped));
+                Thread.yield();
+            }
+        }
+    }
+}
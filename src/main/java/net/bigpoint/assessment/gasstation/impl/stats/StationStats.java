@@ -0,0 +1,139 @@
+package net.bigpoint.assessment.gasstation.impl.stats;
+
+import net.bigpoint.assessment.gasstation.GasType;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static net.bigpoint.assessment.gasstation.impl.stats.StationCounters.CANCELLATIONS_NO_GAS;
+import static net.bigpoint.assessment.gasstation.impl.stats.StationCounters.CANCELLATIONS_TOO_EXPENSIVE;
+import static net.bigpoint.assessment.gasstation.impl.stats.StationCounters.CELLS_PER_BLOCK;
+import static net.bigpoint.assessment.gasstation.impl.stats.StationCounters.LITERS;
+import static net.bigpoint.assessment.gasstation.impl.stats.StationCounters.REVENUE;
+import static net.bigpoint.assessment.gasstation.impl.stats.StationCounters.SALES;
+import static net.bigpoint.assessment.gasstation.impl.stats.StationCounters.SHED;
+import static net.bigpoint.assessment.gasstation.impl.stats.StationCounters.TIMED_OUT;
+import static net.bigpoint.assessment.gasstation.impl.stats.StationCounters.fromFixedPoint;
+
+/**
+ * Immutable snapshot of the station books: the totals and the breakdown by gas type are mutually consistent
+ * (every sale is counted with its revenue and liters or not at all). The gas type breakdown counts the events
+ * since the station was opened, the totals include the restored books as well.
+ * Pumps are broken down by the pumped gas, each pump is consistent on its own
+ */
+public final class StationStats {
+    private final long[] cells;
+    private final Map<Long, PumpStats> pumps;
+
+    StationStats(long[] cells, Map<Long, PumpStats> pumps) {
+        this.cells = cells;
+        this.pumps = Collections.unmodifiableMap(pumps);
+    }
+
+    public long getSales() {
+        return cells[SALES];
+    }
+
+    public double getRevenue() {
+        return fromFixedPoint(cells[REVENUE]);
+    }
+
+    public double getSoldLiters() {
+        return fromFixedPoint(cells[LITERS]);
+    }
+
+    public long getCancellationsNoGas() {
+        return cells[CANCELLATIONS_NO_GAS];
+    }
+
+    public long getCancellationsTooExpensive() {
+        return cells[CANCELLATIONS_TOO_EXPENSIVE];
+    }
+
+    public long getShedOrders() {
+        return cells[SHED];
+    }
+
+    public long getTimedOutOrders() {
+        return cells[TIMED_OUT];
+    }
+
+    public long getSales(GasType gasType) {
+        return cells[block(gasType) + SALES];
+    }
+
+    public double getRevenue(GasType gasType) {
+        return fromFixedPoint(cells[block(gasType) + REVENUE]);
+    }
+
+    public double getSoldLiters(GasType gasType) {
+        return fromFixedPoint(cells[block(gasType) + LITERS]);
+    }
+
+    public long getCancellationsNoGas(GasType gasType) {
+        return cells[block(gasType) + CANCELLATIONS_NO_GAS];
+    }
+
+    public long getCancellationsTooExpensive(GasType gasType) {
+        return cells[block(gasType) + CANCELLATIONS_TOO_EXPENSIVE];
+    }
+
+    public long getShedOrders(GasType gasType) {
+        return cells[block(gasType) + SHED];
+    }
+
+    public long getTimedOutOrders(GasType gasType) {
+        return cells[block(gasType) + TIMED_OUT];
+    }
+
+    /**
+     * @return pumps by the pump id (PumpState::getPumpId)
+     */
+    public Map<Long, PumpStats> getPumps() {
+        return pumps;
+    }
+
+    private static int block(GasType gasType) {
+        return (1 + gasType.ordinal()) * CELLS_PER_BLOCK;
+    }
+
+    @Override
+    public String toString() {
+        return "StationStats{sales=" + getSales() + ", revenue=" + getRevenue() + ", soldLiters=" + getSoldLiters()
+                + ", cancellationsNoGas=" + getCancellationsNoGas() + ", cancellationsTooExpensive=" + getCancellationsTooExpensive()
+                + ", shedOrders=" + getShedOrders() + ", timedOutOrders=" + getTimedOutOrders() + ", pumps=" + pumps.size() + '}';
+    }
+
+    /**
+     * Finished pumpings of one pump
+     */
+    public static final class PumpStats {
+        private final long pumpId;
+        private final GasType gasType;
+        private final long pumpings;
+        private final double pumpedLiters;
+
+        PumpStats(long pumpId, GasType gasType, long pumpings, double pumpedLiters) {
+            this.pumpId = pumpId;
+            this.gasType = gasType;
+            this.pumpings = pumpings;
+            this.pumpedLiters = pumpedLiters;
+        }
+
+        public long getPumpId() {
+            return pumpId;
+        }
+
+        public GasType getGasType() {
+            return gasType;
+        }
+
+        public long getPumpings() {
+            return pumpings;
+        }
+
+        public double getPumpedLiters() {
+            return pumpedLiters;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package net.bigpoint.assessment.gasstation.impl.workload;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How the orders arrive at the station.
+ * Open-loop processes (POISSON, BURSTY) fix the arrival time of every order in advance, regardless of how fast
+ * the station serves them. CLOSED_LOOP has a fixed number of clients, each of them places the next order
+ * after the previous one is finished and the think time is over
+ */
+public final class ArrivalProcess {
+    public enum Kind {
+        POISSON, BURSTY, CLOSED_LOOP
+    }
+
+    private final Kind kind;
+    private final double ratePerSecond;
+    private final int ordersPerBurst;
+    private final long intervalNanos;
+    private final int clients;
+
+    private ArrivalProcess(Kind kind, double ratePerSecond, int ordersPerBurst, long intervalNanos, int clients) {
+        this.kind = kind;
+        this.ratePerSecond = ratePerSecond;
+        this.ordersPerBurst = ordersPerBurst;
+        this.intervalNanos = intervalNanos;
+        this.clients = clients;
+    }
+
+    /**
+     * @param ratePerSecond mean arrival rate, inter-arrival times are exponential
+     * @return
+     */
+    public static ArrivalProcess poisson(double ratePerSecond) {
+        if (ratePerSecond <= 0)
+            throw new IllegalArgumentException("Rate " + ratePerSecond + " is not positive");
+        return new ArrivalProcess(Kind.POISSON, ratePerSecond, 1, 0, 0);
+    }
+
+    /**
+     * @param ordersPerBurst orders of a burst arrive at once
+     * @param burstIntervalMillis
+     * @return
+     */
+    public static ArrivalProcess bursty(int ordersPerBurst, long burstIntervalMillis) {
+        if (ordersPerBurst <= 0 || burstIntervalMillis < 0)
+            throw new IllegalArgumentException("Invalid burst of " + ordersPerBurst + " orders every " + burstIntervalMillis + " ms");
+        return new ArrivalProcess(Kind.BURSTY, 0, ordersPerBurst, TimeUnit.MILLISECONDS.toNanos(burstIntervalMillis), 0);
+    }
+
+    /**
+     * @param clients
+     * @param thinkMillis pause of a client between its orders
+     * @return
+     */
+    public static ArrivalProcess closedLoop(int clients, long thinkMillis) {
+        if (clients <= 0 || thinkMillis < 0)
+            throw new IllegalArgumentException("Invalid " + clients + " clients with " + thinkMillis + " ms think time");
+        return new ArrivalProcess(Kind.CLOSED_LOOP, 0, 1, TimeUnit.MILLISECONDS.toNanos(thinkMillis), clients);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public boolean isOpenLoop() {
+        return kind != Kind.CLOSED_LOOP;
+    }
+
+    /**
+     * @return number of clients of the closed loop, 0 for the open loop
+     */
+    public int getClients() {
+        return clients;
+    }
+
+    /**
+     * @return think time of the closed loop clients
+     */
+    public long getThinkNanos() {
+        return kind == Kind.CLOSED_LOOP ? intervalNanos : 0;
+    }
+
+    /**
+     * @param orders
+     * @param random
+     * @return non-decreasing arrival offsets from the start of the run, null for the closed loop
+     */
+    long[] arrivalOffsetsNanos(int orders, Random random) {
+        if (kind == Kind.CLOSED_LOOP)
+            return null;
+        final long[] offsets = new long[orders];
+        double offsetNanos = 0;
+        for (int i = 0; i < orders; i++) {
+            if (kind == Kind.POISSON) {
+                offsetNanos += -Math.log(1 - random.nextDouble()) / ratePerSecond * TimeUnit.SECONDS.toNanos(1);
+                offsets[i] = (long) offsetNanos;
+            } else {
+                offsets[i] = (i / ordersPerBurst) * intervalNanos;
+            }
+        }
+        return offsets;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case POISSON:
+                return "poisson(ratePerSecond=" + ratePerSecond + ")";
+            case BURSTY:
+                return "bursty(ordersPerBurst=" + ordersPerBurst + ", burstIntervalMillis=" + TimeUnit.NANOSECONDS.toMillis(intervalNanos) + ")";
+            default:
+                return "closedLoop(clients=" + clients + ", thinkMillis=" + TimeUnit.NANOSECONDS.toMillis(intervalNanos) + ")";
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package net.bigpoint.assessment.gasstation.impl.workload;
+
+import java.util.Random;
+
+/**
+ * Seeded distribution of the order sizes and the max prices. Samples only from the given random,
+ * so the same seed gives the same values
+ */
+@FunctionalInterface
+public interface Distribution {
+    double sample(Random random);
+
+    static Distribution constant(double value) {
+        return random -> value;
+    }
+
+    /**
+     * @param min inclusive
+     * @param max exclusive
+     * @return
+     */
+    static Distribution uniform(double min, double max) {
+        if (!(min <= max))
+            throw new IllegalArgumentException("Min " + min + " is greater than max " + max);
+        return random -> min + (max - min) * random.nextDouble();
+    }
+
+    /**
+     * @param mean
+     * @param max values are capped, so a single order can not drain a pump
+     * @return
+     */
+    static Distribution exponential(double mean, double max) {
+        if (mean <= 0)
+            throw new IllegalArgumentException("Mean " + mean + " is not positive");
+        return random -> Math.min(max, -mean * Math.log(1 - random.nextDouble()));
+    }
+
+    /**
+     * @param values
+     * @param weights non-negative weights of the values, not necessarily normalized
+     * @return
+     */
+    static Distribution choice(double[] values, double[] weights) {
+        if (values.length == 0 || values.length != weights.length)
+            throw new IllegalArgumentException("Values and weights differ in length");
+        final double[] cumulativeWeights = new double[weights.length];
+        double totalWeight = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] < 0)
+                throw new IllegalArgumentException("Weight " + weights[i] + " is negative");
+            totalWeight += weights[i];
+            cumulativeWeights[i] = totalWeight;
+        }
+        final double total = totalWeight;
+        return random -> {
+            final double point = total * random.nextDouble();
+            for (int i = 0; i < cumulativeWeights.length - 1; i++)
+                if (point < cumulativeWeights[i])
+                    return values[i];
+            return values[values.length - 1];
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package net.bigpoint.assessment.gasstation.impl.workload;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.Order;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Orders of a workload generated in advance from its seed, so every strategy gets the same orders.
+ * Every dimension of the stream has its own random derived from the seed: changing e.g. the price distribution
+ * does not change the sizes or the arrival times
+ */
+public final class OrderStream {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final List<Order> orders;
+    /**
+     * Null for the closed loop
+     */
+    private final long[] arrivalOffsetsNanos;
+    private final long digest;
+
+    private OrderStream(List<Order> orders, long[] arrivalOffsetsNanos) {
+        this.orders = orders;
+        this.arrivalOffsetsNanos = arrivalOffsetsNanos;
+        this.digest = digest(orders, arrivalOffsetsNanos);
+    }
+
+    public static OrderStream generate(WorkloadSpec spec) {
+        final Random arrivalRandom = new Random(spec.getSeed());
+        final Random gasTypeRandom = new Random(spec.getSeed() + 1);
+        final Random sizeRandom = new Random(spec.getSeed() + 2);
+        final Random priceRandom = new Random(spec.getSeed() + 3);
+
+        // Gas types are sampled in the ordinal order, regardless of the map implementation
+        final List<GasType> gasTypes = new ArrayList<>();
+        final List<Double> cumulativeWeights = new ArrayList<>();
+        double totalWeight = 0;
+        for (GasType gasType : GasType.values()) {
+            if (!spec.isOrdered(gasType))
+                continue;
+            totalWeight += spec.getGasTypeMix().get(gasType);
+            gasTypes.add(gasType);
+            cumulativeWeights.add(totalWeight);
+        }
+
+        final List<Order> orders = new ArrayList<>(spec.getOrders());
+        for (int i = 0; i < spec.getOrders(); i++) {
+            final double point = totalWeight * gasTypeRandom.nextDouble();
+            int gasTypeIndex = 0;
+            while (gasTypeIndex < gasTypes.size() - 1 && point >= cumulativeWeights.get(gasTypeIndex))
+                gasTypeIndex++;
+            final GasType gasType = gasTypes.get(gasTypeIndex);
+            final double amountInLiters = spec.getOrderSizes().sample(sizeRandom);
+            final double maxPricePerLiter = spec.getPrice(gasType) * spec.getMaxPriceFactors().sample(priceRandom);
+            orders.add(new Order(gasType, amountInLiters, maxPricePerLiter));
+        }
+        return new OrderStream(Collections.unmodifiableList(orders), spec.getArrivalProcess().arrivalOffsetsNanos(spec.getOrders(), arrivalRandom));
+    }
+
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    /**
+     * @param index
+     * @return arrival offset of the order from the start of the run, 0 for the closed loop
+     */
+    public long getArrivalOffsetNanos(int index) {
+        return arrivalOffsetsNanos == null ? 0 : arrivalOffsetsNanos[index];
+    }
+
+    /**
+     * @return FNV-1a hash of the orders and their arrival times: equal digests of two runs mean equal order streams
+     */
+    public long getDigest() {
+        return digest;
+    }
+
+    public double getRequestedLiters() {
+        double requestedLiters = 0;
+        for (Order order : orders)
+            requestedLiters += order.getAmountInLiters();
+        return requestedLiters;
+    }
+
+    private static long digest(List<Order> orders, long[] arrivalOffsetsNanos) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < orders.size(); i++) {
+            final Order order = orders.get(i);
+            hash = mix(hash, order.getGasType().ordinal());
+            hash = mix(hash, Double.doubleToLongBits(order.getAmountInLiters()));
+            hash = mix(hash, Double.doubleToLongBits(order.getMaxPricePerLiter()));
+            if (arrivalOffsetsNanos != null)
+                hash = mix(hash, arrivalOffsetsNanos[i]);
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash ^= (value >>> (8 * i)) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
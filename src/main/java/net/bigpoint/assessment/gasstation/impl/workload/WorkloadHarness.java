@@ -0,0 +1,256 @@
+package net.bigpoint.assessment.gasstation.impl.workload;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.Order;
+import net.bigpoint.assessment.gasstation.impl.managers.OrderShedException;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpExecutionEngine;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpFutures;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.managers.VirtualClock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs the seeded order stream of a workload against a fresh station of every strategy.
+ * Open-loop orders are placed by a single dispatcher at their arrival times and their latency is measured from
+ * the planned arrival, so a late dispatch is counted against the station (no coordinated omission).
+ * Closed-loop clients take the orders round-robin and measure from the placement.
+ * The simulated runs replay the same orders in the virtual time of the discrete-event pumping
+ * (PumpExecutionEngine::simulated): no thread sleeps, so millions of orders take seconds
+ */
+public final class WorkloadHarness {
+    private static final byte SUCCESS = 1;
+    private static final byte NOT_ENOUGH_GAS = 2;
+    private static final byte TOO_EXPENSIVE = 3;
+    private static final byte SHED = 4;
+    private static final byte TIMED_OUT = 5;
+
+    private WorkloadHarness() {}
+
+    /**
+     * @param spec
+     * @return reports of all the strategies on the same order stream
+     */
+    public static List<WorkloadReport> compare(WorkloadSpec spec) throws ClassNotFoundException, InterruptedException {
+        return compare(spec, Arrays.asList(PumpManagerEnum.values()));
+    }
+
+    public static List<WorkloadReport> compare(WorkloadSpec spec, Collection<PumpManagerEnum> strategies) throws ClassNotFoundException, InterruptedException {
+        final OrderStream orderStream = OrderStream.generate(spec);
+        final List<WorkloadReport> reports = new ArrayList<>(strategies.size());
+        for (PumpManagerEnum strategy : strategies)
+            reports.add(run(spec, orderStream, strategy));
+        return reports;
+    }
+
+    /**
+     * @param spec
+     * @return simulated reports of all the strategies on the same order stream
+     */
+    public static List<WorkloadReport> compareSimulated(WorkloadSpec spec) throws ClassNotFoundException {
+        return compareSimulated(spec, Arrays.asList(PumpManagerEnum.values()));
+    }
+
+    public static List<WorkloadReport> compareSimulated(WorkloadSpec spec, Collection<PumpManagerEnum> strategies) throws ClassNotFoundException {
+        final OrderStream orderStream = OrderStream.generate(spec);
+        final List<WorkloadReport> reports = new ArrayList<>(strategies.size());
+        for (PumpManagerEnum strategy : strategies)
+            reports.add(simulate(spec, orderStream, strategy));
+        return reports;
+    }
+
+    public static WorkloadReport run(WorkloadSpec spec, PumpManagerEnum strategy) throws ClassNotFoundException, InterruptedException {
+        return run(spec, OrderStream.generate(spec), strategy);
+    }
+
+    /**
+     * @param spec
+     * @param strategy
+     * @return report in the virtual time: the elapsed time, the throughput and the latencies are simulated
+     */
+    public static WorkloadReport simulate(WorkloadSpec spec, PumpManagerEnum strategy) throws ClassNotFoundException {
+        return simulate(spec, OrderStream.generate(spec), strategy);
+    }
+
+    private static WorkloadReport run(WorkloadSpec spec, OrderStream orderStream, PumpManagerEnum strategy) throws ClassNotFoundException, InterruptedException {
+        final List<Order> orders = orderStream.getOrders();
+        final Run run = new Run(orders.size(), System::nanoTime);
+        try (GasStationImpl gasStation = equip(new GasStationImpl(strategy), spec)) {
+            final ArrivalProcess arrivalProcess = spec.getArrivalProcess();
+            run.startNanos = System.nanoTime();
+            if (arrivalProcess.isOpenLoop()) {
+                for (int i = 0; i < orders.size(); i++) {
+                    final long arrivalNanos = run.startNanos + orderStream.getArrivalOffsetNanos(i);
+                    long waitNanos;
+                    while ((waitNanos = arrivalNanos - System.nanoTime()) > 0)
+                        LockSupport.parkNanos(waitNanos);
+                    place(gasStation, orders.get(i), i, arrivalNanos, run);
+                }
+            } else {
+                final int clients = arrivalProcess.getClients();
+                final ExecutorService executor = Executors.newFixedThreadPool(clients);
+                try {
+                    for (int client = 0; client < clients; client++) {
+                        final int firstOrder = client;
+                        executor.execute(() -> {
+                            for (int i = firstOrder; i < orders.size(); i += clients) {
+                                place(gasStation, orders.get(i), i, System.nanoTime(), run).join();
+                                if (arrivalProcess.getThinkNanos() > 0)
+                                    LockSupport.parkNanos(arrivalProcess.getThinkNanos());
+                            }
+                        });
+                    }
+                } finally {
+                    executor.shutdown();
+                }
+            }
+            run.resolved.await();
+        }
+        return run.report(spec, orderStream, strategy.name());
+    }
+
+    /**
+     * Arrivals and the closed-loop clients are the events of the virtual clock
+     */
+    private static WorkloadReport simulate(WorkloadSpec spec, OrderStream orderStream, PumpManagerEnum strategy) throws ClassNotFoundException {
+        final List<Order> orders = orderStream.getOrders();
+        final VirtualClock virtualClock = new VirtualClock();
+        final Run run = new Run(orders.size(), virtualClock::nanoTime);
+        try (GasStationImpl gasStation = equip(new GasStationImpl(strategy, PumpExecutionEngine.simulated(virtualClock, spec.getSeed())), spec)) {
+            final ArrivalProcess arrivalProcess = spec.getArrivalProcess();
+            run.startNanos = virtualClock.nanoTime();
+            if (arrivalProcess.isOpenLoop()) {
+                for (int i = 0; i < orders.size(); i++) {
+                    final int index = i;
+                    virtualClock.scheduleAt(() -> place(gasStation, orders.get(index), index, virtualClock.nanoTime(), run),
+                            run.startNanos + orderStream.getArrivalOffsetNanos(i));
+                }
+            } else {
+                for (int client = 0; client < Math.min(arrivalProcess.getClients(), orders.size()); client++) {
+                    final int firstOrder = client;
+                    virtualClock.schedule(() -> placeSimulated(gasStation, orders, firstOrder, arrivalProcess, virtualClock, run), 0);
+                }
+            }
+            virtualClock.run();
+        }
+        return run.report(spec, orderStream, strategy.name());
+    }
+
+    /**
+     * Places the order of the closed-loop client and its next order after the think time
+     */
+    private static void placeSimulated(GasStationImpl gasStation, List<Order> orders, int index, ArrivalProcess arrivalProcess,
+                                       VirtualClock virtualClock, Run run) {
+        final int nextIndex = index + arrivalProcess.getClients();
+        place(gasStation, orders.get(index), index, virtualClock.nanoTime(), run).thenRun(() -> {
+            if (nextIndex < orders.size())
+                virtualClock.schedule(() -> placeSimulated(gasStation, orders, nextIndex, arrivalProcess, virtualClock, run),
+                        arrivalProcess.getThinkNanos());
+        });
+    }
+
+    private static GasStationImpl equip(GasStationImpl gasStation, WorkloadSpec spec) {
+        for (GasType gasType : GasType.values()) {
+            if (!spec.isOrdered(gasType))
+                continue;
+            gasStation.setPrice(gasType, spec.getPrice(gasType));
+            for (int i = 0; i < spec.getPumpsPerType(); i++)
+                gasStation.addGasPump(new GasPump(gasType, spec.getLitersPerPump()));
+        }
+        return gasStation;
+    }
+
+    /**
+     * @return future of the resolved order, which never fails
+     */
+    private static CompletableFuture<Void> place(GasStationImpl gasStation, Order order, int index, long arrivalNanos, Run run) {
+        return gasStation.buyGasAsync(order.getGasType(), order.getAmountInLiters(), order.getMaxPricePerLiter())
+                .handle((price, e) -> {
+                    run.resolve(index, e == null ? SUCCESS : outcome(PumpFutures.unwrap(e)), e == null ? price : 0, arrivalNanos);
+                    return null;
+                });
+    }
+
+    private static byte outcome(Throwable cause) {
+        if (cause instanceof GasTooExpensiveException)
+            return TOO_EXPENSIVE;
+        if (cause instanceof OrderShedException)
+            return SHED;
+        if (cause instanceof TimeoutException)
+            return TIMED_OUT;
+        return NOT_ENOUGH_GAS;
+    }
+
+    /**
+     * Results of the orders by their index. Written by the completing threads, read after the latch
+     */
+    private static final class Run {
+        private final byte[] outcomes;
+        private final double[] prices;
+        private final long[] latenciesNanos;
+        private final long[] resolvedNanos;
+        private final CountDownLatch resolved;
+        /**
+         * System::nanoTime or the virtual time
+         */
+        private final LongSupplier clock;
+        private long startNanos;
+
+        Run(int orders, LongSupplier clock) {
+            this.clock = clock;
+            outcomes = new byte[orders];
+            prices = new double[orders];
+            latenciesNanos = new long[orders];
+            resolvedNanos = new long[orders];
+            resolved = new CountDownLatch(orders);
+        }
+
+        void resolve(int index, byte outcome, double price, long arrivalNanos) {
+            final long nowNanos = clock.getAsLong();
+            outcomes[index] = outcome;
+            prices[index] = price;
+            latenciesNanos[index] = nowNanos - arrivalNanos;
+            resolvedNanos[index] = nowNanos;
+            resolved.countDown();
+        }
+
+        /**
+         * Sums are taken in the order of the stream, so equal outcomes give equal totals
+         */
+        WorkloadReport report(WorkloadSpec spec, OrderStream orderStream, String strategy) {
+            final List<Order> orders = orderStream.getOrders();
+            final int[] counts = new int[TIMED_OUT + 1];
+            final long[] saleLatenciesNanos = new long[orders.size()];
+            double soldLiters = 0;
+            double revenue = 0;
+            long lastResolvedNanos = startNanos;
+            for (int i = 0; i < orders.size(); i++) {
+                counts[outcomes[i]]++;
+                if (outcomes[i] == SUCCESS) {
+                    saleLatenciesNanos[counts[SUCCESS] - 1] = latenciesNanos[i];
+                    soldLiters += orders.get(i).getAmountInLiters();
+                    revenue += prices[i];
+                }
+                lastResolvedNanos = Math.max(lastResolvedNanos, resolvedNanos[i]);
+            }
+            final long[] sortedLatenciesNanos = Arrays.copyOf(saleLatenciesNanos, counts[SUCCESS]);
+            Arrays.sort(sortedLatenciesNanos);
+            return new WorkloadReport(spec, strategy, orderStream.getDigest(), counts[SUCCESS], counts[NOT_ENOUGH_GAS],
+                    counts[TOO_EXPENSIVE], counts[SHED], counts[TIMED_OUT], orderStream.getRequestedLiters(), soldLiters,
+                    revenue, lastResolvedNanos - startNanos, sortedLatenciesNanos);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package net.bigpoint.assessment.gasstation.impl.workload;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of one strategy on one workload. Latency percentiles are exact (nearest rank) over the successful purchases,
+ * measured from the arrival of the order to the end of its pumping
+ */
+public final class WorkloadReport {
+    private final String workload;
+    private final String arrivalProcess;
+    private final String strategy;
+    private final long seed;
+    private final long orderStreamDigest;
+    private final int orders;
+    private final int sales;
+    private final int cancellationsNoGas;
+    private final int cancellationsTooExpensive;
+    private final int shedOrders;
+    private final int timedOutOrders;
+    private final double requestedLiters;
+    private final double soldLiters;
+    private final double revenue;
+    private final long elapsedNanos;
+    /**
+     * Sorted latencies of the sales
+     */
+    private final long[] saleLatenciesNanos;
+
+    WorkloadReport(WorkloadSpec spec, String strategy, long orderStreamDigest, int sales, int cancellationsNoGas,
+                   int cancellationsTooExpensive, int shedOrders, int timedOutOrders, double requestedLiters, double soldLiters,
+                   double revenue, long elapsedNanos, long[] saleLatenciesNanos) {
+        this.workload = spec.getName();
+        this.arrivalProcess = spec.getArrivalProcess().toString();
+        this.strategy = strategy;
+        this.seed = spec.getSeed();
+        this.orderStreamDigest = orderStreamDigest;
+        this.orders = spec.getOrders();
+        this.sales = sales;
+        this.cancellationsNoGas = cancellationsNoGas;
+        this.cancellationsTooExpensive = cancellationsTooExpensive;
+        this.shedOrders = shedOrders;
+        this.timedOutOrders = timedOutOrders;
+        this.requestedLiters = requestedLiters;
+        this.soldLiters = soldLiters;
+        this.revenue = revenue;
+        this.elapsedNanos = elapsedNanos;
+        this.saleLatenciesNanos = saleLatenciesNanos;
+    }
+
+    public String getWorkload() {
+        return workload;
+    }
+
+    public String getStrategy() {
+        return strategy;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getOrderStreamDigest() {
+        return orderStreamDigest;
+    }
+
+    public int getOrders() {
+        return orders;
+    }
+
+    public int getSales() {
+        return sales;
+    }
+
+    public int getCancellationsNoGas() {
+        return cancellationsNoGas;
+    }
+
+    public int getCancellationsTooExpensive() {
+        return cancellationsTooExpensive;
+    }
+
+    public int getShedOrders() {
+        return shedOrders;
+    }
+
+    public int getTimedOutOrders() {
+        return timedOutOrders;
+    }
+
+    public double getRequestedLiters() {
+        return requestedLiters;
+    }
+
+    public double getSoldLiters() {
+        return soldLiters;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return share of the orders sold
+     */
+    public double getFillRate() {
+        return (double) sales / orders;
+    }
+
+    /**
+     * @return sales per second from the start of the run till the last order is resolved
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : sales * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * @param percentile in the range [0, 100]
+     * @return sale latency at the percentile, 0 without sales
+     */
+    public long getLatencyNanosAtPercentile(double percentile) {
+        if (saleLatenciesNanos.length == 0)
+            return 0;
+        final int rank = (int) Math.ceil(percentile / 100 * saleLatenciesNanos.length);
+        return saleLatenciesNanos[Math.max(rank, 1) - 1];
+    }
+
+    public String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"workload\":\"%s\",\"arrivalProcess\":\"%s\",\"strategy\":\"%s\",\"seed\":%d,\"orderStreamDigest\":\"%016x\","
+                        + "\"orders\":%d,\"sales\":%d,\"fillRate\":%.4f,"
+                        + "\"rejections\":{\"notEnoughGas\":%d,\"tooExpensive\":%d,\"shed\":%d,\"timedOut\":%d},"
+                        + "\"requestedLiters\":%.4f,\"soldLiters\":%.4f,\"revenue\":%.4f,"
+                        + "\"elapsedMillis\":%.3f,\"throughputPerSecond\":%.2f,"
+                        + "\"latencyMillis\":{\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}}",
+                escape(workload), escape(arrivalProcess), escape(strategy), seed, orderStreamDigest,
+                orders, sales, getFillRate(),
+                cancellationsNoGas, cancellationsTooExpensive, shedOrders, timedOutOrders,
+                requestedLiters, soldLiters, revenue,
+                elapsedNanos / 1e6, getThroughput(),
+                getLatencyNanosAtPercentile(50) / 1e6, getLatencyNanosAtPercentile(90) / 1e6,
+                getLatencyNanosAtPercentile(99) / 1e6, getLatencyNanosAtPercentile(100) / 1e6);
+    }
+
+    /**
+     * @param reports
+     * @return JSON array of the reports, one report per line
+     */
+    public static String toJson(List<WorkloadReport> reports) {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < reports.size(); i++)
+            json.append(i == 0 ? "\n  " : ",\n  ").append(reports.get(i).toJson());
+        return json.append("\n]").toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
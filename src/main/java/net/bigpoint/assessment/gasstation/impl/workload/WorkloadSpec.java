@@ -0,0 +1,157 @@
+package net.bigpoint.assessment.gasstation.impl.workload;
+
+import net.bigpoint.assessment.gasstation.GasType;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Immutable description of a workload: the station equipment and the seeded order stream.
+ * Every "with" method returns a changed copy
+ */
+public final class WorkloadSpec {
+    private static final double DEFAULT_PRICE = 1.5;
+
+    private final String name;
+    private final long seed;
+    private final int orders;
+    private final ArrivalProcess arrivalProcess;
+    private final Distribution orderSizes;
+    /**
+     * Max price of the order relative to the station price: the factors below 1 are rejected as too expensive
+     */
+    private final Distribution maxPriceFactors;
+    private final Map<GasType, Double> gasTypeMix;
+    private final Map<GasType, Double> prices;
+    private final int pumpsPerType;
+    private final double litersPerPump;
+
+    private WorkloadSpec(String name, long seed, int orders, ArrivalProcess arrivalProcess, Distribution orderSizes,
+                         Distribution maxPriceFactors, Map<GasType, Double> gasTypeMix, Map<GasType, Double> prices,
+                         int pumpsPerType, double litersPerPump) {
+        this.name = name;
+        this.seed = seed;
+        this.orders = orders;
+        this.arrivalProcess = arrivalProcess;
+        this.orderSizes = orderSizes;
+        this.maxPriceFactors = maxPriceFactors;
+        this.gasTypeMix = gasTypeMix;
+        this.prices = prices;
+        this.pumpsPerType = pumpsPerType;
+        this.litersPerPump = litersPerPump;
+    }
+
+    /**
+     * Spec with the even gas type mix, orders of 1/64..1/8 liters, max prices of 0.9..1.3 of the station price
+     * and 4 pumps of 5 liters per gas type at 1.5 per liter
+     * @param name
+     * @param seed
+     * @param orders
+     * @param arrivalProcess
+     * @return
+     */
+    public static WorkloadSpec of(String name, long seed, int orders, ArrivalProcess arrivalProcess) {
+        if (orders <= 0)
+            throw new IllegalArgumentException("Number of orders " + orders + " is not positive");
+        final Map<GasType, Double> gasTypeMix = new EnumMap<>(GasType.class);
+        final Map<GasType, Double> prices = new EnumMap<>(GasType.class);
+        for (GasType gasType : GasType.values()) {
+            gasTypeMix.put(gasType, 1d);
+            prices.put(gasType, DEFAULT_PRICE);
+        }
+        return new WorkloadSpec(name, seed, orders, arrivalProcess, Distribution.uniform(1d / 64, 1d / 8),
+                Distribution.uniform(0.9, 1.3), Collections.unmodifiableMap(gasTypeMix), Collections.unmodifiableMap(prices), 4, 5);
+    }
+
+    public WorkloadSpec withSeed(long seed) {
+        return new WorkloadSpec(name, seed, orders, arrivalProcess, orderSizes, maxPriceFactors, gasTypeMix, prices, pumpsPerType, litersPerPump);
+    }
+
+    public WorkloadSpec withOrderSizes(Distribution orderSizes) {
+        return new WorkloadSpec(name, seed, orders, arrivalProcess, orderSizes, maxPriceFactors, gasTypeMix, prices, pumpsPerType, litersPerPump);
+    }
+
+    public WorkloadSpec withMaxPriceFactors(Distribution maxPriceFactors) {
+        return new WorkloadSpec(name, seed, orders, arrivalProcess, orderSizes, maxPriceFactors, gasTypeMix, prices, pumpsPerType, litersPerPump);
+    }
+
+    /**
+     * @param gasTypeMix non-negative weights of the gas types, the missing gas types are not ordered and not equipped
+     * @return
+     */
+    public WorkloadSpec withGasTypeMix(Map<GasType, Double> gasTypeMix) {
+        double totalWeight = 0;
+        for (double weight : gasTypeMix.values()) {
+            if (weight < 0)
+                throw new IllegalArgumentException("Weight " + weight + " is negative");
+            totalWeight += weight;
+        }
+        if (totalWeight <= 0)
+            throw new IllegalArgumentException("No gas type is ordered");
+        return new WorkloadSpec(name, seed, orders, arrivalProcess, orderSizes, maxPriceFactors,
+                Collections.unmodifiableMap(new EnumMap<>(gasTypeMix)), prices, pumpsPerType, litersPerPump);
+    }
+
+    public WorkloadSpec withPrice(GasType gasType, double price) {
+        final Map<GasType, Double> changedPrices = new EnumMap<>(prices);
+        changedPrices.put(gasType, price);
+        return new WorkloadSpec(name, seed, orders, arrivalProcess, orderSizes, maxPriceFactors, gasTypeMix,
+                Collections.unmodifiableMap(changedPrices), pumpsPerType, litersPerPump);
+    }
+
+    public WorkloadSpec withPumps(int pumpsPerType, double litersPerPump) {
+        if (pumpsPerType <= 0)
+            throw new IllegalArgumentException("Number of pumps " + pumpsPerType + " is not positive");
+        return new WorkloadSpec(name, seed, orders, arrivalProcess, orderSizes, maxPriceFactors, gasTypeMix, prices, pumpsPerType, litersPerPump);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getOrders() {
+        return orders;
+    }
+
+    public ArrivalProcess getArrivalProcess() {
+        return arrivalProcess;
+    }
+
+    public Distribution getOrderSizes() {
+        return orderSizes;
+    }
+
+    public Distribution getMaxPriceFactors() {
+        return maxPriceFactors;
+    }
+
+    public Map<GasType, Double> getGasTypeMix() {
+        return gasTypeMix;
+    }
+
+    /**
+     * @param gasType
+     * @return true if the gas type has a positive weight in the mix, only such gas types are equipped
+     */
+    public boolean isOrdered(GasType gasType) {
+        final Double weight = gasTypeMix.get(gasType);
+        return weight != null && weight > 0;
+    }
+
+    public double getPrice(GasType gasType) {
+        return prices.get(gasType);
+    }
+
+    public int getPumpsPerType() {
+        return pumpsPerType;
+    }
+
+    public double getLitersPerPump() {
+        return litersPerPump;
+    }
+}
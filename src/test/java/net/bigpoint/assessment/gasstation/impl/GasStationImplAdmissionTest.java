@@ -0,0 +1,126 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.managers.OrderShedException;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpExecutionEngine;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the admission control and the deadlines of the steady blocking strategy
+ */
+public class GasStationImplAdmissionTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = TestStations.DIESEL_PRICE;
+    private final double TEST_PUMP_GAS_AMOUNT = 10;
+
+    @Test
+    public void testQueueLimitShedsOrders() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyBlockingPumpManager, PumpExecutionEngine.newDefault(), 1, TEST_PUMP_GAS_AMOUNT)) {
+            gasStation.setAdmissionLimits(GasType.DIESEL, 1, Double.POSITIVE_INFINITY);
+            final CompletableFuture<Double> admitted = gasStation.buyGasAsync(GasType.DIESEL, 1, DIESEL_PRICE);
+
+            assertFailedWith(OrderShedException.class, gasStation.buyGasAsync(GasType.DIESEL, 1, DIESEL_PRICE));
+            assertEquals(GasStationImpl.SHED, gasStation.tryBuyGas(GasType.DIESEL, 1, DIESEL_PRICE), DELTA);
+            try {
+                gasStation.buyGas(GasType.DIESEL, 1, DIESEL_PRICE);
+                fail("Shed order is seen as NotEnoughGasException by the GasStation callers");
+            } catch (NotEnoughGasException e) {
+                assertTrue(e instanceof OrderShedException);
+            }
+
+            assertEquals(DIESEL_PRICE, admitted.get(), DELTA);
+            assertEquals(3, gasStation.getNumberOfShedOrders());
+            assertEquals(0, gasStation.getNumberOfCancellationsNoGas());
+            // The backlog is drained
+            assertEquals(DIESEL_PRICE, gasStation.buyGas(GasType.DIESEL, 1, DIESEL_PRICE), DELTA);
+        }
+    }
+
+    @Test
+    public void testBacklogLimitShedsOrders() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyBlockingPumpManager, PumpExecutionEngine.newDefault(), 1, TEST_PUMP_GAS_AMOUNT)) {
+            gasStation.setAdmissionLimits(GasType.DIESEL, Integer.MAX_VALUE, 2);
+            final CompletableFuture<Double> admitted = gasStation.buyGasAsync(GasType.DIESEL, 1.5, DIESEL_PRICE);
+
+            assertFailedWith(OrderShedException.class, gasStation.buyGasAsync(GasType.DIESEL, 1, DIESEL_PRICE));
+            // Not enough gas regardless of the admission
+            assertFailedWith(NotEnoughGasException.class, gasStation.buyGasAsync(GasType.DIESEL, TEST_PUMP_GAS_AMOUNT, DIESEL_PRICE));
+            assertEquals(1, gasStation.getNumberOfShedOrders());
+            assertEquals(1, gasStation.getNumberOfCancellationsNoGas());
+            admitted.get();
+        }
+    }
+
+    @Test
+    public void testOrderWhichCanNotFinishInTimeIsShedImmediately() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyBlockingPumpManager, PumpExecutionEngine.newDefault(), 1, TEST_PUMP_GAS_AMOUNT)) {
+            final CompletableFuture<Double> admitted = gasStation.buyGasAsync(GasType.DIESEL, 5, DIESEL_PRICE);
+
+            final long startTime = System.nanoTime();
+            try {
+                gasStation.buyGas(GasType.DIESEL, 0.5, DIESEL_PRICE, 100, TimeUnit.MILLISECONDS);
+                fail("Order behind 500 ms of pumping can not finish in 100 ms");
+            } catch (OrderShedException e) {
+                assertTrue(System.nanoTime() - startTime < TimeUnit.MILLISECONDS.toNanos(100));
+            }
+            assertEquals(1, gasStation.getNumberOfShedOrders());
+            admitted.get();
+        }
+    }
+
+    @Test
+    public void testTimedOutOrderReleasesReservation() throws Exception {
+        // Single pumping thread: the second pump waits for the first one
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyBlockingPumpManager, PumpExecutionEngine.fixedPool(1), 2, TEST_PUMP_GAS_AMOUNT)) {
+            final CompletableFuture<Double> admitted = gasStation.buyGasAsync(GasType.DIESEL, 3, DIESEL_PRICE);
+            try {
+                gasStation.buyGas(GasType.DIESEL, 0.5, DIESEL_PRICE, 100, TimeUnit.MILLISECONDS);
+                fail("Order can not start before the deadline");
+            } catch (TimeoutException e) {
+                // Expected
+            }
+
+            assertEquals(1, gasStation.getNumberOfTimedOutOrders());
+            assertEquals(2 * TEST_PUMP_GAS_AMOUNT - 3, gasStation.getInventory().getCommittedRemainingAmount(GasType.DIESEL), DELTA);
+            admitted.get();
+            assertEquals(1, gasStation.getNumberOfSales());
+            assertEquals(2 * TEST_PUMP_GAS_AMOUNT - 3, gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+        }
+    }
+
+    @Test
+    public void testOrderFinishedInTime() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyBlockingPumpManager, PumpExecutionEngine.newDefault(), 1, TEST_PUMP_GAS_AMOUNT)) {
+            assertEquals(0.5 * DIESEL_PRICE, gasStation.buyGas(GasType.DIESEL, 0.5, DIESEL_PRICE, 1, TimeUnit.SECONDS), DELTA);
+            assertEquals(1, gasStation.getNumberOfSales());
+            assertEquals(0, gasStation.getNumberOfTimedOutOrders());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testStrategyWithoutAdmissionControl() throws Exception {
+        try (GasStationImpl gasStation = new GasStationImpl(PumpManagerEnum.MaxSalesPumpManager)) {
+            gasStation.setAdmissionLimits(GasType.DIESEL, 1, 1);
+        }
+    }
+
+    private static void assertFailedWith(Class<? extends Exception> expected, CompletableFuture<Double> purchase) throws InterruptedException {
+        try {
+            purchase.get();
+            fail("Purchase should be rejected with " + expected.getSimpleName());
+        } catch (ExecutionException e) {
+            assertTrue(expected.isInstance(e.getCause()));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the batch purchases for every strategy
+ */
+@RunWith(Parameterized.class)
+public class GasStationImplBatchTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = TestStations.DIESEL_PRICE;
+    private final double SUPER_PRICE = TestStations.SUPER_PRICE;
+
+    @Parameterized.Parameter
+    public PumpManagerEnum pumpManagerStrategy;
+    @Parameterized.Parameters()
+    public static Iterable<PumpManagerEnum> data() {
+        return Arrays.asList(PumpManagerEnum.SteadyPumpManager, PumpManagerEnum.SteadyBlockingPumpManager, PumpManagerEnum.MaxSalesPumpManager, PumpManagerEnum.BiddingPumpManager,
+                PumpManagerEnum.ShortestCompletionPumpManager);
+    }
+
+    @Test
+    public void testMixedBatch() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselAndSuperStation(pumpManagerStrategy)) {
+            final double[] results = gasStation.buyGasBatch(Arrays.asList(
+                    new Order(GasType.DIESEL, 0.5, DIESEL_PRICE),
+                    new Order(GasType.SUPER, 0.5, DIESEL_PRICE),
+                    new Order(GasType.SUPER, 0.25, SUPER_PRICE),
+                    new Order(GasType.DIESEL, 5, DIESEL_PRICE),
+                    new Order(GasType.DIESEL, 0.5, DIESEL_PRICE)));
+
+            assertArrayEquals(new double[] {0.5 * DIESEL_PRICE, GasStationImpl.TOO_EXPENSIVE, 0.25 * SUPER_PRICE,
+                    GasStationImpl.NOT_ENOUGH_GAS, 0.5 * DIESEL_PRICE}, results, DELTA);
+            assertEquals(3, gasStation.getNumberOfSales());
+            assertEquals(1, gasStation.getNumberOfCancellationsTooExpensive());
+            assertEquals(1, gasStation.getNumberOfCancellationsNoGas());
+            assertEquals(DIESEL_PRICE + 0.25 * SUPER_PRICE, gasStation.getRevenue(), DELTA);
+            assertEquals(1, gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+            assertEquals(0.75, gasStation.getInventory().getPhysicalRemainingAmount(GasType.SUPER), DELTA);
+        }
+    }
+
+    @Test
+    public void testBatchMatchesSequentialPurchases() throws Exception {
+        final List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            orders.add(new Order(GasType.DIESEL, 0.25, DIESEL_PRICE));
+
+        try (GasStationImpl gasStation = TestStations.newDieselAndSuperStation(pumpManagerStrategy)) {
+            int sales = 0;
+            for (double result : gasStation.buyGasBatch(orders))
+                if (result >= 0)
+                    sales++;
+            assertEquals(sales, gasStation.getNumberOfSales());
+            assertEquals(orders.size() - sales, gasStation.getNumberOfCancellationsNoGas());
+            assertEquals(2 - 0.25 * sales, gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+        }
+    }
+
+    @Test
+    public void testUnknownGasTypeRejectsWholeBatch() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselAndSuperStation(pumpManagerStrategy)) {
+            try {
+                gasStation.buyGasBatch(Arrays.asList(new Order(GasType.DIESEL, 0.5, DIESEL_PRICE), new Order(GasType.REGULAR, 0.5, DIESEL_PRICE)));
+                fail("Regular gas is not provided by the station");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+            assertEquals(0, gasStation.getNumberOfSales());
+            assertEquals(2, gasStation.getInventory().getCommittedRemainingAmount(GasType.DIESEL), DELTA);
+            assertEquals(0, gasStation.buyGasBatch(Collections.emptyList()).length);
+        }
+    }
+}
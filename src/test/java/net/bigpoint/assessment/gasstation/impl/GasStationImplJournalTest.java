@@ -0,0 +1,197 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.persistence.SalesJournal;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the journaled station restores its books after a restart and after the process is killed
+ */
+@RunWith(Parameterized.class)
+public class GasStationImplJournalTest {
+    private static final double DELTA = 0.0001;
+    private static final double DIESEL_PRICE = 1.5;
+    private static final double TEST_PUMP_GAS_AMOUNT = 100;
+    private static final double TEST_PURCHASE_AMOUNT = 0.01;
+    private static final int ACKNOWLEDGED_SALES_BEFORE_KILL = 100;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Parameterized.Parameter
+    public PumpManagerEnum pumpManagerStrategy;
+    @Parameterized.Parameters()
+    public static Iterable<PumpManagerEnum> data() {
+        return Arrays.asList(PumpManagerEnum.SteadyPumpManager, PumpManagerEnum.SteadyBlockingPumpManager, PumpManagerEnum.MaxSalesPumpManager, PumpManagerEnum.BiddingPumpManager,
+                PumpManagerEnum.ShortestCompletionPumpManager);
+    }
+
+    @Test
+    public void testRestartRestoresBooks() throws Exception {
+        final Path journalFile = temporaryFolder.getRoot().toPath().resolve("sales.journal");
+        try (GasStationImpl gasStation = GasStationImpl.openJournaled(pumpManagerStrategy, journalFile)) {
+            gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+            gasStation.addGasPump(new GasPump(GasType.DIESEL, 2));
+            gasStation.addGasPump(new GasPump(GasType.DIESEL, 1));
+            gasStation.buyGas(GasType.DIESEL, 1.5, DIESEL_PRICE);
+            assertEquals(GasStationImpl.TOO_EXPENSIVE, gasStation.tryBuyGas(GasType.DIESEL, 1, DIESEL_PRICE - 1), DELTA);
+            assertEquals(GasStationImpl.NOT_ENOUGH_GAS, gasStation.tryBuyGas(GasType.DIESEL, 5, DIESEL_PRICE), DELTA);
+        }
+
+        try (GasStationImpl gasStation = GasStationImpl.openJournaled(pumpManagerStrategy, journalFile)) {
+            assertEquals(DIESEL_PRICE, gasStation.getPrice(GasType.DIESEL), DELTA);
+            assertEquals(1, gasStation.getNumberOfSales());
+            assertEquals(1, gasStation.getNumberOfCancellationsTooExpensive());
+            assertEquals(1, gasStation.getNumberOfCancellationsNoGas());
+            assertEquals(1.5 * DIESEL_PRICE, gasStation.getRevenue(), DELTA);
+            assertEquals(2, gasStation.getGasPumps().size());
+            assertEquals(1.5, gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+
+            // The restored station continues the same journal
+            gasStation.buyGas(GasType.DIESEL, 1, DIESEL_PRICE);
+        }
+
+        try (GasStationImpl gasStation = GasStationImpl.openJournaled(pumpManagerStrategy, journalFile)) {
+            assertEquals(2, gasStation.getNumberOfSales());
+            assertEquals(0.5, gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+        }
+    }
+
+    @Test
+    public void testTornRecordEndsReplay() throws Exception {
+        final Path journalFile = temporaryFolder.getRoot().toPath().resolve("sales.journal");
+        try (SalesJournal journal = SalesJournal.open(journalFile)) {
+            for (int i = 0; i < 3; i++)
+                journal.sale(GasType.DIESEL, 1, DIESEL_PRICE, 1);
+        }
+        // Amount of the last record is half-written
+        try (RandomAccessFile file = new RandomAccessFile(journalFile.toFile(), "rw")) {
+            file.seek(2 * 32 + 16);
+            file.writeByte(0x7F);
+        }
+
+        try (SalesJournal journal = SalesJournal.open(journalFile)) {
+            assertEquals(2, journal.getRecordsCount());
+            assertEquals(2, journal.getRecoveredState().getNumberOfSales());
+            assertEquals(2 * DIESEL_PRICE, journal.getRecoveredState().getRevenue(), DELTA);
+        }
+    }
+
+    @Test
+    public void testRecordsAfterUnfinishedOneAreKept() throws Exception {
+        final Path journalFile = temporaryFolder.getRoot().toPath().resolve("sales.journal");
+        try (SalesJournal journal = SalesJournal.open(journalFile)) {
+            for (int i = 0; i < 3; i++)
+                journal.sale(GasType.DIESEL, 1, DIESEL_PRICE, 1);
+        }
+        // The writer of the middle record is killed before writing its type, the faster writers have finished
+        try (RandomAccessFile file = new RandomAccessFile(journalFile.toFile(), "rw")) {
+            file.seek(32);
+            file.writeByte(0);
+        }
+
+        try (SalesJournal journal = SalesJournal.open(journalFile)) {
+            assertEquals(3, journal.getRecordsCount());
+            assertEquals(2, journal.getRecoveredState().getNumberOfSales());
+            journal.sale(GasType.DIESEL, 1, DIESEL_PRICE, 1);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journalFile.toFile(), "r")) {
+            // The unfinished record is erased
+            file.seek(32 + 16);
+            assertEquals(0, file.readLong());
+        }
+
+        try (SalesJournal journal = SalesJournal.open(journalFile)) {
+            assertEquals(4, journal.getRecordsCount());
+            assertEquals(3, journal.getRecoveredState().getNumberOfSales());
+            assertEquals(3 * DIESEL_PRICE, journal.getRecoveredState().getRevenue(), DELTA);
+        }
+    }
+
+    @Test
+    public void testKilledStationRecovers() throws Exception {
+        final Path journalFile = temporaryFolder.getRoot().toPath().resolve("sales.journal");
+        final Process buyer = new ProcessBuilder(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-cp", System.getProperty("java.class.path"),
+                Buyer.class.getName(), pumpManagerStrategy.name(), journalFile.toString())
+                .redirectErrorStream(true)
+                .start();
+
+        // Sales and cancellations reported as completed by the buyer before the kill
+        int acknowledgedSales = 0;
+        int acknowledgedCancellations = 0;
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(buyer.getInputStream(), StandardCharsets.UTF_8))) {
+            while (acknowledgedSales < ACKNOWLEDGED_SALES_BEFORE_KILL) {
+                final String line = output.readLine();
+                assertNotNull("Buyer exited before the kill", line);
+                final String[] counters = line.split(" ");
+                if (counters.length == 2) {
+                    acknowledgedSales = Integer.parseInt(counters[0]);
+                    acknowledgedCancellations = Integer.parseInt(counters[1]);
+                }
+            }
+            buyer.destroyForcibly();
+            assertTrue(buyer.waitFor(1, TimeUnit.MINUTES));
+        }
+
+        try (GasStationImpl gasStation = GasStationImpl.openJournaled(pumpManagerStrategy, journalFile)) {
+            // At most one purchase was in progress while killed
+            final int sales = gasStation.getNumberOfSales();
+            final int cancellations = gasStation.getNumberOfCancellationsTooExpensive();
+            assertTrue(sales >= acknowledgedSales && sales <= acknowledgedSales + 1);
+            assertTrue(cancellations >= acknowledgedCancellations && cancellations <= acknowledgedCancellations + 1);
+            assertEquals(sales * TEST_PURCHASE_AMOUNT * DIESEL_PRICE, gasStation.getRevenue(), DELTA);
+            // Its pumping may be finished without the sale
+            final double pumped = 2 * TEST_PUMP_GAS_AMOUNT - gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL);
+            assertTrue(pumped >= sales * TEST_PURCHASE_AMOUNT - DELTA && pumped <= (sales + 1) * TEST_PURCHASE_AMOUNT + DELTA);
+
+            gasStation.buyGas(GasType.DIESEL, TEST_PURCHASE_AMOUNT, DIESEL_PRICE);
+            assertEquals(sales + 1, gasStation.getNumberOfSales());
+        }
+    }
+
+    /**
+     * Buys the gas till killed and prints the counters after every completed purchase
+     */
+    public static class Buyer {
+        public static void main(String[] args) throws Exception {
+            final GasStationImpl gasStation = GasStationImpl.openJournaled(PumpManagerEnum.valueOf(args[0]), new File(args[1]).toPath());
+            gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+            gasStation.addGasPump(new GasPump(GasType.DIESEL, TEST_PUMP_GAS_AMOUNT));
+            gasStation.addGasPump(new GasPump(GasType.DIESEL, TEST_PUMP_GAS_AMOUNT));
+            for (int i = 0; ; i++) {
+                if (i % 10 == 0) {
+                    try {
+                        gasStation.buyGas(GasType.DIESEL, TEST_PURCHASE_AMOUNT, DIESEL_PRICE - 1);
+                    } catch (GasTooExpensiveException e) {
+                        // Expected cancellation
+                    }
+                }
+                gasStation.buyGas(GasType.DIESEL, TEST_PURCHASE_AMOUNT, DIESEL_PRICE);
+                System.out.println(gasStation.getNumberOfSales() + " " + gasStation.getNumberOfCancellationsTooExpensive());
+                System.out.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that pumps share the engine threads and the station releases them on close
+ */
+@RunWith(Parameterized.class)
+public class GasStationImplLifecycleTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = 1.5;
+    private final int THREAD_COUNT_SLACK = 4;
+
+    @Parameterized.Parameter
+    public PumpManagerEnum pumpManagerStrategy;
+    @Parameterized.Parameters()
+    public static Iterable<PumpManagerEnum> data() {
+        return Arrays.asList(PumpManagerEnum.SteadyPumpManager, PumpManagerEnum.SteadyBlockingPumpManager, PumpManagerEnum.MaxSalesPumpManager, PumpManagerEnum.BiddingPumpManager,
+                PumpManagerEnum.ShortestCompletionPumpManager);
+    }
+
+    /**
+     * The default engine of the station: the threads used by 10 pumps are enough for 2000 pumps
+     */
+    @Test
+    public void testThreadCountDoesNotGrowWithPumps() throws Exception {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        final int initialThreadCount = threadMXBean.getThreadCount();
+
+        final GasStationImpl gasStation = new GasStationImpl(pumpManagerStrategy);
+        gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+        addPumpsAndBuy(gasStation, 10);
+        final int fewPumpsThreadCount = threadMXBean.getThreadCount();
+
+        addPumpsAndBuy(gasStation, 1990);
+        assertEquals(2000, gasStation.getNumberOfSales());
+        // Pool threads, which were busy finishing the previous pumping, may be added
+        assertTrue(threadMXBean.getThreadCount() <= fewPumpsThreadCount + THREAD_COUNT_SLACK);
+
+        gasStation.close();
+        assertTrue(waitForThreadCount(threadMXBean, initialThreadCount));
+    }
+
+    @Test
+    public void testCloseDrainsScheduledPumping() throws Exception {
+        final GasStationImpl gasStation = new GasStationImpl(pumpManagerStrategy);
+        gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+        gasStation.addGasPump(new GasPump(GasType.DIESEL, 10));
+
+        final CompletableFuture<Double> purchase = gasStation.buyGasAsync(GasType.DIESEL, 1, DIESEL_PRICE);
+        gasStation.close();
+
+        assertTrue(purchase.isDone());
+        assertEquals(DIESEL_PRICE, purchase.get(), DELTA);
+        assertEquals(1, gasStation.getNumberOfSales());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBuyGasFailClosed() throws Exception {
+        final GasStationImpl gasStation = new GasStationImpl(pumpManagerStrategy);
+        gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+        gasStation.addGasPump(new GasPump(GasType.DIESEL, 10));
+        gasStation.close();
+
+        gasStation.buyGas(GasType.DIESEL, 1, DIESEL_PRICE);
+    }
+
+    /**
+     * Every added pump is used once: the purchases are as many as the pumps, the strategies spread them over the pumps
+     * of the same remaining amount. One purchase at a time, so the threads depend on the pumps only, not on the pumpings
+     * in flight, which the shared pool of the default engine serves by as many threads
+     */
+    private void addPumpsAndBuy(GasStationImpl gasStation, int pumpCount) throws Exception {
+        for (int i = 0; i < pumpCount; i++)
+            gasStation.addGasPump(new GasPump(GasType.DIESEL, 10));
+        for (int i = 0; i < pumpCount; i++)
+            gasStation.buyGasAsync(GasType.DIESEL, 0.001, DIESEL_PRICE).get();
+    }
+
+    /**
+     * Terminated threads may be reported for a short while
+     */
+    private static boolean waitForThreadCount(ThreadMXBean threadMXBean, int expectedThreadCount) throws InterruptedException {
+        for (int i = 0; i < 100 && threadMXBean.getThreadCount() > expectedThreadCount; i++)
+            Thread.sleep(10);
+        return threadMXBean.getThreadCount() <= expectedThreadCount;
+    }
+}
@@ -0,0 +1,126 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.pricing.LoadPricingPolicy;
+import net.bigpoint.assessment.gasstation.impl.pricing.PriceSnapshot;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the versioned prices and the dynamic pricing
+ */
+public class GasStationImplPricingTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = TestStations.DIESEL_PRICE;
+    private final long TICK_MILLIS = 5;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSetPricePublishesNextVersion() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyBlockingPumpManager, 1, 10)) {
+            final PriceSnapshot first = gasStation.getPriceSnapshot();
+            gasStation.setPrice(GasType.DIESEL, 2 * DIESEL_PRICE);
+
+            final PriceSnapshot second = gasStation.getPriceSnapshot();
+            assertEquals(first.getVersion() + 1, second.getVersion());
+            assertEquals(2 * DIESEL_PRICE, second.getPrice(GasType.DIESEL), DELTA);
+            // Published snapshots never change
+            assertEquals(DIESEL_PRICE, first.getPrice(GasType.DIESEL), DELTA);
+        }
+    }
+
+    @Test
+    public void testBacklogRaisesPrice() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyBlockingPumpManager, 1, 10)) {
+            gasStation.startDynamicPricing(new LoadPricingPolicy(1, 1, 0), TICK_MILLIS);
+            final CompletableFuture<Double> admitted = gasStation.buyGasAsync(GasType.DIESEL, 3, DIESEL_PRICE);
+
+            awaitTrue(() -> gasStation.getPrice(GasType.DIESEL) > DIESEL_PRICE);
+            assertEquals(GasStationImpl.TOO_EXPENSIVE, gasStation.tryBuyGas(GasType.DIESEL, 0.1, DIESEL_PRICE), DELTA);
+            // Price of the order is fixed at its purchase
+            assertEquals(3 * DIESEL_PRICE, admitted.get(), DELTA);
+
+            awaitTrue(() -> gasStation.getPrice(GasType.DIESEL) == DIESEL_PRICE);
+            gasStation.stopDynamicPricing();
+            assertEquals(DIESEL_PRICE, gasStation.getPrice(GasType.DIESEL), DELTA);
+        }
+    }
+
+    @Test
+    public void testScarcityRaisesPriceUntilStopped() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyBlockingPumpManager, 2, 5)) {
+            // Half of the reserve is left
+            gasStation.startDynamicPricing(new LoadPricingPolicy(1, 1, 20), TICK_MILLIS);
+            awaitTrue(() -> gasStation.getPrice(GasType.DIESEL) != DIESEL_PRICE);
+            assertEquals(1.5 * DIESEL_PRICE, gasStation.getPrice(GasType.DIESEL), DELTA);
+
+            final long version = gasStation.getPriceSnapshot().getVersion();
+            Thread.sleep(10 * TICK_MILLIS);
+            // Unchanged prices are not published again
+            assertEquals(version, gasStation.getPriceSnapshot().getVersion());
+
+            // Base price is published at once and surcharged on the next tick
+            gasStation.setPrice(GasType.DIESEL, 2 * DIESEL_PRICE);
+            awaitTrue(() -> gasStation.getPrice(GasType.DIESEL) == 3 * DIESEL_PRICE);
+
+            gasStation.stopDynamicPricing();
+            assertEquals(2 * DIESEL_PRICE, gasStation.getPrice(GasType.DIESEL), DELTA);
+        }
+    }
+
+    @Test
+    public void testSalesKeepPriceVersion() throws Exception {
+        final Path journalFile = temporaryFolder.getRoot().toPath().resolve("sales.journal");
+        final long saleVersion;
+        try (GasStationImpl gasStation = GasStationImpl.openJournaled(PumpManagerEnum.SteadyBlockingPumpManager, journalFile)) {
+            gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+            gasStation.addGasPump(new GasPump(GasType.DIESEL, 5));
+            gasStation.startDynamicPricing(new LoadPricingPolicy(1, 1, 10), TICK_MILLIS);
+            awaitTrue(() -> gasStation.getPrice(GasType.DIESEL) != DIESEL_PRICE);
+            gasStation.stopDynamicPricing();
+            gasStation.setPrice(GasType.DIESEL, 2 * DIESEL_PRICE);
+            gasStation.startDynamicPricing(new LoadPricingPolicy(1, 1, 10), TICK_MILLIS);
+            awaitTrue(() -> gasStation.getPrice(GasType.DIESEL) != 2 * DIESEL_PRICE);
+
+            // Dynamic prices are not journaled, the sale keeps their version
+            saleVersion = gasStation.getPriceSnapshot().getVersion();
+            assertEquals(3 * DIESEL_PRICE, gasStation.buyGas(GasType.DIESEL, 1, 4 * DIESEL_PRICE), DELTA);
+        }
+
+        try (GasStationImpl gasStation = GasStationImpl.openJournaled(PumpManagerEnum.SteadyBlockingPumpManager, journalFile)) {
+            assertEquals(saleVersion, gasStation.getPriceSnapshot().getVersion());
+            assertEquals(2 * DIESEL_PRICE, gasStation.getPrice(GasType.DIESEL), DELTA);
+            gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+            assertEquals(saleVersion + 1, gasStation.getPriceSnapshot().getVersion());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDynamicPricingStartsOnce() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyBlockingPumpManager, 1, 10)) {
+            gasStation.startDynamicPricing(new LoadPricingPolicy(1, 1, 0), TICK_MILLIS);
+            gasStation.startDynamicPricing(new LoadPricingPolicy(1, 1, 0), TICK_MILLIS);
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition is not met in time", System.nanoTime() - deadline < 0);
+            Thread.sleep(1);
+        }
+    }
+}
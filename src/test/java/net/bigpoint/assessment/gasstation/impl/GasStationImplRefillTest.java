@@ -0,0 +1,140 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the refills interleaved with the purchases for every strategy
+ */
+@RunWith(Parameterized.class)
+public class GasStationImplRefillTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = 1.5;
+    /**
+     * Binary fractions, so the sums of the liters are exact
+     */
+    private final double ORDER_AMOUNT = 0.0625;
+    private final double REFILL_AMOUNT = 0.25;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Parameterized.Parameter
+    public PumpManagerEnum pumpManagerStrategy;
+    @Parameterized.Parameters()
+    public static Iterable<PumpManagerEnum> data() {
+        return Arrays.asList(PumpManagerEnum.SteadyPumpManager, PumpManagerEnum.SteadyBlockingPumpManager, PumpManagerEnum.MaxSalesPumpManager, PumpManagerEnum.BiddingPumpManager,
+                PumpManagerEnum.ShortestCompletionPumpManager);
+    }
+
+    @Test
+    public void testRefillsDuringPurchases() throws Exception {
+        final int pumpCount = 4;
+        final double initialAmount = 1;
+        try (GasStationImpl gasStation = new GasStationImpl(pumpManagerStrategy)) {
+            gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+            for (int i = 0; i < pumpCount; i++)
+                gasStation.addGasPump(new GasPump(GasType.DIESEL, initialAmount));
+            final long[] pumpIds = gasStation.getInventory().getPumps().stream().mapToLong(PumpState::getPumpId).toArray();
+
+            final ExecutorService executor = Executors.newFixedThreadPool(9);
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            final AtomicLong soldOrders = new AtomicLong();
+            final AtomicLong refills = new AtomicLong();
+            final List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                tasks.add(executor.submit(() -> {
+                    while (System.nanoTime() - deadline < 0)
+                        if (gasStation.tryBuyGas(GasType.DIESEL, ORDER_AMOUNT, DIESEL_PRICE) >= 0)
+                            soldOrders.incrementAndGet();
+                }));
+            tasks.add(executor.submit(() -> {
+                while (System.nanoTime() - deadline < 0) {
+                    gasStation.refillGasPump(pumpIds[ThreadLocalRandom.current().nextInt(pumpCount)], REFILL_AMOUNT);
+                    refills.incrementAndGet();
+                    Thread.sleep(1);
+                }
+                return null;
+            }));
+            for (Future<?> task : tasks)
+                task.get();
+            executor.shutdown();
+            awaitTrue(() -> gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL)
+                    == gasStation.getInventory().getCommittedRemainingAmount(GasType.DIESEL));
+
+            // No liters are lost
+            final double deliveredGas = pumpCount * initialAmount + refills.get() * REFILL_AMOUNT;
+            assertEquals(soldOrders.get(), gasStation.getNumberOfSales());
+            assertEquals(deliveredGas, soldOrders.get() * ORDER_AMOUNT + gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+            double physicalSum = 0;
+            for (PumpState pump : gasStation.getInventory().getPumps())
+                physicalSum += pump.getPhysicalRemainingAmount();
+            assertEquals(gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL), physicalSum, DELTA);
+
+            // The lowest pump becomes the only one for the next order
+            PumpState lowest = null;
+            double highestAmount = 0;
+            for (PumpState pump : gasStation.getInventory().getPumps()) {
+                if (lowest == null || pump.getCommittedRemainingAmount() < lowest.getCommittedRemainingAmount())
+                    lowest = pump;
+                highestAmount = Math.max(highestAmount, pump.getCommittedRemainingAmount());
+            }
+            gasStation.refillGasPump(lowest.getPumpId(), highestAmount - lowest.getCommittedRemainingAmount() + 1);
+            assertEquals((highestAmount + 0.5) * DIESEL_PRICE, gasStation.tryBuyGas(GasType.DIESEL, highestAmount + 0.5, DIESEL_PRICE), DELTA);
+        }
+    }
+
+    @Test
+    public void testRefillIsJournaled() throws Exception {
+        final Path journalFile = temporaryFolder.getRoot().toPath().resolve("sales.journal");
+        try (GasStationImpl gasStation = GasStationImpl.openJournaled(pumpManagerStrategy, journalFile)) {
+            gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+            gasStation.addGasPump(new GasPump(GasType.DIESEL, 1));
+            final long pumpId = gasStation.getInventory().getPumps().get(0).getPumpId();
+            gasStation.refillGasPump(pumpId, 2);
+            assertEquals(3 * DIESEL_PRICE, gasStation.buyGas(GasType.DIESEL, 3, DIESEL_PRICE), DELTA);
+            gasStation.refillGasPump(pumpId, 0.5);
+        }
+
+        try (GasStationImpl gasStation = GasStationImpl.openJournaled(pumpManagerStrategy, journalFile)) {
+            assertEquals(0.5, gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+            assertEquals(0.5, gasStation.getInventory().getCommittedRemainingAmount(GasType.DIESEL), DELTA);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRefillOfUnknownPump() throws Exception {
+        try (GasStationImpl gasStation = new GasStationImpl(pumpManagerStrategy)) {
+            gasStation.refillGasPump(42, 1);
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition is not met in time", System.nanoTime() - deadline < 0);
+            Thread.sleep(1);
+        }
+    }
+}
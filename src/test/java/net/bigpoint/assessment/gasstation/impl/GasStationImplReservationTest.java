@@ -0,0 +1,181 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpExecutionEngine;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.managers.VirtualClock;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the two-phase purchases (reserve, then commit or cancel) and the expiry of the reservations for every strategy
+ */
+@RunWith(Parameterized.class)
+public class GasStationImplReservationTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = TestStations.DIESEL_PRICE;
+
+    @Parameterized.Parameter
+    public PumpManagerEnum pumpManagerStrategy;
+    @Parameterized.Parameters()
+    public static Iterable<PumpManagerEnum> data() {
+        return Arrays.asList(PumpManagerEnum.SteadyPumpManager, PumpManagerEnum.SteadyBlockingPumpManager, PumpManagerEnum.MaxSalesPumpManager, PumpManagerEnum.BiddingPumpManager,
+                PumpManagerEnum.ShortestCompletionPumpManager);
+    }
+
+    @Test
+    public void testCommitChargesLockedPrice() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(pumpManagerStrategy, 1, 1)) {
+            final Reservation reservation = gasStation.reserve(GasType.DIESEL, 0.5, DIESEL_PRICE);
+            assertEquals(0.5, gasStation.getInventory().getCommittedRemainingAmount(GasType.DIESEL), DELTA);
+            assertEquals(1, gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+            assertEquals(0.5, gasStation.getAvailability(GasType.DIESEL).getRemainingInLiters(), DELTA);
+            // The price raised after the reservation is not charged
+            gasStation.setPrice(GasType.DIESEL, 2 * DIESEL_PRICE);
+
+            assertEquals(0.5 * DIESEL_PRICE, gasStation.commit(reservation), DELTA);
+            assertFalse(reservation.isActive());
+            assertEquals(1, gasStation.getNumberOfSales());
+            assertEquals(0.5 * DIESEL_PRICE, gasStation.getRevenue(), DELTA);
+            assertEquals(0.5, gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+            assertEquals(0.5, gasStation.getAvailability(GasType.DIESEL).getRemainingInLiters(), DELTA);
+        }
+    }
+
+    @Test
+    public void testCancelReturnsGas() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(pumpManagerStrategy, 1, 1)) {
+            final Reservation reservation = gasStation.reserve(GasType.DIESEL, 1, DIESEL_PRICE);
+            try {
+                gasStation.reserve(GasType.DIESEL, 0.5, DIESEL_PRICE);
+                fail("The gas is reserved");
+            } catch (NotEnoughGasException e) {
+                assertEquals(1, gasStation.getNumberOfCancellationsNoGas());
+            }
+
+            assertTrue(gasStation.cancel(reservation));
+            assertFalse(gasStation.cancel(reservation));
+            try {
+                gasStation.commit(reservation);
+                fail("The reservation is cancelled");
+            } catch (ReservationExpiredException e) {
+                // Expected
+            }
+            assertEquals(1, gasStation.getInventory().getCommittedRemainingAmount(GasType.DIESEL), DELTA);
+            assertEquals(0.5 * DIESEL_PRICE, gasStation.buyGas(GasType.DIESEL, 0.5, DIESEL_PRICE), DELTA);
+            assertEquals(1, gasStation.getNumberOfSales());
+        }
+    }
+
+    @Test(expected = GasTooExpensiveException.class)
+    public void testTooExpensiveReservation() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(pumpManagerStrategy, 1, 1)) {
+            gasStation.reserve(GasType.DIESEL, 0.5, DIESEL_PRICE - 0.5);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReservationOfAnotherStation() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(pumpManagerStrategy, 1, 1); GasStationImpl anotherStation = TestStations.newDieselStation(pumpManagerStrategy, 1, 1)) {
+            anotherStation.commit(gasStation.reserve(GasType.DIESEL, 0.5, DIESEL_PRICE));
+        }
+    }
+
+    @Test
+    public void testExpiredReservationIsReclaimed() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(pumpManagerStrategy, 1, 1)) {
+            final Reservation reservation = gasStation.reserve(GasType.DIESEL, 1, DIESEL_PRICE, 50, TimeUnit.MILLISECONDS);
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (reservation.isActive() && System.nanoTime() < deadline)
+                Thread.sleep(10);
+
+            assertFalse(reservation.isActive());
+            assertEquals(1, gasStation.getNumberOfExpiredReservations());
+            assertEquals(1, gasStation.getInventory().getCommittedRemainingAmount(GasType.DIESEL), DELTA);
+            try {
+                gasStation.commit(reservation);
+                fail("The reservation is expired");
+            } catch (ReservationExpiredException e) {
+                // Expected
+            }
+            assertEquals(DIESEL_PRICE, gasStation.buyGas(GasType.DIESEL, 1, DIESEL_PRICE), DELTA);
+        }
+    }
+
+    /**
+     * Reservations expire in the virtual time as well: the terminal, which authorises longer than the time to live, loses the gas
+     */
+    @Test
+    public void testExpiryInVirtualTime() throws Exception {
+        final VirtualClock virtualClock = new VirtualClock();
+        try (GasStationImpl gasStation = new GasStationImpl(pumpManagerStrategy, PumpExecutionEngine.simulated(virtualClock))) {
+            gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+            gasStation.addGasPump(new GasPump(GasType.DIESEL, 10));
+            final List<CompletableFuture<Double>> purchases = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                final Reservation reservation = gasStation.reserve(GasType.DIESEL, 1, DIESEL_PRICE, 1, TimeUnit.SECONDS);
+                // Authorisation takes 100 ms longer for every next terminal
+                virtualClock.schedule(() -> purchases.add(gasStation.commitAsync(reservation)), TimeUnit.MILLISECONDS.toNanos(500 + 100 * i));
+            }
+            virtualClock.run();
+
+            int sales = 0;
+            for (CompletableFuture<Double> purchase : purchases)
+                if (!purchase.isCompletedExceptionally()) {
+                    assertEquals(DIESEL_PRICE, purchase.getNow(null), DELTA);
+                    sales++;
+                }
+            assertEquals(5, sales);
+            assertEquals(5, gasStation.getNumberOfSales());
+            assertEquals(5, gasStation.getNumberOfExpiredReservations());
+            assertEquals(5, gasStation.getInventory().getCommittedRemainingAmount(GasType.DIESEL), DELTA);
+        }
+    }
+
+    /**
+     * Many short reservations expire on the ticks of the station: no thread per reservation
+     */
+    @Test
+    public void testManyReservationsExpire() throws Exception {
+        final int reservations = 5_000;
+        try (GasStationImpl gasStation = TestStations.newDieselStation(pumpManagerStrategy, 10, 1)) {
+            final int threadsBefore = Thread.activeCount();
+            for (int i = 0; i < reservations; i++)
+                gasStation.reserve(GasType.DIESEL, 0.001, DIESEL_PRICE, 20 + i % 100, TimeUnit.MILLISECONDS);
+            assertTrue(Thread.activeCount() - threadsBefore <= 2);
+
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (gasStation.getNumberOfExpiredReservations() < reservations && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertEquals(reservations, gasStation.getNumberOfExpiredReservations());
+            assertEquals(10, gasStation.getInventory().getCommittedRemainingAmount(GasType.DIESEL), DELTA);
+            assertEquals(0, gasStation.getNumberOfSales());
+        }
+    }
+
+    @Test
+    public void testCloseReclaimsReservations() throws Exception {
+        final GasStationImpl gasStation = TestStations.newDieselStation(pumpManagerStrategy, 1, 1);
+        final Reservation reservation = gasStation.reserve(GasType.DIESEL, 1, DIESEL_PRICE);
+        gasStation.close();
+
+        assertFalse(reservation.isActive());
+        assertEquals(1, gasStation.getNumberOfExpiredReservations());
+        assertEquals(1, gasStation.getInventory().getCommittedRemainingAmount(GasType.DIESEL), DELTA);
+    }
+}
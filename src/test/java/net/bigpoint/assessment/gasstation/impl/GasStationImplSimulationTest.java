@@ -0,0 +1,211 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.BiddingPumpManager;
+import net.bigpoint.assessment.gasstation.impl.managers.OrderShedException;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpExecutionEngine;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpFutures;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.managers.VirtualClock;
+import net.bigpoint.assessment.gasstation.impl.workload.ArrivalProcess;
+import net.bigpoint.assessment.gasstation.impl.workload.Distribution;
+import net.bigpoint.assessment.gasstation.impl.workload.WorkloadHarness;
+import net.bigpoint.assessment.gasstation.impl.workload.WorkloadReport;
+import net.bigpoint.assessment.gasstation.impl.workload.WorkloadSpec;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the discrete-event simulation of the pumping: the station logic runs as is, the pumping takes the virtual time
+ */
+@RunWith(Parameterized.class)
+public class GasStationImplSimulationTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = TestStations.DIESEL_PRICE;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+                {PumpManagerEnum.SteadyPumpManager},
+                {PumpManagerEnum.SteadyBlockingPumpManager},
+                {PumpManagerEnum.MaxSalesPumpManager},
+                {PumpManagerEnum.BiddingPumpManager},
+                {PumpManagerEnum.ShortestCompletionPumpManager}
+        });
+    }
+
+    @Parameterized.Parameter
+    public PumpManagerEnum pumpManagerStrategy;
+
+    @Test
+    public void testPumpingTakesVirtualTime() throws Exception {
+        final VirtualClock virtualClock = new VirtualClock();
+        try (GasStationImpl gasStation = TestStations.newDieselStation(pumpManagerStrategy, PumpExecutionEngine.simulated(virtualClock), 1, 400)) {
+            final long startTime = System.nanoTime();
+            // 36 seconds of pumping, every order is placed when the previous one is finished
+            final List<Double> purchasePrices = new ArrayList<>();
+            buyOneByOne(gasStation, virtualClock, 36, purchasePrices);
+            virtualClock.run();
+
+            assertEquals(36, purchasePrices.size());
+            for (double purchasePrice : purchasePrices)
+                assertEquals(10 * DIESEL_PRICE, purchasePrice, DELTA);
+            assertTrue(virtualClock.nanoTime() >= TimeUnit.SECONDS.toNanos(36));
+            assertTrue(System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(5));
+            assertEquals(36, gasStation.getNumberOfSales());
+            // The final GasPump is not pumped, the worker tracks the amount
+            assertEquals(400 - 360, gasStation.getGasPumps().iterator().next().getRemainingAmount(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testPumpsWorkInParallel() throws Exception {
+        final VirtualClock virtualClock = new VirtualClock();
+        try (GasStationImpl gasStation = TestStations.newDieselStation(pumpManagerStrategy, PumpExecutionEngine.simulated(virtualClock), 4, 10)) {
+            final List<CompletableFuture<Double>> purchases = new ArrayList<>();
+            for (int i = 0; i < 4; i++)
+                purchases.add(gasStation.buyGasAsync(GasType.DIESEL, 1, DIESEL_PRICE));
+            virtualClock.run();
+
+            // 100 ms on every pump, the bidding strategy waits for its auction window besides.
+            // The max sales strategy fits all the orders into the same pump, one after another,
+            // the steady blocking one picks the better of two random pumps, which may be the same one
+            for (CompletableFuture<Double> purchase : purchases)
+                assertEquals(DIESEL_PRICE, purchase.getNow(null), DELTA);
+            final long minMillis = pumpManagerStrategy == PumpManagerEnum.MaxSalesPumpManager ? 400 : 100;
+            final long maxMillis = pumpManagerStrategy == PumpManagerEnum.SteadyBlockingPumpManager ? 400 : minMillis;
+            assertTrue(virtualClock.nanoTime() >= TimeUnit.MILLISECONDS.toNanos(minMillis));
+            assertTrue(virtualClock.nanoTime() <= TimeUnit.MILLISECONDS.toNanos(maxMillis + BiddingPumpManager.DEFAULT_WINDOW_MILLIS));
+        }
+    }
+
+    @Test
+    public void testCloseRunsPendingPumpings() throws Exception {
+        final VirtualClock virtualClock = new VirtualClock();
+        final CompletableFuture<Double> purchase;
+        try (GasStationImpl gasStation = TestStations.newDieselStation(pumpManagerStrategy, PumpExecutionEngine.simulated(virtualClock), 1, 10)) {
+            purchase = gasStation.buyGasAsync(GasType.DIESEL, 2, DIESEL_PRICE);
+        }
+        assertEquals(2 * DIESEL_PRICE, purchase.getNow(null), DELTA);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), virtualClock.nanoTime(), TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testBlockingPurchaseIsRejected() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(pumpManagerStrategy, PumpExecutionEngine.simulated(new VirtualClock()), 1, 10)) {
+            gasStation.tryBuyGas(GasType.DIESEL, 1, DIESEL_PRICE);
+        }
+    }
+
+    /**
+     * The random pump selections of the simulation are drawn from its seed, so the large station is reproduced too
+     */
+    @Test
+    public void testSameSeedReproducesRun() throws Exception {
+        assertArrayEquals(simulateRandomOrders(7), simulateRandomOrders(7), 0);
+    }
+
+    /**
+     * The deadline is in the virtual time: the second order can not finish in 150 ms behind the first one
+     */
+    @Test
+    public void testTimeoutInVirtualTime() throws Exception {
+        if (pumpManagerStrategy != PumpManagerEnum.SteadyBlockingPumpManager && pumpManagerStrategy != PumpManagerEnum.ShortestCompletionPumpManager)
+            return;
+        final VirtualClock virtualClock = new VirtualClock();
+        try (GasStationImpl gasStation = TestStations.newDieselStation(pumpManagerStrategy, PumpExecutionEngine.simulated(virtualClock), 1, 10)) {
+            final CompletableFuture<Double> first = gasStation.buyGasAsync(GasType.DIESEL, 1, DIESEL_PRICE, 150, TimeUnit.MILLISECONDS);
+            final CompletableFuture<Double> second = gasStation.buyGasAsync(GasType.DIESEL, 1, DIESEL_PRICE, 150, TimeUnit.MILLISECONDS);
+            virtualClock.run();
+
+            assertEquals(DIESEL_PRICE, first.getNow(null), DELTA);
+            assertTrue(second.isCompletedExceptionally());
+            second.exceptionally(e -> {
+                assertTrue(PumpFutures.unwrap(e) instanceof OrderShedException);
+                return null;
+            });
+            assertEquals(1, gasStation.getNumberOfShedOrders());
+        }
+    }
+
+    /**
+     * Same bursts of orders with enough gas in the real and in the virtual time: the same orders are sold
+     * and the latencies are close. The real time adds the scheduling overhead only
+     */
+    @Test
+    public void testSimulationMatchesRealTime() throws Exception {
+        if (pumpManagerStrategy != PumpManagerEnum.ShortestCompletionPumpManager && pumpManagerStrategy != PumpManagerEnum.MaxSalesPumpManager)
+            return;
+        final WorkloadSpec spec = WorkloadSpec.of("bursts", 42, 96, ArrivalProcess.bursty(24, 100))
+                .withOrderSizes(Distribution.choice(new double[]{1d / 16, 1d / 4}, new double[]{4, 1}))
+                .withPumps(2, 100);
+        final WorkloadReport real = WorkloadHarness.run(spec, pumpManagerStrategy);
+        final WorkloadReport simulated = WorkloadHarness.simulate(spec, pumpManagerStrategy);
+
+        assertEquals(real.getSales(), simulated.getSales());
+        assertEquals(real.getCancellationsTooExpensive(), simulated.getCancellationsTooExpensive());
+        assertEquals(real.getRevenue(), simulated.getRevenue(), DELTA);
+        for (double percentile : new double[]{50, 99}) {
+            final double realMillis = real.getLatencyNanosAtPercentile(percentile) / 1e6;
+            final double simulatedMillis = simulated.getLatencyNanosAtPercentile(percentile) / 1e6;
+            assertTrue("p" + percentile + " real " + realMillis + " ms, simulated " + simulatedMillis + " ms",
+                    Math.abs(realMillis - simulatedMillis) <= 0.25 * simulatedMillis + 10);
+        }
+    }
+
+    @Test
+    public void testManyOrdersInSeconds() throws Exception {
+        final WorkloadSpec spec = WorkloadSpec.of("day", 7, 100_000, ArrivalProcess.poisson(100))
+                .withPumps(4, 10_000);
+        final long startTime = System.nanoTime();
+        final WorkloadReport report = WorkloadHarness.simulate(spec, pumpManagerStrategy);
+
+        // About 1000 seconds of traffic
+        assertTrue(report.getElapsedNanos() > TimeUnit.SECONDS.toNanos(900));
+        assertTrue(System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(30));
+        assertEquals(spec.getOrders(), report.getSales() + report.getCancellationsNoGas() + report.getCancellationsTooExpensive());
+    }
+
+    private void buyOneByOne(GasStationImpl gasStation, VirtualClock virtualClock, int orders, List<Double> purchasePrices) {
+        if (orders == 0)
+            return;
+        gasStation.buyGasAsync(GasType.DIESEL, 10, DIESEL_PRICE).thenAccept(purchasePrice -> {
+            purchasePrices.add(purchasePrice);
+            virtualClock.schedule(() -> buyOneByOne(gasStation, virtualClock, orders - 1, purchasePrices), 0);
+        });
+    }
+
+    /**
+     * @return remaining amounts of the pumps and the virtual end time after the random orders
+     */
+    private double[] simulateRandomOrders(long seed) throws Exception {
+        final VirtualClock virtualClock = new VirtualClock();
+        final Random orderRandom = new Random(1);
+        try (GasStationImpl gasStation = TestStations.newDieselStation(pumpManagerStrategy, PumpExecutionEngine.simulated(virtualClock, seed), 100, 10)) {
+            for (int i = 0; i < 2000; i++) {
+                final double amountInLiters = 0.1 + orderRandom.nextDouble();
+                virtualClock.scheduleAt(() -> gasStation.buyGasAsync(GasType.DIESEL, amountInLiters, DIESEL_PRICE), TimeUnit.MILLISECONDS.toNanos(i));
+            }
+            virtualClock.run();
+            final List<Double> results = new ArrayList<>();
+            for (GasPump gasPump : gasStation.getGasPumps())
+                results.add(gasPump.getRemainingAmount());
+            results.add((double) virtualClock.nanoTime());
+            return results.stream().mapToDouble(Double::doubleValue).toArray();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.managers.OrderShedException;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpExecutionEngine;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpWorker;
+import net.bigpoint.assessment.gasstation.impl.managers.SteadyBlockingPumpManager;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the split fulfilment of the steady blocking strategy
+ */
+public class GasStationImplSplitTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = TestStations.DIESEL_PRICE;
+
+    @Test
+    public void testSlicesArePumpedInParallel() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyBlockingPumpManager, 4, 10)) {
+            gasStation.setSplitFulfilment(GasType.DIESEL, 4, 1);
+
+            // 800 ms on a single pump, 200 ms in 4 slices
+            final long startTime = System.nanoTime();
+            assertEquals(8 * DIESEL_PRICE, gasStation.buyGas(GasType.DIESEL, 8, DIESEL_PRICE), DELTA);
+            assertTrue(System.nanoTime() - startTime < TimeUnit.MILLISECONDS.toNanos(600));
+
+            assertEquals(1, gasStation.getNumberOfSales());
+            assertEquals(8 * DIESEL_PRICE, gasStation.getRevenue(), DELTA);
+            for (PumpState pump : gasStation.getInventory().getPumps())
+                assertEquals(8, pump.getPhysicalRemainingAmount(), DELTA);
+        }
+    }
+
+    @Test
+    public void testOrderLargerThanAnyPump() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyBlockingPumpManager, 3, 1)) {
+            try {
+                gasStation.buyGas(GasType.DIESEL, 2, DIESEL_PRICE);
+                fail("No single pump has 2 liters");
+            } catch (NotEnoughGasException e) {
+                // Expected
+            }
+
+            gasStation.setSplitFulfilment(GasType.DIESEL, 3, 0.5);
+            assertEquals(2.5 * DIESEL_PRICE, gasStation.buyGas(GasType.DIESEL, 2.5, DIESEL_PRICE), DELTA);
+            assertEquals(0.5, gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+
+            // Nothing is reserved by the rejected order
+            assertEquals(GasStationImpl.NOT_ENOUGH_GAS, gasStation.tryBuyGas(GasType.DIESEL, 1, DIESEL_PRICE), DELTA);
+            assertEquals(0.5, gasStation.getInventory().getCommittedRemainingAmount(GasType.DIESEL), DELTA);
+            assertEquals(1, gasStation.getNumberOfSales());
+            assertEquals(2, gasStation.getNumberOfCancellationsNoGas());
+        }
+    }
+
+    @Test
+    public void testSlicesRespectAdmissionLimits() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyBlockingPumpManager, 2, 10)) {
+            gasStation.setAdmissionLimits(GasType.DIESEL, 1, Double.POSITIVE_INFINITY);
+            final CompletableFuture<Double> admitted = gasStation.buyGasAsync(GasType.DIESEL, 1, DIESEL_PRICE);
+
+            // The other pump alone has not enough gas
+            gasStation.setSplitFulfilment(GasType.DIESEL, 2, 1);
+            try {
+                gasStation.buyGas(GasType.DIESEL, 12, DIESEL_PRICE);
+                fail("The busy pump is not admissible");
+            } catch (OrderShedException e) {
+                // Expected
+            }
+            assertEquals(1, gasStation.getNumberOfShedOrders());
+            assertEquals(19, gasStation.getInventory().getCommittedRemainingAmount(GasType.DIESEL), DELTA);
+            admitted.get();
+        }
+    }
+
+    @Test
+    public void testConcurrentSplitOrdersNeverOversell() throws Exception {
+        final int pumpCount = 8;
+        final double pumpAmount = 0.5;
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyBlockingPumpManager, pumpCount, pumpAmount)) {
+            gasStation.setSplitFulfilment(GasType.DIESEL, 4, 0.05);
+            final List<CompletableFuture<Double>> purchases = new ArrayList<>();
+            for (int i = 0; i < 40; i++)
+                purchases.add(gasStation.buyGasAsync(GasType.DIESEL, 0.3, DIESEL_PRICE));
+
+            int sales = 0;
+            for (CompletableFuture<Double> purchase : purchases) {
+                try {
+                    purchase.get();
+                    sales++;
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof NotEnoughGasException);
+                }
+            }
+            assertEquals(sales, gasStation.getNumberOfSales());
+            assertEquals(pumpCount * pumpAmount - sales * 0.3, gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+            assertEquals(gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL),
+                    gasStation.getInventory().getCommittedRemainingAmount(GasType.DIESEL), DELTA);
+            for (PumpState pump : gasStation.getInventory().getPumps())
+                assertTrue(pump.getPhysicalRemainingAmount() > -DELTA);
+        }
+    }
+
+    /**
+     * The closed engine rejects the whole order: no slice is pumped, all of them are released
+     */
+    @Test
+    public void testClosedEngineSchedulesNoSlice() throws Exception {
+        final PumpExecutionEngine executionEngine = PumpExecutionEngine.fixedPool(2);
+        final SteadyBlockingPumpManager pumpManager = new SteadyBlockingPumpManager(executionEngine);
+        final List<PumpWorker> pumpWorkers = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            pumpWorkers.add(pumpManager.addGasPump(new GasPump(GasType.DIESEL, 1)));
+        pumpManager.setSplitFulfilment(4, 0.25);
+        executionEngine.close();
+
+        try {
+            pumpManager.pumpGasAsync(2);
+            fail("The engine is closed");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+        for (PumpWorker pumpWorker : pumpWorkers) {
+            assertEquals(1, pumpWorker.getRemainingGas(), DELTA);
+            assertEquals(1, pumpWorker.getPhysicalRemainingGas(), DELTA);
+            assertEquals(0, pumpWorker.getQueuedPumpings());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testStrategyWithoutSplitFulfilment() throws Exception {
+        try (GasStationImpl gasStation = new GasStationImpl(PumpManagerEnum.SteadyPumpManager)) {
+            gasStation.setSplitFulfilment(GasType.DIESEL, 2, 1);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.persistence.StationSnapshot;
+import net.bigpoint.assessment.gasstation.impl.stats.StationStats;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the station books served from the striped counters for every strategy
+ */
+@RunWith(Parameterized.class)
+public class GasStationImplStatsTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = TestStations.DIESEL_PRICE;
+    private final double SUPER_PRICE = TestStations.SUPER_PRICE;
+
+    @Parameterized.Parameter
+    public PumpManagerEnum pumpManagerStrategy;
+    @Parameterized.Parameters()
+    public static Iterable<PumpManagerEnum> data() {
+        return Arrays.asList(PumpManagerEnum.SteadyPumpManager, PumpManagerEnum.SteadyBlockingPumpManager, PumpManagerEnum.MaxSalesPumpManager, PumpManagerEnum.BiddingPumpManager,
+                PumpManagerEnum.ShortestCompletionPumpManager);
+    }
+
+    @Test
+    public void testBreakdownByGasTypeAndPump() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselAndSuperStation(pumpManagerStrategy)) {
+            gasStation.buyGas(GasType.DIESEL, 0.5, DIESEL_PRICE);
+            gasStation.buyGas(GasType.SUPER, 0.25, SUPER_PRICE);
+            gasStation.buyGasBatch(Arrays.asList(new Order(GasType.SUPER, 0.25, SUPER_PRICE), new Order(GasType.DIESEL, 5, DIESEL_PRICE)));
+            try {
+                gasStation.buyGas(GasType.SUPER, 0.25, DIESEL_PRICE);
+            } catch (GasTooExpensiveException e) {
+                // Counted
+            }
+
+            final StationStats stats = gasStation.getStats();
+            assertEquals(3, stats.getSales());
+            assertEquals(gasStation.getRevenue(), stats.getRevenue(), 0);
+            assertEquals(0.5 * DIESEL_PRICE + 0.5 * SUPER_PRICE, stats.getRevenue(), DELTA);
+            assertEquals(1, stats.getSoldLiters(), DELTA);
+            assertEquals(1, stats.getSales(GasType.DIESEL));
+            assertEquals(2, stats.getSales(GasType.SUPER));
+            assertEquals(0.5 * SUPER_PRICE, stats.getRevenue(GasType.SUPER), DELTA);
+            assertEquals(1, stats.getCancellationsNoGas(GasType.DIESEL));
+            assertEquals(1, stats.getCancellationsTooExpensive(GasType.SUPER));
+
+            assertEquals(3, stats.getPumps().size());
+            double pumpedLiters = 0;
+            long pumpings = 0;
+            for (StationStats.PumpStats pumpStats : stats.getPumps().values()) {
+                pumpedLiters += pumpStats.getPumpedLiters();
+                pumpings += pumpStats.getPumpings();
+            }
+            assertEquals(1, pumpedLiters, DELTA);
+            assertEquals(3, pumpings);
+        }
+    }
+
+    @Test
+    public void testRestoredBooksAreInTotals() throws Exception {
+        final StationSnapshot snapshot;
+        try (GasStationImpl gasStation = TestStations.newDieselAndSuperStation(pumpManagerStrategy)) {
+            gasStation.buyGas(GasType.DIESEL, 0.5, DIESEL_PRICE);
+            snapshot = gasStation.snapshot();
+        }
+        try (GasStationImpl restored = GasStationImpl.restore(snapshot)) {
+            restored.buyGas(GasType.DIESEL, 0.5, DIESEL_PRICE);
+
+            final StationStats stats = restored.getStats();
+            assertEquals(2, restored.getNumberOfSales());
+            assertEquals(2, stats.getSales());
+            assertEquals(DIESEL_PRICE, stats.getRevenue(), DELTA);
+            assertEquals(1, stats.getSales(GasType.DIESEL));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.adaptive.WorkloadStats;
+import net.bigpoint.assessment.gasstation.impl.adaptive.WorkloadStrategySelector;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the strategies per gas type, the strategy switch and the adaptive strategy selection
+ */
+public class GasStationImplStrategyTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = TestStations.DIESEL_PRICE;
+    private final double SUPER_PRICE = TestStations.SUPER_PRICE;
+    private final long TICK_MILLIS = 5;
+
+    @Test
+    public void testStrategyPerGasType() throws Exception {
+        final Map<GasType, PumpManagerEnum> strategies = new EnumMap<>(GasType.class);
+        strategies.put(GasType.DIESEL, PumpManagerEnum.MaxSalesPumpManager);
+        try (GasStationImpl gasStation = new GasStationImpl(PumpManagerEnum.SteadyPumpManager, strategies)) {
+            assertEquals(PumpManagerEnum.MaxSalesPumpManager, gasStation.getPumpManagerFactory(GasType.DIESEL));
+            assertEquals(PumpManagerEnum.SteadyPumpManager, gasStation.getPumpManagerFactory(GasType.SUPER));
+            gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+            gasStation.setPrice(GasType.SUPER, SUPER_PRICE);
+            for (GasType gasType : new GasType[] {GasType.DIESEL, GasType.SUPER}) {
+                gasStation.addGasPump(new GasPump(gasType, 1));
+                gasStation.addGasPump(new GasPump(gasType, 3));
+            }
+
+            // Best fit keeps the large pump for the large order
+            gasStation.buyGas(GasType.DIESEL, 1, DIESEL_PRICE);
+            gasStation.buyGas(GasType.DIESEL, 3, DIESEL_PRICE);
+            // Steady strategy takes the small order from the large pump
+            gasStation.buyGas(GasType.SUPER, 1, SUPER_PRICE);
+            try {
+                gasStation.buyGas(GasType.SUPER, 3, SUPER_PRICE);
+                fail("Large pump is already used by the small order");
+            } catch (NotEnoughGasException e) {
+                // expected
+            }
+            assertEquals(3, gasStation.getNumberOfSales());
+        }
+    }
+
+    @Test
+    public void testSwitchKeepsOrdersInFlight() throws Exception {
+        final PumpManagerEnum[] strategies = PumpManagerEnum.values();
+        for (int i = 0; i < strategies.length; i++) {
+            final PumpManagerEnum replacement = strategies[(i + 1) % strategies.length];
+            try (GasStationImpl gasStation = TestStations.newDieselStation(strategies[i], 2, 2)) {
+                final List<CompletableFuture<Double>> purchases = new ArrayList<>();
+                purchases.add(gasStation.buyGasAsync(GasType.DIESEL, 1, DIESEL_PRICE));
+                purchases.add(gasStation.buyGasAsync(GasType.DIESEL, 1, DIESEL_PRICE));
+                gasStation.switchPumpManager(GasType.DIESEL, replacement);
+                assertEquals(replacement, gasStation.getPumpManagerFactory(GasType.DIESEL));
+                purchases.add(gasStation.buyGasAsync(GasType.DIESEL, 1, DIESEL_PRICE));
+
+                for (CompletableFuture<Double> purchase : purchases)
+                    assertEquals(strategies[i] + " to " + replacement, DIESEL_PRICE, purchase.get(5, TimeUnit.SECONDS), DELTA);
+                assertEquals(3, gasStation.getNumberOfSales());
+                // The reservations of the replaced manager are kept
+                assertEquals(1, gasStation.getInventory().getCommittedRemainingAmount(GasType.DIESEL), DELTA);
+                assertEquals(GasStationImpl.NOT_ENOUGH_GAS, gasStation.tryBuyGas(GasType.DIESEL, 2, DIESEL_PRICE), DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void testSwitchBeforePumps() throws Exception {
+        try (GasStationImpl gasStation = new GasStationImpl(PumpManagerEnum.SteadyPumpManager)) {
+            gasStation.switchPumpManager(GasType.DIESEL, PumpManagerEnum.SteadyBlockingPumpManager);
+            gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+            gasStation.addGasPump(new GasPump(GasType.DIESEL, 1));
+            // Only the blocking strategy has the admission control
+            gasStation.setAdmissionLimits(GasType.DIESEL, 1, 1);
+            assertEquals(DIESEL_PRICE, gasStation.tryBuyGas(GasType.DIESEL, 1, DIESEL_PRICE), DELTA);
+        }
+    }
+
+    @Test
+    public void testAdaptiveSwitchesOnOrders() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyPumpManager, 2, 5)) {
+            gasStation.startAdaptiveStrategies(stats -> stats.getOrders() > 0 ? PumpManagerEnum.MaxSalesPumpManager : null, TICK_MILLIS);
+            Thread.sleep(10 * TICK_MILLIS);
+            // No orders, no switch
+            assertEquals(PumpManagerEnum.SteadyPumpManager, gasStation.getPumpManagerFactory(GasType.DIESEL));
+
+            final CompletableFuture<Double> inFlight = gasStation.buyGasAsync(GasType.DIESEL, 1, DIESEL_PRICE);
+            // Too expensive orders arrive as well
+            awaitTrue(() -> {
+                gasStation.tryBuyGas(GasType.DIESEL, 1, 0);
+                return gasStation.getPumpManagerFactory(GasType.DIESEL) == PumpManagerEnum.MaxSalesPumpManager;
+            });
+            assertEquals(DIESEL_PRICE, inFlight.get(5, TimeUnit.SECONDS), DELTA);
+            assertEquals(DIESEL_PRICE, gasStation.buyGas(GasType.DIESEL, 1, DIESEL_PRICE), DELTA);
+
+            gasStation.stopAdaptiveStrategies();
+            gasStation.switchPumpManager(GasType.DIESEL, PumpManagerEnum.SteadyPumpManager);
+            gasStation.tryBuyGas(GasType.DIESEL, 1, 0);
+            Thread.sleep(10 * TICK_MILLIS);
+            assertEquals(PumpManagerEnum.SteadyPumpManager, gasStation.getPumpManagerFactory(GasType.DIESEL));
+        }
+    }
+
+    @Test
+    public void testWorkloadStrategySelector() {
+        final WorkloadStrategySelector selector = new WorkloadStrategySelector();
+        final long second = TimeUnit.SECONDS.toNanos(1);
+        // 2 pumps of 10 liters
+        assertNull(selector.select(new WorkloadStats(GasType.DIESEL, 2, 20, 0, second, 0, 0)));
+        // 0.5 s of pumping per pump and second
+        assertEquals(PumpManagerEnum.SteadyPumpManager, selector.select(new WorkloadStats(GasType.DIESEL, 2, 20, 10, second, 1, 0.5)));
+        // 1 s of pumping per pump and second
+        assertEquals(PumpManagerEnum.SteadyBlockingPumpManager, selector.select(new WorkloadStats(GasType.DIESEL, 2, 20, 20, second, 1, 0.5)));
+        // Orders of the quarter of a pump
+        assertEquals(PumpManagerEnum.MaxSalesPumpManager, selector.select(new WorkloadStats(GasType.DIESEL, 2, 20, 2, second, 2, 0.5)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAdaptiveStartsOnce() throws Exception {
+        try (GasStationImpl gasStation = TestStations.newDieselStation(PumpManagerEnum.SteadyPumpManager, 1, 1)) {
+            gasStation.startAdaptiveStrategies(new WorkloadStrategySelector(), TICK_MILLIS);
+            gasStation.startAdaptiveStrategies(new WorkloadStrategySelector(), TICK_MILLIS);
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition is not met in time", System.nanoTime() - deadline < 0);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -26,7 +26,8 @@ public class GasStationImplStressTest {
     public PumpManagerEnum pumpManagerStrategy;
     @Parameterized.Parameters()
     public static Iterable<PumpManagerEnum> data() {
-        return Arrays.asList(PumpManagerEnum.SteadyPumpManager, PumpManagerEnum.SteadyBlockingPumpManager);
+        return Arrays.asList(PumpManagerEnum.SteadyPumpManager, PumpManagerEnum.SteadyBlockingPumpManager, PumpManagerEnum.MaxSalesPumpManager, PumpManagerEnum.BiddingPumpManager,
+                PumpManagerEnum.ShortestCompletionPumpManager);
     }
 
     @Test
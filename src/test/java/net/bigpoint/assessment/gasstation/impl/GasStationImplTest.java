@@ -18,6 +18,8 @@ import org.junit.runners.Parameterized.Parameter;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.*;
 
@@ -37,7 +39,8 @@ public class GasStationImplTest {
     public PumpManagerEnum pumpManagerStrategy;
     @Parameters()
     public static Iterable<PumpManagerEnum> data() {
-        return Arrays.asList(PumpManagerEnum.SteadyPumpManager, PumpManagerEnum.SteadyBlockingPumpManager);
+        return Arrays.asList(PumpManagerEnum.SteadyPumpManager, PumpManagerEnum.SteadyBlockingPumpManager, PumpManagerEnum.MaxSalesPumpManager, PumpManagerEnum.BiddingPumpManager,
+                PumpManagerEnum.ShortestCompletionPumpManager);
     }
 
     @Rule
@@ -98,6 +101,76 @@ public class GasStationImplTest {
         expectedException = ExpectedException.none();
     }
 
+    @Test
+    public void testBuyFailMalformedOrder() throws NotEnoughGasException, GasTooExpensiveException {
+        final GasStationImpl gasStationImpl = (GasStationImpl) gasStation;
+        final double[][] orders = {{0, DIESEL_PRICE}, {-1, DIESEL_PRICE}, {Double.NaN, DIESEL_PRICE},
+                {Double.POSITIVE_INFINITY, DIESEL_PRICE}, {1, Double.NaN}};
+        for (double[] order : orders) {
+            try {
+                gasStationImpl.buyGasAsync(GasType.DIESEL, order[0], order[1]);
+                fail("Order of " + order[0] + " liters at " + order[1] + " is accepted");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+            try {
+                gasStationImpl.tryBuyGas(GasType.DIESEL, order[0], order[1]);
+                fail("Order of " + order[0] + " liters at " + order[1] + " is accepted");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        assertEquals(0, gasStation.getNumberOfSales());
+        assertEquals(0, gasStation.getNumberOfCancellationsNoGas());
+        assertEquals(TEST_PUMP_GAS_AMOUNT * DIESEL_PRICE, gasStation.buyGas(GasType.DIESEL, TEST_PUMP_GAS_AMOUNT, DIESEL_PRICE), DELTA);
+    }
+
+    @Test
+    public void testBuyGasAsync() throws Exception {
+        final CompletableFuture<Double> purchase = ((GasStationImpl) gasStation).buyGasAsync(GasType.DIESEL, TEST_PUMP_GAS_AMOUNT, DIESEL_PRICE);
+
+        assertEquals(TEST_PUMP_GAS_AMOUNT * DIESEL_PRICE, purchase.get(), DELTA);
+        assertEquals(1, gasStation.getNumberOfSales());
+        assertEquals(TEST_PUMP_GAS_AMOUNT * DIESEL_PRICE, gasStation.getRevenue(), DELTA);
+    }
+
+    @Test
+    public void testBuyGasAsyncFailTooExpensive() throws Exception {
+        final CompletableFuture<Double> purchase = ((GasStationImpl) gasStation).buyGasAsync(GasType.DIESEL, TEST_PUMP_GAS_AMOUNT, DIESEL_PRICE - 1);
+
+        assertTrue(purchase.isCompletedExceptionally());
+        assertFailedWith(GasTooExpensiveException.class, purchase);
+        assertEquals(1, gasStation.getNumberOfCancellationsTooExpensive());
+    }
+
+    @Test
+    public void testBuyGasAsyncFailNotEnough() throws Exception {
+        final CompletableFuture<Double> purchase = ((GasStationImpl) gasStation).buyGasAsync(GasType.DIESEL, 1000 * TEST_PUMP_GAS_AMOUNT, DIESEL_PRICE);
+
+        assertFailedWith(NotEnoughGasException.class, purchase);
+        assertEquals(1, gasStation.getNumberOfCancellationsNoGas());
+        assertEquals(0, gasStation.getNumberOfSales());
+    }
+
+    @Test
+    public void testTryBuyGas() {
+        final double totalPrice = ((GasStationImpl) gasStation).tryBuyGas(GasType.DIESEL, TEST_PUMP_GAS_AMOUNT, DIESEL_PRICE);
+
+        assertEquals(TEST_PUMP_GAS_AMOUNT * DIESEL_PRICE, totalPrice, DELTA);
+        assertEquals(1, gasStation.getNumberOfSales());
+    }
+
+    @Test
+    public void testTryBuyGasRejections() {
+        final GasStationImpl gasStationImpl = (GasStationImpl) gasStation;
+
+        assertEquals(GasStationImpl.TOO_EXPENSIVE, gasStationImpl.tryBuyGas(GasType.DIESEL, TEST_PUMP_GAS_AMOUNT, DIESEL_PRICE - 1), DELTA);
+        assertEquals(GasStationImpl.NOT_ENOUGH_GAS, gasStationImpl.tryBuyGas(GasType.DIESEL, 1000 * TEST_PUMP_GAS_AMOUNT, DIESEL_PRICE), DELTA);
+        assertEquals(1, gasStation.getNumberOfCancellationsTooExpensive());
+        assertEquals(1, gasStation.getNumberOfCancellationsNoGas());
+        assertEquals(0, gasStation.getNumberOfSales());
+    }
+
     @Test
     public void testSetPrice() {
         gasStation.setPrice(GasType.DIESEL, 2 * DIESEL_PRICE);
@@ -139,4 +212,13 @@ public class GasStationImplTest {
             assertEquals(TEST_PUMP_GAS_AMOUNT, pump.getRemainingAmount(), DELTA);
         }
     }
+
+    private static void assertFailedWith(Class<? extends Exception> expected, CompletableFuture<Double> purchase) throws InterruptedException {
+        try {
+            purchase.get();
+            fail("Purchase should be rejected with " + expected.getSimpleName());
+        } catch (ExecutionException e) {
+            assertTrue(expected.isInstance(e.getCause()));
+        }
+    }
 }
\ No newline at end of file
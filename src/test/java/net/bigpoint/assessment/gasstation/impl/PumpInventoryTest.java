@@ -0,0 +1,73 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the shared inventory snapshot of the station
+ */
+public class PumpInventoryTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = 1.5;
+    private final double TEST_PUMP_GAS_AMOUNT = 10;
+
+    private GasStationImpl gasStation;
+
+    @Before
+    public void setUp() throws Exception {
+        gasStation = new GasStationImpl(PumpManagerEnum.SteadyBlockingPumpManager);
+        gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+        gasStation.addGasPump(new GasPump(GasType.DIESEL, TEST_PUMP_GAS_AMOUNT));
+        gasStation.addGasPump(new GasPump(GasType.DIESEL, TEST_PUMP_GAS_AMOUNT));
+    }
+
+    @After
+    public void tearDown() {
+        gasStation.close();
+    }
+
+    @Test
+    public void testUnchangedInventoryIsShared() {
+        final PumpInventory inventory = gasStation.getInventory();
+
+        assertSame(inventory, gasStation.getInventory());
+        assertEquals(2, inventory.getPumps().size());
+        assertEquals(2 * TEST_PUMP_GAS_AMOUNT, inventory.getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+    }
+
+    @Test
+    public void testAddGasPumpChangesVersion() {
+        final PumpInventory inventory = gasStation.getInventory();
+        gasStation.addGasPump(new GasPump(GasType.SUPER, TEST_PUMP_GAS_AMOUNT));
+
+        final PumpInventory changedInventory = gasStation.getInventory();
+        assertTrue(changedInventory.getVersion() > inventory.getVersion());
+        assertEquals(3, changedInventory.getPumps().size());
+        assertEquals(TEST_PUMP_GAS_AMOUNT, changedInventory.getCommittedRemainingAmount(GasType.SUPER), DELTA);
+    }
+
+    @Test
+    public void testCommittedAndPhysicalAmounts() throws Exception {
+        final CompletableFuture<Double> purchase = gasStation.buyGasAsync(GasType.DIESEL, 1, DIESEL_PRICE);
+
+        // Reserved, but not pumped yet
+        final PumpInventory scheduledInventory = gasStation.getInventory();
+        assertEquals(2 * TEST_PUMP_GAS_AMOUNT - 1, scheduledInventory.getCommittedRemainingAmount(GasType.DIESEL), DELTA);
+        assertEquals(2 * TEST_PUMP_GAS_AMOUNT, scheduledInventory.getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+
+        purchase.get();
+        final PumpInventory pumpedInventory = gasStation.getInventory();
+        assertEquals(2 * TEST_PUMP_GAS_AMOUNT - 1, pumpedInventory.getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+        assertEquals(2 * TEST_PUMP_GAS_AMOUNT - 1, gasStation.getGasPumps().stream().mapToDouble(GasPump::getRemainingAmount).sum(), DELTA);
+    }
+}
@@ -0,0 +1,72 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the instant fill rate of the strategies for the uniformly distributed purchases.
+ * Requested amount of every run is close to the station capacity
+ */
+public class PumpManagerFillRateTest {
+    private final double DIESEL_PRICE = 1.5;
+    /**
+     * Amounts are multiples of 1/64 liter, so the remaining amounts are exact and pumping takes a few milliseconds
+     */
+    private final double LITER_UNIT = 1d / 64;
+    private final int PUMP_UNITS = 8;
+    private final int PUMP_COUNT = 10;
+    private final int MAX_ORDER_UNITS = 8;
+    private final int ORDERS_PER_RUN = 20;
+    private final int RUNS = 20;
+
+    @Test
+    public void testMaxSalesFillRate() throws Exception {
+        final double steadyFillRate = fillRate(PumpManagerEnum.SteadyPumpManager, MAX_ORDER_UNITS, 1);
+        final double maxSalesFillRate = fillRate(PumpManagerEnum.MaxSalesPumpManager, MAX_ORDER_UNITS, 1);
+
+        assertTrue(maxSalesFillRate > steadyFillRate);
+    }
+
+    @Test
+    public void testSplitFulfilmentFillRate() throws Exception {
+        // Orders up to twice the pump capacity
+        final double singlePumpFillRate = fillRate(PumpManagerEnum.SteadyBlockingPumpManager, 2 * PUMP_UNITS, 1);
+        final double splitFillRate = fillRate(PumpManagerEnum.SteadyBlockingPumpManager, 2 * PUMP_UNITS, 4);
+
+        assertTrue(splitFillRate > singlePumpFillRate);
+    }
+
+    /**
+     * Sequential purchases of the same seeded order stream for every run
+     */
+    private double fillRate(PumpManagerEnum pumpManagerStrategy, int maxOrderUnits, int maxSlices) throws Exception {
+        int sales = 0;
+        for (int run = 0; run < RUNS; run++) {
+            final Random random = new Random(run);
+            try (GasStationImpl gasStation = new GasStationImpl(pumpManagerStrategy)) {
+                gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+                if (maxSlices > 1)
+                    gasStation.setSplitFulfilment(GasType.DIESEL, maxSlices, LITER_UNIT);
+                for (int i = 0; i < PUMP_COUNT; i++)
+                    gasStation.addGasPump(new GasPump(GasType.DIESEL, PUMP_UNITS * LITER_UNIT));
+
+                for (int i = 0; i < ORDERS_PER_RUN; i++) {
+                    try {
+                        gasStation.buyGas(GasType.DIESEL, (1 + random.nextInt(maxOrderUnits)) * LITER_UNIT, DIESEL_PRICE);
+                    } catch (NotEnoughGasException e) {
+                        // Counted by the station
+                    }
+                }
+                sales += gasStation.getNumberOfSales();
+            }
+        }
+        return (double) sales / (RUNS * ORDERS_PER_RUN);
+    }
+}
@@ -0,0 +1,73 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpExecutionEngine;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.managers.VirtualClock;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the purchase latency of the strategies for the bursts of mixed orders.
+ * Pumps have different amounts, so the pump with the most gas is not the least busy one.
+ * Pumping takes the virtual time, so the latencies do not depend on the load of the machine
+ */
+public class PumpManagerLatencyTest {
+    private final double DIESEL_PRICE = 1.5;
+    private final int PUMP_COUNT = 8;
+    private final int BURSTS = 10;
+    private final int ORDERS_PER_BURST = 32;
+    private final long BURST_INTERVAL_MILLIS = 150;
+    /**
+     * Every fifth order is large
+     */
+    private final double SMALL_ORDER = 1d / 16;
+    private final double LARGE_ORDER = 1d / 2;
+
+    @Test
+    public void testShortestCompletionLatency() throws Exception {
+        final double steadyP99 = p99LatencyMillis(PumpManagerEnum.SteadyBlockingPumpManager);
+        final double shortestCompletionP99 = p99LatencyMillis(PumpManagerEnum.ShortestCompletionPumpManager);
+        assertTrue("p99 " + shortestCompletionP99 + " ms against " + steadyP99 + " ms", shortestCompletionP99 < steadyP99);
+    }
+
+    /**
+     * Open-loop bursts of the same seeded order stream: the orders of a burst arrive at once, regardless of the previous bursts
+     */
+    private double p99LatencyMillis(PumpManagerEnum pumpManagerStrategy) throws Exception {
+        final Random random = new Random(42);
+        final VirtualClock virtualClock = new VirtualClock();
+        final List<CompletableFuture<Long>> latencies = new ArrayList<>(BURSTS * ORDERS_PER_BURST);
+        try (GasStationImpl gasStation = new GasStationImpl(pumpManagerStrategy, PumpExecutionEngine.simulated(virtualClock))) {
+            gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+            for (int i = 0; i < PUMP_COUNT; i++)
+                gasStation.addGasPump(new GasPump(GasType.DIESEL, 10 + i));
+
+            for (int burst = 0; burst < BURSTS; burst++) {
+                virtualClock.scheduleAt(() -> {
+                    for (int i = 0; i < ORDERS_PER_BURST; i++) {
+                        final double amountInLiters = random.nextInt(5) == 0 ? LARGE_ORDER : SMALL_ORDER;
+                        final long startTime = virtualClock.nanoTime();
+                        latencies.add(gasStation.buyGasAsync(GasType.DIESEL, amountInLiters, DIESEL_PRICE).thenApply(price -> virtualClock.nanoTime() - startTime));
+                    }
+                }, TimeUnit.MILLISECONDS.toNanos(burst * BURST_INTERVAL_MILLIS));
+            }
+            virtualClock.run();
+
+            final long[] sortedLatencies = new long[latencies.size()];
+            for (int i = 0; i < sortedLatencies.length; i++)
+                sortedLatencies[i] = latencies.get(i).getNow(null);
+            Arrays.sort(sortedLatencies);
+            return sortedLatencies[(int) Math.ceil(0.99 * sortedLatencies.length) - 1] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.persistence.StationSnapshot;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the snapshot round trip and the bulk pump addition
+ */
+@RunWith(Parameterized.class)
+public class StationSnapshotTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = 1.5;
+    private final double SUPER_PRICE = 1.8;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Parameterized.Parameter
+    public PumpManagerEnum pumpManagerStrategy;
+    @Parameterized.Parameters()
+    public static Iterable<PumpManagerEnum> data() {
+        return Arrays.asList(PumpManagerEnum.SteadyPumpManager, PumpManagerEnum.SteadyBlockingPumpManager, PumpManagerEnum.MaxSalesPumpManager, PumpManagerEnum.BiddingPumpManager,
+                PumpManagerEnum.ShortestCompletionPumpManager);
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws Exception {
+        final Path snapshotFile = temporaryFolder.getRoot().toPath().resolve("station.snapshot");
+        try (GasStationImpl gasStation = new GasStationImpl(pumpManagerStrategy)) {
+            gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+            gasStation.setPrice(GasType.SUPER, SUPER_PRICE);
+            gasStation.addGasPumps(Arrays.asList(new GasPump(GasType.DIESEL, 2), new GasPump(GasType.SUPER, 3), new GasPump(GasType.DIESEL, 1)));
+            gasStation.buyGas(GasType.DIESEL, 1.5, DIESEL_PRICE);
+            assertEquals(GasStationImpl.TOO_EXPENSIVE, gasStation.tryBuyGas(GasType.SUPER, 1, DIESEL_PRICE), DELTA);
+            gasStation.snapshot().write(snapshotFile);
+        }
+
+        final StationSnapshot snapshot = StationSnapshot.read(snapshotFile);
+        assertEquals(pumpManagerStrategy, snapshot.getPumpManagerStrategy());
+        assertEquals(2, snapshot.getPriceVersion());
+        try (GasStationImpl gasStation = GasStationImpl.restore(snapshot)) {
+            assertEquals(2, gasStation.getPriceSnapshot().getVersion());
+            assertEquals(DIESEL_PRICE, gasStation.getPrice(GasType.DIESEL), DELTA);
+            assertEquals(SUPER_PRICE, gasStation.getPrice(GasType.SUPER), DELTA);
+            assertEquals(1, gasStation.getNumberOfSales());
+            assertEquals(1, gasStation.getNumberOfCancellationsTooExpensive());
+            assertEquals(0, gasStation.getNumberOfCancellationsNoGas());
+            assertEquals(1.5 * DIESEL_PRICE, gasStation.getRevenue(), DELTA);
+            assertEquals(3, gasStation.getGasPumps().size());
+            assertEquals(1.5, gasStation.getInventory().getPhysicalRemainingAmount(GasType.DIESEL), DELTA);
+            assertEquals(3, gasStation.getInventory().getPhysicalRemainingAmount(GasType.SUPER), DELTA);
+
+            // Restored pumps are served as usual
+            assertEquals(1.5 * SUPER_PRICE, gasStation.buyGas(GasType.SUPER, 1.5, SUPER_PRICE), DELTA);
+        }
+        // The snapshot keeps its own pumps
+        try (GasStationImpl gasStation = GasStationImpl.restore(snapshot)) {
+            assertEquals(3, gasStation.getInventory().getPhysicalRemainingAmount(GasType.SUPER), DELTA);
+        }
+    }
+
+    @Test
+    public void testBulkAdditionOfManyPumps() throws Exception {
+        final int pumpCount = 10_000;
+        final List<GasPump> pumps = new ArrayList<>(pumpCount);
+        for (int i = 0; i < pumpCount; i++)
+            pumps.add(new GasPump(GasType.values()[i % GasType.values().length], 1));
+
+        try (GasStationImpl gasStation = new GasStationImpl(pumpManagerStrategy)) {
+            gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+            gasStation.addGasPumps(pumps);
+
+            assertEquals(pumpCount, gasStation.getGasPumps().size());
+            assertEquals(pumpCount, gasStation.getInventory().getPumps().stream().mapToDouble(PumpState::getPhysicalRemainingAmount).sum(), DELTA);
+            assertEquals(DIESEL_PRICE, gasStation.buyGas(GasType.DIESEL, 1, DIESEL_PRICE), DELTA);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testForeignFileIsRejected() throws Exception {
+        final Path foreignFile = temporaryFolder.newFile("foreign.snapshot").toPath();
+        Files.write(foreignFile, "not a snapshot".getBytes("UTF-8"));
+        StationSnapshot.read(foreignFile);
+    }
+}
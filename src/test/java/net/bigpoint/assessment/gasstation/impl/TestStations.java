@@ -0,0 +1,49 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpExecutionEngine;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+
+/**
+ * Stations for the tests. The caller closes the station
+ */
+final class TestStations {
+    static final double DIESEL_PRICE = 1.5;
+    static final double SUPER_PRICE = 1.8;
+
+    private TestStations() {}
+
+    /**
+     * @param strategy
+     * @param pumpCount
+     * @param pumpAmount
+     * @return station of the diesel pumps of the same amount at DIESEL_PRICE
+     */
+    static GasStationImpl newDieselStation(PumpManagerEnum strategy, int pumpCount, double pumpAmount) throws ClassNotFoundException {
+        return addDieselPumps(new GasStationImpl(strategy), pumpCount, pumpAmount);
+    }
+
+    static GasStationImpl newDieselStation(PumpManagerEnum strategy, PumpExecutionEngine executionEngine, int pumpCount, double pumpAmount)
+            throws ClassNotFoundException {
+        return addDieselPumps(new GasStationImpl(strategy, executionEngine), pumpCount, pumpAmount);
+    }
+
+    /**
+     * @param strategy
+     * @return station of two 1 liter diesel pumps at DIESEL_PRICE and a 1 liter super pump at SUPER_PRICE
+     */
+    static GasStationImpl newDieselAndSuperStation(PumpManagerEnum strategy) throws ClassNotFoundException {
+        final GasStationImpl gasStation = addDieselPumps(new GasStationImpl(strategy), 2, 1);
+        gasStation.setPrice(GasType.SUPER, SUPER_PRICE);
+        gasStation.addGasPump(new GasPump(GasType.SUPER, 1));
+        return gasStation;
+    }
+
+    private static GasStationImpl addDieselPumps(GasStationImpl gasStation, int pumpCount, double pumpAmount) {
+        gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+        for (int i = 0; i < pumpCount; i++)
+            gasStation.addGasPump(new GasPump(GasType.DIESEL, pumpAmount));
+        return gasStation;
+    }
+}
@@ -0,0 +1,83 @@
+package net.bigpoint.assessment.gasstation.impl;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Guards the zero-allocation rejection path of the tryBuyGas
+ */
+@RunWith(Parameterized.class)
+public class TryBuyGasAllocationTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = 1.5;
+    private final int WARM_UP_ITERATIONS = 50_000;
+    private final int MEASURED_ITERATIONS = 100_000;
+    /**
+     * Tolerance for the measurement itself
+     */
+    private final long ALLOCATION_TOLERANCE_BYTES = 1024;
+
+    @Parameterized.Parameter
+    public PumpManagerEnum pumpManagerStrategy;
+    @Parameterized.Parameters()
+    public static Iterable<PumpManagerEnum> data() {
+        return Arrays.asList(PumpManagerEnum.SteadyPumpManager, PumpManagerEnum.SteadyBlockingPumpManager, PumpManagerEnum.MaxSalesPumpManager, PumpManagerEnum.BiddingPumpManager,
+                PumpManagerEnum.ShortestCompletionPumpManager);
+    }
+
+    private GasStationImpl gasStation;
+    private com.sun.management.ThreadMXBean threadMXBean;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        gasStation = new GasStationImpl(pumpManagerStrategy);
+        gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+        for (int i = 0; i < 3; i++)
+            gasStation.addGasPump(new GasPump(GasType.DIESEL, 1));
+    }
+
+    @After
+    public void tearDown() {
+        if (gasStation != null)
+            gasStation.close();
+    }
+
+    @Test
+    public void testRejectionsDoNotAllocate() {
+        rejectPurchases(WARM_UP_ITERATIONS);
+
+        final long threadId = Thread.currentThread().getId();
+        final long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        rejectPurchases(MEASURED_ITERATIONS);
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertTrue("Rejections allocated " + allocated + " bytes", allocated < ALLOCATION_TOLERANCE_BYTES);
+        assertEquals(WARM_UP_ITERATIONS + MEASURED_ITERATIONS, gasStation.getNumberOfCancellationsNoGas());
+        assertEquals(WARM_UP_ITERATIONS + MEASURED_ITERATIONS, gasStation.getNumberOfCancellationsTooExpensive());
+    }
+
+    private void rejectPurchases(int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            assertEquals(GasStationImpl.NOT_ENOUGH_GAS, gasStation.tryBuyGas(GasType.DIESEL, 10, DIESEL_PRICE), DELTA);
+            assertEquals(GasStationImpl.TOO_EXPENSIVE, gasStation.tryBuyGas(GasType.DIESEL, 10, DIESEL_PRICE - 1), DELTA);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package net.bigpoint.assessment.gasstation.impl.fleet;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpExecutionEngine;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpFutures;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.managers.VirtualClock;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the routing of the purchases between the station shards
+ */
+public class GasStationFleetTest {
+    private final double DELTA = 0.0001;
+    private final double DIESEL_PRICE = 1.5;
+
+    @Test
+    public void testRoutesToShorterBacklog() throws Exception {
+        try (GasStationFleet fleet = newFleet(2, PumpManagerEnum.ShortestCompletionPumpManager)) {
+            fleet.addGasPump(new GasPump(GasType.DIESEL, 10));
+            fleet.addGasPump(new GasPump(GasType.DIESEL, 10));
+            final CompletableFuture<Double> slow = fleet.buyGasAsync(GasType.DIESEL, 2, DIESEL_PRICE);
+            final CompletableFuture<Double> fast = fleet.buyGasAsync(GasType.DIESEL, 0.5, DIESEL_PRICE);
+
+            assertEquals(0.5 * DIESEL_PRICE, fast.join(), DELTA);
+            assertEquals(2 * DIESEL_PRICE, slow.join(), DELTA);
+            assertEquals(1, fleet.getShard(0).getNumberOfSales());
+            assertEquals(1, fleet.getShard(1).getNumberOfSales());
+        }
+    }
+
+    /**
+     * The first shard has enough gas in total, but no single pump can serve the order
+     */
+    @Test
+    public void testFallbackToAnotherShard() throws Exception {
+        try (GasStationFleet fleet = newFleet(2, PumpManagerEnum.ShortestCompletionPumpManager)) {
+            fleet.addGasPump(0, new GasPump(GasType.DIESEL, 1));
+            fleet.addGasPump(0, new GasPump(GasType.DIESEL, 1));
+            fleet.addGasPump(1, new GasPump(GasType.DIESEL, 1.5));
+
+            assertEquals(1.2 * DIESEL_PRICE, fleet.buyGas(GasType.DIESEL, 1.2, DIESEL_PRICE), DELTA);
+            assertEquals(0, fleet.getNumberOfCancellationsNoGas());
+            assertEquals(1, fleet.getShard(0).getNumberOfCancellationsNoGas());
+            assertEquals(1, fleet.getShard(1).getNumberOfSales());
+
+            // Again for the non-blocking purchase, the second shard still has less gas
+            fleet.addGasPump(1, new GasPump(GasType.DIESEL, 1.5));
+            assertEquals(1.2 * DIESEL_PRICE, fleet.buyGasAsync(GasType.DIESEL, 1.2, DIESEL_PRICE).join(), DELTA);
+            assertEquals(0, fleet.getNumberOfCancellationsNoGas());
+            assertEquals(2, fleet.getShard(0).getNumberOfCancellationsNoGas());
+            assertEquals(2, fleet.getShard(1).getNumberOfSales());
+        }
+    }
+
+    @Test
+    public void testRejections() throws Exception {
+        try (GasStationFleet fleet = newFleet(2, PumpManagerEnum.SteadyBlockingPumpManager)) {
+            fleet.addGasPump(new GasPump(GasType.DIESEL, 1));
+            fleet.addGasPump(new GasPump(GasType.DIESEL, 1));
+            try {
+                fleet.buyGas(GasType.DIESEL, 0.1, DIESEL_PRICE - 0.5);
+                throw new AssertionError("Too expensive purchase");
+            } catch (GasTooExpensiveException e) {
+                assertEquals(1, fleet.getNumberOfCancellationsTooExpensive());
+            }
+            try {
+                fleet.buyGas(GasType.DIESEL, 1.5, DIESEL_PRICE);
+                throw new AssertionError("No shard has enough gas");
+            } catch (NotEnoughGasException e) {
+                assertEquals(1, fleet.getNumberOfCancellationsNoGas());
+            }
+            fleet.buyGasAsync(GasType.DIESEL, 1.5, DIESEL_PRICE).handle((purchasePrice, e) -> {
+                assertTrue(PumpFutures.unwrap(e) instanceof NotEnoughGasException);
+                return null;
+            }).join();
+            assertEquals(2, fleet.getNumberOfCancellationsNoGas());
+            assertEquals(0, fleet.getNumberOfSales());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGasTypeNotProvided() throws Exception {
+        try (GasStationFleet fleet = newFleet(2, PumpManagerEnum.SteadyPumpManager)) {
+            fleet.addGasPump(new GasPump(GasType.DIESEL, 1));
+            fleet.buyGas(GasType.REGULAR, 0.1, DIESEL_PRICE);
+        }
+    }
+
+    @Test
+    public void testPumpsArePlacedEvenly() throws Exception {
+        try (GasStationFleet fleet = newFleet(3, PumpManagerEnum.SteadyPumpManager)) {
+            for (int i = 0; i < 7; i++)
+                fleet.addGasPump(new GasPump(GasType.DIESEL, 1));
+            fleet.addGasPump(new GasPump(GasType.SUPER, 1));
+
+            assertEquals(3, fleet.getShard(0).getAvailability(GasType.DIESEL).getPumpCount());
+            assertEquals(2, fleet.getShard(1).getAvailability(GasType.DIESEL).getPumpCount());
+            assertEquals(2, fleet.getShard(2).getAvailability(GasType.DIESEL).getPumpCount());
+            assertEquals(1, fleet.getShard(0).getAvailability(GasType.SUPER).getPumpCount());
+            assertEquals(8, fleet.getGasPumps().size());
+            assertEquals(7, fleet.getShard(0).getAvailability(GasType.DIESEL).getRemainingInLiters()
+                    + fleet.getShard(1).getAvailability(GasType.DIESEL).getRemainingInLiters()
+                    + fleet.getShard(2).getAvailability(GasType.DIESEL).getRemainingInLiters(), DELTA);
+        }
+    }
+
+    /**
+     * Concurrent buyers drain the fleet: every order is either sold by one shard or rejected once by the fleet,
+     * the fleet totals are the sums of the shards
+     */
+    @Test
+    public void testConcurrentPurchases() throws Exception {
+        final int threads = 8;
+        final int ordersPerThread = 50;
+        final double amount = 0.125;
+        try (GasStationFleet fleet = newFleet(4, PumpManagerEnum.SteadyBlockingPumpManager)) {
+            for (int i = 0; i < 8; i++)
+                fleet.addGasPump(new GasPump(GasType.DIESEL, 1));
+            final AtomicInteger sales = new AtomicInteger();
+            final AtomicInteger rejections = new AtomicInteger();
+            final CountDownLatch start = new CountDownLatch(1);
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++)
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < ordersPerThread; i++)
+                            try {
+                                fleet.buyGas(GasType.DIESEL, amount, DIESEL_PRICE);
+                                sales.incrementAndGet();
+                            } catch (NotEnoughGasException e) {
+                                rejections.incrementAndGet();
+                            }
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES));
+
+            // 8 liters serve 64 of the 400 orders
+            assertEquals(threads * ordersPerThread, sales.get() + rejections.get());
+            assertEquals(64, sales.get());
+            assertEquals(sales.get(), fleet.getNumberOfSales());
+            assertEquals(rejections.get(), fleet.getNumberOfCancellationsNoGas());
+            assertEquals(sales.get() * amount * DIESEL_PRICE, fleet.getRevenue(), DELTA);
+            for (int i = 0; i < fleet.getShardCount(); i++)
+                assertEquals(0, fleet.getShard(i).getAvailability(GasType.DIESEL).getRemainingInLiters(), DELTA);
+        }
+    }
+
+    /**
+     * Pumping capacity grows with the shards: the same burst finishes N times sooner on N shards (virtual time)
+     */
+    @Test
+    public void testThroughputScalesWithShards() throws Exception {
+        for (int shardCount : new int[]{1, 2, 4, 8}) {
+            final VirtualClock virtualClock = new VirtualClock();
+            final List<GasStationImpl> shards = new ArrayList<>();
+            for (int i = 0; i < shardCount; i++) {
+                final GasStationImpl shard = new GasStationImpl(PumpManagerEnum.ShortestCompletionPumpManager, PumpExecutionEngine.simulated(virtualClock));
+                shard.setPrice(GasType.DIESEL, DIESEL_PRICE);
+                shard.addGasPump(new GasPump(GasType.DIESEL, 100));
+                shards.add(shard);
+            }
+            try (GasStationFleet fleet = new GasStationFleet(shards, shardCount)) {
+                final List<CompletableFuture<Double>> purchases = new ArrayList<>();
+                for (int i = 0; i < 16; i++)
+                    purchases.add(fleet.buyGasAsync(GasType.DIESEL, 0.5, DIESEL_PRICE));
+                virtualClock.run();
+
+                for (CompletableFuture<Double> purchase : purchases)
+                    assertEquals(0.5 * DIESEL_PRICE, purchase.getNow(null), DELTA);
+                assertEquals(TimeUnit.MILLISECONDS.toNanos(800 / shardCount), virtualClock.nanoTime());
+            }
+        }
+    }
+
+    @Test
+    public void testTwoChoicesSpreadTheLoad() throws Exception {
+        try (GasStationFleet fleet = newFleet(8, PumpManagerEnum.ShortestCompletionPumpManager)) {
+            for (int i = 0; i < 8; i++)
+                fleet.addGasPump(new GasPump(GasType.DIESEL, 100));
+            final List<CompletableFuture<Double>> purchases = new ArrayList<>();
+            for (int i = 0; i < 64; i++)
+                purchases.add(fleet.buyGasAsync(GasType.DIESEL, ThreadLocalRandom.current().nextDouble(0.01, 0.05), DIESEL_PRICE));
+            for (CompletableFuture<Double> purchase : purchases)
+                purchase.join();
+
+            // The better of two random shards keeps the busiest shard close to the average of 8 orders
+            for (int i = 0; i < fleet.getShardCount(); i++)
+                assertTrue(fleet.getShard(i).getNumberOfSales() <= 20);
+            assertEquals(64, fleet.getNumberOfSales());
+        }
+    }
+
+    private GasStationFleet newFleet(int shardCount, PumpManagerEnum pumpManagerStrategy) throws ClassNotFoundException {
+        final GasStationFleet fleet = GasStationFleet.create(shardCount, pumpManagerStrategy);
+        fleet.setPrice(GasType.DIESEL, DIESEL_PRICE);
+        fleet.setPrice(GasType.SUPER, DIESEL_PRICE);
+        return fleet;
+    }
+}
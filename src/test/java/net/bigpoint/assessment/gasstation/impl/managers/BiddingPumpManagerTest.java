@@ -0,0 +1,116 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.exceptions.NotEnoughGasException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the allocation of the pump capacity within a single auction
+ */
+public class BiddingPumpManagerTest {
+    private final double DELTA = 0.0001;
+    private final double STATION_PRICE = 1.5;
+    private final int BATCH_SIZE = 4;
+
+    private PumpExecutionEngine executionEngine;
+    private BiddingPumpManager pumpManager;
+
+    @Before
+    public void setUp() {
+        executionEngine = PumpExecutionEngine.newDefault();
+        // Long window, so the auction starts when the batch is full
+        pumpManager = new BiddingPumpManager(executionEngine, 60_000, BATCH_SIZE);
+        pumpManager.addGasPump(new GasPump(GasType.DIESEL, 2));
+    }
+
+    @After
+    public void tearDown() {
+        executionEngine.close();
+    }
+
+    @Test
+    public void testHighestBidsWinAndPayClearingPrice() throws Exception {
+        final CompletableFuture<Double> lowest = pumpManager.sellGasAsync(1, STATION_PRICE, STATION_PRICE);
+        final CompletableFuture<Double> highest = pumpManager.sellGasAsync(1, STATION_PRICE, 2.0);
+        final CompletableFuture<Double> second = pumpManager.sellGasAsync(1, STATION_PRICE, 1.8);
+        final CompletableFuture<Double> outbid = pumpManager.sellGasAsync(1, STATION_PRICE, 1.6);
+
+        // Winners pay the highest outbid price
+        assertEquals(1.6, highest.get(), DELTA);
+        assertEquals(1.6, second.get(), DELTA);
+        assertFailedWith(GasTooExpensiveException.class, outbid);
+        assertFailedWith(GasTooExpensiveException.class, lowest);
+    }
+
+    @Test
+    public void testNoContentionPaysStationPrice() throws Exception {
+        final CompletableFuture<Double> first = pumpManager.sellGasAsync(0.5, STATION_PRICE, 2.0);
+        final CompletableFuture<Double> second = pumpManager.sellGasAsync(0.5, STATION_PRICE, 1.8);
+        final CompletableFuture<Double> third = pumpManager.sellGasAsync(0.5, STATION_PRICE, 1.6);
+        final CompletableFuture<Double> fourth = pumpManager.sellGasAsync(0.5, STATION_PRICE, STATION_PRICE);
+
+        assertEquals(STATION_PRICE, first.get(), DELTA);
+        assertEquals(STATION_PRICE, second.get(), DELTA);
+        assertEquals(STATION_PRICE, third.get(), DELTA);
+        assertEquals(STATION_PRICE, fourth.get(), DELTA);
+    }
+
+    @Test
+    public void testEqualBidsFailNotEnoughGas() throws Exception {
+        final CompletableFuture<Double> first = pumpManager.sellGasAsync(1.5, STATION_PRICE, STATION_PRICE);
+        final CompletableFuture<Double> second = pumpManager.sellGasAsync(1.5, STATION_PRICE, STATION_PRICE);
+        final CompletableFuture<Double> tooLarge = pumpManager.sellGasAsync(3, STATION_PRICE, 5.0);
+        final CompletableFuture<Double> third = pumpManager.sellGasAsync(1.5, STATION_PRICE, STATION_PRICE);
+
+        assertEquals(STATION_PRICE, first.get(), DELTA);
+        assertFailedWith(NotEnoughGasException.class, tooLarge);
+        assertFailedWith(NotEnoughGasException.class, second);
+        assertFailedWith(NotEnoughGasException.class, third);
+    }
+
+    @Test
+    public void testTrySellGasBidsMaxPrice() throws Exception {
+        final CompletableFuture<Double> lowest = pumpManager.sellGasAsync(1, STATION_PRICE, STATION_PRICE);
+        final CompletableFuture<Double> second = pumpManager.sellGasAsync(1, STATION_PRICE, 1.8);
+        final CompletableFuture<Double> outbid = pumpManager.sellGasAsync(1, STATION_PRICE, 1.6);
+
+        // The last bid of the batch starts the auction and wins it like the pooled bid
+        assertEquals(1.6, pumpManager.trySellGas(1, STATION_PRICE, 2.0), DELTA);
+        assertEquals(1.6, second.get(), DELTA);
+        assertFailedWith(GasTooExpensiveException.class, outbid);
+        assertFailedWith(GasTooExpensiveException.class, lowest);
+        assertEquals(-PumpManager.NOT_ENOUGH_GAS, pumpManager.trySellGas(0.5, STATION_PRICE, 2.0), DELTA);
+    }
+
+    @Test
+    public void testTrySellGasOutbid() throws Exception {
+        final CompletableFuture<Double> highest = pumpManager.sellGasAsync(1, STATION_PRICE, 2.0);
+        final CompletableFuture<Double> second = pumpManager.sellGasAsync(1, STATION_PRICE, 1.8);
+        final CompletableFuture<Double> third = pumpManager.sellGasAsync(1, STATION_PRICE, 1.7);
+
+        assertEquals(-PumpManager.OUTBID, pumpManager.trySellGas(1, STATION_PRICE, 1.6), DELTA);
+        assertEquals(1.7, highest.get(), DELTA);
+        assertEquals(1.7, second.get(), DELTA);
+        assertFailedWith(GasTooExpensiveException.class, third);
+    }
+
+    private static void assertFailedWith(Class<? extends Exception> expected, CompletableFuture<Double> purchase) throws InterruptedException {
+        try {
+            purchase.get();
+            fail("Purchase should be rejected with " + expected.getSimpleName());
+        } catch (ExecutionException e) {
+            assertTrue(expected.isInstance(e.getCause()));
+        }
+    }
+}
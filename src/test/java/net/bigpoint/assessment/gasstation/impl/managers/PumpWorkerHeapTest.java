@@ -0,0 +1,101 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the heap order against a sorted list while the remaining amounts change outside of the heap
+ */
+public class PumpWorkerHeapTest {
+    private static final Comparator<PumpWorker> HIGHEST_FIRST = Comparator.comparingDouble(PumpWorker::getRemainingGas).reversed()
+            .thenComparingLong(PumpWorker::getId);
+
+    private PumpExecutionEngine executionEngine;
+
+    @Before
+    public void setUp() {
+        executionEngine = PumpExecutionEngine.newDefault();
+    }
+
+    @After
+    public void tearDown() {
+        executionEngine.close();
+    }
+
+    @Test
+    public void testRefilledWorkerMovesUp() {
+        final PumpWorkerHeap heap = new PumpWorkerHeap();
+        final PumpWorker small = new PumpWorker(new GasPump(GasType.DIESEL, 1), executionEngine);
+        final PumpWorker large = new PumpWorker(new GasPump(GasType.DIESEL, 3), executionEngine);
+        heap.add(small);
+        heap.add(large);
+        assertSame(large, heap.peek());
+
+        // Heap keeps the order of the previous amounts till the update
+        small.refill(5);
+        assertSame(large, heap.peek());
+        assertTrue(heap.update(small));
+        assertSame(small, heap.peek());
+
+        assertSame(small, heap.poll());
+        assertFalse(heap.update(small));
+        assertSame(large, heap.poll());
+        assertNull(heap.poll());
+    }
+
+    @Test
+    public void testRandomUpdatesKeepOrder() {
+        final Random random = new Random(17);
+        final PumpWorkerHeap heap = new PumpWorkerHeap();
+        final List<PumpWorker> expected = new ArrayList<>();
+        final List<PumpWorker> removed = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final PumpWorker pumpWorker = new PumpWorker(new GasPump(GasType.DIESEL, random.nextInt(50)), executionEngine);
+            heap.add(pumpWorker);
+            expected.add(pumpWorker);
+        }
+        for (int step = 0; step < 10_000; step++) {
+            final int operation = random.nextInt(4);
+            if (operation == 0 && !removed.isEmpty()) {
+                final PumpWorker pumpWorker = removed.remove(random.nextInt(removed.size()));
+                heap.add(pumpWorker);
+                expected.add(pumpWorker);
+            } else if (operation == 1 && !expected.isEmpty()) {
+                final PumpWorker pumpWorker = expected.remove(random.nextInt(expected.size()));
+                assertTrue(heap.remove(pumpWorker));
+                removed.add(pumpWorker);
+            } else if (!expected.isEmpty()) {
+                // Increase or decrease of the key
+                final PumpWorker pumpWorker = expected.get(random.nextInt(expected.size()));
+                if (random.nextBoolean())
+                    pumpWorker.refill(random.nextInt(20) + 1);
+                else
+                    pumpWorker.tryReserve(random.nextInt(20) + 1);
+                assertTrue(heap.update(pumpWorker));
+            }
+            assertEquals(expected.size(), heap.size());
+            if (!expected.isEmpty())
+                assertSame(expected.stream().min(HIGHEST_FIRST).get(), heap.peek());
+        }
+
+        expected.sort(HIGHEST_FIRST);
+        final List<PumpWorker> drained = new ArrayList<>();
+        assertEquals(expected.size(), heap.drainTo(drained, Integer.MAX_VALUE));
+        assertEquals(expected, drained);
+        assertTrue(heap.isEmpty());
+    }
+}
@@ -0,0 +1,161 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the exact selection of the small queues, the relaxed selection of the large ones and that no worker is lost
+ */
+public class PumpWorkerMultiQueueTest {
+    private PumpExecutionEngine executionEngine;
+
+    @Before
+    public void setUp() {
+        executionEngine = PumpExecutionEngine.newDefault();
+    }
+
+    @After
+    public void tearDown() {
+        executionEngine.close();
+    }
+
+    @Test
+    public void testSmallQueueSelectsHighest() {
+        final PumpWorkerMultiQueue queue = new PumpWorkerMultiQueue(4, executionEngine);
+        final List<PumpWorker> pumpWorkers = newPumpWorkers(10);
+        for (PumpWorker pumpWorker : pumpWorkers)
+            queue.add(pumpWorker);
+
+        for (int i = pumpWorkers.size() - 1; i >= 0; i--)
+            assertSame(pumpWorkers.get(i), queue.poll(0.5));
+        assertNull(queue.poll(0.5));
+    }
+
+    @Test
+    public void testRefilledWorkerMovesUp() {
+        final PumpWorkerMultiQueue queue = new PumpWorkerMultiQueue(4, executionEngine);
+        final List<PumpWorker> pumpWorkers = newPumpWorkers(10);
+        for (PumpWorker pumpWorker : pumpWorkers)
+            queue.add(pumpWorker);
+
+        final PumpWorker lowest = pumpWorkers.get(0);
+        queue.refill(lowest, 100);
+        assertSame(lowest, queue.reserve(50));
+        assertEquals(51, lowest.getRemainingGas(), 0);
+        // Reserved worker stays in the queue at its new place
+        assertSame(lowest, queue.poll(15));
+        queue.release(lowest, 50);
+        assertEquals(10, queue.poll(0.5).getRemainingGas(), 0);
+        queue.add(lowest);
+        assertSame(lowest, queue.poll(100));
+    }
+
+    /**
+     * Shards, which workers are all out, are skipped: the request fails only when no worker has the amount
+     */
+    @Test
+    public void testBusyWorkersAreSkipped() {
+        final PumpWorkerMultiQueue queue = new PumpWorkerMultiQueue(16, executionEngine);
+        final List<PumpWorker> pumpWorkers = newPumpWorkers(1000);
+        for (PumpWorker pumpWorker : pumpWorkers)
+            queue.add(pumpWorker);
+
+        final Set<PumpWorker> polled = new HashSet<>();
+        for (int i = 0; i < pumpWorkers.size(); i++)
+            assertTrue(polled.add(queue.poll(0.5)));
+        assertNull(queue.poll(0.5));
+
+        // Only the highest worker has enough gas
+        queue.add(pumpWorkers.get(999));
+        queue.add(pumpWorkers.get(0));
+        assertNull(queue.poll(1001));
+        assertSame(pumpWorkers.get(999), queue.poll(999));
+    }
+
+    @Test
+    public void testLargeQueueSelectsHighWorkers() {
+        final PumpWorkerMultiQueue queue = new PumpWorkerMultiQueue(16, executionEngine);
+        final List<PumpWorker> pumpWorkers = newPumpWorkers(1000);
+        Collections.shuffle(pumpWorkers);
+        for (PumpWorker pumpWorker : pumpWorkers)
+            queue.add(pumpWorker);
+
+        // Choice of two among 16 shard tops: the selected workers are far above the median
+        for (int i = 0; i < 100; i++)
+            assertTrue(queue.poll(0.5).getRemainingGas() > 700);
+    }
+
+    /**
+     * The batch takes every shard lock once, so it selects the highest workers exactly even in a large queue
+     */
+    @Test
+    public void testBatchSelectsHighest() {
+        final PumpWorkerMultiQueue queue = new PumpWorkerMultiQueue(16, executionEngine);
+        final List<PumpWorker> pumpWorkers = newPumpWorkers(1000);
+        Collections.shuffle(pumpWorkers);
+        for (PumpWorker pumpWorker : pumpWorkers)
+            queue.add(pumpWorker);
+
+        final PumpWorker[] polled = queue.pollBatch(new double[] {0.5, 999.5, 0.5, 2000});
+        assertEquals(1000, polled[0].getRemainingGas(), 0);
+        assertNull(polled[1]);
+        assertEquals(999, polled[2].getRemainingGas(), 0);
+        assertNull(polled[3]);
+        assertEquals(pumpWorkers.size() - 2, queue.size());
+    }
+
+    @Test
+    public void testConcurrentPollAndAdd() throws Exception {
+        final PumpWorkerMultiQueue queue = new PumpWorkerMultiQueue(8, executionEngine);
+        final List<PumpWorker> pumpWorkers = newPumpWorkers(200);
+        for (PumpWorker pumpWorker : pumpWorkers)
+            queue.add(pumpWorker);
+
+        final ExecutorService buyers = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++)
+                results.add(buyers.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        final PumpWorker pumpWorker = queue.poll(ThreadLocalRandom.current().nextDouble(0.5, 1));
+                        assertNotNull(pumpWorker);
+                        queue.add(pumpWorker);
+                    }
+                }));
+            for (Future<?> result : results)
+                result.get();
+        } finally {
+            buyers.shutdown();
+        }
+        assertEquals(pumpWorkers.size(), queue.size());
+    }
+
+    /**
+     * @return workers of 1, 2, ... liters
+     */
+    private List<PumpWorker> newPumpWorkers(int count) {
+        final List<PumpWorker> pumpWorkers = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++)
+            pumpWorkers.add(new PumpWorker(new GasPump(GasType.DIESEL, i), executionEngine));
+        return pumpWorkers;
+    }
+}
@@ -0,0 +1,111 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Many buyers reserve gas of a single type simultaneously. Every slot of the pumps should be sold exactly once.
+ * The throughput against the synchronized selection is measured by ReservationContentionBenchmark
+ */
+public class SteadyBlockingPumpManagerContentionTest {
+    /**
+     * Amounts are multiples of 1/1024 liter, so the remaining amounts are exact and pumping takes no time
+     */
+    private final double ORDER_AMOUNT = 1d / 1024;
+    private final int ORDERS_PER_PUMP = 1024;
+    private final int PUMP_COUNT = 128;
+    private final int BUYER_THREADS = 64;
+    private final int ORDERS_PER_BUYER = 2 * PUMP_COUNT * ORDERS_PER_PUMP / BUYER_THREADS;
+
+    @Test
+    public void testReservationUnderContention() throws Exception {
+        try (PumpExecutionEngine executionEngine = PumpExecutionEngine.fixedPool(8)) {
+            final SteadyBlockingPumpManager pumpManager = new SteadyBlockingPumpManager(executionEngine);
+            for (int i = 0; i < PUMP_COUNT; i++)
+                pumpManager.addGasPump(new GasPump(GasType.DIESEL, ORDERS_PER_PUMP * ORDER_AMOUNT));
+
+            final ExecutorService buyerExecutor = Executors.newFixedThreadPool(BUYER_THREADS);
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            final List<Future<List<CompletableFuture<Void>>>> buyers = new ArrayList<>();
+            for (int i = 0; i < BUYER_THREADS; i++) {
+                buyers.add(buyerExecutor.submit(() -> {
+                    final List<CompletableFuture<Void>> reservations = new ArrayList<>(ORDERS_PER_BUYER);
+                    startLatch.await();
+                    for (int j = 0; j < ORDERS_PER_BUYER; j++)
+                        reservations.add(pumpManager.pumpGasAsync(ORDER_AMOUNT));
+                    return reservations;
+                }));
+            }
+
+            startLatch.countDown();
+            final List<CompletableFuture<Void>> reservations = new ArrayList<>();
+            for (Future<List<CompletableFuture<Void>>> buyer : buyers)
+                reservations.addAll(buyer.get());
+            buyerExecutor.shutdown();
+            buyerExecutor.awaitTermination(1, TimeUnit.MINUTES);
+
+            int sales = 0;
+            for (CompletableFuture<Void> reservation : reservations) {
+                if (reservation.handle((v, e) -> e == null).join())
+                    sales++;
+            }
+            assertEquals(PUMP_COUNT * ORDERS_PER_PUMP, sales);
+        }
+    }
+
+    /**
+     * The batches order the workers once, the concurrent buyers change them meanwhile:
+     * an amount is rejected only when no pump has it left
+     */
+    @Test
+    public void testBatchesUnderContention() throws Exception {
+        final int pumpCount = 32;
+        final int batchSize = 64;
+        final int buyerThreads = 8;
+        final int batchesPerBuyer = 2 * pumpCount * ORDERS_PER_PUMP / buyerThreads / batchSize;
+        try (PumpExecutionEngine executionEngine = PumpExecutionEngine.fixedPool(8)) {
+            final SteadyBlockingPumpManager pumpManager = new SteadyBlockingPumpManager(executionEngine);
+            for (int i = 0; i < pumpCount; i++)
+                pumpManager.addGasPump(new GasPump(GasType.DIESEL, ORDERS_PER_PUMP * ORDER_AMOUNT));
+
+            final double[] amounts = new double[batchSize];
+            Arrays.fill(amounts, ORDER_AMOUNT);
+            final ExecutorService buyerExecutor = Executors.newFixedThreadPool(buyerThreads);
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            final List<Future<List<CompletableFuture<Void>>>> buyers = new ArrayList<>();
+            for (int i = 0; i < buyerThreads; i++) {
+                buyers.add(buyerExecutor.submit(() -> {
+                    final List<CompletableFuture<Void>> reservations = new ArrayList<>(batchesPerBuyer * batchSize);
+                    startLatch.await();
+                    for (int j = 0; j < batchesPerBuyer; j++)
+                        reservations.addAll(pumpManager.pumpGasBatch(amounts));
+                    return reservations;
+                }));
+            }
+
+            startLatch.countDown();
+            int sales = 0;
+            for (Future<List<CompletableFuture<Void>>> buyer : buyers)
+                for (CompletableFuture<Void> reservation : buyer.get())
+                    if (reservation.handle((v, e) -> e == null).join())
+                        sales++;
+            buyerExecutor.shutdown();
+            buyerExecutor.awaitTermination(1, TimeUnit.MINUTES);
+
+            assertEquals(pumpCount * ORDERS_PER_PUMP, sales);
+        }
+    }
+}
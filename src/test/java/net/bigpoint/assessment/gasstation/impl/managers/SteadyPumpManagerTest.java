@@ -0,0 +1,66 @@
+package net.bigpoint.assessment.gasstation.impl.managers;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the pumps taken out of the queue always return to it
+ */
+public class SteadyPumpManagerTest {
+    private final double DELTA = 0.0001;
+
+    @Test
+    public void testRejectedPumpingKeepsPump() {
+        final PumpExecutionEngine executionEngine = PumpExecutionEngine.fixedPool(1);
+        final SteadyPumpManager pumpManager = new SteadyPumpManager(executionEngine);
+        final PumpWorker pumpWorker = pumpManager.addGasPump(new GasPump(GasType.DIESEL, 1));
+        executionEngine.close();
+
+        try {
+            pumpManager.pumpGasAsync(0.5);
+            fail("The engine is closed");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+        assertEquals(1, pumpWorker.getRemainingGas(), DELTA);
+        assertSame(pumpWorker, pumpManager.reserveGas(1));
+    }
+
+    @Test
+    public void testBatchReturnsPumps() {
+        final PumpExecutionEngine executionEngine = PumpExecutionEngine.fixedPool(1);
+        try {
+            final SteadyPumpManager pumpManager = new SteadyPumpManager(executionEngine);
+            final List<PumpWorker> pumpWorkers = new ArrayList<>();
+            for (int i = 1; i <= 4; i++)
+                pumpWorkers.add(pumpManager.addGasPump(new GasPump(GasType.DIESEL, i)));
+
+            // The pumps of 4 and 3 liters are taken, the others have not enough gas
+            final List<CompletableFuture<Void>> pumpings = pumpManager.pumpGasBatch(new double[] {3.5, 0.5, 5, 2.5});
+            assertEquals(0.5, pumpWorkers.get(3).getRemainingGas(), DELTA);
+            assertEquals(2.5, pumpWorkers.get(2).getRemainingGas(), DELTA);
+            pumpings.get(0).join();
+            pumpings.get(1).join();
+            assertTrue(pumpings.get(2).isCompletedExceptionally());
+            assertTrue(pumpings.get(3).isCompletedExceptionally());
+
+            for (CompletableFuture<Void> pumping : pumpManager.pumpGasBatch(new double[] {0.5, 0.5, 0.5, 0.5}))
+                pumping.join();
+            assertEquals(0, pumpWorkers.get(3).getRemainingGas(), DELTA);
+            assertEquals(0.5, pumpWorkers.get(0).getRemainingGas(), DELTA);
+        } finally {
+            executionEngine.close();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package net.bigpoint.assessment.gasstation.impl.metrics;
+
+import net.bigpoint.assessment.gasstation.GasPump;
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.exceptions.GasTooExpensiveException;
+import net.bigpoint.assessment.gasstation.impl.GasStationImpl;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import net.bigpoint.assessment.gasstation.impl.metrics.StationMetrics.Outcome;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the recorded latencies and their JMX publishing
+ */
+public class StationMetricsTest {
+    private final double DIESEL_PRICE = 1.5;
+
+    private GasStationImpl gasStation;
+
+    @Before
+    public void setUp() throws Exception {
+        gasStation = new GasStationImpl(PumpManagerEnum.SteadyBlockingPumpManager);
+        gasStation.setPrice(GasType.DIESEL, DIESEL_PRICE);
+        gasStation.addGasPump(new GasPump(GasType.DIESEL, 10));
+    }
+
+    @After
+    public void tearDown() {
+        gasStation.close();
+    }
+
+    @Test
+    public void testLatencyRecorderPercentiles() {
+        final LatencyRecorder recorder = new LatencyRecorder();
+        for (long value = 1; value <= 1000; value++)
+            recorder.record(value * 1000);
+
+        assertEquals(1000, recorder.getCount());
+        // Within the bucket precision
+        assertEquals(500_000, recorder.getValueAtPercentile(50), 500_000 / 16);
+        assertEquals(990_000, recorder.getValueAtPercentile(99), 990_000 / 16);
+        assertEquals(1_000_000, recorder.getValueAtPercentile(100), 1_000_000 / 16);
+    }
+
+    @Test
+    public void testPurchasePhasesRecorded() throws Exception {
+        gasStation.buyGas(GasType.DIESEL, 1, DIESEL_PRICE);
+        try {
+            gasStation.buyGas(GasType.DIESEL, 1, DIESEL_PRICE - 1);
+        } catch (GasTooExpensiveException e) {
+            // Recorded as well
+        }
+
+        final StationMetrics metrics = gasStation.getMetrics();
+        assertEquals(1, metrics.getPurchaseRecorder(GasType.DIESEL, Outcome.SUCCESS).getCount());
+        assertEquals(1, metrics.getPurchaseRecorder(GasType.DIESEL, Outcome.TOO_EXPENSIVE).getCount());
+        assertEquals(1, metrics.getSelectionRecorder(GasType.DIESEL, Outcome.SUCCESS).getCount());
+        assertEquals(1, metrics.getQueueWaitRecorder(GasType.DIESEL).getCount());
+        assertEquals(1, metrics.getPumpingRecorder(GasType.DIESEL).getCount());
+        // Pumping of 1 liter takes 100 ms
+        assertTrue(metrics.getPumpingRecorder(GasType.DIESEL).getValueAtPercentile(50) >= 90_000_000);
+        assertEquals(0L, (long) metrics.getQueueDepths().get(GasType.DIESEL.toString()));
+    }
+
+    @Test
+    public void testDisabledMetricsDoNotRecord() throws Exception {
+        gasStation.getMetrics().setEnabled(false);
+        gasStation.buyGas(GasType.DIESEL, 0.01, DIESEL_PRICE);
+
+        assertEquals(0, gasStation.getMetrics().getPurchaseRecorder(GasType.DIESEL, Outcome.SUCCESS).getCount());
+        assertEquals(0, gasStation.getMetrics().getPumpingRecorder(GasType.DIESEL).getCount());
+        assertTrue(gasStation.getMetrics().getLatencyPercentilesMillis().isEmpty());
+    }
+
+    @Test
+    public void testMBeanPublishing() throws Exception {
+        gasStation.getMetrics().registerMBean("metrics-test");
+        gasStation.buyGas(GasType.DIESEL, 0.01, DIESEL_PRICE);
+
+        final ObjectName name = new ObjectName("net.bigpoint.assessment.gasstation:type=StationMetrics,name=\"metrics-test\"");
+        final TabularData percentiles = (TabularData) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "LatencyPercentilesMillis");
+        assertTrue(percentiles.containsKey(new Object[]{"DIESEL.purchase.SUCCESS.p99"}));
+        assertTrue(percentiles.containsKey(new Object[]{"DIESEL.pumping.p999"}));
+
+        gasStation.close();
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
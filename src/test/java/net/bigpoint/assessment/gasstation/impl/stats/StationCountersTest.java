@@ -0,0 +1,97 @@
+package net.bigpoint.assessment.gasstation.impl.stats;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the striped fixed-point counters and the consistency of their snapshots
+ */
+public class StationCountersTest {
+    private final double DELTA = 1e-9;
+
+    @Test
+    public void testFixedPointSumsDoNotDrift() {
+        final StationCounters counters = new StationCounters(4);
+        for (int i = 0; i < 100_000; i++)
+            counters.recordSale(GasType.DIESEL, 0.1, 0.1 * 1.7);
+
+        final StationStats stats = counters.snapshot();
+        assertEquals(100_000, stats.getSales());
+        assertEquals(10_000, stats.getSoldLiters(), 0);
+        assertEquals(17_000, stats.getRevenue(), 0);
+        assertEquals(17_000, counters.getRevenue(), 0);
+    }
+
+    @Test
+    public void testBreakdownByGasType() {
+        final StationCounters counters = new StationCounters(2);
+        counters.recordSale(GasType.DIESEL, 2, 3);
+        counters.recordSale(GasType.SUPER, 1, 1.8);
+        counters.recordSales(GasType.SUPER, 2, StationCounters.toFixedPoint(0.5), StationCounters.toFixedPoint(0.9));
+        counters.recordCancellationsNoGas(GasType.DIESEL, 2);
+        counters.recordCancellationsTooExpensive(GasType.REGULAR, 1);
+        counters.recordShedOrders(GasType.SUPER, 3);
+        counters.recordTimedOutOrders(GasType.DIESEL, 1);
+        counters.restore(10, 1, 1, 20);
+
+        final StationStats stats = counters.snapshot();
+        assertEquals(14, stats.getSales());
+        assertEquals(25.7, stats.getRevenue(), DELTA);
+        assertEquals(3, stats.getCancellationsNoGas());
+        assertEquals(2, stats.getCancellationsTooExpensive());
+        assertEquals(3, stats.getShedOrders());
+        assertEquals(1, stats.getTimedOutOrders());
+        assertEquals(1, stats.getSales(GasType.DIESEL));
+        assertEquals(3, stats.getSales(GasType.SUPER));
+        assertEquals(0, stats.getSales(GasType.REGULAR));
+        assertEquals(2.7, stats.getRevenue(GasType.SUPER), DELTA);
+        assertEquals(1.5, stats.getSoldLiters(GasType.SUPER), DELTA);
+        assertEquals(2, stats.getCancellationsNoGas(GasType.DIESEL));
+        assertEquals(1, stats.getCancellationsTooExpensive(GasType.REGULAR));
+        assertEquals(3, stats.getShedOrders(GasType.SUPER));
+        assertEquals(1, stats.getTimedOutOrders(GasType.DIESEL));
+    }
+
+    /**
+     * Every sale adds 1 liter for 2 units, so any consistent snapshot has revenue = 2 * liters = 2 * sales,
+     * for the totals and for the gas type
+     */
+    @Test
+    public void testSnapshotIsConsistentUnderWriters() throws Exception {
+        final int salesPerWriter = 2_000_000;
+        final StationCounters counters = new StationCounters(2);
+        final List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final GasType gasType = GasType.values()[t % GasType.values().length];
+            final Thread writer = new Thread(() -> {
+                for (int i = 0; i < salesPerWriter; i++)
+                    counters.recordSale(gasType, 1, 2);
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        try {
+            long previousSales = 0;
+            for (int i = 0; i < 20_000 && previousSales < 4L * salesPerWriter; i++) {
+                final StationStats stats = counters.snapshot();
+                assertEquals(2 * stats.getSales(), stats.getRevenue(), 0);
+                assertEquals(stats.getSales(), stats.getSoldLiters(), 0);
+                for (GasType gasType : GasType.values())
+                    assertEquals(2 * stats.getSales(gasType), stats.getRevenue(gasType), 0);
+                assertTrue(stats.getSales() >= previousSales);
+                previousSales = stats.getSales();
+            }
+        } finally {
+            for (Thread writer : writers)
+                writer.join();
+        }
+        assertEquals(4L * salesPerWriter, counters.getSales());
+        assertEquals(counters.getSales() * 2, counters.getRevenue(), 0);
+    }
+}
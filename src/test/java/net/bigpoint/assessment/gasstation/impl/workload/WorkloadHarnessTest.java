@@ -0,0 +1,139 @@
+package net.bigpoint.assessment.gasstation.impl.workload;
+
+import net.bigpoint.assessment.gasstation.GasType;
+import net.bigpoint.assessment.gasstation.impl.Order;
+import net.bigpoint.assessment.gasstation.impl.managers.PumpManagerEnum;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the seeded order streams and the accounting of the workload reports
+ */
+public class WorkloadHarnessTest {
+    private final double DELTA = 0.0001;
+    private final long SEED = 42;
+
+    @Test
+    public void testSameSeedSameOrderStream() {
+        final WorkloadSpec spec = WorkloadSpec.of("poisson", SEED, 500, ArrivalProcess.poisson(1000));
+        final OrderStream first = OrderStream.generate(spec);
+        final OrderStream second = OrderStream.generate(spec);
+
+        assertEquals(first.getDigest(), second.getDigest());
+        for (int i = 0; i < spec.getOrders(); i++) {
+            final Order firstOrder = first.getOrders().get(i);
+            final Order secondOrder = second.getOrders().get(i);
+            assertEquals(firstOrder.getGasType(), secondOrder.getGasType());
+            assertEquals(firstOrder.getAmountInLiters(), secondOrder.getAmountInLiters(), 0);
+            assertEquals(firstOrder.getMaxPricePerLiter(), secondOrder.getMaxPricePerLiter(), 0);
+            assertEquals(first.getArrivalOffsetNanos(i), second.getArrivalOffsetNanos(i));
+        }
+        assertNotEquals(first.getDigest(), OrderStream.generate(spec.withSeed(SEED + 1)).getDigest());
+    }
+
+    @Test
+    public void testDimensionsAreIndependent() {
+        final WorkloadSpec spec = WorkloadSpec.of("poisson", SEED, 100, ArrivalProcess.poisson(1000));
+        final OrderStream original = OrderStream.generate(spec);
+        final OrderStream repriced = OrderStream.generate(spec.withMaxPriceFactors(Distribution.constant(2)));
+
+        assertNotEquals(original.getDigest(), repriced.getDigest());
+        for (int i = 0; i < spec.getOrders(); i++) {
+            assertEquals(original.getOrders().get(i).getGasType(), repriced.getOrders().get(i).getGasType());
+            assertEquals(original.getOrders().get(i).getAmountInLiters(), repriced.getOrders().get(i).getAmountInLiters(), 0);
+            assertEquals(original.getArrivalOffsetNanos(i), repriced.getArrivalOffsetNanos(i));
+        }
+    }
+
+    @Test
+    public void testArrivalProcesses() {
+        final int orders = 10_000;
+        final OrderStream poisson = OrderStream.generate(WorkloadSpec.of("poisson", SEED, orders, ArrivalProcess.poisson(1000)));
+        // 10 000 orders at 1000 per second take about 10 seconds
+        final double seconds = poisson.getArrivalOffsetNanos(orders - 1) / (double) TimeUnit.SECONDS.toNanos(1);
+        assertEquals(10, seconds, 0.5);
+
+        final OrderStream bursty = OrderStream.generate(WorkloadSpec.of("bursty", SEED, 10, ArrivalProcess.bursty(4, 100)));
+        assertEquals(0, bursty.getArrivalOffsetNanos(3));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bursty.getArrivalOffsetNanos(4));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), bursty.getArrivalOffsetNanos(9));
+    }
+
+    @Test
+    public void testGasTypeMix() {
+        final Map<GasType, Double> gasTypeMix = new EnumMap<>(GasType.class);
+        gasTypeMix.put(GasType.DIESEL, 3d);
+        gasTypeMix.put(GasType.SUPER, 1d);
+        final WorkloadSpec spec = WorkloadSpec.of("mix", SEED, 4000, ArrivalProcess.poisson(1000)).withGasTypeMix(gasTypeMix);
+
+        int dieselOrders = 0;
+        for (Order order : OrderStream.generate(spec).getOrders()) {
+            assertNotEquals(GasType.REGULAR, order.getGasType());
+            if (order.getGasType() == GasType.DIESEL)
+                dieselOrders++;
+        }
+        assertEquals(0.75, dieselOrders / 4000d, 0.03);
+    }
+
+    /**
+     * A single closed-loop client resolves the orders one by one and the shortest completion strategy selects
+     * the idle pump with the most gas, so the outcomes do not depend on the timing and the same seed gives the same report.
+     * The steady strategies select among random pumps, so their outcomes vary slightly
+     */
+    @Test
+    public void testSeededRunIsReproducible() throws Exception {
+        final WorkloadSpec spec = WorkloadSpec.of("closed", SEED, 150, ArrivalProcess.closedLoop(1, 0))
+                .withOrderSizes(Distribution.uniform(1d / 128, 1d / 32))
+                .withPumps(2, 0.3);
+        final WorkloadReport first = WorkloadHarness.run(spec, PumpManagerEnum.ShortestCompletionPumpManager);
+        final WorkloadReport second = WorkloadHarness.run(spec, PumpManagerEnum.ShortestCompletionPumpManager);
+
+        assertEquals(first.getOrderStreamDigest(), second.getOrderStreamDigest());
+        assertEquals(first.getSales(), second.getSales());
+        assertEquals(first.getCancellationsNoGas(), second.getCancellationsNoGas());
+        assertEquals(first.getCancellationsTooExpensive(), second.getCancellationsTooExpensive());
+        assertEquals(first.getRevenue(), second.getRevenue(), 0);
+        // The pumps run dry and the max prices reject some orders
+        assertTrue(first.getCancellationsNoGas() > 0);
+        assertTrue(first.getCancellationsTooExpensive() > 0);
+    }
+
+    @Test
+    public void testEveryStrategyIsReported() throws Exception {
+        final WorkloadSpec spec = WorkloadSpec.of("bursty", SEED, 96, ArrivalProcess.bursty(24, 20))
+                .withOrderSizes(Distribution.exponential(1d / 64, 1d / 8));
+        final List<WorkloadReport> reports = WorkloadHarness.compare(spec);
+
+        assertEquals(PumpManagerEnum.values().length, reports.size());
+        for (WorkloadReport report : reports) {
+            assertEquals(spec.getOrders(), report.getSales() + report.getCancellationsNoGas() + report.getCancellationsTooExpensive()
+                    + report.getShedOrders() + report.getTimedOutOrders());
+            assertEquals(reports.get(0).getOrderStreamDigest(), report.getOrderStreamDigest());
+            assertTrue(report.getSoldLiters() <= report.getRequestedLiters() + DELTA);
+            assertTrue(report.getLatencyNanosAtPercentile(50) <= report.getLatencyNanosAtPercentile(99));
+            assertTrue(report.toJson().contains("\"strategy\":\"" + report.getStrategy() + "\""));
+        }
+        assertTrue(WorkloadReport.toJson(reports).startsWith("["));
+    }
+
+    @Test
+    public void testEmptyReport() throws Exception {
+        final WorkloadSpec spec = WorkloadSpec.of("expensive", SEED, 10, ArrivalProcess.closedLoop(2, 0))
+                .withMaxPriceFactors(Distribution.constant(0.5));
+        final WorkloadReport report = WorkloadHarness.compare(spec, Collections.singletonList(PumpManagerEnum.SteadyPumpManager)).get(0);
+
+        assertEquals(10, report.getCancellationsTooExpensive());
+        assertEquals(0, report.getFillRate(), DELTA);
+        assertEquals(0, report.getLatencyNanosAtPercentile(99));
+        assertEquals(0, report.getRevenue(), DELTA);
+    }
+}